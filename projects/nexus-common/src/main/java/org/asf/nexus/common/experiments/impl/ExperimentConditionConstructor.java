@@ -16,6 +16,10 @@ public class ExperimentConditionConstructor implements IEventConditionConstructo
 	@Override
 	public IGenericEventCondition construct(IEventReceiver receiverType, Method listener, EventObject event,
 			Annotation annotation, EventBus bus) {
+		// Resolved once per listener
+		ExperimentCondition anno = (ExperimentCondition) annotation;
+		String key = anno.value();
+		boolean reverse = anno.isReverse();
 		return new IGenericEventCondition() {
 
 			@Override
@@ -26,9 +30,7 @@ public class ExperimentConditionConstructor implements IEventConditionConstructo
 			@Override
 			public boolean match(IEventReceiver receiverType, Method listener, EventObject event) {
 				// Check if experiment is enabled
-				ExperimentCondition anno = (ExperimentCondition) annotation;
-				String key = anno.value();
-				if (anno.isReverse()) {
+				if (reverse) {
 					// Check
 					if (ExperimentManager.getInstance().isExperimentEnabled(key))
 						return false;
@@ -0,0 +1,167 @@
+package org.asf.nexus.tables;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.asf.nexus.tables.annotations.TableColumn;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 
+ * Measures row mapping throughput (rows per millisecond) of a table that keeps
+ * its rows in memory, so that only the data table layer is measured
+ * 
+ * @author Sky Swimmer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DataTableBenchmark {
+
+	public static class BenchRow extends TableRow {
+
+		@TableColumn
+		public int id;
+
+		@TableColumn
+		public long timestamp;
+
+		@TableColumn
+		public String name;
+
+		@TableColumn
+		public boolean active;
+
+		@TableColumn
+		public double score;
+
+		@TableColumn
+		public byte[] data;
+
+	}
+
+	public static class BenchTable extends DataTable<BenchRow> {
+
+		public DataSet[] rows;
+
+		public BenchTable() {
+			super(BenchRow.class);
+		}
+
+		@Override
+		protected boolean hasRowsInternal(DataFilter dataFilter) throws IOException {
+			return rows.length != 0;
+		}
+
+		@Override
+		protected DataSet getFirstRowInternal(DataFilter dataFilter, String... columnNames) throws IOException {
+			return rows.length == 0 ? null : rows[0];
+		}
+
+		@Override
+		protected IDataCursor streamRowsInternal(DataFilter dataFilter, int fetchSize, String... columnNames)
+				throws IOException {
+			return IDataCursor.of(rows);
+		}
+
+		@Override
+		protected void setRowsInternal(DataFilter dataFilter, DataSet set) throws IOException {
+		}
+
+		@Override
+		protected void removeRowsInternal(DataFilter dataFilter) throws IOException {
+		}
+
+	}
+
+	private static final int ROW_COUNT = 100000;
+	private static final int BATCH_SIZE = 1000;
+
+	// Row format returned by the table, schema-bound or map-backed data sets
+	@Param({ "schema", "map" })
+	public String rowFormat;
+
+	private BenchTable table;
+	private BenchRow row;
+	private ArrayList<BenchRow> batchRows = new ArrayList<BenchRow>();
+
+	@Setup(Level.Trial)
+	public void setup() {
+		table = new BenchTable();
+		table.rows = new DataSet[ROW_COUNT];
+		TableSchema schema = table.getLayout().getSchema();
+		for (int i = 0; i < ROW_COUNT; i++) {
+			DataSet set = rowFormat.equals("schema") ? schema.createDataSet() : new DataSet();
+			set.setValue("id", i);
+			set.setValue("timestamp", 1000l * i);
+			set.setValue("name", "Row " + i);
+			set.setValue("active", i % 2 == 0);
+			set.setValue("score", i / 3d);
+			set.setValue("data", new byte[] { (byte) i });
+			table.rows[i] = set;
+		}
+		row = new BenchRow();
+		row.id = 1;
+		row.name = "Row";
+		row.data = new byte[16];
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			BenchRow r = new BenchRow();
+			r.id = i;
+			r.name = "Row " + i;
+			r.data = new byte[16];
+			batchRows.add(r);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROW_COUNT)
+	public BenchRow[] getAllRows() throws IOException {
+		return table.getAllRows();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROW_COUNT)
+	public void streamRows(Blackhole blackhole) throws IOException {
+		try (Stream<BenchRow> rows = table.streamRows()) {
+			rows.forEach(blackhole::consume);
+		}
+	}
+
+	@Benchmark
+	public void setRows() throws IOException {
+		table.setRows(row);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public void setRowsLoop() throws IOException {
+		for (BenchRow r : batchRows)
+			table.setRows(r);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public DataBatchResult setRowsBatch() {
+		return table.setRows(batchRows);
+	}
+
+}
@@ -0,0 +1,124 @@
+package org.asf.nexus.tables;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.asf.nexus.tables.annotations.IndexedColumn;
+import org.asf.nexus.tables.annotations.TableColumn;
+import org.asf.nexus.tables.annotations.UseAsFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ *
+ * Measures lookup, scan and update throughput (operations per millisecond) of
+ * the in-memory data table, serves as baseline for other backends
+ *
+ * @author Sky Swimmer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MemoryDataTableBenchmark {
+
+	public static class MemoryRow extends TableRow {
+
+		@TableColumn
+		@UseAsFilter
+		public int id;
+
+		@TableColumn
+		@IndexedColumn
+		public int category;
+
+		@TableColumn
+		public long timestamp;
+
+		@TableColumn
+		public String name;
+
+		@TableColumn
+		public double score;
+
+	}
+
+	private static final int ROW_COUNT = 100000;
+	private static final int CATEGORY_COUNT = 1000;
+
+	private MemoryDataTable<MemoryRow> table;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		table = new MemoryDataTable<MemoryRow>(MemoryRow.class);
+		for (int i = 0; i < ROW_COUNT; i++) {
+			MemoryRow row = new MemoryRow();
+			row.id = i;
+			row.category = i % CATEGORY_COUNT;
+			row.timestamp = 1000l * i;
+			row.name = "Row " + i;
+			row.score = i / 3d;
+			table.setRows(row);
+		}
+	}
+
+	@Benchmark
+	public MemoryRow lookup() throws IOException {
+		DataFilter filter = new DataFilter();
+		filter.setValue("id", ThreadLocalRandom.current().nextInt(ROW_COUNT));
+		return table.getFirstRow(filter);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public MemoryRow lookupConcurrent() throws IOException {
+		return lookup();
+	}
+
+	@Benchmark
+	public MemoryRow[] indexedLookup() throws IOException {
+		DataFilter filter = new DataFilter();
+		filter.setValue("category", ThreadLocalRandom.current().nextInt(CATEGORY_COUNT));
+		return table.getAllRows(filter);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROW_COUNT)
+	public void scan(Blackhole blackhole) throws IOException {
+		try (Stream<MemoryRow> rows = table.streamRows()) {
+			rows.forEach(blackhole::consume);
+		}
+	}
+
+	@Benchmark
+	public void update() throws IOException {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		DataFilter filter = new DataFilter();
+		filter.setValue("id", random.nextInt(ROW_COUNT));
+		table.setRows(filter, "score", random.nextDouble());
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void updateConcurrent() throws IOException {
+		update();
+	}
+
+}
@@ -0,0 +1,144 @@
+package org.asf.nexus.tables;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.asf.nexus.tables.annotations.TableColumn;
+import org.asf.nexus.tables.annotations.UseAsFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 
+ * Compares the binary row codec against Jackson JSON (operations per
+ * millisecond) for a typical row, both for row objects and for schema-bound
+ * data sets encoded into a reused buffer
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RowCodecBenchmark {
+
+	public static class CodecRow extends TableRow {
+
+		@TableColumn
+		@UseAsFilter
+		public String accountId;
+
+		@TableColumn
+		public String displayName;
+
+		@TableColumn
+		public int level;
+
+		@TableColumn
+		public long lastLogin;
+
+		@TableColumn
+		public double balance;
+
+		@TableColumn
+		public boolean active;
+
+		@TableColumn
+		public Date created;
+
+	}
+
+	private MemoryDataTable<CodecRow> table;
+	private RowCodec codec;
+	private ObjectMapper mapper;
+
+	private CodecRow row;
+	private SchemaDataSet rowSet;
+	private SchemaDataSet decodeTarget;
+	private ByteBuffer buffer;
+	private byte[] binary;
+	private byte[] json;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		table = new MemoryDataTable<CodecRow>(CodecRow.class);
+		codec = table.getLayout().getRowCodec();
+
+		// Serialize public fields only, the value cache is not part of the row
+		mapper = new ObjectMapper();
+		mapper.setVisibility(PropertyAccessor.ALL, Visibility.NONE);
+		mapper.setVisibility(PropertyAccessor.FIELD, Visibility.PUBLIC_ONLY);
+
+		// Create row
+		row = new CodecRow();
+		row.accountId = UUID.randomUUID().toString();
+		row.displayName = "Player 1234";
+		row.level = 42;
+		row.lastLogin = System.currentTimeMillis();
+		row.balance = 1520.75;
+		row.active = true;
+		row.created = new Date(1600000000000l);
+
+		// Encode
+		binary = table.encodeRow(row);
+		json = mapper.writeValueAsBytes(row);
+		rowSet = codec.decode(ByteBuffer.wrap(binary));
+		decodeTarget = table.getLayout().getSchema().createDataSet();
+		buffer = ByteBuffer.allocate(binary.length * 2);
+	}
+
+	@Benchmark
+	public int encodeRow() {
+		buffer.clear();
+		table.encodeRow(row, buffer);
+		return buffer.position();
+	}
+
+	@Benchmark
+	public CodecRow decodeRow() {
+		return table.decodeRow(ByteBuffer.wrap(binary));
+	}
+
+	@Benchmark
+	public int encodeDataSet() {
+		buffer.clear();
+		codec.encode(rowSet, buffer);
+		return buffer.position();
+	}
+
+	@Benchmark
+	public SchemaDataSet decodeDataSet() {
+		codec.decode(ByteBuffer.wrap(binary), decodeTarget);
+		return decodeTarget;
+	}
+
+	@Benchmark
+	public byte[] encodeJson() throws IOException {
+		return mapper.writeValueAsBytes(row);
+	}
+
+	@Benchmark
+	public CodecRow decodeJson() throws IOException {
+		return mapper.readValue(json, CodecRow.class);
+	}
+
+}
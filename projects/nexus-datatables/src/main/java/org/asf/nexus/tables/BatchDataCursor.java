@@ -0,0 +1,120 @@
+package org.asf.nexus.tables;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.NoSuchElementException;
+
+/**
+ * 
+ * Batched data cursor - fetches rows from the backend in batches of at most
+ * the fetch size, only the current batch is held in memory
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public abstract class BatchDataCursor implements IDataCursor {
+
+	private int fetchSize;
+	private DataSet[] batch;
+	private int index;
+	private boolean lastBatch;
+	private boolean closed;
+
+	/**
+	 * Creates a batched cursor
+	 * 
+	 * @param fetchSize Maximum amount of rows fetched at once
+	 */
+	protected BatchDataCursor(int fetchSize) {
+		if (fetchSize <= 0)
+			throw new IllegalArgumentException("Fetch size must be at least 1");
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * Called to fetch the next batch of rows
+	 * 
+	 * @param maxRows Maximum amount of rows to return
+	 * @return Array of up to maxRows rows, a smaller or empty array (or null)
+	 *         ends the cursor
+	 * @throws IOException If the database query fails
+	 */
+	protected abstract DataSet[] fetch(int maxRows) throws IOException;
+
+	/**
+	 * Called when the cursor is closed, either by the caller or after the last
+	 * row was fetched
+	 * 
+	 * @throws IOException If closing the cursor fails
+	 */
+	protected void closeInternal() throws IOException {
+	}
+
+	/**
+	 * Retrieves the fetch size of this cursor
+	 * 
+	 * @return Maximum amount of rows fetched at once
+	 */
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (closed)
+			return false;
+		if (batch != null && index < batch.length)
+			return true;
+		if (lastBatch) {
+			release();
+			return false;
+		}
+
+		// Fetch the next batch
+		DataSet[] rows;
+		try {
+			rows = fetch(fetchSize);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		batch = rows;
+		index = 0;
+		if (rows == null || rows.length < fetchSize)
+			lastBatch = true;
+		if (rows == null || rows.length == 0) {
+			release();
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public DataSet next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		// Drop the reference so the row can be collected once it is processed
+		DataSet row = batch[index];
+		batch[index++] = null;
+		return row;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		batch = null;
+		closeInternal();
+	}
+
+	private void release() {
+		// Release the backend as soon as the last row was returned
+		try {
+			close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+}
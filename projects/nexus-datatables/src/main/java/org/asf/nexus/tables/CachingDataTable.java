@@ -0,0 +1,704 @@
+package org.asf.nexus.tables;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.asf.nexus.tables.DataTable.DataTableLayout.EntryLayout;
+import org.asf.nexus.tables.annotations.UseAsFilter;
+
+/**
+ * 
+ * Caching data table - decorator that caches rows of a backend table by their
+ * {@link UseAsFilter} identification columns and writes updates behind
+ * 
+ * Reads with a filter that specifies all identification columns are served
+ * from the cache, other reads go to the backend after pending writes are
+ * flushed. Updates of a single identified row are applied to the cache and
+ * coalesced with other pending updates of the row, they are written to the
+ * backend as one batch after the write-behind delay. Removals and other
+ * updates are written through and invalidate the cached rows they may affect.
+ * 
+ * Updates that fail to be written behind with an IOException stay queued and
+ * are retried after the write-behind delay, the error is thrown by the next
+ * {@link #flush()} (also called by reads that need the backend). Updates that
+ * are rejected with another exception or that failed
+ * {@link #getMaxWriteAttempts()} times are dropped and logged instead, along
+ * with their cached row. Batches flush their updates before they return so
+ * that the batch result reports the outcome of the backend write.
+ * 
+ * Cached rows are never modified once cached, updates replace them with a
+ * merged copy so that readers can use them without holding the cache lock.
+ * 
+ * The identification columns are expected to identify a single row.
+ * 
+ * @param <T> Row value type
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public class CachingDataTable<T extends TableRow> extends DataTable<T> implements Closeable {
+
+	private static final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread th = new Thread(r, "Table Cache Flush Thread");
+		th.setDaemon(true);
+		return th;
+	});
+
+	private Logger logger = LogManager.getLogger("TableCache");
+	private DataTable<T> backend;
+	private EntryLayout[] keyColumns;
+	private int maxRows;
+	private long expireTime;
+	private long writeDelay;
+	private volatile int maxWriteAttempts = 3;
+
+	private LinkedHashMap<RowKey, CachedRow> rows;
+	private LinkedHashMap<RowKey, PendingWrite> pendingWrites = new LinkedHashMap<RowKey, PendingWrite>();
+	private HashSet<RowKey> flushingWrites = new HashSet<RowKey>();
+	private Object flushLock = new Object();
+	private boolean flushScheduled;
+	private long modifications;
+
+	private LongAdder hits = new LongAdder();
+	private LongAdder misses = new LongAdder();
+	private LongAdder evictions = new LongAdder();
+	private LongAdder backendReads = new LongAdder();
+	private LongAdder coalescedWrites = new LongAdder();
+	private LongAdder flushes = new LongAdder();
+	private LongAdder droppedWrites = new LongAdder();
+
+	private static class RowKey {
+		private Object[] values;
+		private int hash;
+
+		public RowKey(Object[] values) {
+			this.values = values;
+			hash = Arrays.deepHashCode(values);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof RowKey && Arrays.deepEquals(values, ((RowKey) obj).values);
+		}
+	}
+
+	private static class CachedRow {
+		public DataSet row;
+		public long loadTime;
+	}
+
+	private static class PendingWrite {
+		public DataFilter filter;
+		public DataSet set;
+		public int attempts;
+	}
+
+	/**
+	 * Creates a caching table that holds up to 10000 rows for 5 minutes and
+	 * writes updates behind after 1 second
+	 * 
+	 * @param backend Backend table
+	 */
+	public CachingDataTable(DataTable<T> backend) {
+		this(backend, 10000, 5, TimeUnit.MINUTES, 1, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Creates a caching table
+	 * 
+	 * @param backend        Backend table
+	 * @param maxRows        Maximum amount of cached rows, least recently used rows
+	 *                       are evicted first
+	 * @param expireTime     Time after which cached rows are reloaded from the
+	 *                       backend
+	 * @param expireUnit     Expiry time unit
+	 * @param writeDelay     Time updates are held back to be coalesced, 0 to write
+	 *                       updates through
+	 * @param writeDelayUnit Write-behind delay time unit
+	 */
+	@SuppressWarnings("unchecked")
+	public CachingDataTable(DataTable<T> backend, int maxRows, long expireTime, TimeUnit expireUnit, long writeDelay,
+			TimeUnit writeDelayUnit) {
+		super((Class<T>) backend.getLayout().getType());
+		if (maxRows <= 0)
+			throw new IllegalArgumentException("Maximum row count must be at least 1");
+		this.backend = backend;
+		this.maxRows = maxRows;
+		this.expireTime = expireUnit.toNanos(expireTime);
+		this.writeDelay = writeDelayUnit.toNanos(writeDelay);
+		setFetchSize(backend.getFetchSize());
+
+		// Find identification columns
+		keyColumns = Arrays.stream(getLayout().getColumns()).filter(
+				t -> t.assignmentField != null && t.assignmentField.isAnnotationPresent(UseAsFilter.class))
+				.toArray(t -> new EntryLayout[t]);
+		if (keyColumns.length == 0)
+			throw new IllegalArgumentException("Type " + getLayout().getType()
+					+ " does not have any fields annotated with UseAsFilter, cannot identify rows to cache");
+
+		// Create cache
+		rows = new LinkedHashMap<RowKey, CachedRow>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<RowKey, CachedRow> eldest) {
+				if (size() > CachingDataTable.this.maxRows) {
+					evictions.increment();
+					return true;
+				}
+				return false;
+			}
+
+		};
+	}
+
+	/**
+	 * Retrieves the backend table
+	 * 
+	 * @return DataTable instance
+	 */
+	public DataTable<T> getBackend() {
+		return backend;
+	}
+
+	/**
+	 * Retrieves the amount of reads served from the cache
+	 * 
+	 * @return Cache hit count
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * Retrieves the amount of identified reads that were not cached
+	 * 
+	 * @return Cache miss count
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * Retrieves the amount of rows evicted because the cache was full or because
+	 * they expired
+	 * 
+	 * @return Eviction count
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Retrieves the amount of reads sent to the backend, including cache misses
+	 * 
+	 * @return Backend read count
+	 */
+	public long getBackendReadCount() {
+		return backendReads.sum();
+	}
+
+	/**
+	 * Retrieves the amount of updates that were merged into a pending update of
+	 * the same row
+	 * 
+	 * @return Coalesced write count
+	 */
+	public long getCoalescedWriteCount() {
+		return coalescedWrites.sum();
+	}
+
+	/**
+	 * Retrieves the amount of times pending updates were written to the backend
+	 * 
+	 * @return Flush count
+	 */
+	public long getFlushCount() {
+		return flushes.sum();
+	}
+
+	/**
+	 * Retrieves the amount of pending updates that were dropped because they
+	 * could not be written
+	 * 
+	 * @return Dropped write count
+	 */
+	public long getDroppedWriteCount() {
+		return droppedWrites.sum();
+	}
+
+	/**
+	 * Retrieves how often a pending update is written before it is dropped
+	 * 
+	 * @return Maximum write attempts
+	 */
+	public int getMaxWriteAttempts() {
+		return maxWriteAttempts;
+	}
+
+	/**
+	 * Assigns how often a pending update is written before it is dropped
+	 * 
+	 * @param maxWriteAttempts Maximum write attempts
+	 */
+	public void setMaxWriteAttempts(int maxWriteAttempts) {
+		if (maxWriteAttempts <= 0)
+			throw new IllegalArgumentException("Maximum write attempts must be at least 1");
+		this.maxWriteAttempts = maxWriteAttempts;
+	}
+
+	/**
+	 * Retrieves the amount of cached rows
+	 * 
+	 * @return Cached row count
+	 */
+	public int getCachedRowCount() {
+		synchronized (rows) {
+			return rows.size();
+		}
+	}
+
+	/**
+	 * Retrieves the amount of rows with pending updates
+	 * 
+	 * @return Pending write count
+	 */
+	public int getPendingWriteCount() {
+		synchronized (rows) {
+			return pendingWrites.size();
+		}
+	}
+
+	/**
+	 * Drops all cached rows, pending updates are kept
+	 */
+	public void invalidate() {
+		synchronized (rows) {
+			modifications++;
+			rows.clear();
+		}
+	}
+
+	/**
+	 * Writes all pending updates to the backend, updates that fail to be written
+	 * stay queued unless they are dropped
+	 * 
+	 * @throws IOException If writing any of the updates fails
+	 */
+	public void flush() throws IOException {
+		HashMap<RowKey, Throwable> failures = flushWrites();
+		if (!failures.isEmpty())
+			throw flushError(failures);
+	}
+
+	private static IOException flushError(HashMap<RowKey, Throwable> failures) {
+		IOException error = null;
+		for (Throwable failure : failures.values()) {
+			if (error == null)
+				error = new IOException("Failed to write cached row updates", failure);
+			else
+				error.addSuppressed(failure);
+		}
+		return error;
+	}
+
+	private HashMap<RowKey, Throwable> flushWrites() {
+		synchronized (flushLock) {
+			// Take the pending writes
+			ArrayList<RowKey> keys;
+			ArrayList<PendingWrite> writes;
+			synchronized (rows) {
+				flushScheduled = false;
+				if (pendingWrites.isEmpty())
+					return new HashMap<RowKey, Throwable>();
+				keys = new ArrayList<RowKey>(pendingWrites.keySet());
+				writes = new ArrayList<PendingWrite>(pendingWrites.values());
+				flushingWrites.addAll(keys);
+				pendingWrites.clear();
+			}
+
+			// Write them as a single batch
+			DataBatchOperation[] operations = new DataBatchOperation[writes.size()];
+			for (int i = 0; i < operations.length; i++)
+				operations[i] = new DataBatchOperation(i, DataBatchOperation.Type.SET, writes.get(i).filter,
+						writes.get(i).set);
+			DataBatchResult result = new DataBatchResult(operations.length);
+			try {
+				backend.executeBatchInternal(operations, result);
+			} catch (IOException | RuntimeException e) {
+				result.failPending(e);
+			}
+			result.completePending();
+			flushes.increment();
+
+			// Queue failed writes again, updates made while flushing are applied over
+			// them and the filter of the failed write still matches the backend row
+			HashMap<RowKey, Throwable> failures = new HashMap<RowKey, Throwable>();
+			boolean retry = false;
+			synchronized (rows) {
+				flushingWrites.clear();
+				for (int index : result.getFailedIndexes()) {
+					RowKey key = keys.get(index);
+					PendingWrite write = writes.get(index);
+					Throwable error = result.getError(index);
+					failures.put(key, error);
+
+					// Rejected writes and writes that keep failing are dropped, retrying them
+					// would fail every read that needs the backend
+					write.attempts++;
+					if (!(error instanceof IOException) || write.attempts >= maxWriteAttempts) {
+						dropWrite(key, write, error);
+						continue;
+					}
+					PendingWrite newer = pendingWrites.remove(key);
+					if (newer != null) {
+						merge(write.set, newer.set);
+						coalescedWrites.increment();
+					}
+					pendingWrites.put(key, write);
+					retry = true;
+				}
+				if (retry)
+					scheduleFlush();
+			}
+			return failures;
+		}
+	}
+
+	private void dropWrite(RowKey key, PendingWrite write, Throwable error) {
+		// The cached row holds the dropped values, later updates of the row stay
+		// queued as they still apply to the backend row
+		droppedWrites.increment();
+		modifications++;
+		rows.remove(key);
+		logger.error("Dropped cached row update of table " + getLayout().getType().getTypeName() + " for "
+				+ Arrays.toString(key.values) + " after " + write.attempts + " failed write attempt(s)", error);
+	}
+
+	/**
+	 * Writes all pending updates and drops all cached rows, updates that fail to
+	 * be written are retried right away until they succeed or are dropped
+	 * 
+	 * @throws IOException If writing any of the updates failed
+	 */
+	@Override
+	public void close() throws IOException {
+		IOException error = null;
+		try {
+			while (true) {
+				HashMap<RowKey, Throwable> failures = flushWrites();
+				if (failures.isEmpty())
+					break;
+				if (error == null)
+					error = flushError(failures);
+			}
+		} finally {
+			invalidate();
+		}
+		if (error != null)
+			throw error;
+	}
+
+	private RowKey keyOf(DataFilter filter) {
+		Object[] values = new Object[keyColumns.length];
+		for (int i = 0; i < values.length; i++) {
+			Object value = filter.getValue(keyColumns[i].columnName, Object.class);
+			if (value == null)
+				return null;
+			values[i] = value;
+		}
+		return new RowKey(values);
+	}
+
+	private RowKey readKey(DataFilter filter) {
+		// Single row reads, other columns and predicates are checked on the row
+		if (filter.getOffset() != 0 || filter.getLimit() == 0)
+			return null;
+		return keyOf(filter);
+	}
+
+	private DataSet load(RowKey key) throws IOException {
+		// Check cache
+		long version;
+		synchronized (rows) {
+			CachedRow cached = rows.get(key);
+			if (cached != null) {
+				if (System.nanoTime() - cached.loadTime < expireTime) {
+					hits.increment();
+					return cached.row;
+				}
+				rows.remove(key);
+				evictions.increment();
+			}
+			misses.increment();
+		}
+
+		// Make sure the backend has the latest values of the row
+		boolean pending;
+		synchronized (rows) {
+			pending = pendingWrites.containsKey(key) || flushingWrites.contains(key);
+		}
+		if (pending)
+			flush();
+		synchronized (rows) {
+			version = modifications;
+		}
+
+		// Load the full row
+		DataFilter filter = new DataFilter();
+		for (int i = 0; i < keyColumns.length; i++)
+			filter.setValue(keyColumns[i].columnName, key.values[i]);
+		backendReads.increment();
+		DataSet row = backend.getFirstRowInternal(filter, getLayout().getColumnNames());
+
+		// Cache unless the table was modified while loading, the backend may still
+		// use the row object so a copy is cached
+		synchronized (rows) {
+			if (version == modifications) {
+				CachedRow cached = new CachedRow();
+				cached.row = row == null ? null : copyOf(row);
+				cached.loadTime = System.nanoTime();
+				rows.put(key, cached);
+			}
+		}
+		return row;
+	}
+
+	private static DataSet copyOf(DataSet row) {
+		// Both copies share their values until either is modified
+		if (row instanceof SchemaDataSet)
+			return ((SchemaDataSet) row).copy();
+		DataSet copy = new DataSet();
+		row.shareWith(copy);
+		return copy;
+	}
+
+	private DataSet readRow(DataFilter filter) throws IOException {
+		RowKey key = readKey(filter);
+		DataSet row = load(key);
+		if (row == null || !filter.matches(row))
+			return null;
+		return row;
+	}
+
+	private DataSet readRow(DataFilter filter, String[] columnNames) throws IOException {
+		DataSet row = readRow(filter);
+		if (row == null)
+			return null;
+
+		// Full rows are returned as copies, other reads only get the requested
+		// columns
+		if (columnNames.length == getLayout().getColumns().length)
+			return copyOf(row);
+		if (row instanceof SchemaDataSet) {
+			SchemaDataSet source = (SchemaDataSet) row;
+			TableSchema schema = source.getSchema();
+			SchemaDataSet res = schema.createDataSet();
+			for (String column : columnNames) {
+				int index = schema.indexOf(column);
+				if (index != -1)
+					res.copyValue(source, index);
+				else if (source.has(column))
+					res.setValue(column, source.getValue(column, Object.class));
+			}
+			return res;
+		}
+		DataSet res = new DataSet();
+		for (String column : columnNames) {
+			if (row.has(column))
+				res.setValue(column, row.getValue(column, Object.class));
+		}
+		return res;
+	}
+
+	@Override
+	public boolean supportsQueryFilters() {
+		return backend.supportsQueryFilters();
+	}
+
+	@Override
+	protected boolean hasRowsInternal(DataFilter dataFilter) throws IOException {
+		if (readKey(dataFilter) != null)
+			return readRow(dataFilter) != null;
+		flush();
+		backendReads.increment();
+		return backend.hasRowsInternal(dataFilter);
+	}
+
+	@Override
+	protected DataSet getFirstRowInternal(DataFilter dataFilter, String... columnNames) throws IOException {
+		if (readKey(dataFilter) != null)
+			return readRow(dataFilter, columnNames);
+		flush();
+		backendReads.increment();
+		return backend.getFirstRowInternal(dataFilter, columnNames);
+	}
+
+	@Override
+	protected IDataCursor streamRowsInternal(DataFilter dataFilter, int fetchSize, String... columnNames)
+			throws IOException {
+		if (readKey(dataFilter) != null) {
+			DataSet row = readRow(dataFilter, columnNames);
+			return row == null ? IDataCursor.of() : IDataCursor.of(row);
+		}
+		flush();
+		backendReads.increment();
+		return backend.streamRowsInternal(dataFilter, fetchSize, columnNames);
+	}
+
+	@Override
+	protected void setRowsInternal(DataFilter dataFilter, DataSet set) throws IOException {
+		if (writeBehind(dataFilter, set) != null) {
+			if (getPendingWriteCount() >= maxRows)
+				flush();
+			return;
+		}
+		flush();
+		backend.setRowsInternal(dataFilter, set);
+		invalidateAfterWrite(dataFilter);
+	}
+
+	@Override
+	protected void removeRowsInternal(DataFilter dataFilter) throws IOException {
+		flush();
+		backend.removeRowsInternal(dataFilter);
+		invalidateAfterWrite(dataFilter);
+	}
+
+	@Override
+	protected void executeBatchInternal(DataBatchOperation[] operations, DataBatchResult result)
+			throws IOException {
+		// Coalesce identified updates with the pending writes, send the rest as a
+		// batch
+		ArrayList<DataBatchOperation> remaining = new ArrayList<DataBatchOperation>();
+		HashMap<Integer, RowKey> heldBack = new HashMap<Integer, RowKey>();
+		for (DataBatchOperation op : operations) {
+			RowKey key = null;
+			if (op.getType() == DataBatchOperation.Type.SET)
+				key = writeBehind(op.getFilter(), op.getDataSet());
+			if (key != null)
+				heldBack.put(op.getIndex(), key);
+			else
+				remaining.add(op);
+		}
+
+		// Write the held back updates before returning so that the result reports
+		// failed writes
+		HashMap<RowKey, Throwable> failures = flushWrites();
+		for (Map.Entry<Integer, RowKey> op : heldBack.entrySet()) {
+			Throwable error = failures.get(op.getValue());
+			if (error != null)
+				result.markFailed(op.getKey(), error);
+		}
+		if (remaining.isEmpty())
+			return;
+
+		// The other operations may depend on the failed updates
+		if (!failures.isEmpty())
+			throw flushError(failures);
+		try {
+			backend.executeBatchInternal(remaining.toArray(t -> new DataBatchOperation[t]), result);
+		} finally {
+			for (DataBatchOperation op : remaining)
+				invalidateAfterWrite(op.getFilter());
+		}
+	}
+
+	private void invalidateAfterWrite(DataFilter filter) {
+		RowKey key = filter.isValueFilter() ? keyOf(filter) : null;
+		synchronized (rows) {
+			modifications++;
+			if (key != null)
+				rows.remove(key);
+			else
+				rows.clear();
+		}
+	}
+
+	private RowKey writeBehind(DataFilter filter, DataSet set) {
+		if (writeDelay <= 0 || !filter.isValueFilter())
+			return null;
+		RowKey key = keyOf(filter);
+		if (key == null)
+			return null;
+
+		// Updates that change the identification of the row are written through
+		for (int i = 0; i < keyColumns.length; i++) {
+			String column = keyColumns[i].columnName;
+			if (set.has(column) && !DataPredicate.valueEquals(set.getValue(column, Object.class), key.values[i]))
+				return null;
+		}
+
+		synchronized (rows) {
+			modifications++;
+
+			// Update the cached row, rows that were not found may have been created,
+			// readers use cached rows outside the lock so a merged copy replaces it
+			CachedRow cached = rows.get(key);
+			if (cached != null) {
+				if (cached.row == null)
+					rows.remove(key);
+				else {
+					DataSet row = copyOf(cached.row);
+					merge(row, set);
+					cached.row = row;
+				}
+			}
+
+			// Coalesce with the pending write of the row, the filter of the first write
+			// still matches the row in the backend
+			PendingWrite write = pendingWrites.get(key);
+			if (write == null) {
+				write = new PendingWrite();
+				write.filter = filter;
+				write.set = copyOf(set);
+				pendingWrites.put(key, write);
+			} else {
+				merge(write.set, set);
+				coalescedWrites.increment();
+			}
+
+			scheduleFlush();
+		}
+		return key;
+	}
+
+	private void scheduleFlush() {
+		// Failed writes stay queued, the flush is retried after the delay
+		if (flushScheduled)
+			return;
+		flushScheduled = true;
+		flusher.schedule(() -> {
+			try {
+				flush();
+			} catch (IOException e) {
+				logger.error("Failed to write cached row updates of table " + getLayout().getType().getTypeName()
+						+ ", updates that were not dropped are retried after the write-behind delay", e);
+			}
+		}, writeDelay, TimeUnit.NANOSECONDS);
+	}
+
+	private static void merge(DataSet target, DataSet set) {
+		for (DataEntry entry : set.getValues())
+			target.setValue(entry.getColumnName(), entry.getValue(Object.class));
+	}
+
+}
@@ -0,0 +1,131 @@
+package org.asf.nexus.tables;
+
+import java.util.ArrayList;
+
+/**
+ * 
+ * Data batch - collects row updates and removals so that they are validated
+ * together and handed to the table backend as a single batch
+ * 
+ * Items are numbered in the order they were added, the result of
+ * {@link #execute()} reports the outcome of each item by that index
+ * 
+ * @param <T> Row value type
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public class DataBatch<T extends TableRow> {
+
+	static class Item<T> {
+		public DataBatchOperation.Type type;
+		public T row;
+		public boolean replaceAll;
+		public DataFilter filter;
+		public DataSet set;
+	}
+
+	private DataTable<T> table;
+	ArrayList<Item<T>> items = new ArrayList<Item<T>>();
+
+	DataBatch(DataTable<T> table) {
+		this.table = table;
+	}
+
+	/**
+	 * Adds a row update, assigns the values of all rows matching the previous
+	 * values of the given object
+	 * 
+	 * @param value Row value
+	 * @return This batch
+	 */
+	public DataBatch<T> setRows(T value) {
+		return setRows(value, false);
+	}
+
+	/**
+	 * Adds a row update, assigns the values of all rows matching the previous
+	 * values of the given object
+	 * 
+	 * @param value      Row value
+	 * @param replaceAll True to replace all, false to only replace rows matching
+	 *                   the previous and identification values of the given row
+	 * @return This batch
+	 */
+	public DataBatch<T> setRows(T value, boolean replaceAll) {
+		Item<T> item = new Item<T>();
+		item.type = DataBatchOperation.Type.SET;
+		item.row = value;
+		item.replaceAll = replaceAll;
+		items.add(item);
+		return this;
+	}
+
+	/**
+	 * Adds a update of all rows matching the given filter
+	 * 
+	 * @param dataFilter Filter to use
+	 * @param set        Data to update
+	 * @return This batch
+	 */
+	public DataBatch<T> setRows(DataFilter dataFilter, DataSet set) {
+		Item<T> item = new Item<T>();
+		item.type = DataBatchOperation.Type.SET;
+		item.filter = dataFilter;
+		item.set = set;
+		items.add(item);
+		return this;
+	}
+
+	/**
+	 * Adds a removal of all rows matching the given row object
+	 * 
+	 * @param value Row to remove
+	 * @return This batch
+	 */
+	public DataBatch<T> removeRows(T value) {
+		Item<T> item = new Item<T>();
+		item.type = DataBatchOperation.Type.REMOVE;
+		item.row = value;
+		items.add(item);
+		return this;
+	}
+
+	/**
+	 * Adds a removal of all rows matching the given filter
+	 * 
+	 * @param dataFilter Filter to use
+	 * @return This batch
+	 */
+	public DataBatch<T> removeRows(DataFilter dataFilter) {
+		Item<T> item = new Item<T>();
+		item.type = DataBatchOperation.Type.REMOVE;
+		item.filter = dataFilter;
+		items.add(item);
+		return this;
+	}
+
+	/**
+	 * Retrieves the amount of items in this batch
+	 * 
+	 * @return Item count
+	 */
+	public int size() {
+		return items.size();
+	}
+
+	/**
+	 * Executes the batch, items that fail validation are reported as failed and
+	 * are not sent to the backend, if the backend fails the batch as a whole, all
+	 * items it did not report on are marked as failed with its error, the batch is
+	 * cleared afterwards
+	 * 
+	 * @return DataBatchResult instance
+	 */
+	public DataBatchResult execute() {
+		ArrayList<Item<T>> items = this.items;
+		this.items = new ArrayList<Item<T>>();
+		return table.executeBatch(items);
+	}
+
+}
@@ -0,0 +1,75 @@
+package org.asf.nexus.tables;
+
+/**
+ * 
+ * Data batch operation - a validated batch item handed to the table backend
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public class DataBatchOperation {
+
+	/**
+	 * 
+	 * Batch operation types
+	 * 
+	 * @author Sky Swimmer
+	 * 
+	 */
+	public static enum Type {
+
+		SET,
+
+		REMOVE
+
+	}
+
+	private int index;
+	private Type type;
+	private DataFilter filter;
+	private DataSet set;
+
+	DataBatchOperation(int index, Type type, DataFilter filter, DataSet set) {
+		this.index = index;
+		this.type = type;
+		this.filter = filter;
+		this.set = set;
+	}
+
+	/**
+	 * Retrieves the index of the item in the batch, used to report outcomes
+	 * 
+	 * @return Batch item index
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Retrieves the operation type
+	 * 
+	 * @return Type value
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Retrieves the filter of the rows to update or remove
+	 * 
+	 * @return DataFilter instance
+	 */
+	public DataFilter getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Retrieves the data to assign
+	 * 
+	 * @return DataSet instance or null for REMOVE operations
+	 */
+	public DataSet getDataSet() {
+		return set;
+	}
+
+}
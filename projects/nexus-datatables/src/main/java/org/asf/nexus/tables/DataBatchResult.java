@@ -0,0 +1,140 @@
+package org.asf.nexus.tables;
+
+import java.io.IOException;
+import java.util.stream.IntStream;
+
+/**
+ * 
+ * Data batch result - outcome of each item of a executed batch
+ * 
+ * Backends report failed items through {@link #markFailed(int, Throwable)},
+ * items that are not marked as failed once the backend returns are considered
+ * successful
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public class DataBatchResult {
+
+	private static final byte PENDING = 0;
+	private static final byte COMPLETED = 1;
+	private static final byte FAILED = 2;
+
+	private byte[] states;
+	private Throwable[] errors;
+
+	DataBatchResult(int size) {
+		states = new byte[size];
+		errors = new Throwable[size];
+	}
+
+	/**
+	 * Retrieves the amount of items in the batch
+	 * 
+	 * @return Item count
+	 */
+	public int size() {
+		return states.length;
+	}
+
+	/**
+	 * Checks if all items were successful
+	 * 
+	 * @return True if no item failed, false otherwise
+	 */
+	public boolean isSuccessful() {
+		return getFailureCount() == 0;
+	}
+
+	/**
+	 * Checks if a item was successful
+	 * 
+	 * @param index Batch item index
+	 * @return True if successful, false otherwise
+	 */
+	public boolean isSuccessful(int index) {
+		return states[index] == COMPLETED;
+	}
+
+	/**
+	 * Retrieves the error a item failed with
+	 * 
+	 * @param index Batch item index
+	 * @return Throwable instance or null if the item did not fail
+	 */
+	public Throwable getError(int index) {
+		return errors[index];
+	}
+
+	/**
+	 * Retrieves the amount of failed items
+	 * 
+	 * @return Failed item count
+	 */
+	public int getFailureCount() {
+		int count = 0;
+		for (byte state : states) {
+			if (state == FAILED)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Retrieves the indexes of all failed items
+	 * 
+	 * @return Array of batch item indexes
+	 */
+	public int[] getFailedIndexes() {
+		return IntStream.range(0, states.length).filter(t -> states[t] == FAILED).toArray();
+	}
+
+	/**
+	 * Throws if any item failed, for callers that treat the batch as a whole
+	 * 
+	 * @throws IOException If any item failed, the error of the first failed item
+	 *                     is the cause, other errors are added as suppressed
+	 *                     exceptions
+	 */
+	public void throwIfFailed() throws IOException {
+		int[] failed = getFailedIndexes();
+		if (failed.length == 0)
+			return;
+		IOException ex = new IOException(
+				failed.length + " of " + states.length + " batch items failed, first failed item: " + failed[0],
+				errors[failed[0]]);
+		for (int i = 1; i < failed.length; i++) {
+			// Items failed by the backend as a whole share the same error
+			Throwable error = errors[failed[i]];
+			if (error != errors[failed[0]] && error != errors[failed[i - 1]])
+				ex.addSuppressed(error);
+		}
+		throw ex;
+	}
+
+	/**
+	 * Marks a item as failed, called by backends
+	 * 
+	 * @param index Batch item index
+	 * @param error Error the item failed with
+	 */
+	public void markFailed(int index, Throwable error) {
+		states[index] = FAILED;
+		errors[index] = error;
+	}
+
+	void failPending(Throwable error) {
+		for (int i = 0; i < states.length; i++) {
+			if (states[i] == PENDING)
+				markFailed(i, error);
+		}
+	}
+
+	void completePending() {
+		for (int i = 0; i < states.length; i++) {
+			if (states[i] == PENDING)
+				states[i] = COMPLETED;
+		}
+	}
+
+}
@@ -20,6 +20,12 @@ public class DataEntry {
 		type = DataType.fromObject(value);
 	}
 
+	DataEntry(String columnName, Object value, DataType type) {
+		this.columnName = columnName;
+		this.value = value;
+		this.type = type;
+	}
+
 	/**
 	 * Retrieves the column name
 	 * 
@@ -1,16 +1,33 @@
 package org.asf.nexus.tables;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Map;
+import java.util.stream.Stream;
+
+import org.asf.nexus.tables.DataPredicate.Operator;
 
 /**
  * 
  * Data filter container, used to filter rows in data table requests
  * 
+ * Besides the column values rows need to equal, filters can hold predicates,
+ * ordering columns, a seek position for keyset pagination and a offset and
+ * limit, backends receive these as part of the filter so that they can push
+ * them down to the database, tables reject such query filters unless their
+ * backend reports support through {@link DataTable#supportsQueryFilters()}
+ * 
  * @author Sky Swimmer
  * 
  */
 public class DataFilter extends DataSet {
 
+	private ArrayList<DataPredicate> predicates = new ArrayList<DataPredicate>();
+	private ArrayList<DataOrder> ordering = new ArrayList<DataOrder>();
+	private Object[] seekValues;
+	private long offset;
+	private int limit = -1;
+
 	/**
 	 * Creates a empty data filter
 	 */
@@ -38,4 +55,247 @@ public class DataFilter extends DataSet {
 				setValue(key, set.getValue(key, Object.class));
 	}
 
+	/**
+	 * Adds a predicate
+	 * 
+	 * @param columnName Column name
+	 * @param operator   Predicate operator
+	 * @param value      Value to compare with
+	 * @return This filter
+	 */
+	public DataFilter where(String columnName, Operator operator, Object value) {
+		predicates.add(new DataPredicate(columnName, operator, value));
+		return this;
+	}
+
+	/**
+	 * Adds a range predicate (inclusive on both ends)
+	 * 
+	 * @param columnName Column name
+	 * @param min        Lowest matching value
+	 * @param max        Highest matching value
+	 * @return This filter
+	 */
+	public DataFilter whereBetween(String columnName, Object min, Object max) {
+		predicates.add(new DataPredicate(columnName, Operator.GREATER_OR_EQUAL, min));
+		predicates.add(new DataPredicate(columnName, Operator.LESS_OR_EQUAL, max));
+		return this;
+	}
+
+	/**
+	 * Adds a IN predicate
+	 * 
+	 * @param columnName Column name
+	 * @param values     Matching values
+	 * @return This filter
+	 */
+	public DataFilter whereIn(String columnName, Object... values) {
+		predicates.add(new DataPredicate(columnName, Operator.IN, values));
+		return this;
+	}
+
+	/**
+	 * Adds a ascending ordering column
+	 * 
+	 * @param columnName Column name
+	 * @return This filter
+	 */
+	public DataFilter orderBy(String columnName) {
+		return orderBy(columnName, false);
+	}
+
+	/**
+	 * Adds a ordering column
+	 * 
+	 * @param columnName Column name
+	 * @param descending True to order from high to low, false to order from low
+	 *                   to high
+	 * @return This filter
+	 */
+	public DataFilter orderBy(String columnName, boolean descending) {
+		ordering.add(new DataOrder(columnName, descending));
+		return this;
+	}
+
+	/**
+	 * Only matches rows ordered after the given key (keyset pagination), the
+	 * values are the ordering column values of the last row of the previous page
+	 * 
+	 * @param values Ordering column values, one per ordering column
+	 * @return This filter
+	 */
+	public DataFilter seekAfter(Object... values) {
+		seekValues = values.clone();
+		return this;
+	}
+
+	/**
+	 * Only matches rows ordered after the given row (keyset pagination)
+	 * 
+	 * @param lastRow Last row of the previous page
+	 * @return This filter
+	 */
+	public DataFilter seekAfter(DataSet lastRow) {
+		Object[] values = new Object[ordering.size()];
+		for (int i = 0; i < values.length; i++)
+			values[i] = lastRow.getValue(ordering.get(i).getColumnName(), Object.class);
+		seekValues = values;
+		return this;
+	}
+
+	/**
+	 * Assigns the amount of matching rows to skip
+	 * 
+	 * @param offset Row offset
+	 * @return This filter
+	 */
+	public DataFilter offset(long offset) {
+		if (offset < 0)
+			throw new IllegalArgumentException("Offset cannot be negative");
+		this.offset = offset;
+		return this;
+	}
+
+	/**
+	 * Assigns the maximum amount of rows to return
+	 * 
+	 * @param limit Row limit, -1 for no limit
+	 * @return This filter
+	 */
+	public DataFilter limit(int limit) {
+		if (limit < -1)
+			throw new IllegalArgumentException("Limit cannot be negative");
+		this.limit = limit;
+		return this;
+	}
+
+	/**
+	 * Retrieves the predicates of this filter
+	 * 
+	 * @return Array of DataPredicate instances
+	 */
+	public DataPredicate[] getPredicates() {
+		return predicates.toArray(t -> new DataPredicate[t]);
+	}
+
+	/**
+	 * Retrieves the ordering columns of this filter
+	 * 
+	 * @return Array of DataOrder instances
+	 */
+	public DataOrder[] getOrdering() {
+		return ordering.toArray(t -> new DataOrder[t]);
+	}
+
+	/**
+	 * Retrieves the seek position of this filter
+	 * 
+	 * @return Ordering column values rows need to be ordered after or null
+	 */
+	public Object[] getSeekValues() {
+		return seekValues == null ? null : seekValues.clone();
+	}
+
+	/**
+	 * Retrieves the amount of matching rows to skip
+	 * 
+	 * @return Row offset
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Retrieves the maximum amount of rows to return
+	 * 
+	 * @return Row limit or -1 if not limited
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Checks if the filter only uses column values (no predicates, ordering, seek
+	 * position, offset or limit)
+	 * 
+	 * @return True if the filter is a plain value filter, false otherwise
+	 */
+	public boolean isValueFilter() {
+		return predicates.isEmpty() && ordering.isEmpty() && seekValues == null && offset == 0 && limit == -1;
+	}
+
+	/**
+	 * Checks if a row matches the column values, predicates and seek position of
+	 * this filter, for backends that cannot push the filter down to the database
+	 * 
+	 * @param row Row to check
+	 * @return True if the row matches, false otherwise
+	 */
+	public boolean matches(DataSet row) {
+		// Check values
+		for (DataEntry ent : getValues()) {
+			if (!DataPredicate.valueEquals(row.getValue(ent.getColumnName(), Object.class),
+					ent.getValue(Object.class)))
+				return false;
+		}
+
+		// Check predicates
+		for (DataPredicate predicate : predicates) {
+			if (!predicate.test(row.getValue(predicate.getColumnName(), Object.class)))
+				return false;
+		}
+
+		// Check seek position
+		if (seekValues != null) {
+			for (int i = 0; i < ordering.size(); i++) {
+				DataOrder order = ordering.get(i);
+				int res = DataPredicate.compareValues(row.getValue(order.getColumnName(), Object.class),
+						seekValues[i]);
+				if (order.isDescending())
+					res = -res;
+				if (res != 0)
+					return res > 0;
+			}
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Creates a comparator for the ordering columns of this filter, null values
+	 * are ordered before other values
+	 * 
+	 * @return Comparator instance
+	 */
+	public Comparator<DataSet> getRowComparator() {
+		DataOrder[] ordering = getOrdering();
+		return (a, b) -> {
+			for (DataOrder order : ordering) {
+				int res = DataPredicate.compareValues(a.getValue(order.getColumnName(), Object.class),
+						b.getValue(order.getColumnName(), Object.class));
+				if (res != 0)
+					return order.isDescending() ? -res : res;
+			}
+			return 0;
+		};
+	}
+
+	/**
+	 * Applies this filter to a stream of rows, for backends that cannot push the
+	 * filter down to the database
+	 * 
+	 * @param rows Rows to filter
+	 * @return Stream of matching rows, ordered and limited by this filter
+	 */
+	public Stream<DataSet> apply(Stream<DataSet> rows) {
+		rows = rows.filter(t -> matches(t));
+		if (!ordering.isEmpty())
+			rows = rows.sorted(getRowComparator());
+		if (offset != 0)
+			rows = rows.skip(offset);
+		if (limit != -1)
+			rows = rows.limit(limit);
+		return rows;
+	}
+
 }
@@ -0,0 +1,50 @@
+package org.asf.nexus.tables;
+
+/**
+ * 
+ * Data order - ordering column of a data filter
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public class DataOrder {
+
+	private String columnName;
+	private boolean descending;
+
+	/**
+	 * Creates a ordering column
+	 * 
+	 * @param columnName Column name
+	 * @param descending True to order from high to low, false to order from low
+	 *                   to high
+	 */
+	public DataOrder(String columnName, boolean descending) {
+		this.columnName = columnName;
+		this.descending = descending;
+	}
+
+	/**
+	 * Retrieves the column name
+	 * 
+	 * @return Column name string
+	 */
+	public String getColumnName() {
+		return columnName;
+	}
+
+	/**
+	 * Checks if the column is ordered from high to low
+	 * 
+	 * @return True if descending, false if ascending
+	 */
+	public boolean isDescending() {
+		return descending;
+	}
+
+	@Override
+	public String toString() {
+		return columnName + (descending ? " DESC" : " ASC");
+	}
+
+}
@@ -0,0 +1,186 @@
+package org.asf.nexus.tables;
+
+import java.util.Arrays;
+
+/**
+ * 
+ * Data predicate - range, inequality or IN condition on a column of a data
+ * filter
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public class DataPredicate {
+
+	/**
+	 * 
+	 * Predicate operators
+	 * 
+	 * @author Sky Swimmer
+	 * 
+	 */
+	public static enum Operator {
+
+		/**
+		 * Matches values that are not equal to the predicate value, unlike SQL null
+		 * is compared like any other value: null column values match a non-null
+		 * predicate value and a null predicate value matches all non-null values
+		 */
+		NOT_EQUAL,
+
+		/**
+		 * Matches values lower than the predicate value, never matches null
+		 */
+		LESS_THAN,
+
+		/**
+		 * Matches values lower than or equal to the predicate value, never matches
+		 * null
+		 */
+		LESS_OR_EQUAL,
+
+		/**
+		 * Matches values higher than the predicate value, never matches null
+		 */
+		GREATER_THAN,
+
+		/**
+		 * Matches values higher than or equal to the predicate value, never matches
+		 * null
+		 */
+		GREATER_OR_EQUAL,
+
+		/**
+		 * Matches values equal to any of the predicate values, unlike SQL a null
+		 * predicate value matches null column values
+		 */
+		IN;
+
+		/**
+		 * Checks if the operator compares the order of values
+		 * 
+		 * @return True for range operators, false otherwise
+		 */
+		public boolean isRange() {
+			return this == LESS_THAN || this == LESS_OR_EQUAL || this == GREATER_THAN || this == GREATER_OR_EQUAL;
+		}
+
+	}
+
+	private String columnName;
+	private Operator operator;
+	private Object[] values;
+
+	/**
+	 * Creates a predicate
+	 * 
+	 * @param columnName Column name
+	 * @param operator   Predicate operator
+	 * @param values     Values to compare with, only IN predicates accept more
+	 *                   than one value
+	 */
+	public DataPredicate(String columnName, Operator operator, Object... values) {
+		if (operator != Operator.IN && values.length != 1)
+			throw new IllegalArgumentException("Operator " + operator + " requires exactly one value");
+		if (operator.isRange() && values[0] == null)
+			throw new IllegalArgumentException("Operator " + operator + " cannot compare with null");
+		this.columnName = columnName;
+		this.operator = operator;
+		this.values = values.clone();
+	}
+
+	/**
+	 * Retrieves the column name
+	 * 
+	 * @return Column name string
+	 */
+	public String getColumnName() {
+		return columnName;
+	}
+
+	/**
+	 * Retrieves the predicate operator
+	 * 
+	 * @return Operator value
+	 */
+	public Operator getOperator() {
+		return operator;
+	}
+
+	/**
+	 * Retrieves the value to compare with
+	 * 
+	 * @return Value object, the first value for IN predicates
+	 */
+	public Object getValue() {
+		return values.length == 0 ? null : values[0];
+	}
+
+	/**
+	 * Retrieves all values to compare with
+	 * 
+	 * @return Array of value objects
+	 */
+	public Object[] getValues() {
+		return values.clone();
+	}
+
+	/**
+	 * Evaluates the predicate against a value, for backends that cannot push the
+	 * predicate down to the database
+	 * 
+	 * @param value Column value
+	 * @return True if the value matches, false otherwise
+	 */
+	public boolean test(Object value) {
+		switch (operator) {
+
+		case NOT_EQUAL:
+			return !valueEquals(value, values[0]);
+
+		case IN:
+			for (Object v : values) {
+				if (valueEquals(value, v))
+					return true;
+			}
+			return false;
+
+		default:
+			// Null never matches a range, like in SQL
+			if (value == null)
+				return false;
+			int res = compareValues(value, values[0]);
+			switch (operator) {
+			case LESS_THAN:
+				return res < 0;
+			case LESS_OR_EQUAL:
+				return res <= 0;
+			case GREATER_THAN:
+				return res > 0;
+			default:
+				return res >= 0;
+			}
+
+		}
+	}
+
+	static boolean valueEquals(Object a, Object b) {
+		if (a instanceof byte[] && b instanceof byte[])
+			return Arrays.equals((byte[]) a, (byte[]) b);
+		return a == null ? b == null : a.equals(b);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static int compareValues(Object a, Object b) {
+		// Null sorts before all values
+		if (a == null || b == null)
+			return a == null ? (b == null ? 0 : -1) : 1;
+		return ((Comparable) a).compareTo(b);
+	}
+
+	@Override
+	public String toString() {
+		return columnName + " " + operator + " " + (operator == Operator.IN ? Arrays.toString(values) : values[0]);
+	}
+
+}
@@ -1,5 +1,7 @@
 package org.asf.nexus.tables;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 
@@ -12,11 +14,19 @@ import java.util.Iterator;
  */
 public class DataSet implements Iterable<DataEntry> {
 
-	private HashMap<String, DataEntry> entries = new HashMap<String, DataEntry>();
+	// Empty map used by new sets until the first value is assigned, never
+	// modified as it is flagged as shared
+	private static final HashMap<String, DataEntry> NO_ENTRIES = new HashMap<String, DataEntry>();
+
+	private HashMap<String, DataEntry> entries = NO_ENTRIES;
+
+	// True if the entry map is shared with another data set and needs to be
+	// copied before it is modified
+	private boolean shared = true;
 
 	@Override
 	public Iterator<DataEntry> iterator() {
-		return entries.values().iterator();
+		return Collections.unmodifiableCollection(entries.values()).iterator();
 	}
 
 	/**
@@ -60,6 +70,10 @@ public class DataSet implements Iterable<DataEntry> {
 	 * Clears the data set
 	 */
 	public void clear() {
+		if (shared) {
+			entries = NO_ENTRIES;
+			return;
+		}
 		entries.clear();
 	}
 
@@ -99,15 +113,41 @@ public class DataSet implements Iterable<DataEntry> {
 	 * @param value      New value
 	 */
 	public <RT> void setValue(String columnName, RT value) {
+		beforeWrite();
 		entries.put(columnName.toUpperCase(), new DataEntry(columnName, value));
 	}
 
+	Collection<DataEntry> entries() {
+		return entries.values();
+	}
+
+	void putEntry(String key, DataEntry entry) {
+		beforeWrite();
+		entries.put(key, entry);
+	}
+
+	void shareWith(DataSet target) {
+		// Entries are immutable, so both sets can use the same map until either
+		// of them is modified
+		target.entries = entries;
+		target.shared = true;
+		shared = true;
+	}
+
+	private void beforeWrite() {
+		if (shared) {
+			entries = new HashMap<String, DataEntry>(entries);
+			shared = false;
+		}
+	}
+
 	/**
 	 * Removes values by column name
 	 * 
 	 * @param columnName Column name of the value to remove
 	 */
 	public void remove(String columnName) {
+		beforeWrite();
 		entries.remove(columnName.toUpperCase());
 	}
 
@@ -1,20 +1,32 @@
 package org.asf.nexus.tables;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.asf.nexus.tables.DataTable.DataTableLayout.EntryLayout;
+import org.asf.nexus.tables.annotations.CompactRowSnapshot;
 import org.asf.nexus.tables.annotations.ForceUseFilterFields;
 import org.asf.nexus.tables.annotations.TableColumn;
 import org.asf.nexus.tables.annotations.UseAsFilter;
+import org.asf.nexus.tables.impl.IRowAccessor;
+import org.asf.nexus.tables.impl.RowAccessorFactory;
 
 /**
  * 
@@ -28,8 +40,14 @@ import org.asf.nexus.tables.annotations.UseAsFilter;
  */
 public abstract class DataTable<T extends TableRow> {
 
+	/**
+	 * Default amount of rows fetched at once by cursors
+	 */
+	public static final int DEFAULT_FETCH_SIZE = 500;
+
 	private static HashMap<String, DataTableLayout> tableLayouts = new HashMap<String, DataTableLayout>();
 	private DataTableLayout layout;
+	private int fetchSize = DEFAULT_FETCH_SIZE;
 
 	protected DataTable(Class<T> cls) {
 		// Find layout
@@ -64,6 +82,9 @@ public abstract class DataTable<T extends TableRow> {
 			if (layout.columns.size() == 0)
 				throw new IllegalArgumentException("Type " + cls
 						+ " does not have any fields annotated with TableColumn, cannot create empty tables");
+			if (layout.compactSnapshots && layout.keyColumns().length == 0)
+				throw new IllegalArgumentException("Type " + cls
+						+ " does not have any fields annotated with UseAsFilter, cannot use compact row snapshots");
 
 			// Save to memory
 			synchronized (tableLayouts) {
@@ -213,8 +234,10 @@ public abstract class DataTable<T extends TableRow> {
 	 * @return Array of table row data encoded as the table layout type
 	 * @throws IOException If the database query fails
 	 */
+	@SuppressWarnings("unchecked")
 	public T[] getAllRows(DataFilter dataFilter) throws IOException {
-		return dataSetsToObjects(getAllRows(dataFilter, layout.getColumnNames()));
+		ArrayList<T> rows = readRows(dataFilter, layout.getColumnNames(), set -> dataSetToObject(set));
+		return rows.toArray(t -> (T[]) Array.newInstance(layout.getType(), t));
 	}
 
 	/**
@@ -243,12 +266,8 @@ public abstract class DataTable<T extends TableRow> {
 	 */
 	@SuppressWarnings("unchecked")
 	public <RT> RT[] getAllRows(DataFilter dataFilter, String columnName, Class<RT> resultType) throws IOException {
-		ArrayList<RT> res = new ArrayList<RT>();
-		for (DataSet set : getAllRows(dataFilter, columnName)) {
-			RT val = set.getValue(columnName, resultType);
-			if (val != null)
-				res.add(val);
-		}
+		ArrayList<RT> res = readRows(dataFilter, new String[] { columnName },
+				set -> set.getValue(columnName, resultType));
 		return res.toArray(t -> (RT[]) Array.newInstance(resultType, t));
 	}
 
@@ -283,15 +302,106 @@ public abstract class DataTable<T extends TableRow> {
 	}
 
 	/**
-	 * Internal method called to retrieve all rows of the table
+	 * Streams all rows of the table, rows are fetched and converted as the stream
+	 * is consumed, the stream needs to be closed once it is no longer needed
+	 * 
+	 * @return Stream of table row data encoded as the table layout type
+	 * @throws IOException If the database query fails
+	 */
+	public Stream<T> streamRows() throws IOException {
+		return streamRows(new DataFilter());
+	}
+
+	/**
+	 * Streams all rows of the table that are matching the filter, rows are fetched
+	 * and converted as the stream is consumed, the stream needs to be closed once
+	 * it is no longer needed
+	 * 
+	 * @param dataFilter Filter to use
+	 * @return Stream of table row data encoded as the table layout type
+	 * @throws IOException If the database query fails
+	 */
+	public Stream<T> streamRows(DataFilter dataFilter) throws IOException {
+		return stream(openCursor(dataFilter, layout.getColumnNames())).map(set -> dataSetToObject(set));
+	}
+
+	/**
+	 * Streams the values of the specified columns of all rows matching the given
+	 * filter, the stream needs to be closed once it is no longer needed
+	 * 
+	 * @param dataFilter       Filter to use
+	 * @param firstColumnName  Name of the first column to retrieve
+	 * @param otherColumnNames Names of other columns to retrieve
+	 * @return Stream of the requested values represented as DataSet instances
+	 * @throws IOException If the database query fails
+	 */
+	public Stream<DataSet> streamRows(DataFilter dataFilter, String firstColumnName, String... otherColumnNames)
+			throws IOException {
+		ArrayList<String> columns = new ArrayList<String>();
+		columns.add(firstColumnName);
+		columns.addAll(Arrays.asList(otherColumnNames));
+		return stream(openCursor(dataFilter, columns.toArray(t -> new String[t])));
+	}
+
+	/**
+	 * Opens a cursor over the values of the specified columns of all rows matching
+	 * the given filter, the cursor needs to be closed once it is no longer needed
 	 * 
 	 * @param dataFilter  Filter to use
 	 * @param columnNames Column names to retrieve
+	 * @return IDataCursor instance
 	 * @throws IOException If the database query fails
-	 * @return Array of DataSet instances
+	 */
+	public IDataCursor openCursor(DataFilter dataFilter, String... columnNames) throws IOException {
+		verifyFilter(dataFilter);
+		verifyColumns(columnNames);
+		return streamRowsInternal(dataFilter, fetchSize, columnNames);
+	}
+
+	/**
+	 * Internal method called to open a cursor over all rows of the table matching
+	 * the filter, backends should not fetch more than the fetch size at once
+	 * 
+	 * @param dataFilter  Filter to use
+	 * @param fetchSize   Maximum amount of rows to fetch at once
+	 * @param columnNames Column names to retrieve
+	 * @return IDataCursor instance
 	 * @throws IOException If the database query fails
 	 */
-	protected abstract DataSet[] getAllRowsInternal(DataFilter dataFilter, String... columnNames) throws IOException;
+	protected abstract IDataCursor streamRowsInternal(DataFilter dataFilter, int fetchSize, String... columnNames)
+			throws IOException;
+
+	/**
+	 * Checks if the backend handles query filters (predicates, ordering, seek
+	 * positions, offsets and limits), backends that only match column values
+	 * leave this false so requests with query filters are rejected instead of
+	 * matching more rows than asked for
+	 * 
+	 * @return True if query filters are supported, false otherwise
+	 */
+	public boolean supportsQueryFilters() {
+		return false;
+	}
+
+	/**
+	 * Retrieves the amount of rows cursors fetch at once
+	 * 
+	 * @return Fetch size
+	 */
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * Assigns the amount of rows cursors fetch at once
+	 * 
+	 * @param fetchSize New fetch size
+	 */
+	public void setFetchSize(int fetchSize) {
+		if (fetchSize <= 0)
+			throw new IllegalArgumentException("Fetch size must be at least 1");
+		this.fetchSize = fetchSize;
+	}
 
 	/**
 	 * Assigns the values of all rows matching the previous values of the given
@@ -315,7 +425,7 @@ public abstract class DataTable<T extends TableRow> {
 	 */
 	public void setRows(T value, boolean replaceAll) throws IOException {
 		// Create update set
-		DataSet set = objectToDataset(value);
+		SchemaDataSet set = objectToDataset(value);
 
 		// Update
 		setRows(getFilter(value, set, replaceAll), set);
@@ -410,6 +520,128 @@ public abstract class DataTable<T extends TableRow> {
 	 */
 	protected abstract void removeRowsInternal(DataFilter dataFilter) throws IOException;
 
+	/**
+	 * Creates a new batch, batches collect row updates and removals and hand them
+	 * to the backend together
+	 * 
+	 * @return DataBatch instance
+	 */
+	public DataBatch<T> newBatch() {
+		return new DataBatch<T>(this);
+	}
+
+	/**
+	 * Assigns the values of all rows matching the previous values of each given
+	 * object, as a single batch
+	 * 
+	 * <b>This method does not throw if rows fail to save</b>, failures are only
+	 * reported through the returned result, use
+	 * {@link DataBatchResult#throwIfFailed()} to handle them as errors
+	 * 
+	 * @param values Row values
+	 * @return DataBatchResult instance, item indexes match the collection order
+	 */
+	public DataBatchResult setRows(Collection<T> values) {
+		DataBatch<T> batch = newBatch();
+		for (T value : values)
+			batch.setRows(value);
+		return batch.execute();
+	}
+
+	/**
+	 * Removes all rows from the data table that match each given row object, as a
+	 * single batch
+	 * 
+	 * <b>This method does not throw if rows fail to be removed</b>, failures are
+	 * only reported through the returned result, use
+	 * {@link DataBatchResult#throwIfFailed()} to handle them as errors
+	 * 
+	 * @param values Rows to remove
+	 * @return DataBatchResult instance, item indexes match the collection order
+	 */
+	public DataBatchResult removeRows(Collection<T> values) {
+		DataBatch<T> batch = newBatch();
+		for (T value : values)
+			batch.removeRows(value);
+		return batch.execute();
+	}
+
+	DataBatchResult executeBatch(ArrayList<DataBatch.Item<T>> items) {
+		DataBatchResult result = new DataBatchResult(items.size());
+
+		// Prepare and validate all items before anything is sent to the backend
+		ArrayList<DataBatchOperation> operations = new ArrayList<DataBatchOperation>(items.size());
+		for (int i = 0; i < items.size(); i++) {
+			DataBatch.Item<T> item = items.get(i);
+			try {
+				if (item.row == null && item.filter == null)
+					throw new IllegalArgumentException("Batch item " + i + " has no row or filter");
+				if (item.row == null && item.type == DataBatchOperation.Type.SET && item.set == null)
+					throw new IllegalArgumentException("Batch item " + i + " has no data set");
+				DataFilter filter = item.filter;
+				DataSet set = item.set;
+				if (item.row != null) {
+					SchemaDataSet rowSet = objectToDataset(item.row);
+					filter = getFilter(item.row, rowSet, item.replaceAll);
+					if (item.type == DataBatchOperation.Type.SET)
+						set = rowSet;
+				}
+				verifyFilter(filter);
+				if (set != null)
+					verifySet(set);
+				item.set = set;
+				operations.add(new DataBatchOperation(i, item.type, filter, set));
+			} catch (IllegalArgumentException e) {
+				result.markFailed(i, e);
+			}
+		}
+
+		// Run
+		if (operations.size() != 0) {
+			try {
+				executeBatchInternal(operations.toArray(t -> new DataBatchOperation[t]), result);
+			} catch (IOException | RuntimeException e) {
+				result.failPending(e);
+			}
+		}
+		result.completePending();
+
+		// Update value caches of saved row objects
+		for (DataBatchOperation op : operations) {
+			DataBatch.Item<T> item = items.get(op.getIndex());
+			if (item.row != null && op.getType() == DataBatchOperation.Type.SET && result.isSuccessful(op.getIndex()))
+				updateValueCache(item.row, item.set);
+		}
+		return result;
+	}
+
+	/**
+	 * Internal method called to execute a batch, backends should override this
+	 * to run the operations with a single command or transaction, by default the
+	 * operations are run one by one
+	 * 
+	 * Failed operations are reported through
+	 * {@link DataBatchResult#markFailed(int, Throwable)} by their index, throwing
+	 * fails all operations that were not reported on
+	 * 
+	 * @param operations Validated batch operations
+	 * @param result     Batch result to report failed operations to
+	 * @throws IOException If the batch as a whole fails
+	 */
+	protected void executeBatchInternal(DataBatchOperation[] operations, DataBatchResult result)
+			throws IOException {
+		for (DataBatchOperation op : operations) {
+			try {
+				if (op.getType() == DataBatchOperation.Type.SET)
+					setRowsInternal(op.getFilter(), op.getDataSet());
+				else
+					removeRowsInternal(op.getFilter());
+			} catch (IOException | RuntimeException e) {
+				result.markFailed(op.getIndex(), e);
+			}
+		}
+	}
+
 	/**
 	 * Retrieves the data table layout
 	 * 
@@ -419,15 +651,55 @@ public abstract class DataTable<T extends TableRow> {
 		return layout;
 	}
 
-	private DataFilter getFilter(T value, DataSet set, boolean overwiteAll) {
+	/**
+	 * Encodes a row object using the binary row codec of the table layout
+	 * 
+	 * @param value  Row value
+	 * @param output Output buffer, written from its current position
+	 * @throws BufferOverflowException If the buffer does not have enough space
+	 *                                 remaining
+	 */
+	public void encodeRow(T value, ByteBuffer output) throws BufferOverflowException {
+		layout.getRowCodec().encode(objectToDataset(value), output);
+	}
+
+	/**
+	 * Encodes a row object using the binary row codec of the table layout
+	 * 
+	 * @param value Row value
+	 * @return Encoded row bytes
+	 */
+	public byte[] encodeRow(T value) {
+		return layout.getRowCodec().encode(objectToDataset(value));
+	}
+
+	/**
+	 * Decodes a row object encoded by {@link #encodeRow(TableRow, ByteBuffer)}
+	 * 
+	 * @param input Input buffer, read from its current position
+	 * @return Row object
+	 * @throws IllegalArgumentException If the row was encoded with a different
+	 *                                  schema or is malformed
+	 */
+	public T decodeRow(ByteBuffer input) throws IllegalArgumentException {
+		return dataSetToObject(layout.getRowCodec().decode(input));
+	}
+
+	private DataFilter getFilter(T value, SchemaDataSet set, boolean overwiteAll) {
+		RowSnapshot snapshot = layout.compactSnapshots ? value.getSnapshot() : null;
+
 		// Check mode
 		DataFilter filter;
 		if (!overwiteAll) {
 			// Populate filter
-			if (!getLayout().forceUseFilterFields)
-				filter = new DataFilter(value.getValueCache());
-			else
+			if (getLayout().forceUseFilterFields)
+				filter = new DataFilter();
+			else if (snapshot != null) {
+				// Find the row by the previous values of the filter fields
 				filter = new DataFilter();
+				snapshot.populateFilter(filter, set.getSchema());
+			} else
+				filter = new DataFilter(value.getValueCache());
 
 			// Check filter size
 			if (filter.count() == 0) {
@@ -435,13 +707,10 @@ public abstract class DataTable<T extends TableRow> {
 				for (EntryLayout layout : getLayout().getColumns()) {
 					if (layout.assignmentField != null
 							&& layout.assignmentField.isAnnotationPresent(UseAsFilter.class)) {
-						try {
-							// Assign if not null
-							Object val = layout.assignmentField.get(value);
-							if (val != null) {
-								filter.setValue(layout.columnName, val);
-							}
-						} catch (IllegalArgumentException | IllegalAccessException e) {
+						// Assign if not null
+						Object val = layout.retrievalCall.apply(value);
+						if (val != null) {
+							filter.setValue(layout.columnName, val);
 						}
 					}
 				}
@@ -455,76 +724,80 @@ public abstract class DataTable<T extends TableRow> {
 		} else
 			filter = new DataFilter();
 
-		// Remove columns that are unchanged
-		String[] cols = set.getColumnNames();
-		for (String col : cols) {
-			Object ob = value.getValueCache().getValue(col, Object.class);
-			DataType tp = value.getValueCache().getValueType(col);
-			Object v = set.getValue(col, Object.class);
-			if (tp != DataType.NULL) {
-				if (tp != DataType.STRING && tp != DataType.OBJECT && tp != DataType.BYTE_ARRAY) {
-					// Primitives
-					if (ob == v) {
-						// Unchanged, remove
-						set.remove(col);
-					}
-				} else if (tp == DataType.BYTE_ARRAY) {
-					// Check byte array
-					byte[] o = (byte[]) ob;
-					byte[] n = (byte[]) v;
-					if (o == n) {
-						// Initial comparison check done, both are the same initial value, so no null
-						// changes
-						if (n != null) {
-							// New value isnt null
-							if (o.length == n.length) {
-								// Same length
-								// Check content
-								boolean same = true;
-								for (int i = 0; i < o.length; i++) {
-									if (o[i] != n[i]) {
-										same = false;
-										break;
-									}
-								}
-								if (same) {
-									// Unchanged, remove
-									set.remove(col);
-								}
-							}
-						}
-					}
-				} else if (tp == DataType.STRING) {
-					// String
-					// Check strings
-					String o = (String) ob;
-					String n = (String) v;
-					if (o == n) {
-						// Initial comparison check done, both are the same initial value, so no null
-						// changes
-						if (n != null) {
-							// New value isnt null
-							if (n.equals(o)) {
-								// Unchanged, remove
-								set.remove(col);
-							}
-						}
-					}
-				}
-			}
+		// Remove columns that are unchanged, object columns can be modified in place
+		// and are always sent
+		TableSchema schema = set.getSchema();
+		DataSet cache = snapshot == null ? value.getValueCache() : null;
+		for (int i = 0; i < schema.getColumnCount(); i++) {
+			if (!set.isPresent(i) || schema.getColumnType(i) == DataType.OBJECT)
+				continue;
+			boolean unchanged;
+			if (snapshot != null)
+				unchanged = snapshot.isUnchanged(set, i);
+			else if (cache instanceof SchemaDataSet && ((SchemaDataSet) cache).getSchema() == schema)
+				unchanged = ((SchemaDataSet) cache).isSameValue(set, i);
+			else
+				unchanged = isSameValue(cache.getValue(schema.getColumnName(i), Object.class), set.getValue(i));
+			if (unchanged)
+				set.remove(i);
 		}
 
 		// Return
 		return filter;
 	}
 
+	private static boolean isSameValue(Object previous, Object value) {
+		if (previous instanceof byte[] && value instanceof byte[])
+			return Arrays.equals((byte[]) previous, (byte[]) value);
+		return previous != null && previous.equals(value);
+	}
+
 	private void updateValueCache(T value, DataSet assignmentSet) {
-		value.getValueCache().clear();
+		// Update snapshot
+		if (layout.compactSnapshots) {
+			SchemaDataSet set = toSchemaSet(assignmentSet);
+			RowSnapshot snapshot = value.getSnapshot();
+			if (snapshot == null)
+				value.setSnapshot(new RowSnapshot(set, layout.keyColumns()));
+			else
+				snapshot.update(set);
+			return;
+		}
+
+		// Merge into the cache, unchanged columns were removed from the assignment
+		// set and keep their previous values
+		DataSet cache = value.getValueCache();
+		if (assignmentSet instanceof SchemaDataSet) {
+			SchemaDataSet set = (SchemaDataSet) assignmentSet;
+			if (cache.count() == 0) {
+				// Share the slots with the cache until either is modified
+				value.setValueCache(set.copy(false));
+				return;
+			} else if (cache instanceof SchemaDataSet && ((SchemaDataSet) cache).getSchema() == set.getSchema()) {
+				SchemaDataSet previous = (SchemaDataSet) cache;
+				for (int i = 0; i < set.getSchema().getColumnCount(); i++) {
+					if (set.isPresent(i))
+						previous.copyValue(set, i);
+				}
+				return;
+			}
+		}
 		for (DataEntry ent : assignmentSet) {
-			value.getValueCache().setValue(ent.getColumnName(), ent.getValue(Object.class));
+			cache.setValue(ent.getColumnName(), ent.getValue(Object.class));
 		}
 	}
 
+	private SchemaDataSet toSchemaSet(DataSet set) {
+		if (set instanceof SchemaDataSet && ((SchemaDataSet) set).getSchema() == layout.getSchema())
+			return (SchemaDataSet) set;
+		SchemaDataSet values = layout.getSchema().createDataSet();
+		for (DataEntry entry : set.entries()) {
+			if (layout.hasColumn(entry.getColumnName()))
+				values.setValue(entry.getColumnName(), entry.getValue(Object.class));
+		}
+		return values;
+	}
+
 	private DataSet getFirstRow(DataFilter filter, String[] columnNames) throws IOException {
 		verifyFilter(filter);
 		verifyColumns(columnNames);
@@ -532,9 +805,35 @@ public abstract class DataTable<T extends TableRow> {
 	}
 
 	private DataSet[] getAllRows(DataFilter filter, String[] columnNames) throws IOException {
-		verifyFilter(filter);
-		verifyColumns(columnNames);
-		return getAllRowsInternal(filter, columnNames);
+		return readRows(filter, columnNames, set -> set).toArray(t -> new DataSet[t]);
+	}
+
+	private <RT> ArrayList<RT> readRows(DataFilter filter, String[] columnNames, Function<DataSet, RT> mapper)
+			throws IOException {
+		// Convert rows while reading so that the data sets can be released
+		ArrayList<RT> res = new ArrayList<RT>();
+		try (IDataCursor cursor = openCursor(filter, columnNames)) {
+			while (cursor.hasNext()) {
+				RT val = mapper.apply(cursor.next());
+				if (val != null)
+					res.add(val);
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return res;
+	}
+
+	private static Stream<DataSet> stream(IDataCursor cursor) {
+		return StreamSupport
+				.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(() -> {
+					try {
+						cursor.close();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
 	}
 
 	private void verifyColumns(String[] columns) {
@@ -549,22 +848,91 @@ public abstract class DataTable<T extends TableRow> {
 
 	private void verifyFilter(DataFilter filter) {
 		// Go through columns
-		for (DataEntry ent : filter.getValues()) {
-			// Check column
-			if (!layout.hasColumn(ent.getColumnName()))
-				throw new IllegalArgumentException(
-						"Filter has invalid column: " + ent.getColumnName() + ": column does not exist in the table");
+		for (DataEntry ent : filter.getValues())
+			verifyFilterValue(verifyFilterColumn(ent.getColumnName()), ent.getValue(Object.class));
+		if (filter.isValueFilter())
+			return;
+		if (!supportsQueryFilters())
+			throw new IllegalArgumentException("Filter has predicates, ordering, a seek position, offset or limit: "
+					+ "query filters are not supported by this table");
+
+		// Check predicates
+		for (DataPredicate predicate : filter.getPredicates()) {
+			EntryLayout column = verifyFilterColumn(predicate.getColumnName());
+			if (predicate.getOperator().isRange() && !isOrderable(column.columnType))
+				throw new IllegalArgumentException("Filter has invalid predicate for: " + predicate.getColumnName()
+						+ ": values of type " + column.columnType + " cannot be compared");
+			for (Object value : predicate.getValues())
+				verifyFilterValue(column, value);
+		}
 
-			// Check type
-			DataType expectedType = layout.getLayout(ent.getColumnName()).columnType;
-			if (ent.getValueType() != DataType.NULL && ent.getValueType() != expectedType)
-				throw new IllegalArgumentException("Filter has invalid value for: " + ent.getColumnName()
-						+ ": value type does not match the column type, value type: " + ent.getValueType()
-						+ ", expected type: " + expectedType);
+		// Check ordering
+		DataOrder[] ordering = filter.getOrdering();
+		for (DataOrder order : ordering) {
+			EntryLayout column = verifyFilterColumn(order.getColumnName());
+			if (!isOrderable(column.columnType))
+				throw new IllegalArgumentException("Filter has invalid ordering column: " + order.getColumnName()
+						+ ": values of type " + column.columnType + " cannot be ordered");
 		}
+
+		// Check seek position
+		Object[] seekValues = filter.getSeekValues();
+		if (seekValues != null) {
+			if (seekValues.length != ordering.length)
+				throw new IllegalArgumentException("Filter has invalid seek position: " + seekValues.length
+						+ " values were specified but the filter has " + ordering.length + " ordering columns");
+			for (int i = 0; i < seekValues.length; i++)
+				verifyFilterValue(layout.getLayout(ordering[i].getColumnName()), seekValues[i]);
+		}
+	}
+
+	private EntryLayout verifyFilterColumn(String columnName) {
+		EntryLayout column = layout.getLayout(columnName);
+		if (column == null)
+			throw new IllegalArgumentException(
+					"Filter has invalid column: " + columnName + ": column does not exist in the table");
+		return column;
+	}
+
+	private void verifyFilterValue(EntryLayout column, Object value) {
+		DataType type = DataType.fromObject(value);
+		if (type != DataType.NULL && type != column.columnType)
+			throw new IllegalArgumentException("Filter has invalid value for: " + column.columnName
+					+ ": value type does not match the column type, value type: " + type + ", expected type: "
+					+ column.columnType);
+	}
+
+	private static boolean isOrderable(DataType type) {
+		return type != DataType.OBJECT && type != DataType.BYTE_ARRAY;
 	}
 
 	private void verifySet(DataSet set) {
+		// Check schema-bound sets by column index
+		if (set instanceof SchemaDataSet && ((SchemaDataSet) set).getSchema() == layout.getSchema()) {
+			SchemaDataSet row = (SchemaDataSet) set;
+			TableSchema schema = row.getSchema();
+			int present = 0;
+			for (int i = 0; i < schema.getColumnCount(); i++) {
+				if (!row.isPresent(i))
+					continue;
+				present++;
+
+				// Primitive slots always match the column type
+				if (row.isPrimitive(i))
+					continue;
+				DataType expectedType = schema.getColumnType(i);
+				DataType type = row.getValueType(i);
+				if (type != DataType.NULL && type != expectedType)
+					throw new IllegalArgumentException("Data set has invalid value for: " + schema.getColumnName(i)
+							+ ": value type does not match the column type, value type: " + type + ", expected type: "
+							+ expectedType);
+			}
+
+			// Done unless there are values for columns outside of the schema
+			if (present == row.count())
+				return;
+		}
+
 		// Go through columns
 		for (DataEntry ent : set.getValues()) {
 			// Check column
@@ -581,24 +949,34 @@ public abstract class DataTable<T extends TableRow> {
 		}
 	}
 
-	@SuppressWarnings("unchecked")
-	private T[] dataSetsToObjects(DataSet[] sets) {
-		T[] res = (T[]) Array.newInstance(layout.getType(), sets.length);
-		for (int i = 0; i < res.length; i++)
-			res[i] = dataSetToObject(sets[i]);
-		return res;
-	}
-
-	private DataSet objectToDataset(T value) {
+	private SchemaDataSet objectToDataset(T value) {
 		// Create set
-		DataSet set = new DataSet();
+		SchemaDataSet set = layout.getSchema().createDataSet();
 
 		// Populate
-		for (EntryLayout layout : getLayout().getColumns()) {
-			Object v = layout.retrievalCall.apply(value);
-			if (v == null || (layout.columnType == DataType.CHAR && (int) (char) v == 0))
+		IRowAccessor accessor = layout.getRowAccessor();
+		EntryLayout[] columns = layout.columnArray();
+		for (int i = 0; i < columns.length; i++) {
+			EntryLayout column = columns[i];
+			if (column.primitive) {
+				// Copy without boxing
+				if (column.columnType == DataType.FLOAT || column.columnType == DataType.DOUBLE)
+					set.setDouble(i, accessor.getDouble(value, column.fieldIndex));
+				else {
+					long v = accessor.getLong(value, column.fieldIndex);
+					if (column.columnType != DataType.CHAR || v != 0)
+						set.setLong(i, v);
+				}
+				continue;
+			}
+			Object v;
+			if (column.fieldIndex != -1)
+				v = accessor.getValue(value, column.fieldIndex);
+			else
+				v = column.retrievalCall.apply(value);
+			if (v == null || (column.columnType == DataType.CHAR && (int) (char) v == 0))
 				continue;
-			set.setValue(layout.columnName, v);
+			set.setValue(i, v);
 		}
 
 		// Return
@@ -612,19 +990,18 @@ public abstract class DataTable<T extends TableRow> {
 			return null;
 
 		// Create instance
-		T val = null;
-		try {
-			val = (T) layout.getObjectConstructor().newInstance();
-		} catch (InstantiationException | IllegalAccessException | IllegalArgumentException
-				| InvocationTargetException e) {
-			throw new IllegalArgumentException("Failed to create a new instance of " + layout.getType(), e);
-		}
+		IRowAccessor accessor = layout.getRowAccessor();
+		T val = (T) accessor.newInstance();
 
-		// Clear cache
-		val.getValueCache().clear();
+		// Populate schema-bound sets by column index
+		if (set instanceof SchemaDataSet && ((SchemaDataSet) set).getSchema() == layout.getSchema()) {
+			populate(accessor, (SchemaDataSet) set, val);
+			return val;
+		}
 
 		// Populate
-		for (DataEntry entry : set) {
+		int assigned = 0;
+		for (DataEntry entry : set.entries()) {
 			// Find column
 			DataTableLayout.EntryLayout column = layout.getLayout(entry.getColumnName());
 			if (column == null)
@@ -637,25 +1014,102 @@ public abstract class DataTable<T extends TableRow> {
 						+ " value but expected a " + column.columnType + " value");
 
 			// Populate value
-			column.assignmentCall.accept(entry.getValue(Object.class), val);
-			val.getValueCache().setValue(entry.getColumnName(), entry.getValue(Object.class));
+			Object value = entry.getValue(Object.class);
+			if (column.fieldIndex != -1)
+				layout.assignField(accessor, column, value, val);
+			else
+				column.assignmentCall.accept(value, val);
+			assigned++;
+		}
+
+		// Record the loaded values
+		if (layout.compactSnapshots) {
+			val.setSnapshot(new RowSnapshot(toSchemaSet(set), layout.keyColumns()));
+			return val;
+		}
+
+		// Fill the value cache, sharing the entries of the set if all of them were
+		// assigned
+		DataSet cache = val.getValueCache();
+		if (assigned == set.count())
+			set.shareWith(cache);
+		else {
+			cache.clear();
+			for (DataEntry entry : set) {
+				DataTableLayout.EntryLayout column = layout.getLayout(entry.getColumnName());
+				if (column != null)
+					cache.putEntry(column.columnKey, entry);
+			}
 		}
 
 		// Return
 		return val;
 	}
 
+	private void populate(IRowAccessor accessor, SchemaDataSet set, T val) {
+		EntryLayout[] columns = layout.columnArray();
+		for (int i = 0; i < columns.length; i++) {
+			if (!set.isPresent(i))
+				continue;
+			EntryLayout column = columns[i];
+
+			// Copy primitives without boxing
+			if (column.primitive && set.isPrimitive(i)) {
+				if (column.columnType == DataType.FLOAT || column.columnType == DataType.DOUBLE)
+					accessor.setDouble(val, column.fieldIndex, set.getDouble(i));
+				else
+					accessor.setLong(val, column.fieldIndex, set.getLong(i));
+				continue;
+			}
+
+			// Verify value
+			DataType type = set.getValueType(i);
+			if (type != DataType.NULL && column.columnType != type)
+				throw new IllegalArgumentException("Failed to assign value for column " + column.columnName
+						+ " as there was a type mismatch, database returned a " + type + " value but expected a "
+						+ column.columnType + " value");
+
+			// Populate value
+			Object value = set.getValue(i);
+			if (column.fieldIndex != -1)
+				layout.assignField(accessor, column, value, val);
+			else
+				column.assignmentCall.accept(value, val);
+		}
+
+		// Record the loaded values
+		if (layout.compactSnapshots)
+			val.setSnapshot(new RowSnapshot(set, layout.keyColumns()));
+		else {
+			// Share the slots with the value cache until either is modified
+			val.setValueCache(set.copy(false));
+		}
+	}
+
 	public static class DataTableLayout {
-		private HashMap<String, EntryLayout> columns = new HashMap<String, EntryLayout>();
+		private LinkedHashMap<String, EntryLayout> columns = new LinkedHashMap<String, EntryLayout>();
+		private HashMap<String, EntryLayout> columnsByName = new HashMap<String, EntryLayout>();
+		private ArrayList<Field> fields = new ArrayList<Field>();
 		private Class<?> tableType;
 		private Constructor<?> constructor;
 		private boolean forceUseFilterFields;
+		private boolean compactSnapshots;
+
+		// Compiled on first use and dropped when columns are added
+		private volatile IRowAccessor accessor;
+		private volatile EntryLayout[] columnArray;
+		private volatile String[] columnNames;
+		private volatile TableSchema schema;
+		private volatile RowCodec rowCodec;
+		private volatile int[] keyColumns;
 
 		public DataTableLayout(Constructor<?> constr, Class<?> tableType) {
 			this.tableType = tableType;
 			this.constructor = constr;
 			if (tableType.isAnnotationPresent(ForceUseFilterFields.class))
 				forceUseFilterFields = true;
+			if (tableType.isAnnotationPresent(CompactRowSnapshot.class))
+				compactSnapshots = true;
 		}
 
 		/**
@@ -667,6 +1121,15 @@ public abstract class DataTable<T extends TableRow> {
 			return forceUseFilterFields;
 		}
 
+		/**
+		 * Checks if row objects keep compact snapshots instead of the value cache
+		 * 
+		 * @return True if the feature is enabled, false otherwise
+		 */
+		public boolean useCompactSnapshots() {
+			return compactSnapshots;
+		}
+
 		public static class EntryLayout {
 			public String columnName;
 			public DataType columnType;
@@ -674,6 +1137,74 @@ public abstract class DataTable<T extends TableRow> {
 			public Class<?> objectType;
 			public BiConsumer<Object, TableRow> assignmentCall;
 			public Function<TableRow, Object> retrievalCall;
+
+			// Index of the field in the row accessor, -1 for custom columns
+			int fieldIndex = -1;
+			String columnKey;
+
+			// True if the field is a primitive of the column type, these are copied
+			// without boxing
+			boolean primitive;
+		}
+
+		/**
+		 * Retrieves the row accessor, the accessor is generated when first used
+		 * 
+		 * @return IRowAccessor instance used to create rows and access column fields
+		 */
+		public IRowAccessor getRowAccessor() {
+			IRowAccessor acc = accessor;
+			if (acc == null) {
+				synchronized (this) {
+					if (accessor == null)
+						accessor = RowAccessorFactory.createAccessor(tableType, fields.toArray(t -> new Field[t]));
+					acc = accessor;
+				}
+			}
+			return acc;
+		}
+
+		private void assignField(IRowAccessor accessor, EntryLayout layout, Object value, TableRow owner) {
+			try {
+				if (value == null && layout.objectType.isPrimitive())
+					throw new IllegalArgumentException("Cannot assign null to a primitive field");
+				accessor.setValue(owner, layout.fieldIndex, value);
+			} catch (IllegalArgumentException | ClassCastException e) {
+				throw new IllegalArgumentException("Failed to assign field " + layout.assignmentField.getName()
+						+ " (column " + layout.columnName + ") due to an error while changing the value of the field",
+						e);
+			}
+		}
+
+		private EntryLayout[] columnArray() {
+			EntryLayout[] arr = columnArray;
+			if (arr == null) {
+				arr = getColumns();
+				columnArray = arr;
+			}
+			return arr;
+		}
+
+		private int[] keyColumns() {
+			int[] keys = keyColumns;
+			if (keys == null) {
+				EntryLayout[] columns = columnArray();
+				keys = IntStream.range(0, columns.length).filter(t -> columns[t].assignmentField != null
+						&& columns[t].assignmentField.isAnnotationPresent(UseAsFilter.class)).toArray();
+				keyColumns = keys;
+			}
+			return keys;
+		}
+
+		private void putColumn(EntryLayout layout) {
+			layout.columnKey = layout.columnName.toUpperCase();
+			columns.put(layout.columnKey, layout);
+			columnsByName.put(layout.columnName, layout);
+			columnArray = null;
+			columnNames = null;
+			schema = null;
+			rowCodec = null;
+			keyColumns = null;
 		}
 
 		/**
@@ -739,23 +1270,18 @@ public abstract class DataTable<T extends TableRow> {
 			layout.columnType = type;
 			layout.assignmentField = field;
 			layout.objectType = field.getType();
-			layout.assignmentCall = (obj, owner) -> {
-				try {
-					field.set(owner, obj);
-				} catch (IllegalArgumentException | IllegalAccessException e) {
-					throw new IllegalArgumentException("Failed to assign field " + field.getName() + " (column " + name
-							+ ") due to an error while changing the value of the field", e);
-				}
-			};
-			layout.retrievalCall = (owner) -> {
-				try {
-					return field.get(owner);
-				} catch (IllegalArgumentException | IllegalAccessException e) {
-					throw new IllegalArgumentException("Failed to retrieve the value of " + layout.columnName, e);
-				}
-			};
+			layout.primitive = layout.objectType.isPrimitive() && DataType.fromClass(layout.objectType) == type;
+			layout.assignmentCall = (obj, owner) -> assignField(getRowAccessor(), layout, obj, owner);
+			layout.retrievalCall = (owner) -> getRowAccessor().getValue(owner, layout.fieldIndex);
 			field.setAccessible(true);
-			columns.put(name.toUpperCase(), layout);
+
+			// Add to the accessor
+			synchronized (this) {
+				layout.fieldIndex = fields.size();
+				fields.add(field);
+				accessor = null;
+			}
+			putColumn(layout);
 		}
 
 		/**
@@ -797,7 +1323,7 @@ public abstract class DataTable<T extends TableRow> {
 			layout.assignmentCall = deserializerCall;
 			layout.retrievalCall = serializerCall;
 			layout.objectType = valueType;
-			columns.put(name.toUpperCase(), layout);
+			putColumn(layout);
 		}
 
 		/**
@@ -809,13 +1335,64 @@ public abstract class DataTable<T extends TableRow> {
 			return columns.values().toArray(t -> new EntryLayout[t]);
 		}
 
+		/**
+		 * Retrieves the table schema, column indexes of the schema match the order of
+		 * {@link #getColumns()}
+		 * 
+		 * @return TableSchema instance used to create schema-bound data sets
+		 */
+		public TableSchema getSchema() {
+			TableSchema s = schema;
+			if (s == null) {
+				EntryLayout[] columns = columnArray();
+				String[] names = new String[columns.length];
+				DataType[] types = new DataType[columns.length];
+				for (int i = 0; i < columns.length; i++) {
+					names[i] = columns[i].columnName;
+					types[i] = columns[i].columnType;
+				}
+				s = new TableSchema(names, types);
+				schema = s;
+			}
+			return s;
+		}
+
+		/**
+		 * Retrieves the schema fingerprint, used to verify that encoded rows match
+		 * the layout
+		 * 
+		 * @return Schema fingerprint
+		 */
+		public long getSchemaFingerprint() {
+			return getSchema().getFingerprint();
+		}
+
+		/**
+		 * Retrieves the binary row codec of the table schema
+		 * 
+		 * @return RowCodec instance
+		 */
+		public RowCodec getRowCodec() {
+			RowCodec codec = rowCodec;
+			if (codec == null || codec.getSchema() != getSchema()) {
+				codec = new RowCodec(getSchema());
+				rowCodec = codec;
+			}
+			return codec;
+		}
+
 		/**
 		 * Retrieves all column names
 		 * 
 		 * @return Array of column name strings
 		 */
 		public String[] getColumnNames() {
-			return columns.values().stream().map(t -> t.columnName).toArray(t -> new String[t]);
+			String[] names = columnNames;
+			if (names == null) {
+				names = columns.values().stream().map(t -> t.columnName).toArray(t -> new String[t]);
+				columnNames = names;
+			}
+			return names.clone();
 		}
 
 		/**
@@ -825,6 +1402,10 @@ public abstract class DataTable<T extends TableRow> {
 		 * @return EntryLayout or null
 		 */
 		public EntryLayout getLayout(String columnName) {
+			// Backends usually return the names they were given, avoid case conversion
+			EntryLayout layout = columnsByName.get(columnName);
+			if (layout != null)
+				return layout;
 			return columns.get(columnName.toUpperCase());
 		}
 
@@ -835,7 +1416,7 @@ public abstract class DataTable<T extends TableRow> {
 		 * @return True if present, false otherwise
 		 */
 		public boolean hasColumn(String columnName) {
-			return columns.containsKey(columnName.toUpperCase());
+			return getLayout(columnName) != null;
 		}
 	}
 
@@ -30,6 +30,17 @@ public enum DataType {
 
 	DATE;
 
+	// Resolved types per class, avoids walking the assignability checks for every
+	// value
+	private static final ClassValue<DataType> types = new ClassValue<DataType>() {
+
+		@Override
+		protected DataType computeValue(Class<?> type) {
+			return resolve(type);
+		}
+
+	};
+
 	/**
 	 * Finds the DataType of a given object
 	 * 
@@ -49,6 +60,10 @@ public enum DataType {
 	 * @return DataType value
 	 */
 	public static DataType fromClass(Class<?> cls) {
+		return types.get(cls);
+	}
+
+	private static DataType resolve(Class<?> cls) {
 		// Check primitive
 		if (cls.isPrimitive()) {
 			// Find primitive
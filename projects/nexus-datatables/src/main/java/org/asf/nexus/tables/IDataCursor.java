@@ -0,0 +1,80 @@
+package org.asf.nexus.tables;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 
+ * Data cursor - iterates over the rows of a table query, backends fetch rows
+ * as the cursor advances so that the full result is never held in memory
+ * 
+ * Cursors need to be closed once they are no longer needed, errors raised by
+ * the backend while advancing are thrown as UncheckedIOException
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public interface IDataCursor extends Iterator<DataSet>, Closeable {
+
+	/**
+	 * Checks if there are more rows
+	 * 
+	 * @return True if there are more rows, false otherwise
+	 * @throws UncheckedIOException If fetching rows fails
+	 */
+	@Override
+	public boolean hasNext() throws UncheckedIOException;
+
+	/**
+	 * Retrieves the next row
+	 * 
+	 * @return DataSet instance
+	 * @throws UncheckedIOException   If fetching rows fails
+	 * @throws NoSuchElementException If there are no more rows
+	 */
+	@Override
+	public DataSet next() throws UncheckedIOException, NoSuchElementException;
+
+	/**
+	 * Closes the cursor and releases the backend resources
+	 * 
+	 * @throws IOException If closing the cursor fails
+	 */
+	@Override
+	public void close() throws IOException;
+
+	/**
+	 * Creates a cursor over rows that are already in memory
+	 * 
+	 * @param rows Rows to iterate over
+	 * @return IDataCursor instance
+	 */
+	public static IDataCursor of(DataSet... rows) {
+		return new IDataCursor() {
+
+			private int index;
+
+			@Override
+			public boolean hasNext() {
+				return index < rows.length;
+			}
+
+			@Override
+			public DataSet next() {
+				if (index >= rows.length)
+					throw new NoSuchElementException();
+				return rows[index++];
+			}
+
+			@Override
+			public void close() {
+				index = rows.length;
+			}
+
+		};
+	}
+
+}
@@ -0,0 +1,1137 @@
+package org.asf.nexus.tables;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.asf.nexus.common.io.DataReader;
+import org.asf.nexus.common.io.DataWriter;
+import org.asf.nexus.tables.DataTable.DataTableLayout.EntryLayout;
+import org.asf.nexus.tables.annotations.UseAsFilter;
+
+/**
+ * 
+ * Log-structured data table - embedded file-backed storage engine for
+ * single-node installs that do not have a external database
+ * 
+ * Every row modification is appended to a segment log as a record holding the
+ * full row, records are checksummed and encoded with the nexus-io
+ * {@link DataWriter}, values are prefixed with their {@link DataType}. A
+ * in-memory primary index maps the {@link UseAsFilter} identification columns
+ * to the latest record of each row, the identification columns act as primary
+ * key and updates that would give two rows the same identification values are
+ * rejected. Full segments are sealed and memory-mapped for reads, the active
+ * segment is read through a separate read-only channel so that interrupted
+ * readers cannot close the channel of the writer.
+ * 
+ * Sealed segments are compacted in the background once more than half of
+ * their data is outdated, live records are copied to a new segment without
+ * blocking writers, which only wait while the index is switched to the new
+ * segment. The new segment and the directory are synced before the old
+ * segments are deleted oldest first, so that a crash during compaction never
+ * leaves a row without the newer records or removals that replaced it. When
+ * the table is opened the log is replayed, records with a invalid checksum end
+ * their segment and are truncated.
+ * 
+ * Records are appended without forcing them to disk, use {@link #sync()} to
+ * make written rows durable. Modifications of multiple rows are written as one
+ * record per row, a crash may leave such modifications partially applied.
+ * 
+ * @param <T> Row value type
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public class LogDataTable<T extends TableRow> extends DataTable<T> implements Closeable {
+
+	/**
+	 * Default segment size, segments are sealed once they reach this size
+	 */
+	public static final long DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	private static final byte RECORD_PUT = 1;
+	private static final byte RECORD_DELETE = 2;
+	private static final byte RECORD_MOVE = 3;
+
+	private static final int HEADER_SIZE = 8;
+	private static final String SEGMENT_SUFFIX = ".seg";
+
+	// Returned for filters that do not specify all identification columns
+	private static final Object NO_KEY = new Object();
+
+	private static final DataType[] TYPES = DataType.values();
+
+	private static final int[] NO_COLUMNS = new int[0];
+
+	private static final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+		Thread th = new Thread(r, "Table Log Compaction Thread");
+		th.setDaemon(true);
+		return th;
+	});
+
+	private Logger logger = LogManager.getLogger("TableLog");
+	private File directory;
+	private long segmentSize;
+	private TableSchema schema;
+	private int[] keyColumns;
+
+	private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private HashMap<Object, Location> index = new HashMap<Object, Location>();
+	private ArrayList<Segment> segments = new ArrayList<Segment>();
+	private Segment active;
+	private AtomicLong nextSegment = new AtomicLong();
+	private long sequence;
+	private boolean closed;
+
+	// Incremented when keys are added to or removed from the index
+	private long indexModifications;
+
+	private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+	private Object compactionLock = new Object();
+	private AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+	private static class Segment {
+		public long id;
+		public File file;
+		public FileChannel channel;
+		public volatile MappedByteBuffer mapped;
+		public long size;
+		public long liveBytes;
+
+		// Sequence range of the records in the segment
+		public long firstSequence = Long.MAX_VALUE;
+		public long lastSequence = -1;
+
+		private volatile FileChannel readChannel;
+		private volatile boolean closed;
+
+		public void track(long seq) {
+			firstSequence = Math.min(firstSequence, seq);
+			lastSequence = Math.max(lastSequence, seq);
+		}
+
+		public void read(long offset, byte[] output) throws IOException {
+			while (true) {
+				MappedByteBuffer buf = mapped;
+				if (buf != null) {
+					buf.get((int) offset, output);
+					return;
+				}
+				try {
+					FileChannel channel = getReadChannel();
+					ByteBuffer target = ByteBuffer.wrap(output);
+					while (target.hasRemaining()) {
+						if (channel.read(target, offset + target.position()) < 0)
+							throw new EOFException("Record exceeds the segment size");
+					}
+					return;
+				} catch (ClosedByInterruptException e) {
+					throw e;
+				} catch (ClosedChannelException e) {
+					// Closed by a interrupted reader or sealed while reading, retry unless the
+					// segment was closed
+					if (closed && mapped == null)
+						throw e;
+				}
+			}
+		}
+
+		private FileChannel getReadChannel() throws IOException {
+			FileChannel channel = readChannel;
+			if (channel != null && channel.isOpen())
+				return channel;
+			synchronized (this) {
+				if (closed)
+					throw new ClosedChannelException();
+				channel = readChannel;
+				if (channel == null || !channel.isOpen()) {
+					channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+					readChannel = channel;
+				}
+				return channel;
+			}
+		}
+
+		public void close() throws IOException {
+			synchronized (this) {
+				closed = true;
+				if (readChannel != null)
+					readChannel.close();
+			}
+			channel.close();
+		}
+	}
+
+	private static class Location {
+		public Segment segment;
+		public long offset;
+		public int length;
+		public long sequence;
+
+		public Location(Segment segment, long offset, int length, long sequence) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+			this.sequence = sequence;
+		}
+
+		public long size() {
+			return HEADER_SIZE + length;
+		}
+	}
+
+	private static class Match {
+		public Object key;
+		public SchemaDataSet row;
+	}
+
+	private class RowCursor extends BatchDataCursor {
+
+		private DataFilter filter;
+		private int[] columns;
+		private List<Location> locations;
+		private Iterator<Location> scan;
+		private long position;
+		private long modifications;
+		private long skip;
+		private long remaining;
+
+		public RowCursor(DataFilter filter, int[] columns, List<Location> locations, int fetchSize) {
+			super(fetchSize);
+			this.filter = filter;
+			this.columns = columns;
+			this.locations = locations;
+			skip = filter.getOffset();
+			remaining = filter.getLimit() == -1 ? Long.MAX_VALUE : filter.getLimit();
+		}
+
+		@Override
+		protected DataSet[] fetch(int maxRows) throws IOException {
+			// Records are never modified, the locations remain readable after the
+			// rows were changed
+			ArrayList<DataSet> batch = new ArrayList<DataSet>(Math.min(maxRows, 64));
+			while (batch.size() < maxRows && remaining > 0) {
+				List<Location> next = nextLocations(maxRows - batch.size());
+				if (next.isEmpty())
+					break;
+				for (Location location : next) {
+					if (remaining == 0)
+						break;
+					SchemaDataSet row = readRow(location);
+					if (!filter.matches(row))
+						continue;
+					if (skip > 0) {
+						skip--;
+						continue;
+					}
+					batch.add(project(row, columns));
+					remaining--;
+				}
+			}
+			return batch.toArray(t -> new DataSet[t]);
+		}
+
+		private List<Location> nextLocations(int count) {
+			// Identified rows
+			if (locations != null) {
+				List<Location> res = locations;
+				locations = Collections.emptyList();
+				return res;
+			}
+
+			// Take the next locations from the index, the records are read without
+			// holding the lock
+			lock.readLock().lock();
+			try {
+				// Continue where the previous batch stopped, the iterator remains valid
+				// unless keys were added or removed in between
+				if (scan == null || modifications != indexModifications) {
+					scan = index.values().iterator();
+					for (long i = 0; i < position && scan.hasNext(); i++)
+						scan.next();
+					modifications = indexModifications;
+				}
+				ArrayList<Location> res = new ArrayList<Location>(Math.min(count, 64));
+				while (res.size() < count && scan.hasNext()) {
+					res.add(scan.next());
+					position++;
+				}
+				return res;
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		@Override
+		protected void closeInternal() throws IOException {
+			locations = Collections.emptyList();
+			scan = null;
+		}
+
+	}
+
+	/**
+	 * Opens a log-structured table, the log in the directory is replayed
+	 * 
+	 * @param cls       Row value type
+	 * @param directory Directory holding the segments of the table
+	 * @throws IOException If the log cannot be read
+	 */
+	public LogDataTable(Class<T> cls, File directory) throws IOException {
+		this(cls, directory, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Opens a log-structured table, the log in the directory is replayed
+	 * 
+	 * @param cls         Row value type
+	 * @param directory   Directory holding the segments of the table
+	 * @param segmentSize Size at which segments are sealed
+	 * @throws IOException If the log cannot be read
+	 */
+	public LogDataTable(Class<T> cls, File directory, long segmentSize) throws IOException {
+		super(cls);
+		if (segmentSize <= HEADER_SIZE || segmentSize > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Segment size must be between " + (HEADER_SIZE + 1) + " and "
+					+ Integer.MAX_VALUE + " bytes");
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		schema = getLayout().getSchema();
+
+		// Find identification columns
+		EntryLayout[] columns = getLayout().getColumns();
+		keyColumns = IntStream.range(0, columns.length).filter(t -> columns[t].assignmentField != null
+				&& columns[t].assignmentField.isAnnotationPresent(UseAsFilter.class)).toArray();
+		if (keyColumns.length == 0)
+			throw new IllegalArgumentException("Type " + getLayout().getType()
+					+ " does not have any fields annotated with UseAsFilter, cannot identify rows to store");
+
+		// Replay log
+		directory.mkdirs();
+		File[] files = directory.listFiles(t -> t.getName().endsWith(SEGMENT_SUFFIX));
+		if (files == null)
+			throw new IOException("Unable to list segments in " + directory);
+		Arrays.sort(files);
+		HashMap<Object, Long> deleted = new HashMap<Object, Long>();
+		for (File file : files) {
+			long id;
+			try {
+				id = Long.parseLong(file.getName().substring(0, file.getName().length() - SEGMENT_SUFFIX.length()),
+						16);
+			} catch (NumberFormatException e) {
+				continue;
+			}
+			Segment segment = new Segment();
+			segment.id = id;
+			segment.file = file;
+			segment.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+			replay(segment, deleted);
+			nextSegment.set(Math.max(nextSegment.get(), id + 1));
+
+			// Remove empty segments
+			if (segment.size == 0) {
+				segment.close();
+				Files.delete(file.toPath());
+			} else
+				segments.add(segment);
+		}
+
+		// Start a new segment for writes
+		active = createSegment();
+		segments.add(active);
+	}
+
+	/**
+	 * Retrieves the directory holding the segments of this table
+	 * 
+	 * @return Directory File instance
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Retrieves the amount of segments of this table
+	 * 
+	 * @return Segment count
+	 */
+	public int getSegmentCount() {
+		lock.readLock().lock();
+		try {
+			return segments.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Retrieves the amount of rows in the table
+	 * 
+	 * @return Row count
+	 */
+	public int getRowCount() {
+		lock.readLock().lock();
+		try {
+			return index.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Forces all written records to disk
+	 * 
+	 * @throws IOException If syncing the segment fails
+	 */
+	public void sync() throws IOException {
+		lock.readLock().lock();
+		try {
+			checkOpen();
+			active.channel.force(false);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Compacts all sealed segments into a single segment containing only the
+	 * latest record of each row, writers are only blocked while the index is
+	 * updated
+	 * 
+	 * @throws IOException If compacting fails
+	 */
+	public void compact() throws IOException {
+		synchronized (compactionLock) {
+			// Find the live records of the sealed segments
+			ArrayList<Segment> sealed = new ArrayList<Segment>();
+			ArrayList<Object> keys = new ArrayList<Object>();
+			ArrayList<Location> locations = new ArrayList<Location>();
+			long oldestOther = Long.MAX_VALUE;
+			Segment target;
+			lock.readLock().lock();
+			try {
+				checkOpen();
+				for (Segment segment : segments) {
+					if (segment != active)
+						sealed.add(segment);
+					else
+						oldestOther = segment.firstSequence;
+				}
+				if (sealed.size() == 0 || (sealed.size() == 1 && sealed.get(0).liveBytes == sealed.get(0).size))
+					return;
+				index.forEach((key, location) -> {
+					if (location.segment != active && sealed.contains(location.segment)) {
+						keys.add(key);
+						locations.add(location);
+					}
+				});
+			} finally {
+				lock.readLock().unlock();
+			}
+
+			// Keep removals while a segment that is not compacted may hold older records
+			// of the removed row
+			ArrayList<Location> copies = new ArrayList<Location>(locations);
+			for (Segment segment : sealed) {
+				if (segment.lastSequence > oldestOther)
+					findRemovals(segment, oldestOther, copies);
+			}
+
+			// Copy the records, sealed segments are never modified
+			target = createSegment();
+			Location[] moved = new Location[locations.size()];
+			try {
+				ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+				long position = 0;
+				for (int i = 0; i < copies.size(); i++) {
+					Location location = copies.get(i);
+					byte[] payload = new byte[location.length];
+					location.segment.read(location.offset, payload);
+					if (buf.remaining() < HEADER_SIZE + payload.length) {
+						position += write(target.channel, buf, position);
+						if (buf.capacity() < HEADER_SIZE + payload.length)
+							buf = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+					}
+					if (i < moved.length)
+						moved[i] = new Location(target, position + buf.position() + HEADER_SIZE, payload.length,
+								location.sequence);
+					target.track(location.sequence);
+					buf.putInt(payload.length);
+					buf.putInt(checksum(payload));
+					buf.put(payload);
+				}
+				position += write(target.channel, buf, position);
+				target.size = position;
+
+				// Make the new segment durable before anything is deleted
+				target.channel.force(true);
+				syncDirectory();
+				target.mapped = target.channel.map(MapMode.READ_ONLY, 0, position);
+			} catch (IOException e) {
+				target.close();
+				Files.deleteIfExists(target.file.toPath());
+				throw e;
+			}
+
+			// Switch the index to the new segment, rows written during the copy keep their
+			// newer records
+			lock.writeLock().lock();
+			try {
+				for (int i = 0; i < moved.length; i++) {
+					if (index.get(keys.get(i)) == locations.get(i)) {
+						index.put(keys.get(i), moved[i]);
+						target.liveBytes += moved[i].size();
+					}
+				}
+				segments.removeAll(sealed);
+				segments.add(target);
+			} finally {
+				lock.writeLock().unlock();
+			}
+
+			// Delete the old segments oldest first, a crash in between never leaves older
+			// records of a row without the segments holding the newer records or removals,
+			// mapped buffers stay readable for running readers
+			sealed.sort(Comparator.comparingLong(t -> t.firstSequence));
+			for (Segment segment : sealed) {
+				segment.close();
+				Files.deleteIfExists(segment.file.toPath());
+			}
+			logger.debug("Compacted " + sealed.size() + " segments of table " + getLayout().getType().getTypeName()
+					+ " into " + target.file.getName() + " (" + target.size + " bytes)");
+		}
+	}
+
+	/**
+	 * Closes the table, written records are synced to disk
+	 * 
+	 * @throws IOException If closing the segments fails
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (compactionLock) {
+			lock.writeLock().lock();
+			try {
+				if (closed)
+					return;
+				closed = true;
+				active.channel.force(false);
+				for (Segment segment : segments)
+					segment.close();
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	@Override
+	public boolean supportsQueryFilters() {
+		return true;
+	}
+
+	@Override
+	protected boolean hasRowsInternal(DataFilter dataFilter) throws IOException {
+		if (dataFilter.getLimit() == 0)
+			return false;
+		try (IDataCursor cursor = new RowCursor(dataFilter, NO_COLUMNS, lookup(dataFilter), 1)) {
+			return cursor.hasNext();
+		}
+	}
+
+	@Override
+	protected DataSet getFirstRowInternal(DataFilter dataFilter, String... columnNames) throws IOException {
+		try (IDataCursor cursor = streamRowsInternal(dataFilter, 1, columnNames)) {
+			return cursor.hasNext() ? cursor.next() : null;
+		}
+	}
+
+	@Override
+	protected IDataCursor streamRowsInternal(DataFilter dataFilter, int fetchSize, String... columnNames)
+			throws IOException {
+		if (dataFilter.getLimit() == 0)
+			return IDataCursor.of();
+		int[] columns = resolveColumns(columnNames);
+		if (dataFilter.getOrdering().length == 0)
+			return new RowCursor(dataFilter, columns, lookup(dataFilter), fetchSize);
+
+		// Ordered, read all matching rows
+		ArrayList<SchemaDataSet> rows = new ArrayList<SchemaDataSet>();
+		for (Location location : locate(dataFilter)) {
+			SchemaDataSet row = readRow(location);
+			if (dataFilter.matches(row))
+				rows.add(row);
+		}
+		rows.sort(dataFilter.getRowComparator());
+		return IDataCursor
+				.of(slice(rows, dataFilter).stream().map(t -> project(t, columns)).toArray(t -> new DataSet[t]));
+	}
+
+	@Override
+	protected void setRowsInternal(DataFilter dataFilter, DataSet set) throws IOException {
+		lock.writeLock().lock();
+		try {
+			checkOpen();
+			List<Match> matches = find(dataFilter);
+			if (matches.isEmpty()) {
+				// Insert
+				if (dataFilter.getLimit() == 0)
+					return;
+				SchemaDataSet row = schema.createDataSet();
+				for (DataEntry ent : dataFilter.getValues())
+					row.setValue(schema.indexOf(ent.getColumnName()), ent.getValue(Object.class));
+				assign(row, set);
+
+				// The row may exist with values that did not match the filter
+				Object key = keyOf(row);
+				if (index.containsKey(key))
+					throw duplicateKey();
+				put(key, row, null, null);
+				return;
+			}
+
+			// Check the new identification values before writing, rows may not take the
+			// identification values of another row
+			ArrayList<Object> keys = new ArrayList<Object>();
+			ArrayList<SchemaDataSet> previousKeys = new ArrayList<SchemaDataSet>();
+			HashSet<Object> used = new HashSet<Object>();
+			for (Match match : matches) {
+				previousKeys.add(keyRow(match.row));
+				assign(match.row, set);
+				Object key = keyOf(match.row);
+				if (!used.add(key) || (!Objects.equals(key, match.key) && index.containsKey(key)))
+					throw duplicateKey();
+				keys.add(key);
+			}
+
+			// Update
+			for (int i = 0; i < matches.size(); i++) {
+				Match match = matches.get(i);
+				Object key = keys.get(i);
+				if (Objects.equals(key, match.key))
+					put(key, match.row, null, null);
+				else
+					put(key, match.row, match.key, previousKeys.get(i));
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	protected void removeRowsInternal(DataFilter dataFilter) throws IOException {
+		lock.writeLock().lock();
+		try {
+			checkOpen();
+			for (Match match : find(dataFilter)) {
+				long seq = sequence++;
+				append(encode(RECORD_DELETE, seq, keyRow(match.row), null), seq);
+				release(index.remove(match.key));
+				indexModifications++;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void put(Object key, SchemaDataSet row, Object previousKey, SchemaDataSet previousKeyRow)
+			throws IOException {
+		// Moved rows are written as one record that also removes the previous key
+		long seq = sequence++;
+		Location location = append(previousKeyRow == null ? encode(RECORD_PUT, seq, row, null)
+				: encode(RECORD_MOVE, seq, row, previousKeyRow), seq);
+		if (previousKeyRow != null) {
+			release(index.remove(previousKey));
+			indexModifications++;
+		}
+		Location previous = index.put(key, location);
+		if (previous == null)
+			indexModifications++;
+		release(previous);
+		location.segment.liveBytes += location.size();
+	}
+
+	private IOException duplicateKey() {
+		return new IOException("Unable to write row to table " + getLayout().getType().getTypeName()
+				+ ", the identification values are already used by another row");
+	}
+
+	private List<Match> find(DataFilter filter) throws IOException {
+		// Called with the write lock held
+		ArrayList<Match> matches = new ArrayList<Match>();
+		for (Location location : locate(filter)) {
+			SchemaDataSet row = readRow(location);
+			if (!filter.matches(row))
+				continue;
+			Match match = new Match();
+			match.key = keyOf(row);
+			match.row = row;
+			matches.add(match);
+		}
+		if (filter.getOffset() == 0 && filter.getLimit() == -1)
+			return matches;
+		if (filter.getOrdering().length != 0)
+			matches.sort((a, b) -> filter.getRowComparator().compare(a.row, b.row));
+		return slice(matches, filter);
+	}
+
+	private List<Location> locate(DataFilter filter) {
+		List<Location> locations = lookup(filter);
+		if (locations != null)
+			return locations;
+		lock.readLock().lock();
+		try {
+			return new ArrayList<Location>(index.values());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private List<Location> lookup(DataFilter filter) {
+		// Null if the filter does not specify all identification columns
+		lock.readLock().lock();
+		try {
+			Object key = filterKey(filter);
+			if (key == NO_KEY)
+				return null;
+			Location location = index.get(key);
+			return location == null ? Collections.emptyList() : Collections.singletonList(location);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void release(Location location) {
+		if (location != null)
+			location.segment.liveBytes -= location.size();
+	}
+
+	private Location append(byte[] payload, long seq) throws IOException {
+		// Seal the segment if full
+		if (active.size != 0 && active.size + HEADER_SIZE + payload.length > segmentSize)
+			seal();
+
+		// Write record
+		ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+		record.putInt(payload.length);
+		record.putInt(checksum(payload));
+		record.put(payload);
+		long offset = active.size;
+		active.size += write(active.channel, record, offset);
+		active.track(seq);
+		return new Location(active, offset + HEADER_SIZE, payload.length, seq);
+	}
+
+	private void seal() throws IOException {
+		// Map the full segment for reads and continue in a new segment
+		Segment segment = active;
+		segment.mapped = segment.channel.map(MapMode.READ_ONLY, 0, segment.size);
+		active = createSegment();
+		segments.add(active);
+
+		// Compact once more than half of the sealed data is outdated
+		long size = 0;
+		long live = 0;
+		for (Segment seg : segments) {
+			if (seg != active) {
+				size += seg.size;
+				live += seg.liveBytes;
+			}
+		}
+		if (live * 2 < size && compactionScheduled.compareAndSet(false, true)) {
+			// Called with the write lock held, the compaction lock may not be taken here
+			compactor.submit(() -> {
+				compactionScheduled.set(false);
+				try {
+					compact();
+				} catch (IOException e) {
+					if (!closed)
+						logger.error("Failed to compact table " + getLayout().getType().getTypeName(), e);
+				}
+			});
+		}
+	}
+
+	private Segment createSegment() throws IOException {
+		Segment segment = new Segment();
+		segment.id = nextSegment.getAndIncrement();
+		segment.file = new File(directory, String.format("%016x", segment.id) + SEGMENT_SUFFIX);
+		segment.channel = FileChannel.open(segment.file.toPath(), StandardOpenOption.CREATE_NEW,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		return segment;
+	}
+
+	private void replay(Segment segment, HashMap<Object, Long> deleted) throws IOException {
+		MappedByteBuffer buf = segment.channel.map(MapMode.READ_ONLY, 0, segment.channel.size());
+		long size = buf.capacity();
+		int position = 0;
+		while (position + HEADER_SIZE <= size) {
+			// Check record
+			int length = buf.getInt(position);
+			int crc = buf.getInt(position + 4);
+			if (length <= 0 || position + HEADER_SIZE + (long) length > size)
+				break;
+			byte[] payload = new byte[length];
+			buf.get(position + HEADER_SIZE, payload);
+			if (checksum(payload) != crc)
+				break;
+
+			// Apply record
+			DataReader reader = new DataReader(new ByteArrayInputStream(payload));
+			byte type = reader.readRawByte();
+			long seq = reader.readLong();
+			sequence = Math.max(sequence, seq + 1);
+			segment.track(seq);
+			Location location = new Location(segment, position + HEADER_SIZE, length, seq);
+			if (type == RECORD_DELETE || type == RECORD_MOVE)
+				replayDelete(keyOf(readValues(reader)), seq, deleted);
+			if (type == RECORD_PUT || type == RECORD_MOVE) {
+				Object key = keyOf(readValues(reader));
+				Location current = index.get(key);
+				Long deletedAt = deleted.get(key);
+				if ((current == null || current.sequence < seq) && (deletedAt == null || deletedAt < seq)) {
+					release(current);
+					index.put(key, location);
+					segment.liveBytes += location.size();
+				}
+			}
+			position += HEADER_SIZE + length;
+		}
+		segment.size = position;
+
+		// Truncate incomplete or corrupted records
+		if (position != size) {
+			logger.warn("Truncating segment " + segment.file + " of table " + getLayout().getType().getTypeName()
+					+ " at offset " + position + ", found a incomplete or corrupted record");
+			buf = null;
+			segment.channel.truncate(position);
+		}
+		segment.mapped = segment.channel.map(MapMode.READ_ONLY, 0, position);
+	}
+
+	private void findRemovals(Segment segment, long after, ArrayList<Location> output) throws IOException {
+		// Removals and moves newer than the given sequence of rows that are not in the
+		// index, moved rows are kept as well which is harmless as replay keeps the
+		// newest record of each row
+		MappedByteBuffer buf = segment.mapped;
+		int position = 0;
+		while (position < segment.size) {
+			int length = buf.getInt(position);
+			byte[] payload = new byte[length];
+			buf.get(position + HEADER_SIZE, payload);
+			DataReader reader = new DataReader(new ByteArrayInputStream(payload));
+			byte type = reader.readRawByte();
+			long seq = reader.readLong();
+			if (type != RECORD_PUT && seq > after) {
+				Object key = keyOf(readValues(reader));
+				lock.readLock().lock();
+				try {
+					if (!index.containsKey(key))
+						output.add(new Location(segment, position + HEADER_SIZE, length, seq));
+				} finally {
+					lock.readLock().unlock();
+				}
+			}
+			position += HEADER_SIZE + length;
+		}
+	}
+
+	private void syncDirectory() throws IOException {
+		// Makes the creation of new segment files durable
+		try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (AccessDeniedException e) {
+			// Directories cannot be opened on all platforms
+		}
+	}
+
+	private void replayDelete(Object key, long seq, HashMap<Object, Long> deleted) {
+		Location current = index.get(key);
+		if (current != null && current.sequence < seq) {
+			index.remove(key);
+			release(current);
+		}
+		Long deletedAt = deleted.get(key);
+		if (deletedAt == null || deletedAt < seq)
+			deleted.put(key, seq);
+	}
+
+	private SchemaDataSet readRow(Location location) throws IOException {
+		byte[] payload = new byte[location.length];
+		location.segment.read(location.offset, payload);
+		DataReader reader = new DataReader(new ByteArrayInputStream(payload));
+		byte type = reader.readRawByte();
+		reader.readLong();
+		if (type == RECORD_MOVE)
+			readValues(reader);
+		return readValues(reader);
+	}
+
+	private byte[] encode(byte type, long seq, SchemaDataSet row, SchemaDataSet previousKey) throws IOException {
+		buffer.reset();
+		DataWriter writer = new DataWriter(buffer);
+		writer.writeRawByte(type);
+		writer.writeLong(seq);
+		if (previousKey != null)
+			writeValues(writer, previousKey);
+		writeValues(writer, row);
+		return buffer.toByteArray();
+	}
+
+	private SchemaDataSet keyRow(SchemaDataSet row) {
+		SchemaDataSet key = schema.createDataSet();
+		for (int column : keyColumns)
+			key.copyValue(row, column);
+		return key;
+	}
+
+	private void writeValues(DataWriter writer, SchemaDataSet row) throws IOException {
+		// Column names are stored so that the log survives layout changes
+		int count = 0;
+		for (int column = 0; column < schema.getColumnCount(); column++) {
+			if (row.isPresent(column))
+				count++;
+		}
+		writer.writeInt(count);
+		for (int column = 0; column < schema.getColumnCount(); column++) {
+			if (!row.isPresent(column))
+				continue;
+			writer.writeString(schema.getColumnName(column));
+			writeValue(writer, row.getValue(column));
+		}
+	}
+
+	private SchemaDataSet readValues(DataReader reader) throws IOException {
+		SchemaDataSet row = schema.createDataSet();
+		int count = reader.readInt();
+		for (int i = 0; i < count; i++) {
+			String name = reader.readString();
+			Object value = readValue(reader);
+			int column = schema.indexOf(name);
+			if (column != -1)
+				row.setValue(column, value);
+		}
+		return row;
+	}
+
+	private static void writeValue(DataWriter writer, Object value) throws IOException {
+		DataType type = DataType.fromObject(value);
+		writer.writeRawByte((byte) type.ordinal());
+		switch (type) {
+
+		case NULL:
+			break;
+
+		case STRING:
+			writer.writeString((String) value);
+			break;
+
+		case CHAR:
+			writer.writeShort((short) ((Character) value).charValue());
+			break;
+
+		case BYTE:
+			writer.writeRawByte((Byte) value);
+			break;
+
+		case SHORT:
+			writer.writeShort((Short) value);
+			break;
+
+		case INT:
+			writer.writeInt((Integer) value);
+			break;
+
+		case LONG:
+			writer.writeLong((Long) value);
+			break;
+
+		case FLOAT:
+			writer.writeFloat((Float) value);
+			break;
+
+		case DOUBLE:
+			writer.writeLong(Double.doubleToRawLongBits((Double) value));
+			break;
+
+		case BOOLEAN:
+			writer.writeBoolean((Boolean) value);
+			break;
+
+		case BYTE_ARRAY:
+			writer.writeBytes((byte[]) value);
+			break;
+
+		case DATE:
+			writer.writeLong(((Date) value).getTime());
+			break;
+
+		case OBJECT:
+			// Objects are stored with java serialization
+			ByteArrayOutputStream data = new ByteArrayOutputStream();
+			try (ObjectOutputStream output = new ObjectOutputStream(data)) {
+				output.writeObject(value);
+			}
+			writer.writeBytes(data.toByteArray());
+			break;
+
+		}
+	}
+
+	private static Object readValue(DataReader reader) throws IOException {
+		DataType type = TYPES[reader.readRawByte()];
+		switch (type) {
+
+		case STRING:
+			return reader.readString();
+
+		case CHAR:
+			return reader.readChar();
+
+		case BYTE:
+			return reader.readRawByte();
+
+		case SHORT:
+			return reader.readShort();
+
+		case INT:
+			return reader.readInt();
+
+		case LONG:
+			return reader.readLong();
+
+		case FLOAT:
+			return reader.readFloat();
+
+		case DOUBLE:
+			return Double.longBitsToDouble(reader.readLong());
+
+		case BOOLEAN:
+			return reader.readBoolean();
+
+		case BYTE_ARRAY:
+			return reader.readBytes();
+
+		case DATE:
+			return new Date(reader.readLong());
+
+		case OBJECT:
+			try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(reader.readBytes()))) {
+				return input.readObject();
+			} catch (ClassNotFoundException e) {
+				throw new IOException("Unable to read object value, class not found", e);
+			}
+
+		default:
+			return null;
+
+		}
+	}
+
+	private void assign(SchemaDataSet row, DataSet set) {
+		if (set instanceof SchemaDataSet && ((SchemaDataSet) set).getSchema() == schema) {
+			SchemaDataSet values = (SchemaDataSet) set;
+			for (int column = 0; column < schema.getColumnCount(); column++) {
+				if (values.isPresent(column))
+					row.copyValue(values, column);
+			}
+			return;
+		}
+		for (DataEntry ent : set.getValues())
+			row.setValue(schema.indexOf(ent.getColumnName()), ent.getValue(Object.class));
+	}
+
+	private Object keyOf(SchemaDataSet row) {
+		return MemoryDataTable.indexKey(keyColumns, t -> row.getValue(t));
+	}
+
+	private Object filterKey(DataFilter filter) {
+		Object[] values = new Object[schema.getColumnCount()];
+		for (int column : keyColumns) {
+			String name = schema.getColumnName(column);
+			if (!filter.has(name))
+				return NO_KEY;
+			values[column] = filter.getValue(name, Object.class);
+		}
+		return MemoryDataTable.indexKey(keyColumns, t -> values[t]);
+	}
+
+	private DataSet project(SchemaDataSet row, int[] columns) {
+		if (columns == null)
+			return row;
+		SchemaDataSet res = schema.createDataSet();
+		for (int column : columns)
+			res.copyValue(row, column);
+		return res;
+	}
+
+	private int[] resolveColumns(String[] columnNames) {
+		// Null selects all columns
+		if (columnNames.length == schema.getColumnCount())
+			return null;
+		int[] columns = new int[columnNames.length];
+		for (int i = 0; i < columns.length; i++)
+			columns[i] = schema.indexOf(columnNames[i]);
+		return columns;
+	}
+
+	private int checksum(byte[] payload) {
+		CRC32C crc = new CRC32C();
+		crc.update(payload);
+		return (int) crc.getValue();
+	}
+
+	private void checkOpen() throws IOException {
+		if (closed)
+			throw new IOException("Table " + getLayout().getType().getTypeName() + " was closed");
+	}
+
+	private static long write(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+		buf.flip();
+		long written = 0;
+		while (buf.hasRemaining())
+			written += channel.write(buf, position + written);
+		buf.clear();
+		return written;
+	}
+
+	private static <E> List<E> slice(List<E> rows, DataFilter filter) {
+		int start = (int) Math.min(filter.getOffset(), rows.size());
+		int end = filter.getLimit() == -1 ? rows.size() : (int) Math.min(rows.size(), start + (long) filter.getLimit());
+		return rows.subList(start, end);
+	}
+
+}
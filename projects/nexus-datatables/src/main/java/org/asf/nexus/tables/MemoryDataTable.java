@@ -0,0 +1,646 @@
+package org.asf.nexus.tables;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+import org.asf.nexus.tables.DataTable.DataTableLayout.EntryLayout;
+import org.asf.nexus.tables.annotations.IndexedColumn;
+import org.asf.nexus.tables.annotations.UseAsFilter;
+
+/**
+ * 
+ * In-memory data table - keeps all rows in memory, for tests, small
+ * deployments and as reference to measure other backends against
+ * 
+ * Rows are spread over lock stripes by the values of their identification
+ * columns (fields annotated with {@link UseAsFilter}). Each stripe has a
+ * read-write lock and keeps hash indexes on the identification columns and on
+ * the columns annotated with {@link IndexedColumn} or added through
+ * {@link #addIndex(String)}. Readers do not block each other, requests with a
+ * filter that specifies all identification columns only lock the stripe of
+ * the row and other requests lock one stripe at a time where possible.
+ * 
+ * Rows are returned as copy-on-write copies of the stored rows, readers do not
+ * see modifications made after the row was read. Cursors read one batch at a
+ * time and resume in the stripe where the previous batch stopped, rows that
+ * are added or removed while a cursor is open may be skipped or returned
+ * twice.
+ * 
+ * @param <T> Row value type
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public class MemoryDataTable<T extends TableRow> extends DataTable<T> {
+
+	/**
+	 * Default amount of lock stripes
+	 */
+	public static final int DEFAULT_STRIPES = 16;
+
+	private static final int[] NO_COLUMNS = new int[0];
+
+	private TableSchema schema;
+	private int[] keyColumns;
+	private Stripe[] stripes;
+	private AtomicInteger nextStripe = new AtomicInteger();
+
+	// Columns of each index, the first index is the index of the identification
+	// columns if the table has any
+	private volatile int[][] indexColumns;
+
+	private static class Stripe {
+		public ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		public LinkedHashSet<SchemaDataSet> rows = new LinkedHashSet<SchemaDataSet>();
+		public ArrayList<HashMap<Object, LinkedHashSet<SchemaDataSet>>> indexes =
+				new ArrayList<HashMap<Object, LinkedHashSet<SchemaDataSet>>>();
+
+		// Incremented when rows or index buckets are added or removed
+		public int modifications;
+	}
+
+	private class Query {
+		public DataFilter filter;
+		public boolean valueFilter;
+		public int[] valueColumns;
+		public Object[] values;
+		public boolean[] filtered;
+
+		// Stripe of the identified rows or -1 if the filter does not specify all
+		// identification columns
+		public int stripe = -1;
+
+		public Query(DataFilter filter) {
+			this.filter = filter;
+			valueFilter = filter.getPredicates().length == 0 && filter.getSeekValues() == null;
+
+			// Resolve filter values
+			DataEntry[] entries = filter.getValues();
+			valueColumns = new int[entries.length];
+			values = new Object[schema.getColumnCount()];
+			filtered = new boolean[values.length];
+			for (int i = 0; i < entries.length; i++) {
+				int column = schema.indexOf(entries[i].getColumnName());
+				valueColumns[i] = column;
+				values[column] = entries[i].getValue(Object.class);
+				filtered[column] = true;
+			}
+			if (keyColumns.length != 0 && covers(keyColumns))
+				stripe = stripeOf(indexKey(keyColumns, t -> values[t]));
+		}
+
+		public boolean covers(int[] columns) {
+			for (int column : columns) {
+				if (!filtered[column])
+					return false;
+			}
+			return true;
+		}
+
+		public boolean matches(SchemaDataSet row) {
+			if (!valueFilter)
+				return filter.matches(row);
+			for (int column : valueColumns) {
+				if (!DataPredicate.valueEquals(row.getValue(column), values[column]))
+					return false;
+			}
+			return true;
+		}
+
+		public Stripe[] getStripes() {
+			return stripe == -1 ? stripes : new Stripe[] { stripes[stripe] };
+		}
+	}
+
+	private class RowCursor extends BatchDataCursor {
+
+		private Query query;
+		private int[] columns;
+		private int next;
+		private Iterator<SchemaDataSet> rows;
+		private long position;
+		private int modifications;
+		private long skip;
+		private long remaining;
+
+		public RowCursor(Query query, int[] columns, int fetchSize) {
+			super(fetchSize);
+			this.query = query;
+			this.columns = columns;
+			next = query.stripe == -1 ? 0 : query.stripe;
+			skip = query.filter.getOffset();
+			remaining = query.filter.getLimit() == -1 ? Long.MAX_VALUE : query.filter.getLimit();
+		}
+
+		@Override
+		protected DataSet[] fetch(int maxRows) throws IOException {
+			ArrayList<DataSet> batch = new ArrayList<DataSet>(Math.min(maxRows, 64));
+			while (batch.size() < maxRows && remaining > 0 && next != -1) {
+				Stripe stripe = stripes[next];
+				boolean end;
+				stripe.lock.readLock().lock();
+				try {
+					// Continue where the previous batch stopped, the iterator remains valid
+					// unless the stripe was modified in between
+					if (rows == null || stripe.modifications != modifications) {
+						rows = candidates(stripe, query).iterator();
+						for (long i = 0; i < position && rows.hasNext(); i++)
+							rows.next();
+						modifications = stripe.modifications;
+					}
+					while (batch.size() < maxRows && remaining > 0 && rows.hasNext()) {
+						SchemaDataSet row = rows.next();
+						position++;
+						if (!query.matches(row))
+							continue;
+						if (skip > 0) {
+							skip--;
+							continue;
+						}
+						batch.add(project(row, columns));
+						remaining--;
+					}
+					end = !rows.hasNext();
+				} finally {
+					stripe.lock.readLock().unlock();
+				}
+
+				// Move to the next stripe
+				if (end) {
+					rows = null;
+					position = 0;
+					next = query.stripe != -1 || next + 1 >= stripes.length ? -1 : next + 1;
+				}
+			}
+			return batch.toArray(t -> new DataSet[t]);
+		}
+
+		@Override
+		protected void closeInternal() throws IOException {
+			rows = null;
+			next = -1;
+		}
+
+	}
+
+	/**
+	 * Creates a in-memory data table
+	 * 
+	 * @param cls Row value type
+	 */
+	public MemoryDataTable(Class<T> cls) {
+		this(cls, DEFAULT_STRIPES);
+	}
+
+	/**
+	 * Creates a in-memory data table
+	 * 
+	 * @param cls     Row value type
+	 * @param stripes Amount of lock stripes to spread rows over
+	 */
+	public MemoryDataTable(Class<T> cls, int stripes) {
+		super(cls);
+		if (stripes <= 0)
+			throw new IllegalArgumentException("Stripe count must be at least 1");
+		schema = getLayout().getSchema();
+
+		// Find identification and indexed columns, schema indexes match the column
+		// order of the layout
+		EntryLayout[] columns = getLayout().getColumns();
+		keyColumns = IntStream.range(0, columns.length).filter(t -> columns[t].assignmentField != null
+				&& columns[t].assignmentField.isAnnotationPresent(UseAsFilter.class)).toArray();
+		ArrayList<int[]> indexes = new ArrayList<int[]>();
+		if (keyColumns.length != 0)
+			indexes.add(keyColumns);
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i].assignmentField != null
+					&& columns[i].assignmentField.isAnnotationPresent(IndexedColumn.class)
+					&& (keyColumns.length != 1 || keyColumns[0] != i))
+				indexes.add(new int[] { i });
+		}
+		indexColumns = indexes.toArray(t -> new int[t][]);
+
+		// Create stripes
+		this.stripes = new Stripe[stripes];
+		for (int i = 0; i < stripes; i++) {
+			Stripe stripe = new Stripe();
+			for (int j = 0; j < indexColumns.length; j++)
+				stripe.indexes.add(new HashMap<Object, LinkedHashSet<SchemaDataSet>>());
+			this.stripes[i] = stripe;
+		}
+	}
+
+	/**
+	 * Adds a index on a column, existing rows are indexed immediately
+	 * 
+	 * @param columnName Column name
+	 */
+	public void addIndex(String columnName) {
+		int column = schema.indexOf(columnName);
+		if (column == -1)
+			throw new IllegalArgumentException(
+					"Invalid column: " + columnName + ": column does not exist in the table");
+		lockAll();
+		try {
+			// Check existing indexes
+			int[][] indexes = indexColumns;
+			for (int[] columns : indexes) {
+				if (columns.length == 1 && columns[0] == column)
+					return;
+			}
+
+			// Add index
+			int[][] newIndexes = Arrays.copyOf(indexes, indexes.length + 1);
+			newIndexes[indexes.length] = new int[] { column };
+			indexColumns = newIndexes;
+			for (Stripe stripe : stripes) {
+				stripe.indexes.add(new HashMap<Object, LinkedHashSet<SchemaDataSet>>());
+				for (SchemaDataSet row : stripe.rows)
+					index(stripe, indexes.length, row);
+			}
+		} finally {
+			unlockAll();
+		}
+	}
+
+	/**
+	 * Retrieves the amount of rows in the table
+	 * 
+	 * @return Row count
+	 */
+	public int getRowCount() {
+		int count = 0;
+		for (Stripe stripe : stripes) {
+			stripe.lock.readLock().lock();
+			try {
+				count += stripe.rows.size();
+			} finally {
+				stripe.lock.readLock().unlock();
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public boolean supportsQueryFilters() {
+		return true;
+	}
+
+	@Override
+	protected boolean hasRowsInternal(DataFilter dataFilter) throws IOException {
+		if (dataFilter.getLimit() == 0)
+			return false;
+		long offset = dataFilter.getOffset();
+		return select(new Query(dataFilter), offset + 1, NO_COLUMNS).size() > offset;
+	}
+
+	@Override
+	protected DataSet getFirstRowInternal(DataFilter dataFilter, String... columnNames) throws IOException {
+		if (dataFilter.getLimit() == 0)
+			return null;
+		Query query = new Query(dataFilter);
+		int[] columns = resolveColumns(columnNames);
+		if (dataFilter.getOrdering().length != 0) {
+			List<DataSet> rows = sorted(query, columns);
+			return rows.isEmpty() ? null : rows.get(0);
+		}
+		long offset = dataFilter.getOffset();
+		ArrayList<DataSet> rows = select(query, offset + 1, columns);
+		return rows.size() > offset ? rows.get((int) offset) : null;
+	}
+
+	@Override
+	protected IDataCursor streamRowsInternal(DataFilter dataFilter, int fetchSize, String... columnNames)
+			throws IOException {
+		if (dataFilter.getLimit() == 0)
+			return IDataCursor.of();
+		Query query = new Query(dataFilter);
+		int[] columns = resolveColumns(columnNames);
+		if (dataFilter.getOrdering().length != 0)
+			return IDataCursor.of(sorted(query, columns).toArray(t -> new DataSet[t]));
+		return new RowCursor(query, columns, fetchSize);
+	}
+
+	@Override
+	protected void setRowsInternal(DataFilter dataFilter, DataSet set) throws IOException {
+		write(new Query(dataFilter), toSchemaSet(set));
+	}
+
+	@Override
+	protected void removeRowsInternal(DataFilter dataFilter) throws IOException {
+		write(new Query(dataFilter), null);
+	}
+
+	private void write(Query query, SchemaDataSet values) {
+		DataFilter filter = query.filter;
+		if (filter.getLimit() == 0)
+			return;
+		boolean positional = filter.getOffset() != 0 || filter.getLimit() != -1;
+		boolean changesKey = values != null && changesKey(query, values);
+
+		// Check identified rows
+		if (query.stripe != -1 && !positional && !changesKey) {
+			// Only lock the stripe of the rows, inserted rows end up in the same stripe
+			Stripe stripe = stripes[query.stripe];
+			stripe.lock.writeLock().lock();
+			try {
+				ArrayList<SchemaDataSet> rows = find(stripe, query);
+				for (SchemaDataSet row : rows) {
+					if (values == null)
+						removeRow(stripe, row);
+					else
+						updateRow(stripe, row, values);
+				}
+				if (values != null && rows.isEmpty())
+					insertRow(query, values);
+			} finally {
+				stripe.lock.writeLock().unlock();
+			}
+			return;
+		}
+
+		// Check removal
+		if (values == null && !positional) {
+			// Remove from one stripe at a time
+			for (Stripe stripe : stripes) {
+				stripe.lock.writeLock().lock();
+				try {
+					for (SchemaDataSet row : find(stripe, query))
+						removeRow(stripe, row);
+				} finally {
+					stripe.lock.writeLock().unlock();
+				}
+			}
+			return;
+		}
+
+		// Lock all stripes, rows may move to other stripes and rows may only be
+		// inserted if no stripe has matching rows
+		lockAll();
+		try {
+			// Find rows
+			List<SchemaDataSet> rows = new ArrayList<SchemaDataSet>();
+			IdentityHashMap<SchemaDataSet, Stripe> owners = new IdentityHashMap<SchemaDataSet, Stripe>();
+			for (Stripe stripe : query.getStripes()) {
+				for (SchemaDataSet row : find(stripe, query)) {
+					rows.add(row);
+					owners.put(row, stripe);
+				}
+			}
+			boolean found = !rows.isEmpty();
+			if (positional) {
+				if (filter.getOrdering().length != 0)
+					rows.sort(filter.getRowComparator());
+				rows = slice(rows, filter);
+			}
+
+			// Apply
+			for (SchemaDataSet row : rows) {
+				Stripe stripe = owners.get(row);
+				if (values == null)
+					removeRow(stripe, row);
+				else if (changesKey) {
+					// Move to the stripe of the new identification values
+					removeRow(stripe, row);
+					assign(row, values);
+					addRow(stripes[stripeFor(row)], row);
+				} else
+					updateRow(stripe, row, values);
+			}
+			if (values != null && !found)
+				insertRow(query, values);
+		} finally {
+			unlockAll();
+		}
+	}
+
+	private boolean changesKey(Query query, SchemaDataSet values) {
+		for (int column : keyColumns) {
+			if (values.isPresent(column) && (!query.filtered[column]
+					|| !DataPredicate.valueEquals(values.getValue(column), query.values[column])))
+				return true;
+		}
+		return false;
+	}
+
+	private void updateRow(Stripe stripe, SchemaDataSet row, SchemaDataSet values) {
+		// Remove the row from the indexes of changed columns
+		int[][] indexes = indexColumns;
+		boolean[] changed = new boolean[indexes.length];
+		for (int i = 0; i < indexes.length; i++) {
+			for (int column : indexes[i]) {
+				if (values.isPresent(column)) {
+					changed[i] = true;
+					unindex(stripe, i, row);
+					break;
+				}
+			}
+		}
+
+		// Assign and re-index
+		assign(row, values);
+		for (int i = 0; i < indexes.length; i++) {
+			if (changed[i])
+				index(stripe, i, row);
+		}
+	}
+
+	private void insertRow(Query query, SchemaDataSet values) {
+		SchemaDataSet row = schema.createDataSet();
+		for (int column : query.valueColumns)
+			row.setValue(column, query.values[column]);
+		assign(row, values);
+		addRow(stripes[stripeFor(row)], row);
+	}
+
+	private void assign(SchemaDataSet row, SchemaDataSet values) {
+		for (int column = 0; column < schema.getColumnCount(); column++) {
+			if (values.isPresent(column))
+				row.copyValue(values, column);
+		}
+	}
+
+	private void addRow(Stripe stripe, SchemaDataSet row) {
+		stripe.modifications++;
+		stripe.rows.add(row);
+		for (int i = 0; i < indexColumns.length; i++)
+			index(stripe, i, row);
+	}
+
+	private void removeRow(Stripe stripe, SchemaDataSet row) {
+		stripe.modifications++;
+		stripe.rows.remove(row);
+		for (int i = 0; i < indexColumns.length; i++)
+			unindex(stripe, i, row);
+	}
+
+	private void index(Stripe stripe, int index, SchemaDataSet row) {
+		stripe.modifications++;
+		stripe.indexes.get(index).computeIfAbsent(indexKey(indexColumns[index], t -> row.getValue(t)),
+				t -> new LinkedHashSet<SchemaDataSet>()).add(row);
+	}
+
+	private void unindex(Stripe stripe, int index, SchemaDataSet row) {
+		stripe.modifications++;
+		HashMap<Object, LinkedHashSet<SchemaDataSet>> buckets = stripe.indexes.get(index);
+		Object key = indexKey(indexColumns[index], t -> row.getValue(t));
+		LinkedHashSet<SchemaDataSet> bucket = buckets.get(key);
+		if (bucket != null && bucket.remove(row) && bucket.isEmpty())
+			buckets.remove(key);
+	}
+
+	private ArrayList<DataSet> select(Query query, long maxRows, int[] columns) {
+		ArrayList<DataSet> rows = new ArrayList<DataSet>();
+		for (Stripe stripe : query.getStripes()) {
+			if (maxRows != -1 && rows.size() >= maxRows)
+				break;
+			scan(stripe, query, maxRows == -1 ? -1 : maxRows - rows.size(), columns, rows);
+		}
+		return rows;
+	}
+
+	private List<DataSet> sorted(Query query, int[] columns) {
+		// Ordering columns may not be part of the requested columns, sort full rows
+		ArrayList<DataSet> rows = select(query, -1, null);
+		rows.sort(query.filter.getRowComparator());
+		List<DataSet> res = slice(rows, query.filter);
+		if (columns != null) {
+			for (int i = 0; i < res.size(); i++)
+				res.set(i, project((SchemaDataSet) res.get(i), columns));
+		}
+		return res;
+	}
+
+	private void scan(Stripe stripe, Query query, long maxRows, int[] columns, ArrayList<DataSet> output) {
+		stripe.lock.readLock().lock();
+		try {
+			long count = 0;
+			for (SchemaDataSet row : candidates(stripe, query)) {
+				if (maxRows != -1 && count >= maxRows)
+					break;
+				if (query.matches(row)) {
+					output.add(project(row, columns));
+					count++;
+				}
+			}
+		} finally {
+			stripe.lock.readLock().unlock();
+		}
+	}
+
+	private ArrayList<SchemaDataSet> find(Stripe stripe, Query query) {
+		// Collect first, the rows are modified afterwards
+		ArrayList<SchemaDataSet> rows = new ArrayList<SchemaDataSet>();
+		for (SchemaDataSet row : candidates(stripe, query)) {
+			if (query.matches(row))
+				rows.add(row);
+		}
+		return rows;
+	}
+
+	private Collection<SchemaDataSet> candidates(Stripe stripe, Query query) {
+		// Use the smallest bucket of the indexes covered by the filter
+		Collection<SchemaDataSet> best = stripe.rows;
+		int[][] indexes = indexColumns;
+		for (int i = 0; i < indexes.length; i++) {
+			if (!query.covers(indexes[i]))
+				continue;
+			LinkedHashSet<SchemaDataSet> bucket = stripe.indexes.get(i)
+					.get(indexKey(indexes[i], t -> query.values[t]));
+			if (bucket == null)
+				return Collections.emptySet();
+			if (bucket.size() < best.size())
+				best = bucket;
+		}
+		return best;
+	}
+
+	private DataSet project(SchemaDataSet row, int[] columns) {
+		if (columns == null)
+			return row.copy();
+		SchemaDataSet res = schema.createDataSet();
+		for (int column : columns)
+			res.copyValue(row, column);
+		return res;
+	}
+
+	private int[] resolveColumns(String[] columnNames) {
+		// Null selects all columns
+		if (columnNames.length == schema.getColumnCount())
+			return null;
+		int[] columns = new int[columnNames.length];
+		for (int i = 0; i < columns.length; i++)
+			columns[i] = schema.indexOf(columnNames[i]);
+		return columns;
+	}
+
+	private SchemaDataSet toSchemaSet(DataSet set) {
+		if (set instanceof SchemaDataSet && ((SchemaDataSet) set).getSchema() == schema)
+			return (SchemaDataSet) set;
+		SchemaDataSet values = schema.createDataSet();
+		for (DataEntry ent : set.getValues())
+			values.setValue(schema.indexOf(ent.getColumnName()), ent.getValue(Object.class));
+		return values;
+	}
+
+	private int stripeFor(SchemaDataSet row) {
+		// Tables without identification columns spread rows evenly
+		if (keyColumns.length == 0)
+			return Math.floorMod(nextStripe.getAndIncrement(), stripes.length);
+		return stripeOf(indexKey(keyColumns, t -> row.getValue(t)));
+	}
+
+	private int stripeOf(Object key) {
+		// Use the high bits of the mixed hash, the hash maps of the stripe use the low
+		// bits which would otherwise be the same for all keys of a stripe
+		int hash = (key == null ? 0 : key.hashCode()) * 0x9E3779B9;
+		return (int) (((hash >>> 16) * (long) stripes.length) >>> 16);
+	}
+
+	private void lockAll() {
+		// Always lock in the same order
+		for (Stripe stripe : stripes)
+			stripe.lock.writeLock().lock();
+	}
+
+	private void unlockAll() {
+		for (int i = stripes.length - 1; i >= 0; i--)
+			stripes[i].lock.writeLock().unlock();
+	}
+
+	private static <E> List<E> slice(List<E> rows, DataFilter filter) {
+		int start = (int) Math.min(filter.getOffset(), rows.size());
+		int end = filter.getLimit() == -1 ? rows.size() : (int) Math.min(rows.size(), start + (long) filter.getLimit());
+		return rows.subList(start, end);
+	}
+
+	static Object indexKey(int[] columns, IntFunction<Object> values) {
+		if (columns.length == 1)
+			return indexValue(values.apply(columns[0]));
+		Object[] key = new Object[columns.length];
+		for (int i = 0; i < key.length; i++)
+			key[i] = indexValue(values.apply(columns[i]));
+		return Arrays.asList(key);
+	}
+
+	private static Object indexValue(Object value) {
+		// Byte arrays are compared by content
+		if (value instanceof byte[])
+			return ByteBuffer.wrap((byte[]) value);
+		return value;
+	}
+
+}
@@ -0,0 +1,479 @@
+package org.asf.nexus.tables;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * 
+ * Row codec - compact binary encoding of rows bound to a table schema
+ * 
+ * Encoded rows start with the schema fingerprint, followed by a presence
+ * bitmap and a null bitmap (one bit per column each), followed by the values
+ * of all present non-null columns in column order. Booleans, bytes, chars,
+ * shorts, ints, longs, floats, doubles and dates are written as fixed-width
+ * values, strings and byte arrays are prefixed with their length as unsigned
+ * varint, object columns hold a length-prefixed java serialization stream.
+ * 
+ * Values are read from the slots of schema-bound data sets directly and
+ * strings are encoded as UTF-8 while writing, encoding into a reused buffer
+ * does not allocate per cell (except for object columns). Codecs hold no
+ * state and can be shared between threads, both sides need to use the same
+ * buffer byte order.
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public class RowCodec {
+
+	private TableSchema schema;
+	private long fingerprint;
+	private int bitmapSize;
+
+	/**
+	 * Creates a row codec
+	 * 
+	 * @param schema Table schema
+	 */
+	public RowCodec(TableSchema schema) {
+		this.schema = schema;
+		this.fingerprint = schema.getFingerprint();
+		this.bitmapSize = (schema.getColumnCount() + 7) >> 3;
+	}
+
+	/**
+	 * Retrieves the table schema of this codec
+	 * 
+	 * @return TableSchema instance
+	 */
+	public TableSchema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * Retrieves the schema fingerprint written in front of each row
+	 * 
+	 * @return Schema fingerprint
+	 */
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * Computes the amount of bytes needed to encode a row
+	 * 
+	 * @param row Row data set, columns that are not part of the schema are
+	 *            ignored
+	 * @return Encoded size in bytes
+	 */
+	public int getEncodedSize(DataSet row) {
+		SchemaDataSet set = bind(row);
+		int size = 8 + bitmapSize * 2;
+		for (int i = 0; i < schema.getColumnCount(); i++) {
+			if (!set.isPresent(i) || isNull(set, i))
+				continue;
+			DataType type = schema.getColumnType(i);
+			int width = fixedWidth(type);
+			if (width != -1) {
+				size += width;
+				continue;
+			}
+			int length;
+			if (type == DataType.STRING)
+				length = utf8Length((String) set.getValue(i));
+			else if (type == DataType.BYTE_ARRAY)
+				length = ((byte[]) set.getValue(i)).length;
+			else
+				length = serialize(i, set.getValue(i)).length;
+			size += varintLength(length) + length;
+		}
+		return size;
+	}
+
+	/**
+	 * Encodes a row
+	 * 
+	 * @param row Row data set, columns that are not part of the schema are
+	 *            ignored
+	 * @return Encoded row bytes
+	 */
+	public byte[] encode(DataSet row) {
+		SchemaDataSet set = bind(row);
+		byte[] data = new byte[getEncodedSize(set)];
+		encode(set, ByteBuffer.wrap(data));
+		return data;
+	}
+
+	/**
+	 * Encodes a row into a buffer, the buffer position is left unchanged if the
+	 * row does not fit
+	 * 
+	 * @param row    Row data set, columns that are not part of the schema are
+	 *               ignored
+	 * @param output Output buffer, written from its current position
+	 * @throws BufferOverflowException If the buffer does not have enough space
+	 *                                 remaining, use
+	 *                                 {@link #getEncodedSize(DataSet)} to find
+	 *                                 the required size
+	 */
+	public void encode(DataSet row, ByteBuffer output) throws BufferOverflowException {
+		SchemaDataSet set = bind(row);
+		int start = output.position();
+		try {
+			// Write header
+			output.putLong(fingerprint);
+			int bitmaps = output.position();
+			for (int i = 0; i < bitmapSize * 2; i++)
+				output.put((byte) 0);
+
+			// Write values
+			for (int i = 0; i < schema.getColumnCount(); i++) {
+				if (!set.isPresent(i))
+					continue;
+				int index = bitmaps + (i >> 3);
+				byte bit = (byte) (1 << (i & 7));
+				output.put(index, (byte) (output.get(index) | bit));
+				if (isNull(set, i)) {
+					output.put(index + bitmapSize, (byte) (output.get(index + bitmapSize) | bit));
+					continue;
+				}
+
+				switch (schema.getColumnType(i)) {
+
+				case BOOLEAN:
+				case BYTE:
+					output.put((byte) set.getLong(i));
+					break;
+
+				case CHAR:
+					output.putChar((char) set.getLong(i));
+					break;
+
+				case SHORT:
+					output.putShort((short) set.getLong(i));
+					break;
+
+				case INT:
+					output.putInt((int) set.getLong(i));
+					break;
+
+				case LONG:
+					output.putLong(set.getLong(i));
+					break;
+
+				case FLOAT:
+					output.putFloat((float) set.getDouble(i));
+					break;
+
+				case DOUBLE:
+					output.putDouble(set.getDouble(i));
+					break;
+
+				case DATE:
+					output.putLong(((Date) set.getValue(i)).getTime());
+					break;
+
+				case STRING:
+					String str = (String) set.getValue(i);
+					writeVarint(output, utf8Length(str));
+					writeUtf8(output, str);
+					break;
+
+				case BYTE_ARRAY:
+					byte[] bytes = (byte[]) set.getValue(i);
+					writeVarint(output, bytes.length);
+					output.put(bytes);
+					break;
+
+				default:
+					byte[] obj = serialize(i, set.getValue(i));
+					writeVarint(output, obj.length);
+					output.put(obj);
+					break;
+
+				}
+			}
+		} catch (BufferOverflowException e) {
+			output.position(start);
+			throw e;
+		}
+	}
+
+	/**
+	 * Decodes a row
+	 * 
+	 * @param input Input buffer, read from its current position
+	 * @return SchemaDataSet instance bound to the schema of this codec
+	 * @throws IllegalArgumentException If the row was encoded with a different
+	 *                                  schema or is malformed
+	 * @throws BufferUnderflowException If the buffer ends before the row does
+	 */
+	public SchemaDataSet decode(ByteBuffer input) throws IllegalArgumentException, BufferUnderflowException {
+		SchemaDataSet set = schema.createDataSet();
+		decode(input, set);
+		return set;
+	}
+
+	/**
+	 * Decodes a row into a existing data set, the data set is cleared first
+	 * 
+	 * @param input  Input buffer, read from its current position
+	 * @param output Data set to decode into, needs to use the same schema as this
+	 *               codec
+	 * @throws IllegalArgumentException If the row was encoded with a different
+	 *                                  schema or is malformed
+	 * @throws BufferUnderflowException If the buffer ends before the row does
+	 */
+	public void decode(ByteBuffer input, SchemaDataSet output)
+			throws IllegalArgumentException, BufferUnderflowException {
+		if (output.getSchema().getFingerprint() != fingerprint)
+			throw new IllegalArgumentException("Data set does not use the schema of the codec");
+
+		// Read header
+		long rowFingerprint = input.getLong();
+		if (rowFingerprint != fingerprint)
+			throw new IllegalArgumentException(String.format(
+					"Row was encoded with a different schema, row fingerprint %016x, expected %016x", rowFingerprint,
+					fingerprint));
+		int bitmaps = input.position();
+		if (input.remaining() < bitmapSize * 2)
+			throw new BufferUnderflowException();
+		input.position(bitmaps + bitmapSize * 2);
+
+		// Read values
+		output.clear();
+		for (int i = 0; i < schema.getColumnCount(); i++) {
+			int index = bitmaps + (i >> 3);
+			int bit = 1 << (i & 7);
+			if ((input.get(index) & bit) == 0)
+				continue;
+			if ((input.get(index + bitmapSize) & bit) != 0) {
+				output.setValue(i, null);
+				continue;
+			}
+
+			switch (schema.getColumnType(i)) {
+
+			case BOOLEAN:
+				output.setLong(i, input.get() != 0 ? 1 : 0);
+				break;
+
+			case BYTE:
+				output.setLong(i, input.get());
+				break;
+
+			case CHAR:
+				output.setLong(i, input.getChar());
+				break;
+
+			case SHORT:
+				output.setLong(i, input.getShort());
+				break;
+
+			case INT:
+				output.setLong(i, input.getInt());
+				break;
+
+			case LONG:
+				output.setLong(i, input.getLong());
+				break;
+
+			case FLOAT:
+				output.setDouble(i, input.getFloat());
+				break;
+
+			case DOUBLE:
+				output.setDouble(i, input.getDouble());
+				break;
+
+			case DATE:
+				output.setValue(i, new Date(input.getLong()));
+				break;
+
+			case STRING:
+				output.setValue(i, readUtf8(input, readLength(input)));
+				break;
+
+			case BYTE_ARRAY:
+				byte[] bytes = new byte[readLength(input)];
+				input.get(bytes);
+				output.setValue(i, bytes);
+				break;
+
+			default:
+				byte[] obj = new byte[readLength(input)];
+				input.get(obj);
+				output.setValue(i, deserialize(i, obj));
+				break;
+
+			}
+		}
+	}
+
+	private SchemaDataSet bind(DataSet row) {
+		// Use the slots of sets with a matching schema directly
+		if (row instanceof SchemaDataSet && ((SchemaDataSet) row).getSchema().getFingerprint() == fingerprint)
+			return (SchemaDataSet) row;
+
+		// Copy by column name
+		SchemaDataSet set = schema.createDataSet();
+		for (DataEntry entry : row.entries()) {
+			int column = schema.indexOf(entry.getColumnName());
+			if (column != -1)
+				set.setValue(column, entry.getValue(Object.class));
+		}
+		return set;
+	}
+
+	private boolean isNull(SchemaDataSet set, int column) {
+		if (set.isPrimitive(column))
+			return false;
+		return set.getValue(column) == null;
+	}
+
+	private static int fixedWidth(DataType type) {
+		switch (type) {
+
+		case BOOLEAN:
+		case BYTE:
+			return 1;
+
+		case CHAR:
+		case SHORT:
+			return 2;
+
+		case INT:
+		case FLOAT:
+			return 4;
+
+		case LONG:
+		case DOUBLE:
+		case DATE:
+			return 8;
+
+		default:
+			return -1;
+
+		}
+	}
+
+	private byte[] serialize(int column, Object value) {
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		try (ObjectOutputStream output = new ObjectOutputStream(data)) {
+			output.writeObject(value);
+		} catch (IOException e) {
+			throw new IllegalArgumentException(
+					"Unable to serialize the value of column " + schema.getColumnName(column), e);
+		}
+		return data.toByteArray();
+	}
+
+	private Object deserialize(int column, byte[] data) {
+		try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(data))) {
+			return input.readObject();
+		} catch (IOException | ClassNotFoundException e) {
+			throw new IllegalArgumentException(
+					"Unable to deserialize the value of column " + schema.getColumnName(column), e);
+		}
+	}
+
+	private static int varintLength(int value) {
+		int length = 1;
+		while ((value >>>= 7) != 0)
+			length++;
+		return length;
+	}
+
+	private static void writeVarint(ByteBuffer output, int value) {
+		while ((value & ~0x7F) != 0) {
+			output.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		output.put((byte) value);
+	}
+
+	private static int readLength(ByteBuffer input) {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = input.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				if (value < 0 || value > input.remaining())
+					throw new IllegalArgumentException("Malformed row, value length " + Integer.toUnsignedString(value)
+							+ " exceeds the remaining " + input.remaining() + " bytes");
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed row, value length is too long");
+	}
+
+	private static int utf8Length(String value) {
+		// Lone surrogates are written as '?', matching String.getBytes
+		int length = value.length();
+		int bytes = length;
+		for (int i = 0; i < length; i++) {
+			char ch = value.charAt(i);
+			if (ch < 0x80)
+				continue;
+			if (ch < 0x800)
+				bytes++;
+			else if (!Character.isSurrogate(ch))
+				bytes += 2;
+			else if (isSurrogatePair(value, i)) {
+				bytes += 2;
+				i++;
+			}
+		}
+		return bytes;
+	}
+
+	private static boolean isSurrogatePair(String value, int index) {
+		return Character.isHighSurrogate(value.charAt(index)) && index + 1 < value.length()
+				&& Character.isLowSurrogate(value.charAt(index + 1));
+	}
+
+	private static void writeUtf8(ByteBuffer output, String value) {
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			char ch = value.charAt(i);
+			if (ch < 0x80)
+				output.put((byte) ch);
+			else if (ch < 0x800) {
+				output.put((byte) (0xC0 | (ch >> 6)));
+				output.put((byte) (0x80 | (ch & 0x3F)));
+			} else if (!Character.isSurrogate(ch)) {
+				output.put((byte) (0xE0 | (ch >> 12)));
+				output.put((byte) (0x80 | ((ch >> 6) & 0x3F)));
+				output.put((byte) (0x80 | (ch & 0x3F)));
+			} else if (isSurrogatePair(value, i)) {
+				int codePoint = Character.toCodePoint(ch, value.charAt(++i));
+				output.put((byte) (0xF0 | (codePoint >> 18)));
+				output.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+				output.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+				output.put((byte) (0x80 | (codePoint & 0x3F)));
+			} else
+				output.put((byte) '?');
+		}
+	}
+
+	private static String readUtf8(ByteBuffer input, int length) {
+		if (input.hasArray()) {
+			// Decode in place
+			int position = input.position();
+			String value = new String(input.array(), input.arrayOffset() + position, length, StandardCharsets.UTF_8);
+			input.position(position + length);
+			return value;
+		}
+		byte[] data = new byte[length];
+		input.get(data);
+		return new String(data, StandardCharsets.UTF_8);
+	}
+
+}
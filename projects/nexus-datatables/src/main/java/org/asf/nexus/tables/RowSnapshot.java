@@ -0,0 +1,127 @@
+package org.asf.nexus.tables;
+
+import java.util.Date;
+
+/**
+ * 
+ * Row snapshot - compact replacement of the value cache used by row types
+ * annotated with CompactRowSnapshot
+ * 
+ * Holds a presence and a null bitset and one 64-bit value per column instead
+ * of a copy of the row. Primitives are kept as their raw bits and dates as
+ * their time, strings and byte arrays are kept as 64-bit FNV-1a hashes. Object
+ * columns can be modified in place and are always considered changed. Only
+ * the filter columns keep their previous values, these are needed to find the
+ * row when it is saved again.
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+class RowSnapshot {
+
+	private int[] keyColumns;
+	private Object[] keys;
+
+	// Presence bitset, null bitset and column values
+	private long[] data;
+	private int words;
+
+	RowSnapshot(SchemaDataSet set, int[] keyColumns) {
+		int columns = set.getSchema().getColumnCount();
+		words = (columns + 63) >>> 6;
+		data = new long[words * 2 + columns];
+		this.keyColumns = keyColumns;
+		keys = new Object[keyColumns.length];
+		update(set);
+	}
+
+	/**
+	 * Records the present columns of a data set, other columns keep their
+	 * previous values
+	 * 
+	 * @param set Data set using the schema of the table
+	 */
+	void update(SchemaDataSet set) {
+		for (int i = 0; i < set.getSchema().getColumnCount(); i++) {
+			if (!set.isPresent(i))
+				continue;
+			long bit = 1l << i;
+			int word = i >>> 6;
+			data[word] |= bit;
+			if (isNull(set, i)) {
+				data[words + word] |= bit;
+				data[words * 2 + i] = 0;
+			} else {
+				data[words + word] &= ~bit;
+				data[words * 2 + i] = valueOf(set, i);
+			}
+		}
+		for (int i = 0; i < keyColumns.length; i++) {
+			if (set.isPresent(keyColumns[i]))
+				keys[i] = set.getValue(keyColumns[i]);
+		}
+	}
+
+	/**
+	 * Checks if a column of a data set still holds the recorded value
+	 * 
+	 * @param set    Data set using the schema of the table
+	 * @param column Column index
+	 * @return True if unchanged, false otherwise
+	 */
+	boolean isUnchanged(SchemaDataSet set, int column) {
+		long bit = 1l << column;
+		int word = column >>> 6;
+		if ((data[word] & bit) == 0 || set.getSchema().getColumnType(column) == DataType.OBJECT)
+			return false;
+		boolean wasNull = (data[words + word] & bit) != 0;
+		if (isNull(set, column))
+			return wasNull;
+		return !wasNull && data[words * 2 + column] == valueOf(set, column);
+	}
+
+	/**
+	 * Adds the recorded values of the filter columns to a filter
+	 * 
+	 * @param filter Filter to populate
+	 * @param schema Table schema
+	 */
+	void populateFilter(DataFilter filter, TableSchema schema) {
+		for (int i = 0; i < keyColumns.length; i++) {
+			if (keys[i] != null)
+				filter.setValue(schema.getColumnName(keyColumns[i]), keys[i]);
+		}
+	}
+
+	private static boolean isNull(SchemaDataSet set, int column) {
+		return !set.isPrimitive(column) && set.getValue(column) == null;
+	}
+
+	private static long valueOf(SchemaDataSet set, int column) {
+		// Primitives are compared by their raw bits
+		if (set.isPrimitive(column)) {
+			if (set.getSchema().getStorage(column) == TableSchema.STORE_DOUBLE)
+				return Double.doubleToRawLongBits(set.getDouble(column));
+			return set.getLong(column);
+		}
+
+		// Hash other values
+		Object value = set.getValue(column);
+		if (value instanceof String) {
+			String str = (String) value;
+			long hash = 0xcbf29ce484222325l;
+			for (int i = 0; i < str.length(); i++)
+				hash = (hash ^ str.charAt(i)) * 0x100000001b3l;
+			return hash;
+		} else if (value instanceof byte[]) {
+			byte[] bytes = (byte[]) value;
+			long hash = 0xcbf29ce484222325l;
+			for (int i = 0; i < bytes.length; i++)
+				hash = (hash ^ (bytes[i] & 0xFF)) * 0x100000001b3l;
+			return hash;
+		} else if (value instanceof Date)
+			return ((Date) value).getTime();
+		return value.hashCode();
+	}
+
+}
@@ -0,0 +1,523 @@
+package org.asf.nexus.tables;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * 
+ * Schema-bound data set - stores values in slot arrays indexed by the column
+ * index of a table schema, primitive columns are stored without boxing
+ * 
+ * The name-based DataSet methods are a view over the slots, values of columns
+ * that are not part of the schema are stored like in a regular data set
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public class SchemaDataSet extends DataSet {
+
+	private static final byte ABSENT = 0;
+	private static final byte PRIMITIVE = 1;
+	private static final byte OBJECT = 2;
+
+	private TableSchema schema;
+	private byte[] states;
+	private long[] primitives;
+	private Object[] objects;
+	private int count;
+
+	// True if the slot arrays are shared with a copy of this set and need to be
+	// copied before they are modified
+	private boolean shared;
+
+	/**
+	 * Creates a empty schema-bound data set
+	 * 
+	 * @param schema Table schema
+	 */
+	public SchemaDataSet(TableSchema schema) {
+		int columns = schema.getColumnCount();
+		this.schema = schema;
+		states = new byte[columns];
+		objects = new Object[columns];
+		if (schema.hasPrimitiveColumns())
+			primitives = new long[columns];
+	}
+
+	private SchemaDataSet(SchemaDataSet source) {
+		schema = source.schema;
+		states = source.states;
+		primitives = source.primitives;
+		objects = source.objects;
+		count = source.count;
+		shared = true;
+	}
+
+	/**
+	 * Retrieves the schema of this data set
+	 * 
+	 * @return TableSchema instance
+	 */
+	public TableSchema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * Creates a copy of this data set, the slots are shared until either set is
+	 * modified
+	 * 
+	 * @return SchemaDataSet instance
+	 */
+	public SchemaDataSet copy() {
+		return copy(true);
+	}
+
+	SchemaDataSet copy(boolean includeOtherColumns) {
+		SchemaDataSet copy = new SchemaDataSet(this);
+
+		// Only write when needed, sets that are copied often are read by several
+		// threads at once
+		if (!shared)
+			shared = true;
+		if (includeOtherColumns && super.count() != 0)
+			super.shareWith(copy);
+		return copy;
+	}
+
+	private void beforeWrite() {
+		if (shared) {
+			states = states.clone();
+			objects = objects.clone();
+			if (primitives != null)
+				primitives = primitives.clone();
+			shared = false;
+		}
+	}
+
+	/**
+	 * Checks if a column has a value
+	 * 
+	 * @param column Column index
+	 * @return True if present, false otherwise
+	 */
+	public boolean isPresent(int column) {
+		return states[column] != ABSENT;
+	}
+
+	boolean isPrimitive(int column) {
+		return states[column] == PRIMITIVE;
+	}
+
+	/**
+	 * Retrieves the value of a column, primitives are boxed
+	 * 
+	 * @param column Column index
+	 * @return Value object or null
+	 */
+	public Object getValue(int column) {
+		switch (states[column]) {
+
+		case PRIMITIVE:
+			long value = primitives[column];
+			switch (schema.getColumnType(column)) {
+			case BOOLEAN:
+				return value != 0;
+			case BYTE:
+				return (byte) value;
+			case CHAR:
+				return (char) value;
+			case SHORT:
+				return (short) value;
+			case INT:
+				return (int) value;
+			case LONG:
+				return value;
+			case FLOAT:
+				return (float) Double.longBitsToDouble(value);
+			default:
+				return Double.longBitsToDouble(value);
+			}
+
+		case OBJECT:
+			return objects[column];
+
+		default:
+			return null;
+
+		}
+	}
+
+	/**
+	 * Retrieves the value type of a column
+	 * 
+	 * @param column Column index
+	 * @return DataType value
+	 */
+	public DataType getValueType(int column) {
+		switch (states[column]) {
+
+		case PRIMITIVE:
+			return schema.getColumnType(column);
+
+		case OBJECT:
+			return DataType.fromObject(objects[column]);
+
+		default:
+			return DataType.NULL;
+
+		}
+	}
+
+	/**
+	 * Retrieves the value of a integral, boolean or char column
+	 * 
+	 * @param column Column index
+	 * @return Value as long, booleans are returned as 1 or 0, absent and null
+	 *         values are returned as 0
+	 * @throws ClassCastException If the value is not integral
+	 */
+	public long getLong(int column) throws ClassCastException {
+		if (states[column] == PRIMITIVE && schema.getStorage(column) == TableSchema.STORE_LONG)
+			return primitives[column];
+		Object value = getValue(column);
+		if (value == null)
+			return 0;
+		else if (value instanceof Boolean)
+			return (Boolean) value ? 1 : 0;
+		else if (value instanceof Character)
+			return (Character) value;
+		return ((Number) value).longValue();
+	}
+
+	/**
+	 * Retrieves the value of a int column
+	 * 
+	 * @param column Column index
+	 * @return Value as int, absent and null values are returned as 0
+	 * @throws ClassCastException If the value is not integral
+	 */
+	public int getInt(int column) throws ClassCastException {
+		return (int) getLong(column);
+	}
+
+	/**
+	 * Retrieves the value of a boolean column
+	 * 
+	 * @param column Column index
+	 * @return Value as boolean, absent and null values are returned as false
+	 * @throws ClassCastException If the value is not a boolean
+	 */
+	public boolean getBoolean(int column) throws ClassCastException {
+		return getLong(column) != 0;
+	}
+
+	/**
+	 * Retrieves the value of a float or double column
+	 * 
+	 * @param column Column index
+	 * @return Value as double, absent and null values are returned as 0
+	 * @throws ClassCastException If the value is not a number
+	 */
+	public double getDouble(int column) throws ClassCastException {
+		if (states[column] == PRIMITIVE && schema.getStorage(column) == TableSchema.STORE_DOUBLE)
+			return Double.longBitsToDouble(primitives[column]);
+		Object value = getValue(column);
+		if (value == null)
+			return 0;
+		return ((Number) value).doubleValue();
+	}
+
+	/**
+	 * Assigns the value of a integral, boolean or char column
+	 * 
+	 * @param column Column index
+	 * @param value  New value, booleans are stored as 1 or 0
+	 * @throws IllegalArgumentException If the column is not integral
+	 */
+	public void setLong(int column, long value) throws IllegalArgumentException {
+		if (schema.getStorage(column) != TableSchema.STORE_LONG)
+			throw new IllegalArgumentException("Column " + schema.getColumnName(column) + " is a "
+					+ schema.getColumnType(column) + " column and cannot hold integral values");
+		setPrimitive(column, value);
+	}
+
+	/**
+	 * Assigns the value of a int column
+	 * 
+	 * @param column Column index
+	 * @param value  New value
+	 * @throws IllegalArgumentException If the column is not integral
+	 */
+	public void setInt(int column, int value) throws IllegalArgumentException {
+		setLong(column, value);
+	}
+
+	/**
+	 * Assigns the value of a boolean column
+	 * 
+	 * @param column Column index
+	 * @param value  New value
+	 * @throws IllegalArgumentException If the column is not integral
+	 */
+	public void setBoolean(int column, boolean value) throws IllegalArgumentException {
+		setLong(column, value ? 1 : 0);
+	}
+
+	/**
+	 * Assigns the value of a float or double column
+	 * 
+	 * @param column Column index
+	 * @param value  New value
+	 * @throws IllegalArgumentException If the column is not a float or double
+	 *                                  column
+	 */
+	public void setDouble(int column, double value) throws IllegalArgumentException {
+		if (schema.getStorage(column) != TableSchema.STORE_DOUBLE)
+			throw new IllegalArgumentException("Column " + schema.getColumnName(column) + " is a "
+					+ schema.getColumnType(column) + " column and cannot hold floating point values");
+		setPrimitive(column, Double.doubleToRawLongBits(value));
+	}
+
+	private void setPrimitive(int column, long value) {
+		beforeWrite();
+		if (states[column] == ABSENT)
+			count++;
+		states[column] = PRIMITIVE;
+		primitives[column] = value;
+		objects[column] = null;
+	}
+
+	/**
+	 * Assigns the value of a column, values matching the column type are
+	 * unboxed
+	 * 
+	 * @param column Column index
+	 * @param value  New value
+	 */
+	public void setValue(int column, Object value) {
+		if (value != null && schema.getStorage(column) != TableSchema.STORE_OBJECT) {
+			// Store primitives unboxed
+			switch (schema.getColumnType(column)) {
+			case BOOLEAN:
+				if (value instanceof Boolean) {
+					setPrimitive(column, (Boolean) value ? 1 : 0);
+					return;
+				}
+				break;
+			case BYTE:
+				if (value instanceof Byte) {
+					setPrimitive(column, (Byte) value);
+					return;
+				}
+				break;
+			case CHAR:
+				if (value instanceof Character) {
+					setPrimitive(column, (Character) value);
+					return;
+				}
+				break;
+			case SHORT:
+				if (value instanceof Short) {
+					setPrimitive(column, (Short) value);
+					return;
+				}
+				break;
+			case INT:
+				if (value instanceof Integer) {
+					setPrimitive(column, (Integer) value);
+					return;
+				}
+				break;
+			case LONG:
+				if (value instanceof Long) {
+					setPrimitive(column, (Long) value);
+					return;
+				}
+				break;
+			case FLOAT:
+				if (value instanceof Float) {
+					setPrimitive(column, Double.doubleToRawLongBits((Float) value));
+					return;
+				}
+				break;
+			case DOUBLE:
+				if (value instanceof Double) {
+					setPrimitive(column, Double.doubleToRawLongBits((Double) value));
+					return;
+				}
+				break;
+			default:
+				break;
+			}
+		}
+
+		// Store as object, values of the wrong type are kept so that they can be
+		// rejected by the table
+		beforeWrite();
+		if (states[column] == ABSENT)
+			count++;
+		states[column] = OBJECT;
+		objects[column] = value;
+	}
+
+	/**
+	 * Removes the value of a column
+	 * 
+	 * @param column Column index
+	 */
+	public void remove(int column) {
+		if (states[column] == ABSENT)
+			return;
+		beforeWrite();
+		states[column] = ABSENT;
+		objects[column] = null;
+		count--;
+	}
+
+	void copyValue(SchemaDataSet source, int column) {
+		// Copy the slot as-is, the source needs to use the same schema
+		byte state = source.states[column];
+		if (state == ABSENT) {
+			remove(column);
+			return;
+		}
+		beforeWrite();
+		if (states[column] == ABSENT)
+			count++;
+		states[column] = state;
+		objects[column] = source.objects[column];
+		if (state == PRIMITIVE)
+			primitives[column] = source.primitives[column];
+	}
+
+	boolean isSameValue(SchemaDataSet other, int column) {
+		// Compare the slots of sets using the same schema, primitives by their raw
+		// bits
+		byte state = states[column];
+		if (state != other.states[column])
+			return false;
+		if (state == PRIMITIVE)
+			return primitives[column] == other.primitives[column];
+		Object value = objects[column];
+		Object otherValue = other.objects[column];
+		if (value instanceof byte[] && otherValue instanceof byte[])
+			return Arrays.equals((byte[]) value, (byte[]) otherValue);
+		return state == OBJECT && value != null && value.equals(otherValue);
+	}
+
+	@Override
+	public Iterator<DataEntry> iterator() {
+		return Arrays.asList(getValues()).iterator();
+	}
+
+	@Override
+	public int count() {
+		return count + super.count();
+	}
+
+	@Override
+	public String[] getColumnNames() {
+		String[] other = super.getColumnNames();
+		String[] names = new String[count + other.length];
+		int i = 0;
+		for (int column = 0; column < states.length; column++) {
+			if (states[column] != ABSENT)
+				names[i++] = schema.getColumnName(column);
+		}
+		System.arraycopy(other, 0, names, i, other.length);
+		return names;
+	}
+
+	@Override
+	public DataEntry[] getValues() {
+		DataEntry[] other = super.getValues();
+		DataEntry[] values = new DataEntry[count + other.length];
+		int i = 0;
+		for (int column = 0; column < states.length; column++) {
+			if (states[column] != ABSENT)
+				values[i++] = new DataEntry(schema.getColumnName(column), getValue(column), getValueType(column));
+		}
+		System.arraycopy(other, 0, values, i, other.length);
+		return values;
+	}
+
+	@Override
+	public boolean has(String columnName) {
+		int column = schema.indexOf(columnName);
+		if (column != -1)
+			return states[column] != ABSENT;
+		return super.has(columnName);
+	}
+
+	@Override
+	public void clear() {
+		if (shared) {
+			states = new byte[states.length];
+			objects = new Object[objects.length];
+			if (primitives != null)
+				primitives = new long[primitives.length];
+			shared = false;
+		} else {
+			Arrays.fill(states, ABSENT);
+			Arrays.fill(objects, null);
+		}
+		count = 0;
+		super.clear();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <RT> RT getValue(String columnName, Class<RT> cls) throws ClassCastException {
+		int column = schema.indexOf(columnName);
+		if (column != -1)
+			return (RT) getValue(column);
+		return super.getValue(columnName, cls);
+	}
+
+	@Override
+	public DataType getValueType(String columnName) {
+		int column = schema.indexOf(columnName);
+		if (column != -1)
+			return getValueType(column);
+		return super.getValueType(columnName);
+	}
+
+	@Override
+	public <RT> void setValue(String columnName, RT value) {
+		int column = schema.indexOf(columnName);
+		if (column != -1)
+			setValue(column, value);
+		else
+			super.setValue(columnName, value);
+	}
+
+	@Override
+	public void remove(String columnName) {
+		int column = schema.indexOf(columnName);
+		if (column != -1)
+			remove(column);
+		else
+			super.remove(columnName);
+	}
+
+	@Override
+	Collection<DataEntry> entries() {
+		return Arrays.asList(getValues());
+	}
+
+	@Override
+	void putEntry(String key, DataEntry entry) {
+		setValue(entry.getColumnName(), entry.getValue(Object.class));
+	}
+
+	@Override
+	void shareWith(DataSet target) {
+		// The slots cannot be shared with a regular data set, copy the values
+		DataEntry[] values = getValues();
+		target.clear();
+		for (DataEntry entry : values)
+			target.setValue(entry.getColumnName(), entry.getValue(Object.class));
+	}
+
+}
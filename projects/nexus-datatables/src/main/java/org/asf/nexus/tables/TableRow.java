@@ -12,17 +12,35 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 public abstract class TableRow {
 
 	@JsonIgnore
-	private DataSet valueCache = new DataSet();
+	private DataSet valueCache;
+
+	@JsonIgnore
+	private RowSnapshot snapshot;
 
 	/**
 	 * Retrieves the value cache of this table row (holds all previous values
-	 * assigned when the row was deserialized)
+	 * assigned when the row was deserialized, row types annotated with
+	 * CompactRowSnapshot keep a snapshot instead and leave the cache empty)
 	 * 
 	 * @return DataSet instance
 	 */
 	@JsonIgnore
 	public DataSet getValueCache() {
+		if (valueCache == null)
+			valueCache = new DataSet();
 		return valueCache;
 	}
 
+	void setValueCache(DataSet valueCache) {
+		this.valueCache = valueCache;
+	}
+
+	RowSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	void setSnapshot(RowSnapshot snapshot) {
+		this.snapshot = snapshot;
+	}
+
 }
@@ -0,0 +1,197 @@
+package org.asf.nexus.tables;
+
+/**
+ * 
+ * Table schema - the column order and column types of a table, used by
+ * schema-bound data sets to store values by column index
+ * 
+ * Column names are resolved case-insensitively through a precomputed index so
+ * that lookups do not need to convert the name
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public class TableSchema {
+
+	static final byte STORE_OBJECT = 0;
+	static final byte STORE_LONG = 1;
+	static final byte STORE_DOUBLE = 2;
+
+	private String[] names;
+	private DataType[] types;
+	private byte[] storage;
+	private boolean primitiveColumns;
+
+	// Open addressing table of column index + 1, hashed by the case-folded name
+	private int[] index;
+	private int[] hashes;
+
+	private long fingerprint;
+
+	/**
+	 * Creates a table schema
+	 * 
+	 * @param names Column names, in column order
+	 * @param types Column types, in column order
+	 */
+	public TableSchema(String[] names, DataType[] types) {
+		if (names.length != types.length)
+			throw new IllegalArgumentException("Column name and column type count do not match");
+		this.names = names.clone();
+		this.types = types.clone();
+
+		// Find storage types
+		storage = new byte[names.length];
+		for (int i = 0; i < names.length; i++) {
+			switch (types[i]) {
+
+			case BOOLEAN:
+			case BYTE:
+			case CHAR:
+			case SHORT:
+			case INT:
+			case LONG:
+				storage[i] = STORE_LONG;
+				primitiveColumns = true;
+				break;
+
+			case FLOAT:
+			case DOUBLE:
+				storage[i] = STORE_DOUBLE;
+				primitiveColumns = true;
+				break;
+
+			default:
+				storage[i] = STORE_OBJECT;
+				break;
+
+			}
+		}
+
+		// Build name index
+		int size = 4;
+		while (size < names.length * 2)
+			size <<= 1;
+		index = new int[size];
+		hashes = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			if (indexOf(names[i]) != -1)
+				throw new IllegalArgumentException("Column " + names[i] + " was defined more than once");
+			int hash = hash(names[i]);
+			int slot = hash & (size - 1);
+			while (index[slot] != 0)
+				slot = (slot + 1) & (size - 1);
+			index[slot] = i + 1;
+			hashes[i] = hash;
+		}
+
+		// Compute fingerprint, 64-bit FNV-1a of the case-folded names and the type
+		// names in column order
+		long fp = 0xcbf29ce484222325l;
+		for (int i = 0; i < names.length; i++) {
+			String name = names[i];
+			for (int c = 0; c < name.length(); c++)
+				fp = (fp ^ Character.toLowerCase(Character.toUpperCase(name.charAt(c)))) * 0x100000001b3l;
+			fp = (fp ^ ':') * 0x100000001b3l;
+			String type = types[i].name();
+			for (int c = 0; c < type.length(); c++)
+				fp = (fp ^ type.charAt(c)) * 0x100000001b3l;
+			fp = (fp ^ ';') * 0x100000001b3l;
+		}
+		fingerprint = fp;
+	}
+
+	private static int hash(String name) {
+		// Matches the folding used by String.equalsIgnoreCase
+		int h = 0;
+		for (int i = 0; i < name.length(); i++)
+			h = 31 * h + Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Retrieves the amount of columns
+	 * 
+	 * @return Column count
+	 */
+	public int getColumnCount() {
+		return names.length;
+	}
+
+	/**
+	 * Retrieves the schema fingerprint, schemas with the same column names (ignoring
+	 * case), column types and column order have the same fingerprint
+	 * 
+	 * @return Schema fingerprint
+	 */
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * Retrieves the name of a column
+	 * 
+	 * @param column Column index
+	 * @return Column name
+	 */
+	public String getColumnName(int column) {
+		return names[column];
+	}
+
+	/**
+	 * Retrieves the type of a column
+	 * 
+	 * @param column Column index
+	 * @return Column DataType
+	 */
+	public DataType getColumnType(int column) {
+		return types[column];
+	}
+
+	/**
+	 * Retrieves all column names
+	 * 
+	 * @return Array of column name strings
+	 */
+	public String[] getColumnNames() {
+		return names.clone();
+	}
+
+	/**
+	 * Finds the index of a column (case-insensitive)
+	 * 
+	 * @param columnName Column name
+	 * @return Column index or -1 if the column is not part of the schema
+	 */
+	public int indexOf(String columnName) {
+		int hash = hash(columnName);
+		int slot = hash & (index.length - 1);
+		while (true) {
+			int column = index[slot] - 1;
+			if (column == -1)
+				return -1;
+			String name = names[column];
+			if (hashes[column] == hash && (name == columnName || name.equalsIgnoreCase(columnName)))
+				return column;
+			slot = (slot + 1) & (index.length - 1);
+		}
+	}
+
+	/**
+	 * Creates a empty data set bound to this schema
+	 * 
+	 * @return SchemaDataSet instance
+	 */
+	public SchemaDataSet createDataSet() {
+		return new SchemaDataSet(this);
+	}
+
+	byte getStorage(int column) {
+		return storage[column];
+	}
+
+	boolean hasPrimitiveColumns() {
+		return primitiveColumns;
+	}
+
+}
@@ -0,0 +1,23 @@
+package org.asf.nexus.tables.annotations;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * 
+ * Makes the data table serialization system keep a compact snapshot of each
+ * row object instead of the value cache, unchanged columns are detected
+ * through 64-bit column hashes and rows are found through the previous values
+ * of their filter fields (requires at least one field annotated with
+ * {@link UseAsFilter})
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+@Retention(RUNTIME)
+@Target(TYPE)
+public @interface CompactRowSnapshot {
+}
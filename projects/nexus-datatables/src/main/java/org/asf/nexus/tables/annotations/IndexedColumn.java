@@ -0,0 +1,20 @@
+package org.asf.nexus.tables.annotations;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * 
+ * Marks a field as indexed column, backends that keep their own indexes use
+ * this to speed up requests filtering on the column
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+@Retention(RUNTIME)
+@Target({ FIELD })
+public @interface IndexedColumn {
+}
@@ -0,0 +1,79 @@
+package org.asf.nexus.tables.impl;
+
+import org.asf.nexus.tables.TableRow;
+
+/**
+ * 
+ * Row accessor - creates row objects and reads and writes their column fields
+ * by column index
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public interface IRowAccessor {
+
+	/**
+	 * Creates a new row object
+	 * 
+	 * @return New TableRow instance
+	 */
+	public TableRow newInstance();
+
+	/**
+	 * Retrieves the value of a column field
+	 * 
+	 * @param row    Row object
+	 * @param column Field index
+	 * @return Field value, primitives are boxed
+	 */
+	public Object getValue(TableRow row, int column);
+
+	/**
+	 * Assigns the value of a column field
+	 * 
+	 * @param row    Row object
+	 * @param column Field index
+	 * @param value  New value, primitives need to be boxed
+	 */
+	public void setValue(TableRow row, int column, Object value);
+
+	/**
+	 * Retrieves the value of a integral, boolean or char column field without
+	 * boxing
+	 * 
+	 * @param row    Row object
+	 * @param column Field index
+	 * @return Field value, booleans are returned as 1 or 0
+	 */
+	public long getLong(TableRow row, int column);
+
+	/**
+	 * Assigns the value of a integral, boolean or char column field without
+	 * boxing
+	 * 
+	 * @param row    Row object
+	 * @param column Field index
+	 * @param value  New value, narrowed to the field type, non-zero values are
+	 *               assigned as true to boolean fields
+	 */
+	public void setLong(TableRow row, int column, long value);
+
+	/**
+	 * Retrieves the value of a float or double column field without boxing
+	 * 
+	 * @param row    Row object
+	 * @param column Field index
+	 * @return Field value
+	 */
+	public double getDouble(TableRow row, int column);
+
+	/**
+	 * Assigns the value of a float or double column field without boxing
+	 * 
+	 * @param row    Row object
+	 * @param column Field index
+	 * @param value  New value, narrowed to the field type
+	 */
+	public void setDouble(TableRow row, int column, double value);
+
+}
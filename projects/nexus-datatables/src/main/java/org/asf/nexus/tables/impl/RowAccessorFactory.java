@@ -0,0 +1,389 @@
+package org.asf.nexus.tables.impl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import org.asf.nexus.tables.TableRow;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * 
+ * Creates row accessors for table row types, accessors are generated as hidden
+ * classes next to the row type so that columns are read and written with plain
+ * field instructions instead of reflection
+ * 
+ * When a hidden class cannot be defined (for example when the row type is in a
+ * different module or has final column fields) a method handle based accessor
+ * is used instead
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public class RowAccessorFactory {
+
+	private static final int KIND_OBJECT = 0;
+	private static final int KIND_LONG = 1;
+	private static final int KIND_DOUBLE = 2;
+
+	/**
+	 * Creates a row accessor
+	 * 
+	 * @param rowType Row type
+	 * @param fields  Column fields, accessed by their index in this array
+	 * @return IRowAccessor instance
+	 */
+	public static IRowAccessor createAccessor(Class<?> rowType, Field[] fields) {
+		boolean canGenerate = true;
+		for (Field field : fields) {
+			// Final fields cannot be assigned by generated code
+			if (Modifier.isFinal(field.getModifiers()))
+				canGenerate = false;
+		}
+		if (canGenerate) {
+			try {
+				return defineHiddenAccessor(rowType, fields);
+			} catch (IllegalAccessException e) {
+			}
+		}
+		return createHandleAccessor(rowType, fields);
+	}
+
+	private static IRowAccessor defineHiddenAccessor(Class<?> rowType, Field[] fields) throws IllegalAccessException {
+		String ownerName = Type.getInternalName(rowType);
+		String rowName = Type.getInternalName(TableRow.class);
+
+		// Generate bytecode
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+
+			@Override
+			protected String getCommonSuperClass(String type1, String type2) {
+				// Frames only merge identical types, avoid loading classes
+				return "java/lang/Object";
+			}
+
+		};
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC,
+				ownerName + "$RowAccessor", null, "java/lang/Object",
+				new String[] { Type.getInternalName(IRowAccessor.class) });
+
+		// Generate constructor
+		MethodVisitor init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+		init.visitCode();
+		init.visitVarInsn(Opcodes.ALOAD, 0);
+		init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+		init.visitInsn(Opcodes.RETURN);
+		init.visitMaxs(0, 0);
+		init.visitEnd();
+
+		// Generate row constructor call
+		MethodVisitor create = writer.visitMethod(Opcodes.ACC_PUBLIC, "newInstance", "()L" + rowName + ";", null,
+				null);
+		create.visitCode();
+		create.visitTypeInsn(Opcodes.NEW, ownerName);
+		create.visitInsn(Opcodes.DUP);
+		create.visitMethodInsn(Opcodes.INVOKESPECIAL, ownerName, "<init>", "()V", false);
+		create.visitInsn(Opcodes.ARETURN);
+		create.visitMaxs(0, 0);
+		create.visitEnd();
+
+		// Generate getter
+		MethodVisitor get = writer.visitMethod(Opcodes.ACC_PUBLIC, "getValue", "(L" + rowName + ";I)Ljava/lang/Object;",
+				null, null);
+		get.visitCode();
+		Label[] labels = switchOnColumn(get, fields.length);
+		for (int i = 0; i < fields.length; i++) {
+			Field field = fields[i];
+			Type type = Type.getType(field.getType());
+			get.visitLabel(labels[i]);
+			get.visitVarInsn(Opcodes.ALOAD, 1);
+			get.visitTypeInsn(Opcodes.CHECKCAST, ownerName);
+			get.visitFieldInsn(Opcodes.GETFIELD, Type.getInternalName(field.getDeclaringClass()), field.getName(),
+					type.getDescriptor());
+			if (field.getType().isPrimitive()) {
+				Class<?> boxed = MethodType.methodType(field.getType()).wrap().returnType();
+				get.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(boxed), "valueOf",
+						"(" + type.getDescriptor() + ")" + Type.getDescriptor(boxed), false);
+			}
+			get.visitInsn(Opcodes.ARETURN);
+		}
+		get.visitMaxs(0, 0);
+		get.visitEnd();
+
+		// Generate setter
+		MethodVisitor set = writer.visitMethod(Opcodes.ACC_PUBLIC, "setValue",
+				"(L" + rowName + ";ILjava/lang/Object;)V", null, null);
+		set.visitCode();
+		labels = switchOnColumn(set, fields.length);
+		for (int i = 0; i < fields.length; i++) {
+			Field field = fields[i];
+			Type type = Type.getType(field.getType());
+			set.visitLabel(labels[i]);
+			set.visitVarInsn(Opcodes.ALOAD, 1);
+			set.visitTypeInsn(Opcodes.CHECKCAST, ownerName);
+			set.visitVarInsn(Opcodes.ALOAD, 3);
+			if (field.getType().isPrimitive()) {
+				Class<?> boxed = MethodType.methodType(field.getType()).wrap().returnType();
+				set.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(boxed));
+				set.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(boxed),
+						field.getType().getName() + "Value", "()" + type.getDescriptor(), false);
+			} else
+				set.visitTypeInsn(Opcodes.CHECKCAST, type.getInternalName());
+			set.visitFieldInsn(Opcodes.PUTFIELD, Type.getInternalName(field.getDeclaringClass()), field.getName(),
+					type.getDescriptor());
+			set.visitInsn(Opcodes.RETURN);
+		}
+		set.visitMaxs(0, 0);
+		set.visitEnd();
+
+		// Generate primitive accessors
+		generatePrimitiveGetter(writer, ownerName, rowName, fields, false);
+		generatePrimitiveSetter(writer, ownerName, rowName, fields, false);
+		generatePrimitiveGetter(writer, ownerName, rowName, fields, true);
+		generatePrimitiveSetter(writer, ownerName, rowName, fields, true);
+		writer.visitEnd();
+
+		// Define the class next to the row type
+		Lookup lookup = MethodHandles.privateLookupIn(rowType, MethodHandles.lookup());
+		Lookup hidden = lookup.defineHiddenClass(writer.toByteArray(), true);
+		try {
+			return (IRowAccessor) hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class))
+					.invoke();
+		} catch (Throwable e) {
+			throw new RuntimeException("Failed to create row accessor for " + rowType.getTypeName(), e);
+		}
+	}
+
+	private static void generatePrimitiveGetter(ClassWriter writer, String ownerName, String rowName, Field[] fields,
+			boolean floating) {
+		MethodVisitor get = writer.visitMethod(Opcodes.ACC_PUBLIC, floating ? "getDouble" : "getLong",
+				"(L" + rowName + ";I)" + (floating ? "D" : "J"), null, null);
+		get.visitCode();
+		Label[] labels = switchOnColumn(get, fields, floating ? KIND_DOUBLE : KIND_LONG);
+		for (int i = 0; i < fields.length; i++) {
+			Field field = fields[i];
+			if (primitiveKind(field.getType()) != (floating ? KIND_DOUBLE : KIND_LONG))
+				continue;
+			Type type = Type.getType(field.getType());
+			get.visitLabel(labels[i]);
+			get.visitVarInsn(Opcodes.ALOAD, 1);
+			get.visitTypeInsn(Opcodes.CHECKCAST, ownerName);
+			get.visitFieldInsn(Opcodes.GETFIELD, Type.getInternalName(field.getDeclaringClass()), field.getName(),
+					type.getDescriptor());
+			if (field.getType() == float.class)
+				get.visitInsn(Opcodes.F2D);
+			else if (!floating && field.getType() != long.class)
+				get.visitInsn(Opcodes.I2L);
+			get.visitInsn(floating ? Opcodes.DRETURN : Opcodes.LRETURN);
+		}
+		get.visitMaxs(0, 0);
+		get.visitEnd();
+	}
+
+	private static void generatePrimitiveSetter(ClassWriter writer, String ownerName, String rowName, Field[] fields,
+			boolean floating) {
+		MethodVisitor set = writer.visitMethod(Opcodes.ACC_PUBLIC, floating ? "setDouble" : "setLong",
+				"(L" + rowName + ";I" + (floating ? "D" : "J") + ")V", null, null);
+		set.visitCode();
+		Label[] labels = switchOnColumn(set, fields, floating ? KIND_DOUBLE : KIND_LONG);
+		for (int i = 0; i < fields.length; i++) {
+			Field field = fields[i];
+			Class<?> fieldType = field.getType();
+			if (primitiveKind(fieldType) != (floating ? KIND_DOUBLE : KIND_LONG))
+				continue;
+			Type type = Type.getType(fieldType);
+			set.visitLabel(labels[i]);
+			set.visitVarInsn(Opcodes.ALOAD, 1);
+			set.visitTypeInsn(Opcodes.CHECKCAST, ownerName);
+			set.visitVarInsn(floating ? Opcodes.DLOAD : Opcodes.LLOAD, 3);
+			if (fieldType == float.class)
+				set.visitInsn(Opcodes.D2F);
+			else if (fieldType == boolean.class) {
+				// (value | -value) >>> 63 is 1 for any non-zero value
+				set.visitInsn(Opcodes.DUP2);
+				set.visitInsn(Opcodes.LNEG);
+				set.visitInsn(Opcodes.LOR);
+				set.visitIntInsn(Opcodes.BIPUSH, 63);
+				set.visitInsn(Opcodes.LUSHR);
+				set.visitInsn(Opcodes.L2I);
+			} else if (!floating && fieldType != long.class) {
+				set.visitInsn(Opcodes.L2I);
+				if (fieldType == byte.class)
+					set.visitInsn(Opcodes.I2B);
+				else if (fieldType == short.class)
+					set.visitInsn(Opcodes.I2S);
+				else if (fieldType == char.class)
+					set.visitInsn(Opcodes.I2C);
+			}
+			set.visitFieldInsn(Opcodes.PUTFIELD, Type.getInternalName(field.getDeclaringClass()), field.getName(),
+					type.getDescriptor());
+			set.visitInsn(Opcodes.RETURN);
+		}
+		set.visitMaxs(0, 0);
+		set.visitEnd();
+	}
+
+	private static int primitiveKind(Class<?> type) {
+		if (type == float.class || type == double.class)
+			return KIND_DOUBLE;
+		else if (type.isPrimitive() && type != void.class)
+			return KIND_LONG;
+		return KIND_OBJECT;
+	}
+
+	private static Label[] switchOnColumn(MethodVisitor meth, int columns) {
+		return switchOnColumn(meth, new Field[columns], KIND_OBJECT);
+	}
+
+	private static Label[] switchOnColumn(MethodVisitor meth, Field[] fields, int kind) {
+		// Jump to the column label, unknown columns throw IndexOutOfBoundsException
+		// and fields of other kinds throw IllegalArgumentException
+		int columns = fields.length;
+		Label[] labels = new Label[columns];
+		Label invalid = new Label();
+		Label wrongKind = new Label();
+		boolean hasWrongKind = false;
+		for (int i = 0; i < labels.length; i++) {
+			if (kind == KIND_OBJECT || primitiveKind(fields[i].getType()) == kind)
+				labels[i] = new Label();
+			else {
+				labels[i] = wrongKind;
+				hasWrongKind = true;
+			}
+		}
+		if (columns != 0) {
+			meth.visitVarInsn(Opcodes.ILOAD, 2);
+			meth.visitTableSwitchInsn(0, columns - 1, invalid, labels);
+		}
+		meth.visitLabel(invalid);
+		meth.visitTypeInsn(Opcodes.NEW, "java/lang/IndexOutOfBoundsException");
+		meth.visitInsn(Opcodes.DUP);
+		meth.visitVarInsn(Opcodes.ILOAD, 2);
+		meth.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/IndexOutOfBoundsException", "<init>", "(I)V", false);
+		meth.visitInsn(Opcodes.ATHROW);
+		if (hasWrongKind) {
+			meth.visitLabel(wrongKind);
+			meth.visitTypeInsn(Opcodes.NEW, "java/lang/IllegalArgumentException");
+			meth.visitInsn(Opcodes.DUP);
+			meth.visitLdcInsn(kind == KIND_DOUBLE ? "Column field is not a float or double field"
+					: "Column field is not a integral, boolean or char field");
+			meth.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/IllegalArgumentException", "<init>",
+					"(Ljava/lang/String;)V", false);
+			meth.visitInsn(Opcodes.ATHROW);
+		}
+		return labels;
+	}
+
+	private static IRowAccessor createHandleAccessor(Class<?> rowType, Field[] fields) {
+		MethodHandle ctor;
+		MethodHandle[] getters = new MethodHandle[fields.length];
+		MethodHandle[] setters = new MethodHandle[fields.length];
+		try {
+			Lookup lookup = MethodHandles.lookup();
+			ctor = lookup.findConstructor(rowType, MethodType.methodType(void.class))
+					.asType(MethodType.methodType(TableRow.class));
+			for (int i = 0; i < fields.length; i++) {
+				fields[i].setAccessible(true);
+				getters[i] = lookup.unreflectGetter(fields[i])
+						.asType(MethodType.methodType(Object.class, TableRow.class));
+				setters[i] = lookup.unreflectSetter(fields[i])
+						.asType(MethodType.methodType(void.class, TableRow.class, Object.class));
+			}
+		} catch (IllegalAccessException | NoSuchMethodException | RuntimeException e) {
+			throw new IllegalArgumentException("Failed to create row accessor for " + rowType.getTypeName(), e);
+		}
+
+		return new IRowAccessor() {
+
+			@Override
+			public TableRow newInstance() {
+				try {
+					return (TableRow) ctor.invokeExact();
+				} catch (Throwable e) {
+					throw new IllegalArgumentException("Failed to create a new instance of " + rowType, e);
+				}
+			}
+
+			@Override
+			public Object getValue(TableRow row, int column) {
+				try {
+					return (Object) getters[column].invokeExact(row);
+				} catch (RuntimeException e) {
+					throw e;
+				} catch (Throwable e) {
+					throw new IllegalArgumentException("Failed to retrieve the value of " + fields[column].getName(),
+							e);
+				}
+			}
+
+			@Override
+			public void setValue(TableRow row, int column, Object value) {
+				try {
+					setters[column].invokeExact(row, value);
+				} catch (RuntimeException e) {
+					throw e;
+				} catch (Throwable e) {
+					throw new IllegalArgumentException("Failed to assign field " + fields[column].getName(), e);
+				}
+			}
+
+			@Override
+			public long getLong(TableRow row, int column) {
+				Object value = getValue(row, column);
+				if (value instanceof Boolean)
+					return (Boolean) value ? 1 : 0;
+				else if (value instanceof Character)
+					return (Character) value;
+				else if (value instanceof Number && primitiveKind(fields[column].getType()) == KIND_LONG)
+					return ((Number) value).longValue();
+				throw new IllegalArgumentException("Column field is not a integral, boolean or char field");
+			}
+
+			@Override
+			public void setLong(TableRow row, int column, long value) {
+				Class<?> type = fields[column].getType();
+				if (type == boolean.class)
+					setValue(row, column, value != 0);
+				else if (type == byte.class)
+					setValue(row, column, (byte) value);
+				else if (type == short.class)
+					setValue(row, column, (short) value);
+				else if (type == char.class)
+					setValue(row, column, (char) value);
+				else if (type == int.class)
+					setValue(row, column, (int) value);
+				else if (type == long.class)
+					setValue(row, column, value);
+				else
+					throw new IllegalArgumentException("Column field is not a integral, boolean or char field");
+			}
+
+			@Override
+			public double getDouble(TableRow row, int column) {
+				if (primitiveKind(fields[column].getType()) != KIND_DOUBLE)
+					throw new IllegalArgumentException("Column field is not a float or double field");
+				return ((Number) getValue(row, column)).doubleValue();
+			}
+
+			@Override
+			public void setDouble(TableRow row, int column, double value) {
+				Class<?> type = fields[column].getType();
+				if (type == float.class)
+					setValue(row, column, (float) value);
+				else if (type == double.class)
+					setValue(row, column, value);
+				else
+					throw new IllegalArgumentException("Column field is not a float or double field");
+			}
+
+		};
+	}
+
+}
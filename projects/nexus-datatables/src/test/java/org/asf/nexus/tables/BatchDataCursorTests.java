@@ -0,0 +1,180 @@
+package org.asf.nexus.tables;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+import org.asf.nexus.tables.annotations.TableColumn;
+import org.asf.nexus.tables.annotations.UseAsFilter;
+import org.junit.Test;
+
+public class BatchDataCursorTests {
+
+	public static class CursorRow extends TableRow {
+
+		@TableColumn
+		@UseAsFilter
+		public int id;
+
+		@TableColumn
+		public String name;
+
+	}
+
+	private static class CountingCursor extends BatchDataCursor {
+
+		public int rows;
+		public int returned;
+		public int closed;
+		public ArrayList<Integer> requests = new ArrayList<Integer>();
+		public boolean fail;
+
+		public CountingCursor(int rows, int fetchSize) {
+			super(fetchSize);
+			this.rows = rows;
+		}
+
+		@Override
+		protected DataSet[] fetch(int maxRows) throws IOException {
+			if (fail)
+				throw new IOException("Fetch failed");
+			requests.add(maxRows);
+			int count = Math.min(maxRows, rows - returned);
+			DataSet[] batch = new DataSet[count];
+			for (int i = 0; i < count; i++) {
+				DataSet set = new DataSet();
+				set.setValue("id", returned++);
+				batch[i] = set;
+			}
+			return batch;
+		}
+
+		@Override
+		protected void closeInternal() {
+			closed++;
+		}
+
+	}
+
+	@Test
+	public void testBatches() throws IOException {
+		CountingCursor cursor = new CountingCursor(10, 4);
+		assertEquals(4, cursor.getFetchSize());
+		int expected = 0;
+		while (cursor.hasNext()) {
+			assertEquals(expected++, (int) cursor.next().getValue("id", Integer.class));
+
+			// Rows are fetched one batch at a time
+			assertEquals(expected / 4 + (expected % 4 == 0 ? 0 : 1), cursor.requests.size());
+		}
+		assertEquals(10, expected);
+		assertEquals(3, cursor.requests.size());
+		for (int request : cursor.requests)
+			assertEquals(4, request);
+
+		// The cursor releases the backend after the last row
+		assertEquals(1, cursor.closed);
+		cursor.close();
+		assertEquals(1, cursor.closed);
+		try {
+			cursor.next();
+			fail("Expected a NoSuchElementException");
+		} catch (NoSuchElementException e) {
+		}
+	}
+
+	@Test
+	public void testExactBatches() {
+		// A full last batch needs one more fetch to find the end
+		CountingCursor cursor = new CountingCursor(8, 4);
+		int count = 0;
+		while (cursor.hasNext()) {
+			cursor.next();
+			count++;
+		}
+		assertEquals(8, count);
+		assertEquals(3, cursor.requests.size());
+		assertEquals(1, cursor.closed);
+	}
+
+	@Test
+	public void testEarlyClose() throws IOException {
+		CountingCursor cursor = new CountingCursor(100, 10);
+		cursor.next();
+		cursor.close();
+		assertFalse(cursor.hasNext());
+		assertEquals(1, cursor.requests.size());
+		assertEquals(1, cursor.closed);
+	}
+
+	@Test
+	public void testFetchFailure() {
+		CountingCursor cursor = new CountingCursor(10, 4);
+		cursor.fail = true;
+		try {
+			cursor.hasNext();
+			fail("Expected an UncheckedIOException");
+		} catch (UncheckedIOException e) {
+			assertEquals("Fetch failed", e.getCause().getMessage());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidFetchSize() {
+		new CountingCursor(10, 0);
+	}
+
+	@Test
+	public void testInMemoryCursor() throws IOException {
+		DataSet first = new DataSet();
+		DataSet second = new DataSet();
+		IDataCursor cursor = IDataCursor.of(first, second);
+		assertTrue(cursor.next() == first);
+		assertTrue(cursor.hasNext());
+		cursor.close();
+		assertFalse(cursor.hasNext());
+	}
+
+	@Test
+	public void testStreamRows() throws IOException {
+		MemoryDataTable<CursorRow> table = new MemoryDataTable<CursorRow>(CursorRow.class);
+		table.setFetchSize(3);
+		for (int i = 0; i < 20; i++) {
+			CursorRow row = new CursorRow();
+			row.id = i;
+			row.name = "row" + i;
+			table.setRows(row);
+		}
+
+		// Streams convert rows as they are consumed
+		try (Stream<CursorRow> rows = table.streamRows()) {
+			assertEquals(190, rows.mapToInt(t -> t.id).sum());
+		}
+		try (Stream<DataSet> rows = table.streamRows(new DataFilter(), "name")) {
+			assertTrue(rows.allMatch(t -> t.count() == 1 && t.getValue("name", String.class).startsWith("row")));
+		}
+		try (IDataCursor cursor = table.openCursor(new DataFilter(), "id")) {
+			int count = 0;
+			while (cursor.hasNext()) {
+				cursor.next();
+				count++;
+			}
+			assertEquals(20, count);
+		}
+		assertEquals(20, table.getAllRows().length);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidCursorColumn() throws IOException {
+		MemoryDataTable<CursorRow> table = new MemoryDataTable<CursorRow>(CursorRow.class);
+		table.openCursor(new DataFilter(), "missing");
+	}
+
+}
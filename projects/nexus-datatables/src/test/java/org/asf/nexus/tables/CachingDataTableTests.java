@@ -0,0 +1,328 @@
+package org.asf.nexus.tables;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.asf.nexus.tables.annotations.TableColumn;
+import org.asf.nexus.tables.annotations.UseAsFilter;
+import org.junit.Test;
+
+public class CachingDataTableTests {
+
+	public static class CachedRow extends TableRow {
+
+		@TableColumn
+		@UseAsFilter
+		public int id;
+
+		@TableColumn
+		public String name;
+
+		@TableColumn
+		public int level;
+
+	}
+
+	private static class FailingTable extends MemoryDataTable<CachedRow> {
+
+		public int batches;
+		public IOException batchError;
+
+		public FailingTable() {
+			super(CachedRow.class);
+		}
+
+		@Override
+		protected void executeBatchInternal(DataBatchOperation[] operations, DataBatchResult result)
+				throws IOException {
+			batches++;
+			if (batchError != null)
+				throw batchError;
+			ArrayList<DataBatchOperation> accepted = new ArrayList<DataBatchOperation>();
+			for (DataBatchOperation op : operations) {
+				String name = op.getDataSet() == null ? null : op.getDataSet().getValue("name", String.class);
+				if ("fail".equals(name))
+					result.markFailed(op.getIndex(), new IOException("Rejected"));
+				else if ("invalid".equals(name))
+					result.markFailed(op.getIndex(), new IllegalArgumentException("Invalid"));
+				else
+					accepted.add(op);
+			}
+			super.executeBatchInternal(accepted.toArray(t -> new DataBatchOperation[t]), result);
+		}
+
+	}
+
+	private static CachingDataTable<CachedRow> createCache(DataTable<CachedRow> backend) {
+		// Scheduled flushes do not run during the tests
+		return new CachingDataTable<CachedRow>(backend, 100, 1, TimeUnit.HOURS, 1, TimeUnit.HOURS);
+	}
+
+	@Test
+	public void testReadCaching() throws IOException {
+		FailingTable backend = new FailingTable();
+		backend.setRows(row(1, "one", 1));
+		backend.setRows(row(2, "two", 2));
+		CachingDataTable<CachedRow> table = createCache(backend);
+
+		// Identified reads are loaded once
+		assertEquals("one", table.getFirstRow(filter(1)).name);
+		assertEquals("one", table.getFirstRow(filter(1)).name);
+		assertEquals(1, table.getMissCount());
+		assertEquals(1, table.getHitCount());
+		assertEquals(1, table.getBackendReadCount());
+		assertEquals(1, table.getCachedRowCount());
+
+		// Missing rows are cached as well, other reads go to the backend
+		assertNull(table.getFirstRow(filter(3)));
+		assertNull(table.getFirstRow(filter(3)));
+		assertEquals(2, table.getBackendReadCount());
+		assertEquals(2, table.getAllRows().length);
+		assertEquals(3, table.getBackendReadCount());
+
+		// Rows read from the cache are not shared with the caller
+		CachedRow first = table.getFirstRow(filter(1));
+		first.name = "changed";
+		assertEquals("one", table.getFirstRow(filter(1)).name);
+		table.invalidate();
+		assertEquals(0, table.getCachedRowCount());
+	}
+
+	@Test
+	public void testColumnProjection() throws IOException {
+		FailingTable backend = new FailingTable();
+		backend.setRows(row(1, "one", 5));
+		CachingDataTable<CachedRow> table = createCache(backend);
+		table.getFirstRow(filter(1));
+
+		// Cached rows only return the requested columns
+		DataSet set = table.getFirstRow(filter(1), "name");
+		assertEquals(1, table.getHitCount());
+		assertEquals(1, set.count());
+		assertEquals("one", set.getValue("name", String.class));
+		assertFalse(set.has("level"));
+		set = table.getFirstRow(filter(1), "level", "id");
+		assertEquals(2, set.count());
+		assertEquals(5, (int) set.getValue("level", Integer.class));
+		assertEquals(1, table.streamRows(filter(1), "level").findFirst().get().count());
+		assertEquals(3, table.getFirstRow(filter(1), "id", "name", "level").count());
+	}
+
+	@Test
+	public void testWriteBehind() throws IOException {
+		FailingTable backend = new FailingTable();
+		CachingDataTable<CachedRow> table = createCache(backend);
+		CachedRow row = row(1, "one", 1);
+		table.setRows(row);
+		row.level = 2;
+		table.setRows(row);
+
+		// Updates of the row are coalesced and held back
+		assertEquals(1, table.getPendingWriteCount());
+		assertEquals(1, table.getCoalescedWriteCount());
+		assertEquals(0, backend.getRowCount());
+		assertEquals(2, table.getFirstRow(filter(1)).level);
+
+		// Other reads see the pending updates
+		assertEquals(1, table.getAllRows().length);
+		assertEquals(0, table.getPendingWriteCount());
+		assertEquals(1, backend.batches);
+		assertEquals(2, backend.getFirstRow(filter(1)).level);
+		table.close();
+		assertEquals(1, table.getFlushCount());
+	}
+
+	@Test
+	public void testFailedFlush() throws IOException {
+		FailingTable backend = new FailingTable();
+		backend.setRows(row(1, "one", 1));
+		CachingDataTable<CachedRow> table = createCache(backend);
+		CachedRow row = table.getFirstRow(filter(1));
+		row.level = 2;
+		table.setRows(row);
+
+		// Failed updates stay queued and cached
+		backend.batchError = new IOException("Backend unavailable");
+		try {
+			table.flush();
+			fail("Expected an IOException");
+		} catch (IOException e) {
+			assertTrue(e.getCause() == backend.batchError);
+		}
+		assertEquals(1, table.getPendingWriteCount());
+		assertEquals(1, table.getCachedRowCount());
+		assertEquals(2, table.getFirstRow(filter(1)).level);
+		assertEquals(1, backend.getFirstRow(filter(1)).level);
+
+		// Reads that need the backend report the failure
+		try {
+			table.getAllRows();
+			fail("Expected an IOException");
+		} catch (IOException e) {
+		}
+		assertEquals(1, table.getPendingWriteCount());
+
+		// Retried updates include the later updates
+		backend.batchError = null;
+		row.name = "updated";
+		table.setRows(row);
+		table.flush();
+		assertEquals(0, table.getPendingWriteCount());
+		assertEquals(0, table.getDroppedWriteCount());
+		CachedRow saved = backend.getFirstRow(filter(1));
+		assertEquals("updated", saved.name);
+		assertEquals(2, saved.level);
+		table.close();
+	}
+
+	@Test
+	public void testDroppedWrites() throws IOException {
+		FailingTable backend = new FailingTable();
+		backend.setRows(row(1, "one", 1));
+		CachingDataTable<CachedRow> table = createCache(backend);
+		CachedRow row = table.getFirstRow(filter(1));
+
+		// Rejected updates are dropped along with the cached row
+		row.name = "invalid";
+		table.setRows(row);
+		try {
+			table.flush();
+			fail("Expected an IOException");
+		} catch (IOException e) {
+		}
+		assertEquals(0, table.getPendingWriteCount());
+		assertEquals(0, table.getCachedRowCount());
+		assertEquals(1, table.getDroppedWriteCount());
+		assertEquals("one", table.getFirstRow(filter(1)).name);
+		assertEquals(1, table.getAllRows().length);
+
+		// Updates that keep failing are dropped after the last attempt
+		table.setMaxWriteAttempts(2);
+		backend.batchError = new IOException("Backend unavailable");
+		row = table.getFirstRow(filter(1));
+		row.level = 2;
+		table.setRows(row);
+		for (int i = 0; i < 2; i++) {
+			try {
+				table.getAllRows();
+				fail("Expected an IOException");
+			} catch (IOException e) {
+			}
+		}
+		assertEquals(0, table.getPendingWriteCount());
+		assertEquals(2, table.getDroppedWriteCount());
+		backend.batchError = null;
+		assertEquals(1, table.getAllRows().length);
+
+		// Closing retries until the updates are written or dropped
+		backend.batchError = new IOException("Backend unavailable");
+		row.level = 3;
+		table.setRows(row);
+		try {
+			table.close();
+			fail("Expected an IOException");
+		} catch (IOException e) {
+		}
+		assertEquals(0, table.getPendingWriteCount());
+		assertEquals(3, table.getDroppedWriteCount());
+		assertEquals(0, table.getCachedRowCount());
+		table.close();
+		assertEquals(1, backend.getFirstRow(filter(1)).level);
+	}
+
+	@Test
+	public void testConcurrentReads() throws Exception {
+		FailingTable backend = new FailingTable();
+		backend.setRows(row(1, "0", 0));
+		CachingDataTable<CachedRow> table = createCache(backend);
+		table.getFirstRow(filter(1));
+
+		// Readers never see a partially applied update
+		AtomicBoolean running = new AtomicBoolean(true);
+		AtomicInteger torn = new AtomicInteger();
+		Thread[] readers = new Thread[3];
+		for (int i = 0; i < readers.length; i++) {
+			readers[i] = new Thread(() -> {
+				try {
+					while (running.get()) {
+						CachedRow read = table.getFirstRow(filter(1));
+						if (!read.name.equals(Integer.toString(read.level)))
+							torn.incrementAndGet();
+					}
+				} catch (IOException e) {
+					torn.incrementAndGet();
+				}
+			});
+			readers[i].start();
+		}
+		try {
+			CachedRow row = table.getFirstRow(filter(1));
+			for (int i = 1; i <= 50000; i++) {
+				row.name = Integer.toString(i);
+				row.level = i;
+				table.setRows(row);
+			}
+		} finally {
+			running.set(false);
+			for (Thread reader : readers)
+				reader.join();
+		}
+		assertEquals(0, torn.get());
+		table.close();
+		assertEquals(50000, backend.getFirstRow(filter(1)).level);
+	}
+
+	@Test
+	public void testBatchWriteBehind() throws IOException {
+		FailingTable backend = new FailingTable();
+		CachingDataTable<CachedRow> table = createCache(backend);
+		ArrayList<CachedRow> rows = new ArrayList<CachedRow>();
+		rows.add(row(1, "one", 1));
+		rows.add(row(2, "fail", 2));
+		rows.add(row(3, "three", 3));
+
+		// Batches write their updates before returning
+		DataBatchResult result = table.setRows(rows);
+		assertEquals(1, result.getFailureCount());
+		assertFalse(result.isSuccessful(1));
+		assertEquals("Rejected", result.getError(1).getMessage());
+		assertEquals(2, backend.getRowCount());
+		assertFalse(rows.get(1).getValueCache().has("id"));
+
+		// Rejected updates stay queued until they can be written
+		assertEquals(1, table.getPendingWriteCount());
+		rows.get(1).name = "two";
+		assertTrue(table.setRows(rows.subList(1, 2)).isSuccessful());
+		assertEquals(0, table.getPendingWriteCount());
+		assertEquals("two", backend.getFirstRow(filter(2)).name);
+
+		// Removals are written through
+		assertTrue(table.removeRows(rows.subList(0, 1)).isSuccessful());
+		assertEquals(2, backend.getRowCount());
+		assertNull(table.getFirstRow(filter(1)));
+	}
+
+	private static DataFilter filter(int id) {
+		DataFilter filter = new DataFilter();
+		filter.setValue("id", id);
+		return filter;
+	}
+
+	private static CachedRow row(int id, String name, int level) {
+		CachedRow row = new CachedRow();
+		row.id = id;
+		row.name = name;
+		row.level = level;
+		return row;
+	}
+
+}
@@ -0,0 +1,165 @@
+package org.asf.nexus.tables;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.asf.nexus.tables.annotations.TableColumn;
+import org.asf.nexus.tables.annotations.UseAsFilter;
+import org.junit.Test;
+
+public class DataBatchTests {
+
+	public static class BatchRow extends TableRow {
+
+		@TableColumn
+		@UseAsFilter
+		public int id;
+
+		@TableColumn
+		public String name;
+
+	}
+
+	private static class RecordingTable extends MemoryDataTable<BatchRow> {
+
+		public int batches;
+		public ArrayList<DataBatchOperation> operations = new ArrayList<DataBatchOperation>();
+		public IOException batchError;
+
+		public RecordingTable() {
+			super(BatchRow.class);
+		}
+
+		@Override
+		protected void executeBatchInternal(DataBatchOperation[] operations, DataBatchResult result)
+				throws IOException {
+			batches++;
+			this.operations.addAll(Arrays.asList(operations));
+			ArrayList<DataBatchOperation> accepted = new ArrayList<DataBatchOperation>();
+			for (DataBatchOperation op : operations) {
+				if (op.getDataSet() != null && "fail".equals(op.getDataSet().getValue("name", String.class)))
+					result.markFailed(op.getIndex(), new IOException("Rejected"));
+				else
+					accepted.add(op);
+			}
+			if (batchError != null)
+				throw batchError;
+			super.executeBatchInternal(accepted.toArray(t -> new DataBatchOperation[t]), result);
+		}
+
+	}
+
+	@Test
+	public void testBatch() throws IOException {
+		RecordingTable table = new RecordingTable();
+		ArrayList<BatchRow> rows = new ArrayList<BatchRow>();
+		for (int i = 0; i < 5; i++)
+			rows.add(row(i, i == 3 ? "fail" : "row" + i));
+
+		// The backend receives all rows at once, failures are reported by index
+		DataBatchResult result = table.setRows(rows);
+		assertEquals(1, table.batches);
+		assertEquals(5, table.operations.size());
+		assertEquals(5, result.size());
+		assertFalse(result.isSuccessful());
+		assertEquals(1, result.getFailureCount());
+		assertArrayEquals(new Object[] { 3 }, Arrays.stream(result.getFailedIndexes()).boxed().toArray());
+		assertFalse(result.isSuccessful(3));
+		assertTrue(result.isSuccessful(4));
+		assertEquals("Rejected", result.getError(3).getMessage());
+		assertNull(result.getError(4));
+
+		// Only saved rows update their value cache
+		assertEquals(0, (int) rows.get(0).getValueCache().getValue("id", Integer.class));
+		assertFalse(rows.get(3).getValueCache().has("id"));
+		assertEquals(4, table.getRowCount());
+
+		// Removals
+		result = table.removeRows(rows.subList(0, 2));
+		assertTrue(result.isSuccessful());
+		assertEquals(2, table.getRowCount());
+	}
+
+	@Test
+	public void testValidation() throws IOException {
+		RecordingTable table = new RecordingTable();
+		DataSet wrongType = new DataSet();
+		wrongType.setValue("id", "text");
+		DataSet valid = new DataSet();
+		valid.setValue("name", "valid");
+		DataBatch<BatchRow> batch = table.newBatch().setRows(new DataFilter(), wrongType)
+				.removeRows(new DataFilter().orderBy("missing")).setRows((BatchRow) null)
+				.setRows(new DataFilter(), null).removeRows((DataFilter) null).setRows(new DataFilter(), valid);
+		assertEquals(6, batch.size());
+
+		// Invalid items are not sent to the backend
+		DataBatchResult result = batch.execute();
+		assertEquals(0, batch.size());
+		assertEquals(5, result.getFailureCount());
+		assertTrue(result.isSuccessful(5));
+		for (int i = 0; i < 5; i++)
+			assertTrue(result.getError(i) instanceof IllegalArgumentException);
+		assertEquals(1, table.operations.size());
+		assertEquals(1, table.batches);
+
+		// Nothing is sent if all items are invalid
+		result = table.newBatch().setRows((BatchRow) null).execute();
+		assertFalse(result.isSuccessful(0));
+		assertEquals(1, table.batches);
+	}
+
+	@Test
+	public void testBackendFailure() {
+		RecordingTable table = new RecordingTable();
+		table.batchError = new IOException("Backend unavailable");
+		ArrayList<BatchRow> rows = new ArrayList<BatchRow>();
+		rows.add(row(1, "one"));
+		rows.add(row(2, "fail"));
+		rows.add(row(3, "three"));
+
+		// Items the backend did not report on fail with the batch error
+		DataBatchResult result = table.setRows(rows);
+		assertEquals(3, result.getFailureCount());
+		assertEquals("Rejected", result.getError(1).getMessage());
+		assertTrue(result.getError(0) == table.batchError);
+		assertTrue(result.getError(2) == table.batchError);
+		try {
+			result.throwIfFailed();
+			fail("Expected an IOException");
+		} catch (IOException e) {
+			assertTrue(e.getCause() == table.batchError);
+			assertEquals(1, e.getSuppressed().length);
+		}
+	}
+
+	@Test
+	public void testThrowIfFailed() throws IOException {
+		RecordingTable table = new RecordingTable();
+		ArrayList<BatchRow> rows = new ArrayList<BatchRow>();
+		rows.add(row(1, "one"));
+		table.setRows(rows).throwIfFailed();
+		rows.add(row(2, "fail"));
+		try {
+			table.setRows(rows).throwIfFailed();
+			fail("Expected an IOException");
+		} catch (IOException e) {
+			assertEquals("Rejected", e.getCause().getMessage());
+		}
+	}
+
+	private static BatchRow row(int id, String name) {
+		BatchRow row = new BatchRow();
+		row.id = id;
+		row.name = name;
+		return row;
+	}
+
+}
@@ -0,0 +1,219 @@
+package org.asf.nexus.tables;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.stream.Stream;
+
+import org.asf.nexus.tables.DataPredicate.Operator;
+import org.asf.nexus.tables.annotations.TableColumn;
+import org.asf.nexus.tables.annotations.UseAsFilter;
+import org.junit.Test;
+
+public class DataFilterTests {
+
+	public static class FilterRow extends TableRow {
+
+		@TableColumn
+		@UseAsFilter
+		public int id;
+
+		@TableColumn
+		public String group;
+
+		@TableColumn
+		public long score;
+
+		@TableColumn
+		public byte[] data;
+
+	}
+
+	private static class ValueTable extends MemoryDataTable<FilterRow> {
+
+		public ValueTable() {
+			super(FilterRow.class);
+		}
+
+		@Override
+		public boolean supportsQueryFilters() {
+			return false;
+		}
+
+	}
+
+	@Test
+	public void testPredicates() {
+		assertTrue(new DataPredicate("a", Operator.NOT_EQUAL, 1).test(2));
+		assertFalse(new DataPredicate("a", Operator.NOT_EQUAL, 1).test(1));
+
+		// Unlike SQL, null is compared like any other value
+		assertTrue(new DataPredicate("a", Operator.NOT_EQUAL, 1).test(null));
+		assertTrue(new DataPredicate("a", Operator.NOT_EQUAL, (Object) null).test(1));
+		assertFalse(new DataPredicate("a", Operator.NOT_EQUAL, (Object) null).test(null));
+		assertTrue(new DataPredicate("a", Operator.LESS_THAN, 5).test(4));
+		assertFalse(new DataPredicate("a", Operator.LESS_THAN, 5).test(5));
+		assertTrue(new DataPredicate("a", Operator.LESS_OR_EQUAL, 5).test(5));
+		assertTrue(new DataPredicate("a", Operator.GREATER_THAN, "b").test("c"));
+		assertFalse(new DataPredicate("a", Operator.GREATER_THAN, "b").test("b"));
+		assertTrue(new DataPredicate("a", Operator.GREATER_OR_EQUAL, "b").test("b"));
+		assertTrue(new DataPredicate("a", Operator.IN, 1, 2, 3).test(2));
+		assertFalse(new DataPredicate("a", Operator.IN, 1, 2, 3).test(4));
+		assertTrue(new DataPredicate("a", Operator.IN, 1, null).test(null));
+		assertTrue(new DataPredicate("a", Operator.IN, new byte[] { 1 }).test(new byte[] { 1 }));
+
+		// Null never matches a range
+		assertFalse(new DataPredicate("a", Operator.LESS_THAN, 5).test(null));
+		assertFalse(new DataPredicate("a", Operator.GREATER_OR_EQUAL, 5).test(null));
+		assertTrue(Operator.LESS_THAN.isRange());
+		assertFalse(Operator.IN.isRange());
+	}
+
+	@Test
+	public void testInvalidPredicates() {
+		try {
+			new DataPredicate("a", Operator.LESS_THAN, 1, 2);
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			new DataPredicate("a", Operator.GREATER_THAN, (Object) null);
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			new DataFilter().limit(-2);
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			new DataFilter().offset(-1);
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testMatches() {
+		DataFilter filter = new DataFilter();
+		filter.setValue("group", "a");
+		assertTrue(filter.isValueFilter());
+		filter.where("score", Operator.GREATER_THAN, 10l).whereIn("id", 1, 2, 3);
+		assertFalse(filter.isValueFilter());
+		assertTrue(filter.matches(row(1, "a", 11)));
+		assertFalse(filter.matches(row(1, "b", 11)));
+		assertFalse(filter.matches(row(1, "a", 10)));
+		assertFalse(filter.matches(row(4, "a", 11)));
+		assertTrue(new DataFilter().whereBetween("score", 5l, 10l).matches(row(1, "a", 10)));
+		assertFalse(new DataFilter().whereBetween("score", 5l, 10l).matches(row(1, "a", 4)));
+	}
+
+	@Test
+	public void testOrdering() {
+		ArrayList<DataSet> rows = new ArrayList<DataSet>();
+		rows.add(row(1, "b", 3));
+		rows.add(row(2, "a", 1));
+		rows.add(row(3, null, 2));
+		rows.add(row(4, "a", 5));
+		rows.add(row(5, "b", 4));
+
+		// Nulls are ordered first, ties are broken by the next ordering column
+		DataFilter filter = new DataFilter().orderBy("group").orderBy("score", true);
+		assertArrayEquals(new Object[] { 3, 4, 2, 5, 1 }, ids(filter.apply(rows.stream())));
+		filter.offset(1).limit(2);
+		assertArrayEquals(new Object[] { 4, 2 }, ids(filter.apply(rows.stream())));
+
+		// Keyset pagination continues after the last row of the previous page
+		DataFilter page = new DataFilter().orderBy("group").orderBy("score", true).limit(2);
+		assertArrayEquals(new Object[] { 3, 4 }, ids(page.apply(rows.stream())));
+		page.seekAfter(row(4, "a", 5));
+		assertArrayEquals(new Object[] { 2, 5 }, ids(page.apply(rows.stream())));
+		page.seekAfter("b", 4l);
+		assertArrayEquals(new Object[] { 1 }, ids(page.apply(rows.stream())));
+	}
+
+	@Test
+	public void testTableFilters() throws IOException {
+		MemoryDataTable<FilterRow> table = new MemoryDataTable<FilterRow>(FilterRow.class);
+		for (int i = 0; i < 20; i++) {
+			FilterRow row = new FilterRow();
+			row.id = i;
+			row.group = i % 2 == 0 ? "even" : "odd";
+			row.score = 100 - i;
+			table.setRows(row);
+		}
+
+		// Predicates, ordering, offset and limit
+		DataFilter filter = new DataFilter().where("score", Operator.LESS_THAN, 90l).orderBy("score").limit(3);
+		filter.setValue("group", "odd");
+		FilterRow[] rows = table.getAllRows(filter);
+		assertEquals(3, rows.length);
+		assertEquals(19, rows[0].id);
+		assertEquals(17, rows[1].id);
+		assertEquals(15, rows[2].id);
+		assertEquals(13, table.getFirstRow(filter.seekAfter(rows[2].getValueCache())).id);
+		assertEquals(3, table.getAllRows(new DataFilter().whereIn("id", 1, 2, 3, 4, 40).offset(1)).length);
+		assertTrue(table.hasRows(new DataFilter().where("id", Operator.GREATER_OR_EQUAL, 19)));
+		assertFalse(table.hasRows(new DataFilter().where("id", Operator.GREATER_THAN, 19)));
+
+		// Filters on missing or incomparable columns and mismatched values are rejected
+		expectRejected(table, new DataFilter().where("missing", Operator.NOT_EQUAL, 1));
+		expectRejected(table, new DataFilter().where("data", Operator.LESS_THAN, new byte[0]));
+		expectRejected(table, new DataFilter().where("score", Operator.LESS_THAN, 1));
+		expectRejected(table, new DataFilter().orderBy("data"));
+		expectRejected(table, new DataFilter().orderBy("score").seekAfter(1l, 2));
+	}
+
+	@Test
+	public void testValueOnlyBackend() throws IOException {
+		ValueTable table = new ValueTable();
+		FilterRow row = new FilterRow();
+		row.id = 5;
+		row.group = "a";
+		table.setRows(row);
+
+		// Value filters still work, query filters are rejected instead of matching every row
+		DataFilter filter = new DataFilter();
+		filter.setValue("id", 5);
+		assertEquals("a", table.getFirstRow(filter).group);
+		expectRejected(table, new DataFilter().where("id", Operator.NOT_EQUAL, 5));
+		expectRejected(table, new DataFilter().limit(1));
+		try {
+			table.removeRows(new DataFilter().where("id", Operator.NOT_EQUAL, 5));
+			fail("Expected the filter to be rejected");
+		} catch (IllegalArgumentException e) {
+		}
+		assertEquals(1, table.getRowCount());
+
+		// Caching tables follow their backend
+		assertFalse(new CachingDataTable<FilterRow>(table).supportsQueryFilters());
+		assertTrue(new CachingDataTable<FilterRow>(new MemoryDataTable<FilterRow>(FilterRow.class))
+				.supportsQueryFilters());
+	}
+
+	private static void expectRejected(MemoryDataTable<FilterRow> table, DataFilter filter) throws IOException {
+		try {
+			table.getAllRows(filter);
+			fail("Expected the filter to be rejected");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	private static Object[] ids(Stream<DataSet> rows) {
+		return rows.map(t -> t.getValue("id", Object.class)).toArray();
+	}
+
+	private static DataSet row(int id, String group, long score) {
+		DataSet set = new DataSet();
+		set.setValue("id", id);
+		set.setValue("group", group);
+		set.setValue("score", score);
+		return set;
+	}
+
+}
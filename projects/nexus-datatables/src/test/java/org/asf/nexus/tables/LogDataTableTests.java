@@ -0,0 +1,417 @@
+package org.asf.nexus.tables;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.asf.nexus.tables.DataPredicate.Operator;
+import org.asf.nexus.tables.annotations.TableColumn;
+import org.asf.nexus.tables.annotations.UseAsFilter;
+import org.junit.Test;
+
+public class LogDataTableTests {
+
+	public static class LogRow extends TableRow {
+
+		@TableColumn
+		@UseAsFilter
+		public int id;
+
+		@TableColumn
+		public String name;
+
+		@TableColumn
+		public int level;
+
+	}
+
+	public static class TypesRow extends TableRow {
+
+		@TableColumn
+		@UseAsFilter
+		public String id;
+
+		@TableColumn
+		public String text;
+
+		@TableColumn
+		public char grade;
+
+		@TableColumn
+		public byte flags;
+
+		@TableColumn
+		public short rank;
+
+		@TableColumn
+		public int level;
+
+		@TableColumn
+		public long score;
+
+		@TableColumn
+		public float ratio;
+
+		@TableColumn
+		public double balance;
+
+		@TableColumn
+		public boolean active;
+
+		@TableColumn
+		public byte[] data;
+
+		@TableColumn
+		public Date created;
+
+		@TableColumn
+		public ArrayList<String> tags;
+
+	}
+
+	@Test
+	public void testValueRoundTrip() throws IOException {
+		File directory = Files.createTempDirectory("logtable").toFile();
+		try {
+			TypesRow row = new TypesRow();
+			row.id = "row";
+			row.grade = 'Z';
+			row.flags = (byte) 0xf0;
+			row.rank = Short.MIN_VALUE;
+			row.level = -42;
+			row.score = Long.MAX_VALUE;
+			row.ratio = 0.25f;
+			row.balance = 1520.123456789;
+			row.active = true;
+			row.data = new byte[] { 1, 2, 3 };
+			row.created = new Date(1600000000000l);
+			row.tags = new ArrayList<String>(Arrays.asList("a", "b"));
+			TypesRow negativeZero = new TypesRow();
+			negativeZero.id = "zero";
+			negativeZero.balance = -0.0;
+
+			// Values are read back from the active segment and after replaying the log
+			LogDataTable<TypesRow> table = new LogDataTable<TypesRow>(TypesRow.class, directory);
+			try {
+				table.setRows(row);
+				table.setRows(negativeZero);
+				checkTypes(table, row);
+			} finally {
+				table.close();
+			}
+			table = new LogDataTable<TypesRow>(TypesRow.class, directory);
+			try {
+				checkTypes(table, row);
+				assertEquals(Double.doubleToRawLongBits(-0.0),
+						Double.doubleToRawLongBits(table.getFirstRow(filter("zero")).balance));
+			} finally {
+				table.close();
+			}
+		} finally {
+			delete(directory);
+		}
+	}
+
+	private static void checkTypes(LogDataTable<TypesRow> table, TypesRow expected) throws IOException {
+		TypesRow row = table.getFirstRow(filter(expected.id));
+		assertNull(row.text);
+		assertEquals(expected.grade, row.grade);
+		assertEquals(expected.flags, row.flags);
+		assertEquals(expected.rank, row.rank);
+		assertEquals(expected.level, row.level);
+		assertEquals(expected.score, row.score);
+		assertEquals(expected.ratio, row.ratio, 0);
+		assertEquals(expected.balance, row.balance, 0);
+		assertEquals(expected.active, row.active);
+		assertArrayEquals(expected.data, row.data);
+		assertEquals(expected.created, row.created);
+		assertEquals(expected.tags, row.tags);
+	}
+
+	@Test
+	public void testReplay() throws IOException {
+		File directory = Files.createTempDirectory("logtable").toFile();
+		try {
+			LogDataTable<LogRow> table = new LogDataTable<LogRow>(LogRow.class, directory);
+			try {
+				for (int i = 0; i < 10; i++)
+					table.setRows(row(i, "row" + i, i));
+				LogRow row = table.getFirstRow(filter(3));
+				row.level = 30;
+				table.setRows(row);
+				table.removeRows(filter(4));
+
+				// Moved rows remove their previous identification values
+				row = table.getFirstRow(filter(5));
+				row.id = 50;
+				table.setRows(row);
+				assertEquals(9, table.getRowCount());
+			} finally {
+				table.close();
+			}
+
+			table = new LogDataTable<LogRow>(LogRow.class, directory);
+			try {
+				assertEquals(9, table.getRowCount());
+				assertEquals(30, table.getFirstRow(filter(3)).level);
+				assertNull(table.getFirstRow(filter(4)));
+				assertNull(table.getFirstRow(filter(5)));
+				assertEquals("row5", table.getFirstRow(filter(50)).name);
+
+				// Writes continue after the replayed records
+				table.setRows(row(4, "new", 40));
+			} finally {
+				table.close();
+			}
+			table = new LogDataTable<LogRow>(LogRow.class, directory);
+			try {
+				assertEquals(10, table.getRowCount());
+				assertEquals("new", table.getFirstRow(filter(4)).name);
+			} finally {
+				table.close();
+			}
+		} finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void testChecksumTruncation() throws IOException {
+		File directory = Files.createTempDirectory("logtable").toFile();
+		try {
+			LogDataTable<LogRow> table = new LogDataTable<LogRow>(LogRow.class, directory);
+			try {
+				for (int i = 0; i < 3; i++)
+					table.setRows(row(i, "row" + i, i));
+			} finally {
+				table.close();
+			}
+
+			// Corrupt the last record
+			File[] segments = directory.listFiles(t -> t.length() != 0);
+			assertEquals(1, segments.length);
+			long size = segments[0].length();
+			try (RandomAccessFile file = new RandomAccessFile(segments[0], "rw")) {
+				file.seek(size - 1);
+				int value = file.read();
+				file.seek(size - 1);
+				file.write(value ^ 0xff);
+			}
+
+			// The corrupted record ends the segment
+			table = new LogDataTable<LogRow>(LogRow.class, directory);
+			try {
+				assertEquals(2, table.getRowCount());
+				assertNull(table.getFirstRow(filter(2)));
+				assertTrue(segments[0].length() < size);
+				table.setRows(row(2, "rewritten", 2));
+			} finally {
+				table.close();
+			}
+			table = new LogDataTable<LogRow>(LogRow.class, directory);
+			try {
+				assertEquals(3, table.getRowCount());
+				assertEquals("rewritten", table.getFirstRow(filter(2)).name);
+			} finally {
+				table.close();
+			}
+		} finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void testCompaction() throws IOException {
+		File directory = Files.createTempDirectory("logtable").toFile();
+		try {
+			LogDataTable<LogRow> table = new LogDataTable<LogRow>(LogRow.class, directory, 256);
+			try {
+				for (int update = 0; update < 5; update++) {
+					for (int i = 0; i < 10; i++)
+						table.setRows(row(i, "row" + i, update));
+				}
+				table.removeRows(new DataFilter().where("id", Operator.LESS_THAN, 5));
+				assertTrue(table.getSegmentCount() > 2);
+
+				// Only the latest records are kept
+				table.compact();
+				assertTrue(table.getSegmentCount() <= 2);
+				assertEquals(table.getSegmentCount(), directory.listFiles().length);
+				assertEquals(5, table.getRowCount());
+				assertEquals(4, table.getFirstRow(filter(7)).level);
+			} finally {
+				table.close();
+			}
+
+			// Removed rows stay removed after replaying the compacted log
+			table = new LogDataTable<LogRow>(LogRow.class, directory, 256);
+			try {
+				assertEquals(5, table.getRowCount());
+				assertNull(table.getFirstRow(filter(2)));
+				for (int i = 5; i < 10; i++)
+					assertEquals(4, table.getFirstRow(filter(i)).level);
+			} finally {
+				table.close();
+			}
+		} finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void testKeyCollision() throws IOException {
+		File directory = Files.createTempDirectory("logtable").toFile();
+		try {
+			LogDataTable<LogRow> table = new LogDataTable<LogRow>(LogRow.class, directory);
+			try {
+				table.setRows(row(1, "one", 1));
+				table.setRows(row(2, "two", 2));
+
+				// Rows may not take the identification values of another row
+				LogRow row = table.getFirstRow(filter(1));
+				row.id = 2;
+				expectDuplicate(() -> table.setRows(row));
+				DataFilter stale = filter(1);
+				stale.setValue("name", "other");
+				expectDuplicate(() -> table.setRows(stale, "level", 5));
+				expectDuplicate(() -> table.setRows(new DataFilter(), "id", 3));
+
+				// Nothing was written
+				assertEquals(2, table.getRowCount());
+				assertEquals("one", table.getFirstRow(filter(1)).name);
+				assertEquals(2, table.getFirstRow(filter(2)).level);
+				assertNull(table.getFirstRow(filter(3)));
+
+				// Batches report the rejected rows
+				ArrayList<LogRow> rows = new ArrayList<LogRow>();
+				rows.add(row(3, "three", 3));
+				rows.add(row);
+				DataBatchResult result = table.setRows(rows);
+				assertTrue(result.isSuccessful(0));
+				assertFalse(result.isSuccessful(1));
+				assertEquals(3, table.getRowCount());
+			} finally {
+				table.close();
+			}
+		} finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void testInterruptedRead() throws IOException {
+		File directory = Files.createTempDirectory("logtable").toFile();
+		try {
+			LogDataTable<LogRow> table = new LogDataTable<LogRow>(LogRow.class, directory);
+			try {
+				table.setRows(row(1, "one", 1));
+
+				// Interrupted readers do not close the channel of the writer
+				Thread.currentThread().interrupt();
+				try {
+					table.getFirstRow(filter(1));
+				} catch (IOException | UncheckedIOException e) {
+				} finally {
+					Thread.interrupted();
+				}
+				assertEquals("one", table.getFirstRow(filter(1)).name);
+				table.setRows(row(2, "two", 2));
+				table.sync();
+			} finally {
+				table.close();
+			}
+			table = new LogDataTable<LogRow>(LogRow.class, directory);
+			try {
+				assertEquals(2, table.getRowCount());
+			} finally {
+				table.close();
+			}
+		} finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void testScan() throws IOException {
+		File directory = Files.createTempDirectory("logtable").toFile();
+		try {
+			LogDataTable<LogRow> table = new LogDataTable<LogRow>(LogRow.class, directory);
+			try {
+				for (int i = 0; i < 50; i++)
+					table.setRows(row(i, i % 2 == 0 ? "even" : "odd", i));
+				table.setFetchSize(4);
+
+				// Scans continue through the index while rows are added
+				int count = 0;
+				try (IDataCursor cursor = table.openCursor(new DataFilter(), "id")) {
+					while (cursor.hasNext()) {
+						cursor.next();
+						if (count++ == 10)
+							table.setRows(row(100, "added", 100));
+					}
+				}
+				assertTrue(count >= 50);
+
+				// Filters, offsets and limits
+				DataFilter filter = new DataFilter().offset(5).limit(10);
+				filter.setValue("name", "odd");
+				assertEquals(10, table.getAllRows(filter).length);
+				assertTrue(table.hasRows(new DataFilter().offset(50)));
+				assertFalse(table.hasRows(new DataFilter().offset(51)));
+				assertEquals(49, table.getAllRows(new DataFilter().orderBy("level", true).offset(1).limit(1))[0].id);
+			} finally {
+				table.close();
+			}
+		} finally {
+			delete(directory);
+		}
+	}
+
+	private static void expectDuplicate(IOAction action) {
+		try {
+			action.run();
+			fail("Expected an IOException");
+		} catch (IOException e) {
+		}
+	}
+
+	private interface IOAction {
+		public void run() throws IOException;
+	}
+
+	private static DataFilter filter(Object id) {
+		DataFilter filter = new DataFilter();
+		filter.setValue("id", id);
+		return filter;
+	}
+
+	private static LogRow row(int id, String name, int level) {
+		LogRow row = new LogRow();
+		row.id = id;
+		row.name = name;
+		row.level = level;
+		return row;
+	}
+
+	private static void delete(File directory) {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files)
+				file.delete();
+		}
+		directory.delete();
+	}
+
+}
@@ -0,0 +1,161 @@
+package org.asf.nexus.tables;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashSet;
+
+import org.asf.nexus.tables.annotations.IndexedColumn;
+import org.asf.nexus.tables.annotations.TableColumn;
+import org.asf.nexus.tables.annotations.UseAsFilter;
+import org.junit.Test;
+
+public class MemoryDataTableTests {
+
+	public static class MemoryRow extends TableRow {
+
+		@TableColumn
+		@UseAsFilter
+		public int id;
+
+		@TableColumn
+		@IndexedColumn
+		public String group;
+
+		@TableColumn
+		public int level;
+
+	}
+
+	private static MemoryDataTable<MemoryRow> createTable(int stripes, int rows) throws IOException {
+		MemoryDataTable<MemoryRow> table = new MemoryDataTable<MemoryRow>(MemoryRow.class, stripes);
+		for (int i = 0; i < rows; i++)
+			table.setRows(row(i, i % 2 == 0 ? "even" : "odd", i));
+		return table;
+	}
+
+	@Test
+	public void testIdentifiedRows() throws IOException {
+		MemoryDataTable<MemoryRow> table = createTable(4, 20);
+		assertEquals(20, table.getRowCount());
+		assertEquals(7, table.getFirstRow(filter(7)).level);
+		assertNull(table.getFirstRow(filter(20)));
+
+		// Updates of identified rows
+		MemoryRow row = table.getFirstRow(filter(7));
+		row.level = 70;
+		table.setRows(row);
+		assertEquals(70, table.getFirstRow(filter(7)).level);
+		assertEquals(20, table.getRowCount());
+
+		// Changing the identification moves the row
+		row.id = 100;
+		table.setRows(row);
+		assertNull(table.getFirstRow(filter(7)));
+		assertEquals(70, table.getFirstRow(filter(100)).level);
+		assertEquals(20, table.getRowCount());
+		table.removeRows(row);
+		assertEquals(19, table.getRowCount());
+	}
+
+	@Test
+	public void testIndexes() throws IOException {
+		MemoryDataTable<MemoryRow> table = createTable(4, 20);
+		DataFilter filter = new DataFilter();
+		filter.setValue("group", "odd");
+		assertEquals(10, table.getAllRows(filter).length);
+
+		// Updated rows move to the bucket of their new value
+		MemoryRow row = table.getFirstRow(filter(3));
+		row.group = "even";
+		table.setRows(row);
+		assertEquals(9, table.getAllRows(filter).length);
+
+		// Indexes added later include the existing rows
+		table.addIndex("level");
+		DataFilter level = new DataFilter();
+		level.setValue("level", 4);
+		assertEquals(4, table.getFirstRow(level).id);
+		table.removeRows(filter);
+		assertEquals(11, table.getRowCount());
+		assertFalse(table.hasRows(filter));
+	}
+
+	@Test
+	public void testCursorBatches() throws IOException {
+		MemoryDataTable<MemoryRow> table = createTable(1, 10);
+		table.setFetchSize(3);
+
+		// Cursors only copy one batch at a time
+		try (IDataCursor cursor = table.openCursor(new DataFilter(), "id")) {
+			assertEquals(0, (int) cursor.next().getValue("id", Integer.class));
+
+			// Rows added while the cursor is open are found when the cursor reaches them
+			table.setRows(row(10, "even", 10));
+			HashSet<Integer> ids = new HashSet<Integer>();
+			while (cursor.hasNext())
+				ids.add(cursor.next().getValue("id", Integer.class));
+			assertEquals(10, ids.size());
+			assertTrue(ids.contains(10));
+		}
+	}
+
+	@Test
+	public void testCursorModifications() throws IOException {
+		MemoryDataTable<MemoryRow> table = createTable(1, 10);
+		table.setFetchSize(2);
+
+		// Removing rows while the cursor is open does not break the cursor
+		try (IDataCursor cursor = table.openCursor(new DataFilter(), "id")) {
+			int count = 0;
+			while (cursor.hasNext()) {
+				int id = cursor.next().getValue("id", Integer.class);
+				if (id == 1)
+					table.removeRows(filter(0));
+				count++;
+			}
+			assertTrue(count >= 9);
+		}
+		assertEquals(9, table.getRowCount());
+	}
+
+	@Test
+	public void testCursorOffsetAndLimit() throws IOException {
+		MemoryDataTable<MemoryRow> table = createTable(4, 40);
+		table.setFetchSize(3);
+		DataFilter filter = new DataFilter().offset(5).limit(10);
+		filter.setValue("group", "even");
+		HashSet<Integer> ids = new HashSet<Integer>();
+		try (IDataCursor cursor = table.openCursor(filter, "id", "group")) {
+			while (cursor.hasNext()) {
+				DataSet row = cursor.next();
+				assertEquals("even", row.getValue("group", String.class));
+				ids.add(row.getValue("id", Integer.class));
+			}
+		}
+		assertEquals(10, ids.size());
+
+		// Ordered reads
+		MemoryRow[] rows = table.getAllRows(new DataFilter().orderBy("level", true).limit(3));
+		assertEquals(39, rows[0].level);
+		assertEquals(37, rows[2].level);
+	}
+
+	private static DataFilter filter(int id) {
+		DataFilter filter = new DataFilter();
+		filter.setValue("id", id);
+		return filter;
+	}
+
+	private static MemoryRow row(int id, String group, int level) {
+		MemoryRow row = new MemoryRow();
+		row.id = id;
+		row.group = group;
+		row.level = level;
+		return row;
+	}
+
+}
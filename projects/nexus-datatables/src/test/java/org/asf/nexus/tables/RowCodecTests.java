@@ -0,0 +1,251 @@
+package org.asf.nexus.tables;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.asf.nexus.tables.annotations.TableColumn;
+import org.asf.nexus.tables.annotations.UseAsFilter;
+import org.junit.Test;
+
+public class RowCodecTests {
+
+	public static class CodecRow extends TableRow {
+
+		@TableColumn
+		@UseAsFilter
+		public int id;
+
+		@TableColumn
+		public String name;
+
+		@TableColumn
+		public double balance;
+
+	}
+
+	private static TableSchema createSchema() {
+		return new TableSchema(
+				new String[] { "text", "active", "flags", "grade", "rank", "level", "score", "ratio", "balance",
+						"data", "created", "tags", "missing" },
+				new DataType[] { DataType.STRING, DataType.BOOLEAN, DataType.BYTE, DataType.CHAR, DataType.SHORT,
+						DataType.INT, DataType.LONG, DataType.FLOAT, DataType.DOUBLE, DataType.BYTE_ARRAY,
+						DataType.DATE, DataType.OBJECT, DataType.STRING });
+	}
+
+	private static SchemaDataSet createRow(TableSchema schema) {
+		SchemaDataSet set = schema.createDataSet();
+		set.setValue(0, "text");
+		set.setValue(1, true);
+		set.setValue(2, (byte) -2);
+		set.setValue(3, 'X');
+		set.setValue(4, Short.MIN_VALUE);
+		set.setValue(5, Integer.MIN_VALUE);
+		set.setValue(6, Long.MAX_VALUE);
+		set.setValue(7, -0.5f);
+		set.setValue(8, 1520.123456789);
+		set.setValue(9, new byte[] { 1, 2, 3 });
+		set.setValue(10, new Date(1600000000000l));
+		set.setValue(11, new ArrayList<String>(Arrays.asList("a", "b")));
+		return set;
+	}
+
+	@Test
+	public void testRoundTrip() {
+		TableSchema schema = createSchema();
+		RowCodec codec = new RowCodec(schema);
+		SchemaDataSet row = createRow(schema);
+		byte[] data = codec.encode(row);
+		assertEquals(data.length, codec.getEncodedSize(row));
+
+		// Every column type decodes to the same value, absent columns stay absent
+		SchemaDataSet decoded = codec.decode(ByteBuffer.wrap(data));
+		for (int i = 0; i < 9; i++) {
+			assertEquals(schema.getColumnName(i), row.getValue(i), decoded.getValue(i));
+			assertTrue(decoded.isSameValue(row, i));
+		}
+		assertArrayEquals((byte[]) row.getValue(9), (byte[]) decoded.getValue(9));
+		assertEquals(row.getValue(10), decoded.getValue(10));
+		assertEquals(row.getValue(11), decoded.getValue(11));
+		assertFalse(decoded.isPresent(12));
+		assertTrue(decoded.isPrimitive(5));
+		assertEquals(12, decoded.count());
+
+		// Null values are kept apart from absent values
+		row.setValue(0, null);
+		row.setValue(11, null);
+		row.remove(9);
+		decoded = codec.decode(ByteBuffer.wrap(codec.encode(row)));
+		assertTrue(decoded.isPresent(0));
+		assertNull(decoded.getValue(0));
+		assertTrue(decoded.isPresent(11));
+		assertNull(decoded.getValue(11));
+		assertFalse(decoded.isPresent(9));
+	}
+
+	@Test
+	public void testFloatingPointBits() {
+		TableSchema schema = new TableSchema(new String[] { "ratio", "balance" },
+				new DataType[] { DataType.FLOAT, DataType.DOUBLE });
+		RowCodec codec = new RowCodec(schema);
+		for (double value : new double[] { -0.0, Double.NaN, Double.MIN_VALUE, Double.NEGATIVE_INFINITY }) {
+			SchemaDataSet set = schema.createDataSet();
+			set.setValue(0, (float) value);
+			set.setDouble(1, value);
+			SchemaDataSet decoded = codec.decode(ByteBuffer.wrap(codec.encode(set)));
+			assertEquals(Float.floatToRawIntBits((float) value),
+					Float.floatToRawIntBits(decoded.getValue("ratio", Float.class)));
+			assertEquals(Double.doubleToRawLongBits(value), Double.doubleToRawLongBits(decoded.getDouble(1)));
+		}
+	}
+
+	@Test
+	public void testStrings() {
+		TableSchema schema = new TableSchema(new String[] { "text" }, new DataType[] { DataType.STRING });
+		RowCodec codec = new RowCodec(schema);
+		StringBuilder longText = new StringBuilder();
+		for (int i = 0; i < 300; i++)
+			longText.append((char) ('a' + i % 26));
+		String[] values = new String[] { "", "ascii", "\u00e9\u00e8", "\u20ac\u4e2d", "\ud83d\ude00 pair",
+				longText.toString() };
+		for (String value : values) {
+			SchemaDataSet set = schema.createDataSet();
+			set.setValue(0, value);
+			byte[] data = codec.encode(set);
+			int length = value.getBytes(StandardCharsets.UTF_8).length;
+			assertEquals(8 + 2 + (length < 128 ? 1 : 2) + length, data.length);
+			assertEquals(value, codec.decode(ByteBuffer.wrap(data)).getValue(0));
+		}
+
+		// Lone surrogates are written as '?'
+		SchemaDataSet set = schema.createDataSet();
+		set.setValue(0, "a\ud83db");
+		byte[] data = codec.encode(set);
+		assertEquals(data.length, codec.getEncodedSize(set));
+		assertEquals("a?b", codec.decode(ByteBuffer.wrap(data)).getValue(0));
+	}
+
+	@Test
+	public void testReusedBuffer() {
+		TableSchema schema = createSchema();
+		RowCodec codec = new RowCodec(schema);
+		SchemaDataSet first = createRow(schema);
+		SchemaDataSet second = createRow(schema);
+		second.setValue(0, "second");
+		second.setLong(5, 7);
+
+		// Rows are written one after another in the byte order of the buffer
+		for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1024).order(order);
+			codec.encode(first, buffer);
+			codec.encode(second, buffer);
+			buffer.flip();
+			SchemaDataSet set = schema.createDataSet();
+			codec.decode(buffer, set);
+			assertEquals("text", set.getValue(0));
+			codec.decode(buffer, set);
+			assertEquals("second", set.getValue(0));
+			assertEquals(7, set.getInt(5));
+			assertFalse(buffer.hasRemaining());
+		}
+	}
+
+	@Test
+	public void testBufferLimits() {
+		TableSchema schema = createSchema();
+		RowCodec codec = new RowCodec(schema);
+		SchemaDataSet row = createRow(schema);
+		byte[] data = codec.encode(row);
+
+		// Rows that do not fit leave the buffer position unchanged
+		ByteBuffer small = ByteBuffer.allocate(data.length - 1);
+		small.put((byte) 1);
+		try {
+			codec.encode(row, small);
+			fail("Expected a BufferOverflowException");
+		} catch (BufferOverflowException e) {
+		}
+		assertEquals(1, small.position());
+
+		// Truncated rows
+		try {
+			codec.decode(ByteBuffer.wrap(Arrays.copyOf(data, 9)));
+			fail("Expected a BufferUnderflowException");
+		} catch (BufferUnderflowException e) {
+		}
+	}
+
+	@Test
+	public void testInvalidRows() {
+		TableSchema schema = createSchema();
+		RowCodec codec = new RowCodec(schema);
+		byte[] data = codec.encode(createRow(schema));
+
+		// Rows of other schemas are rejected
+		TableSchema other = new TableSchema(new String[] { "text" }, new DataType[] { DataType.STRING });
+		try {
+			new RowCodec(other).decode(ByteBuffer.wrap(data));
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			codec.decode(ByteBuffer.wrap(data), other.createDataSet());
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+
+		// Value lengths beyond the end of the row
+		SchemaDataSet set = other.createDataSet();
+		set.setValue(0, "abc");
+		byte[] text = new RowCodec(other).encode(set);
+		text[10] = 100;
+		try {
+			new RowCodec(other).decode(ByteBuffer.wrap(text));
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testPlainDataSets() {
+		TableSchema schema = createSchema();
+		RowCodec codec = new RowCodec(schema);
+
+		// Columns are matched by name, other columns are ignored
+		DataSet set = new DataSet();
+		set.setValue("TEXT", "plain");
+		set.setValue("level", 5);
+		set.setValue("unknown", "ignored");
+		SchemaDataSet decoded = codec.decode(ByteBuffer.wrap(codec.encode(set)));
+		assertEquals(2, decoded.count());
+		assertEquals("plain", decoded.getValue(0));
+		assertEquals(5, decoded.getInt(5));
+	}
+
+	@Test
+	public void testTableRows() {
+		MemoryDataTable<CodecRow> table = new MemoryDataTable<CodecRow>(CodecRow.class);
+		CodecRow row = new CodecRow();
+		row.id = 3;
+		row.name = "row";
+		row.balance = 2.5;
+		CodecRow decoded = table.decodeRow(ByteBuffer.wrap(table.encodeRow(row)));
+		assertEquals(3, decoded.id);
+		assertEquals("row", decoded.name);
+		assertEquals(2.5, decoded.balance, 0);
+		assertEquals(table.getLayout().getSchemaFingerprint(), table.getLayout().getRowCodec().getFingerprint());
+	}
+
+}
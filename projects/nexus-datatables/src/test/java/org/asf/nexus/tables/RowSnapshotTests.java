@@ -0,0 +1,216 @@
+package org.asf.nexus.tables;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+
+import org.asf.nexus.tables.annotations.CompactRowSnapshot;
+import org.asf.nexus.tables.annotations.TableColumn;
+import org.asf.nexus.tables.annotations.UseAsFilter;
+import org.junit.Test;
+
+public class RowSnapshotTests {
+
+	@CompactRowSnapshot
+	public static class SnapshotRow extends TableRow {
+
+		@TableColumn
+		@UseAsFilter
+		public int id;
+
+		@TableColumn
+		public String name;
+
+		@TableColumn
+		public double balance;
+
+		@TableColumn
+		public byte[] data;
+
+		@TableColumn
+		public ArrayList<String> tags;
+
+	}
+
+	private static class RecordingTable extends MemoryDataTable<SnapshotRow> {
+
+		public DataFilter lastFilter;
+		public DataSet lastSet;
+
+		public RecordingTable() {
+			super(SnapshotRow.class);
+		}
+
+		@Override
+		protected void setRowsInternal(DataFilter dataFilter, DataSet set) throws IOException {
+			lastFilter = dataFilter;
+			lastSet = set;
+			super.setRowsInternal(dataFilter, set);
+		}
+
+	}
+
+	private static TableSchema createSchema() {
+		return new TableSchema(
+				new String[] { "id", "name", "level", "balance", "data", "created", "active", "tags" },
+				new DataType[] { DataType.INT, DataType.STRING, DataType.LONG, DataType.DOUBLE, DataType.BYTE_ARRAY,
+						DataType.DATE, DataType.BOOLEAN, DataType.OBJECT });
+	}
+
+	private static SchemaDataSet createRow(TableSchema schema) {
+		SchemaDataSet set = schema.createDataSet();
+		set.setInt(0, 1);
+		set.setValue(1, "name");
+		set.setLong(2, 5);
+		set.setDouble(3, 0.0);
+		set.setValue(4, new byte[] { 1, 2 });
+		set.setValue(5, new Date(1600000000000l));
+		set.setValue(6, true);
+		set.setValue(7, new ArrayList<String>());
+		return set;
+	}
+
+	@Test
+	public void testUnchangedColumns() {
+		TableSchema schema = createSchema();
+		RowSnapshot snapshot = new RowSnapshot(createRow(schema), new int[] { 0 });
+
+		// Equal values of a new set are unchanged, object columns are always changed
+		SchemaDataSet set = createRow(schema);
+		for (int i = 0; i < 7; i++)
+			assertTrue(schema.getColumnName(i), snapshot.isUnchanged(set, i));
+		assertFalse(snapshot.isUnchanged(set, 7));
+
+		// Changed values of every kind
+		set.setInt(0, 2);
+		set.setValue(1, "other");
+		set.setLong(2, 6);
+		set.setDouble(3, -0.0);
+		set.setValue(4, new byte[] { 1, 3 });
+		set.setValue(5, new Date(1600000000001l));
+		set.setValue(6, false);
+		for (int i = 0; i < 7; i++)
+			assertFalse(schema.getColumnName(i), snapshot.isUnchanged(set, i));
+	}
+
+	@Test
+	public void testNullAndAbsentColumns() {
+		TableSchema schema = createSchema();
+		SchemaDataSet row = schema.createDataSet();
+		row.setInt(0, 1);
+		row.setValue(1, null);
+		RowSnapshot snapshot = new RowSnapshot(row, new int[] { 0 });
+
+		// Null values are only unchanged if they were null before
+		SchemaDataSet set = schema.createDataSet();
+		set.setValue(1, null);
+		assertTrue(snapshot.isUnchanged(set, 1));
+		set.setValue(1, "");
+		assertFalse(snapshot.isUnchanged(set, 1));
+
+		// Columns that were not recorded are changed
+		set.setValue(4, null);
+		assertFalse(snapshot.isUnchanged(set, 4));
+		set.setLong(2, 0);
+		assertFalse(snapshot.isUnchanged(set, 2));
+
+		// Updates only record the present columns
+		SchemaDataSet update = schema.createDataSet();
+		update.setLong(2, 0);
+		snapshot.update(update);
+		assertTrue(snapshot.isUnchanged(set, 2));
+		set.setValue(1, null);
+		assertTrue(snapshot.isUnchanged(set, 1));
+	}
+
+	@Test
+	public void testWideSchema() {
+		String[] names = new String[100];
+		DataType[] types = new DataType[100];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = "column" + i;
+			types[i] = DataType.LONG;
+		}
+		TableSchema schema = new TableSchema(names, types);
+		SchemaDataSet row = schema.createDataSet();
+		for (int i = 0; i < names.length; i += 2)
+			row.setLong(i, i);
+		RowSnapshot snapshot = new RowSnapshot(row, new int[] { 0 });
+
+		// Presence bits of columns beyond the first word
+		SchemaDataSet set = schema.createDataSet();
+		for (int i = 0; i < names.length; i++)
+			set.setLong(i, i);
+		for (int i = 0; i < names.length; i++)
+			assertEquals(names[i], i % 2 == 0, snapshot.isUnchanged(set, i));
+	}
+
+	@Test
+	public void testFilterValues() {
+		TableSchema schema = createSchema();
+		RowSnapshot snapshot = new RowSnapshot(createRow(schema), new int[] { 0, 1 });
+
+		// The previous filter values are kept until they are updated
+		SchemaDataSet update = schema.createDataSet();
+		update.setValue(1, "renamed");
+		snapshot.update(update);
+		DataFilter filter = new DataFilter();
+		snapshot.populateFilter(filter, schema);
+		assertEquals(2, filter.count());
+		assertEquals(1, (int) filter.getValue("id", Integer.class));
+		assertEquals("renamed", filter.getValue("name", String.class));
+	}
+
+	@Test
+	public void testTableChangeDetection() throws IOException {
+		RecordingTable table = new RecordingTable();
+		SnapshotRow row = new SnapshotRow();
+		row.id = 1;
+		row.name = "one";
+		row.balance = 1.5;
+		row.data = new byte[] { 1 };
+		row.tags = new ArrayList<String>();
+		table.setRows(row);
+
+		// Rows keep a snapshot instead of the value cache
+		assertNotNull(row.getSnapshot());
+		assertEquals(0, row.getValueCache().count());
+
+		// Only changed and object columns are written
+		row.balance = 2.5;
+		table.setRows(row);
+		assertEquals(2, table.lastSet.count());
+		assertTrue(table.lastSet.has("balance"));
+		assertTrue(table.lastSet.has("tags"));
+		assertEquals(1, (int) table.lastFilter.getValue("id", Integer.class));
+
+		// Rows are found by their previous identification values
+		row.id = 10;
+		table.setRows(row);
+		assertNull(table.getFirstRow(filterOf(1)));
+		SnapshotRow loaded = table.getFirstRow(filterOf(10));
+		assertEquals(2.5, loaded.balance, 0);
+		assertEquals(1, table.getRowCount());
+
+		// Loaded rows record the loaded values
+		assertNotNull(loaded.getSnapshot());
+		loaded.data[0] = 2;
+		table.setRows(loaded);
+		assertTrue(table.lastSet.has("data"));
+		assertFalse(table.lastSet.has("name"));
+		assertEquals(2, table.getFirstRow(filterOf(10)).data[0]);
+	}
+
+	private static DataFilter filterOf(int id) {
+		DataFilter filter = new DataFilter();
+		filter.setValue("id", id);
+		return filter;
+	}
+
+}
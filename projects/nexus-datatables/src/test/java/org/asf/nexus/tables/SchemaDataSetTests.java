@@ -0,0 +1,209 @@
+package org.asf.nexus.tables;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+public class SchemaDataSetTests {
+
+	private static TableSchema createSchema() {
+		return new TableSchema(
+				new String[] { "id", "name", "level", "score", "active", "grade", "ratio", "balance", "created",
+						"data" },
+				new DataType[] { DataType.STRING, DataType.STRING, DataType.INT, DataType.LONG, DataType.BOOLEAN,
+						DataType.CHAR, DataType.FLOAT, DataType.DOUBLE, DataType.DATE, DataType.BYTE_ARRAY });
+	}
+
+	@Test
+	public void testSchemaColumns() {
+		TableSchema schema = createSchema();
+		assertEquals(10, schema.getColumnCount());
+		assertEquals("level", schema.getColumnName(2));
+		assertEquals(DataType.INT, schema.getColumnType(2));
+		assertEquals(2, schema.indexOf("level"));
+		assertEquals(2, schema.indexOf("LEVEL"));
+		assertEquals(7, schema.indexOf("Balance"));
+		assertEquals(-1, schema.indexOf("missing"));
+		assertArrayEquals(new String[] { "id", "name", "level", "score", "active", "grade", "ratio", "balance",
+				"created", "data" }, schema.getColumnNames());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSchemaDuplicateColumns() {
+		new TableSchema(new String[] { "id", "ID" }, new DataType[] { DataType.STRING, DataType.STRING });
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSchemaColumnCountMismatch() {
+		new TableSchema(new String[] { "id", "name" }, new DataType[] { DataType.STRING });
+	}
+
+	@Test
+	public void testSchemaFingerprint() {
+		TableSchema schema = new TableSchema(new String[] { "id", "level" },
+				new DataType[] { DataType.STRING, DataType.INT });
+		TableSchema upper = new TableSchema(new String[] { "ID", "LEVEL" },
+				new DataType[] { DataType.STRING, DataType.INT });
+		TableSchema otherType = new TableSchema(new String[] { "id", "level" },
+				new DataType[] { DataType.STRING, DataType.LONG });
+		TableSchema otherOrder = new TableSchema(new String[] { "level", "id" },
+				new DataType[] { DataType.INT, DataType.STRING });
+		assertEquals(schema.getFingerprint(), upper.getFingerprint());
+		assertNotEquals(schema.getFingerprint(), otherType.getFingerprint());
+		assertNotEquals(schema.getFingerprint(), otherOrder.getFingerprint());
+	}
+
+	@Test
+	public void testPrimitiveSlots() {
+		SchemaDataSet set = createSchema().createDataSet();
+		set.setInt(2, 42);
+		set.setLong(3, Long.MIN_VALUE);
+		set.setBoolean(4, true);
+		set.setLong(5, 'A');
+		set.setDouble(6, 0.5);
+		set.setDouble(7, 1520.75);
+
+		// Values are boxed to the column type
+		assertEquals(42, set.getValue(2));
+		assertEquals(Long.MIN_VALUE, set.getValue(3));
+		assertEquals(true, set.getValue(4));
+		assertEquals('A', set.getValue(5));
+		assertEquals(0.5f, set.getValue(6));
+		assertEquals(1520.75, set.getValue(7));
+		assertEquals(DataType.CHAR, set.getValueType(5));
+		assertEquals(42, set.getInt(2));
+		assertTrue(set.getBoolean(4));
+		assertEquals(1520.75, set.getDouble(7), 0);
+		assertTrue(set.isPrimitive(2));
+
+		// Boxed values matching the column type are stored unboxed
+		set.setValue(2, 7);
+		set.setValue("balance", 2.25);
+		assertTrue(set.isPrimitive(2));
+		assertTrue(set.isPrimitive(7));
+		assertEquals(7, set.getInt(2));
+		assertEquals(2.25, set.getValue("BALANCE", Double.class), 0);
+
+		// Absent values
+		assertFalse(set.isPresent(0));
+		assertNull(set.getValue(0));
+		assertEquals(DataType.NULL, set.getValueType(0));
+		assertEquals(0, set.getLong(0));
+		assertEquals(6, set.count());
+	}
+
+	@Test
+	public void testWrongSlotKind() {
+		SchemaDataSet set = createSchema().createDataSet();
+		try {
+			set.setLong(0, 1);
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			set.setDouble(2, 1);
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+
+		// Values of the wrong type are kept so that the table can reject them
+		set.setValue(2, "text");
+		assertFalse(set.isPrimitive(2));
+		assertEquals(DataType.STRING, set.getValueType(2));
+		set.setValue(2, null);
+		assertTrue(set.isPresent(2));
+		assertEquals(DataType.NULL, set.getValueType(2));
+	}
+
+	@Test
+	public void testNameView() {
+		SchemaDataSet set = createSchema().createDataSet();
+		Date date = new Date(1600000000000l);
+		set.setValue("id", "a");
+		set.setValue("Level", 3);
+		set.setValue("created", date);
+		set.setValue("extra", "outside");
+		assertTrue(set.has("ID"));
+		assertTrue(set.has("extra"));
+		assertFalse(set.has("name"));
+		assertEquals(4, set.count());
+		assertEquals(date, set.getValue("created", Date.class));
+		assertEquals("outside", set.getValue("extra", String.class));
+		assertArrayEquals(new String[] { "id", "level", "created", "extra" }, set.getColumnNames());
+		DataEntry[] values = set.getValues();
+		assertEquals(DataType.INT, values[1].getValueType());
+		assertEquals(3, (int) values[1].getValue(Integer.class));
+
+		set.remove("level");
+		set.remove("extra");
+		assertEquals(2, set.count());
+		assertFalse(set.has("level"));
+		set.clear();
+		assertEquals(0, set.count());
+		assertFalse(set.isPresent(0));
+	}
+
+	@Test
+	public void testCopyOnWrite() {
+		SchemaDataSet set = createSchema().createDataSet();
+		set.setValue(0, "a");
+		set.setInt(2, 1);
+		set.setValue(9, new byte[] { 1, 2 });
+		set.setValue("extra", 5);
+
+		// Copies share the slots until either set is modified
+		SchemaDataSet copy = set.copy();
+		copy.setInt(2, 2);
+		copy.remove(0);
+		set.setValue(1, "name");
+		assertEquals(1, set.getInt(2));
+		assertEquals("a", set.getValue(0));
+		assertEquals(2, copy.getInt(2));
+		assertFalse(copy.isPresent(0));
+		assertFalse(copy.isPresent(1));
+		assertEquals(5, (int) copy.getValue("extra", Integer.class));
+
+		// Clearing a shared set does not affect the copy
+		SchemaDataSet other = set.copy(false);
+		assertFalse(other.has("extra"));
+		set.clear();
+		assertEquals("name", other.getValue(1));
+		assertEquals(4, other.count());
+	}
+
+	@Test
+	public void testSameValue() {
+		TableSchema schema = createSchema();
+		SchemaDataSet first = schema.createDataSet();
+		SchemaDataSet second = schema.createDataSet();
+		first.setInt(2, 1);
+		second.setValue(2, 1);
+		first.setValue(9, new byte[] { 1, 2 });
+		second.setValue(9, new byte[] { 1, 2 });
+		first.setDouble(7, 0.0);
+		second.setDouble(7, -0.0);
+		assertTrue(first.isSameValue(second, 2));
+		assertTrue(first.isSameValue(second, 9));
+		assertFalse(first.isSameValue(second, 7));
+		assertFalse(first.isSameValue(second, 0));
+
+		// Copying slots
+		second.setValue(0, "a");
+		first.copyValue(second, 0);
+		first.copyValue(second, 7);
+		assertEquals("a", first.getValue(0));
+		assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(first.getDouble(7)));
+		assertTrue(first.isSameValue(second, 7));
+		first.copyValue(second, 1);
+		assertFalse(first.isPresent(1));
+	}
+
+}
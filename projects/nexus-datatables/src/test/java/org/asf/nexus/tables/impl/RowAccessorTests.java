@@ -0,0 +1,145 @@
+package org.asf.nexus.tables.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Field;
+import java.util.Date;
+
+import org.asf.nexus.tables.TableRow;
+import org.junit.Test;
+
+public class RowAccessorTests {
+
+	public static class AccessorRow extends TableRow {
+		public String name;
+		public int level;
+		public long score;
+		public boolean active;
+		public char grade;
+		public byte flags;
+		public short rank;
+		public float ratio;
+		public double balance;
+		public Date created;
+		public byte[] data;
+		public Integer boxed;
+	}
+
+	public static class FinalFieldRow extends AccessorRow {
+		public final String id = "fixed";
+	}
+
+	private static final String[] COLUMNS = new String[] { "name", "level", "score", "active", "grade", "flags",
+			"rank", "ratio", "balance", "created", "data", "boxed" };
+
+	@Test
+	public void testGeneratedAccessor() {
+		IRowAccessor accessor = RowAccessorFactory.createAccessor(AccessorRow.class,
+				fields(AccessorRow.class, COLUMNS));
+		assertTrue(accessor.getClass().isHidden());
+		testAccessor(accessor);
+	}
+
+	@Test
+	public void testFinalFieldFallback() {
+		// Final fields cannot be assigned by generated code, method handles are used
+		// instead
+		String[] columns = new String[COLUMNS.length + 1];
+		System.arraycopy(COLUMNS, 0, columns, 0, COLUMNS.length);
+		columns[COLUMNS.length] = "id";
+		IRowAccessor accessor = RowAccessorFactory.createAccessor(FinalFieldRow.class,
+				fields(FinalFieldRow.class, columns));
+		assertFalse(accessor.getClass().isHidden());
+		assertTrue(accessor.newInstance() instanceof FinalFieldRow);
+		assertEquals("fixed", accessor.getValue(accessor.newInstance(), COLUMNS.length));
+		testAccessor(accessor);
+	}
+
+	private static void testAccessor(IRowAccessor accessor) {
+		AccessorRow row = (AccessorRow) accessor.newInstance();
+		assertNull(accessor.getValue(row, 0));
+
+		// Object values
+		Date date = new Date(1600000000000l);
+		accessor.setValue(row, 0, "test");
+		accessor.setValue(row, 1, 42);
+		accessor.setValue(row, 9, date);
+		accessor.setValue(row, 10, new byte[] { 1, 2, 3 });
+		accessor.setValue(row, 11, 7);
+		assertEquals("test", row.name);
+		assertEquals(42, row.level);
+		assertEquals(date, row.created);
+		assertArrayEquals(new byte[] { 1, 2, 3 }, row.data);
+		assertEquals(Integer.valueOf(7), row.boxed);
+		assertEquals("test", accessor.getValue(row, 0));
+		assertEquals(42, accessor.getValue(row, 1));
+		accessor.setValue(row, 11, null);
+		assertNull(row.boxed);
+
+		// Integral values are narrowed to the field type
+		accessor.setLong(row, 1, 5);
+		accessor.setLong(row, 2, Long.MAX_VALUE);
+		accessor.setLong(row, 3, 2);
+		accessor.setLong(row, 4, 'B');
+		accessor.setLong(row, 5, 0x1ff);
+		accessor.setLong(row, 6, -3);
+		assertEquals(5, row.level);
+		assertEquals(Long.MAX_VALUE, row.score);
+		assertTrue(row.active);
+		assertEquals('B', row.grade);
+		assertEquals((byte) 0xff, row.flags);
+		assertEquals(-3, row.rank);
+		assertEquals(5l, accessor.getLong(row, 1));
+		assertEquals(Long.MAX_VALUE, accessor.getLong(row, 2));
+		assertEquals(1l, accessor.getLong(row, 3));
+		assertEquals((long) 'B', accessor.getLong(row, 4));
+		assertEquals(-1l, accessor.getLong(row, 5));
+		accessor.setLong(row, 3, 0);
+		assertFalse(row.active);
+
+		// Floating point values
+		accessor.setDouble(row, 7, 0.5);
+		accessor.setDouble(row, 8, 1520.75);
+		assertEquals(0.5f, row.ratio, 0);
+		assertEquals(1520.75, row.balance, 0);
+		assertEquals(0.5, accessor.getDouble(row, 7), 0);
+		assertEquals(1520.75, accessor.getDouble(row, 8), 0);
+
+		// Fields of other kinds and unknown columns
+		expectIllegalArgument(() -> accessor.getLong(row, 0));
+		expectIllegalArgument(() -> accessor.getLong(row, 8));
+		expectIllegalArgument(() -> accessor.setDouble(row, 1, 1));
+		expectIllegalArgument(() -> accessor.getDouble(row, 11));
+		try {
+			accessor.getValue(row, 100);
+			fail("Expected an exception for an unknown column");
+		} catch (IndexOutOfBoundsException e) {
+		}
+	}
+
+	private static void expectIllegalArgument(Runnable action) {
+		try {
+			action.run();
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	private static Field[] fields(Class<?> type, String... names) {
+		Field[] fields = new Field[names.length];
+		for (int i = 0; i < names.length; i++) {
+			try {
+				fields[i] = type.getField(names[i]);
+			} catch (NoSuchFieldException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		return fields;
+	}
+
+}
@@ -0,0 +1,105 @@
+package org.asf.nexus.events;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 
+ * Measures event dispatch throughput (millions of dispatches per second) on a
+ * root bus and on a child bus that inherits listeners from its parent, with
+ * and without dispatch metrics
+ * 
+ * @author Sky Swimmer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class EventDispatchBenchmark {
+
+	public static class BenchEvent extends EventObject {
+		public int value;
+	}
+
+	public static class UnhandledEvent extends EventObject {
+	}
+
+	public static class BenchReceiver implements IEventReceiver {
+		public int received;
+
+		@EventListener
+		public void onEvent(BenchEvent event) {
+			received += event.value;
+		}
+	}
+
+	@Param({ "1", "10" })
+	public int listeners;
+
+	@Param({ "false", "true" })
+	public boolean metrics;
+
+	private EventBus bus;
+	private EventBus childBus;
+	private BenchEvent event = new BenchEvent();
+	private UnhandledEvent unhandled = new UnhandledEvent();
+
+	@Setup(Level.Trial)
+	public void setup() {
+		bus = EventBus.getInstance().createBus();
+		for (int i = 0; i < listeners; i++) {
+			if (i % 2 == 0)
+				bus.addAllEventsFromReceiver(new BenchReceiver());
+			else
+				bus.addEventHandler(BenchEvent.class, ev -> ev.value++);
+		}
+		childBus = bus.createBus();
+		childBus.addAllEventsFromReceiver(new BenchReceiver());
+		bus.setMetricsEnabled(metrics);
+		childBus.setMetricsEnabled(metrics);
+	}
+
+	@Benchmark
+	public void dispatch(Blackhole bh) {
+		bus.dispatchEvent(event);
+		bh.consume(event);
+	}
+
+	@Benchmark
+	public void dispatchChildBus(Blackhole bh) {
+		childBus.dispatchEvent(event);
+		bh.consume(event);
+	}
+
+	@Benchmark
+	public void dispatchNoListeners(Blackhole bh) {
+		bus.dispatchEvent(unhandled);
+		bh.consume(unhandled);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void dispatchContended(Blackhole bh) {
+		bus.dispatchEvent(unhandled);
+		childBus.dispatchEvent(event);
+		bh.consume(event);
+	}
+
+}
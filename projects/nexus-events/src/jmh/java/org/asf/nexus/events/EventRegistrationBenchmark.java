@@ -0,0 +1,105 @@
+package org.asf.nexus.events;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 
+ * Measures startup registration of 5000 listener methods, every iteration
+ * registers freshly generated receiver classes so that each listener needs a
+ * new dispatcher
+ * 
+ * @author Sky Swimmer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class EventRegistrationBenchmark {
+
+	public static class StartupEvent extends EventObject {
+	}
+
+	private static final int METHODS_PER_CLASS = 10;
+	private static int generation;
+
+	@Param({ "5000" })
+	public int listeners;
+
+	private IEventReceiver[] receivers;
+
+	@Setup(Level.Iteration)
+	public void generateReceivers() throws Exception {
+		// Define new classes for each iteration, dispatchers are cached per class
+		int gen = generation++;
+		receivers = new IEventReceiver[listeners / METHODS_PER_CLASS];
+		for (int i = 0; i < receivers.length; i++) {
+			Class<?> cls = MethodHandles.lookup()
+					.defineClass(generateReceiver("org/asf/nexus/events/GeneratedReceiver_" + gen + "_" + i));
+			receivers[i] = (IEventReceiver) cls.getConstructor().newInstance();
+		}
+	}
+
+	private static byte[] generateReceiver(String name) {
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object",
+				new String[] { Type.getInternalName(IEventReceiver.class) });
+		MethodVisitor init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+		init.visitCode();
+		init.visitVarInsn(Opcodes.ALOAD, 0);
+		init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+		init.visitInsn(Opcodes.RETURN);
+		init.visitMaxs(0, 0);
+		init.visitEnd();
+		for (int i = 0; i < METHODS_PER_CLASS; i++) {
+			MethodVisitor meth = writer.visitMethod(Opcodes.ACC_PUBLIC, "onEvent" + i,
+					"(" + Type.getDescriptor(StartupEvent.class) + ")V", null, null);
+			AnnotationVisitor anno = meth.visitAnnotation(Type.getDescriptor(EventListener.class), true);
+			anno.visitEnd();
+			meth.visitCode();
+			meth.visitInsn(Opcodes.RETURN);
+			meth.visitMaxs(0, 0);
+			meth.visitEnd();
+		}
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+	@Benchmark
+	public EventBus register() {
+		EventBus bus = EventBus.getInstance().createBus();
+		for (IEventReceiver receiver : receivers)
+			bus.addAllEventsFromReceiver(receiver);
+		return bus;
+	}
+
+	@Benchmark
+	public EventBus registerParallel() {
+		EventBus bus = EventBus.getInstance().createBus();
+		Arrays.stream(receivers).parallel().forEach(bus::addAllEventsFromReceiver);
+		return bus;
+	}
+
+}
@@ -1,13 +1,16 @@
 package org.asf.nexus.events;
 
 import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 import org.asf.nexus.common.ObjectStorageContainer;
 import org.asf.nexus.events.impl.EventBusImpl;
+import org.asf.nexus.events.metrics.EventMetricsSnapshot;
 import org.asf.nexus.tasks.async.AsyncTask;
+import org.asf.nexus.tasks.async.AsyncTaskLanes;
 
 /**
  * 
@@ -19,6 +22,7 @@ import org.asf.nexus.tasks.async.AsyncTask;
 public abstract class EventBus extends ObjectStorageContainer {
 
 	protected static EventBus instance = new EventBusImpl();
+	private AsyncTaskLanes<Object> eventLanes = new AsyncTaskLanes<Object>();
 	private HashMap<Function<? extends SupplierEventObject<?>, ?>, Consumer<? extends EventObject>> handlers = new HashMap<Function<? extends SupplierEventObject<?>, ?>, Consumer<? extends EventObject>>();
 
 	/**
@@ -37,7 +41,21 @@ public abstract class EventBus extends ObjectStorageContainer {
 	 * @param eventClass   Event class
 	 * @param eventHandler Event handler to add
 	 */
-	public abstract <T extends EventObject> void addEventHandler(Class<T> eventClass, Consumer<T> eventHandler);
+	public <T extends EventObject> void addEventHandler(Class<T> eventClass, Consumer<T> eventHandler) {
+		addEventHandler(eventClass, eventHandler, 0);
+	}
+
+	/**
+	 * Adds event handlers
+	 * 
+	 * @param <T>          Event type
+	 * @param eventClass   Event class
+	 * @param eventHandler Event handler to add
+	 * @param priority     Handler priority, handlers with a higher priority are
+	 *                     invoked first
+	 */
+	public abstract <T extends EventObject> void addEventHandler(Class<T> eventClass, Consumer<T> eventHandler,
+			int priority);
 
 	/**
 	 * Removes event handlers
@@ -48,6 +66,42 @@ public abstract class EventBus extends ObjectStorageContainer {
 	 */
 	public abstract <T extends EventObject> void removeEventHandler(Class<T> eventClass, Consumer<T> eventHandler);
 
+	/**
+	 * Adds event handlers that receive the given event type and all of its
+	 * subtypes
+	 * 
+	 * @param <T>          Event base type
+	 * @param baseType     Event base class, either an event type or an interface
+	 *                     implemented by events
+	 * @param eventHandler Event handler to add
+	 */
+	public <T> void addSubtypeEventHandler(Class<T> baseType, Consumer<T> eventHandler) {
+		addSubtypeEventHandler(baseType, eventHandler, 0);
+	}
+
+	/**
+	 * Adds event handlers that receive the given event type and all of its
+	 * subtypes
+	 * 
+	 * @param <T>          Event base type
+	 * @param baseType     Event base class, either an event type or an interface
+	 *                     implemented by events
+	 * @param eventHandler Event handler to add
+	 * @param priority     Handler priority, handlers with a higher priority are
+	 *                     invoked first
+	 */
+	public abstract <T> void addSubtypeEventHandler(Class<T> baseType, Consumer<T> eventHandler, int priority);
+
+	/**
+	 * Removes event handlers added with
+	 * {@link #addSubtypeEventHandler(Class, Consumer)}
+	 * 
+	 * @param <T>          Event base type
+	 * @param baseType     Event base class
+	 * @param eventHandler Event handler to remove
+	 */
+	public abstract <T> void removeSubtypeEventHandler(Class<T> baseType, Consumer<T> eventHandler);
+
 	/**
 	 * Adds event handlers
 	 * 
@@ -58,13 +112,28 @@ public abstract class EventBus extends ObjectStorageContainer {
 	 */
 	public <T2, T extends SupplierEventObject<T2>> void addEventHandler(Class<T> eventClass,
 			Function<T, T2> eventHandler) {
+		addEventHandler(eventClass, eventHandler, 0);
+	}
+
+	/**
+	 * Adds event handlers
+	 * 
+	 * @param <T>          Event type
+	 * @param <T2>         Event result type
+	 * @param eventClass   Event class
+	 * @param eventHandler Event handler to add
+	 * @param priority     Handler priority, handlers with a higher priority are
+	 *                     invoked first
+	 */
+	public <T2, T extends SupplierEventObject<T2>> void addEventHandler(Class<T> eventClass,
+			Function<T, T2> eventHandler, int priority) {
 		Consumer<T> handler = ev -> {
 			T2 ret = eventHandler.apply(ev);
 			if (ret != null)
 				ev.setResult(ret);
 		};
 		handlers.put(eventHandler, handler);
-		addEventHandler(eventClass, handler);
+		addEventHandler(eventClass, handler, priority);
 	}
 
 	/**
@@ -88,8 +157,24 @@ public abstract class EventBus extends ObjectStorageContainer {
 	 * Subscribes all events in a IEventReceiver object
 	 * 
 	 * @param receiver IEventReceiver to add
+	 * @return IEventRegistration handle, closing it removes all events of the
+	 *         receiver
 	 */
-	public abstract void addAllEventsFromReceiver(IEventReceiver receiver);
+	public IEventRegistration addAllEventsFromReceiver(IEventReceiver receiver) {
+		return addAllEventsFromReceiver(receiver, false);
+	}
+
+	/**
+	 * Subscribes all events in a IEventReceiver object
+	 * 
+	 * @param receiver IEventReceiver to add
+	 * @param weak     True to only keep a weak reference to the receiver, its
+	 *                 events are removed automatically once it is garbage
+	 *                 collected
+	 * @return IEventRegistration handle, closing it removes all events of the
+	 *         receiver
+	 */
+	public abstract IEventRegistration addAllEventsFromReceiver(IEventReceiver receiver, boolean weak);
 
 	/**
 	 * Removes all subscribed events from a IEventReceiver object
@@ -115,6 +200,87 @@ public abstract class EventBus extends ObjectStorageContainer {
 		return event.getResult();
 	}
 
+	/**
+	 * Dispatches an event asynchronously in the lane of the given partition key,
+	 * events with the same key are dispatched one at a time in submission order,
+	 * events with different keys are dispatched in parallel
+	 * 
+	 * @param partitionKey Partition key, for example a player or session ID
+	 * @param event        Event to dispatch
+	 * @return AsyncTask instance that completes once the event was dispatched
+	 */
+	public AsyncTask<Void> dispatchEventOrdered(Object partitionKey, EventObject event) {
+		return eventLanes.runAsync(partitionKey, () -> {
+			dispatchEvent(event);
+		});
+	}
+
+	/**
+	 * Dispatches an event asynchronously in the lane of the given partition key,
+	 * events with the same key are dispatched one at a time in submission order,
+	 * events with different keys are dispatched in parallel
+	 * 
+	 * @param partitionKey Partition key, for example a player or session ID
+	 * @param event        Event to dispatch
+	 * @return AsyncTask instance that completes with the event result once the
+	 *         event was dispatched
+	 */
+	public <T2, T extends SupplierEventObject<T2>> AsyncTask<T2> dispatchEventOrdered(Object partitionKey,
+			T event) {
+		return eventLanes.runAsync(partitionKey, () -> {
+			dispatchEvent((EventObject) event);
+			return event.getResult();
+		});
+	}
+
+	/**
+	 * Retrieves the lanes used for ordered asynchronous dispatch, can be used to
+	 * inspect per-lane queue metrics
+	 * 
+	 * @return AsyncTaskLanes instance
+	 */
+	public AsyncTaskLanes<Object> getEventLanes() {
+		return eventLanes;
+	}
+
+	/**
+	 * Dispatches a batch of events, listeners may receive consecutive events of
+	 * the same type one after another before the next listener is invoked
+	 * 
+	 * @param events Events to dispatch
+	 * @param count  Amount of events to dispatch from the start of the array
+	 */
+	public void dispatchEvents(EventObject[] events, int count) {
+		for (int i = 0; i < count; i++)
+			dispatchEvent(events[i]);
+	}
+
+	/**
+	 * Creates a bounded event queue that is drained manually through
+	 * {@link EventQueue#drain()}
+	 * 
+	 * @param capacity Maximum amount of pending events
+	 * @param policy   Overflow policy
+	 * @return New EventQueue instance
+	 */
+	public EventQueue createQueue(int capacity, QueueOverflowPolicy policy) {
+		return new EventQueue(this, capacity, policy, false);
+	}
+
+	/**
+	 * Creates a bounded event queue
+	 * 
+	 * @param capacity   Maximum amount of pending events
+	 * @param policy     Overflow policy
+	 * @param asyncDrain True to drain the queue automatically on async task
+	 *                   threads, false to require calls to
+	 *                   {@link EventQueue#drain()}
+	 * @return New EventQueue instance
+	 */
+	public EventQueue createQueue(int capacity, QueueOverflowPolicy policy, boolean asyncDrain) {
+		return new EventQueue(this, capacity, policy, asyncDrain);
+	}
+
 	/**
 	 * Dispatches an event
 	 * 
@@ -177,6 +343,86 @@ public abstract class EventBus extends ObjectStorageContainer {
 		});
 	}
 
+	/**
+	 * Retrieves how many dispatches stopped early because an event that
+	 * {@link EventObject#stopsWhenHandled() stops when handled} was handled
+	 * 
+	 * @return Short-circuited dispatch count
+	 */
+	public abstract long getShortCircuitCount();
+
+	/**
+	 * Retrieves how many listener invocations were skipped by short-circuited
+	 * dispatches
+	 * 
+	 * @return Skipped listener count
+	 */
+	public abstract long getSkippedListenerCount();
+
+	/**
+	 * Enables or disables dispatch metrics, when disabled listeners are invoked
+	 * without any instrumentation
+	 * 
+	 * Metrics can be enabled for all buses at startup with the
+	 * <code>eventMetrics</code> system property
+	 * 
+	 * @param enabled True to record metrics, false to stop recording
+	 */
+	public abstract void setMetricsEnabled(boolean enabled);
+
+	/**
+	 * Checks if dispatch metrics are enabled
+	 * 
+	 * @return True if metrics are recorded, false otherwise
+	 */
+	public abstract boolean isMetricsEnabled();
+
+	/**
+	 * Assigns the latency sample rate, one in every <code>rate</code> listener
+	 * invocations is timed (defaults to 16, or the
+	 * <code>eventMetricsSampleRate</code> system property)
+	 * 
+	 * @param rate Sample rate, 1 to time every invocation
+	 */
+	public abstract void setMetricsSampleRate(int rate);
+
+	/**
+	 * Retrieves the latency sample rate
+	 * 
+	 * @return Sample rate
+	 */
+	public abstract int getMetricsSampleRate();
+
+	/**
+	 * Assigns the slow listener threshold, timed listener invocations that take
+	 * longer are counted and logged together with their event type (defaults to
+	 * the <code>eventSlowListenerMs</code> system property)
+	 * 
+	 * @param threshold Threshold, 0 to disable slow listener logging
+	 * @param unit      Threshold unit
+	 */
+	public abstract void setSlowListenerThreshold(long threshold, TimeUnit unit);
+
+	/**
+	 * Retrieves the slow listener threshold
+	 * 
+	 * @param unit Time unit
+	 * @return Threshold, 0 if disabled
+	 */
+	public abstract long getSlowListenerThreshold(TimeUnit unit);
+
+	/**
+	 * Takes a snapshot of the dispatch metrics recorded by this bus
+	 * 
+	 * @return EventMetricsSnapshot instance
+	 */
+	public abstract EventMetricsSnapshot getMetrics();
+
+	/**
+	 * Clears all recorded dispatch metrics
+	 */
+	public abstract void resetMetrics();
+
 	/**
 	 * Creates a new event bus
 	 * 
@@ -17,4 +17,21 @@ import java.lang.annotation.Target;
 @Retention(RUNTIME)
 @Target(METHOD)
 public @interface EventListener {
+
+	/**
+	 * Defines if the listener should also receive subtypes of its event type,
+	 * when enabled the event type may also be an interface implemented by events
+	 * 
+	 * @return True to receive subtypes, false to only receive the exact event type
+	 */
+	public boolean includeSubtypes() default false;
+
+	/**
+	 * Defines the listener priority, listeners with a higher priority are invoked
+	 * first, listeners with the same priority are invoked in registration order
+	 * 
+	 * @return Listener priority
+	 */
+	public int priority() default 0;
+
 }
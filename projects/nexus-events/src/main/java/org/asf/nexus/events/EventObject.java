@@ -27,6 +27,18 @@ public abstract class EventObject {
 		handled = true;
 	}
 
+	/**
+	 * Defines if dispatching should stop once a listener marks the event as
+	 * handled (or assigns a result for supplier events), remaining listeners
+	 * with a lower priority are then skipped
+	 * 
+	 * @return True to stop dispatching once handled, false to always invoke all
+	 *         listeners
+	 */
+	public boolean stopsWhenHandled() {
+		return false;
+	}
+
 	/**
 	 * Called when the event object has been registered
 	 * 
@@ -0,0 +1,301 @@
+package org.asf.nexus.events;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.asf.nexus.tasks.async.AsyncTask;
+
+/**
+ * 
+ * Bounded event queue for high-frequency events, producers add events without
+ * dispatching them and a drain stage delivers the pending events to the bus in
+ * batches, each listener receiving all pending events of a type in one go
+ * 
+ * Events implementing {@link ICoalescingEvent} replace pending events of the
+ * same type with an equal coalescing key, so only the latest one is delivered
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public class EventQueue {
+
+	private Logger logger = LogManager.getLogger("EVENTBUS");
+
+	private EventBus bus;
+	private int capacity;
+	private QueueOverflowPolicy policy;
+	private boolean asyncDrain;
+
+	private Object lock = new Object();
+	private ArrayDeque<PendingEvent> pending = new ArrayDeque<PendingEvent>();
+	private HashMap<Class<?>, HashMap<Object, PendingEvent>> coalescing = new HashMap<Class<?>, HashMap<Object, PendingEvent>>();
+	private boolean drainScheduled;
+
+	private Object drainLock = new Object();
+	private EventObject[] drainBuffer;
+	private volatile Thread drainingThread;
+
+	private volatile int peakDepth;
+	private LongAdder enqueued = new LongAdder();
+	private LongAdder delivered = new LongAdder();
+	private LongAdder coalesced = new LongAdder();
+	private LongAdder dropped = new LongAdder();
+	private LongAdder rejected = new LongAdder();
+
+	private static class PendingEvent {
+		public EventObject event;
+		public Object key;
+	}
+
+	/**
+	 * Creates a new event queue
+	 * 
+	 * @param bus        Event bus to deliver events to
+	 * @param capacity   Maximum amount of pending events
+	 * @param policy     Overflow policy
+	 * @param asyncDrain True to drain the queue automatically on async task
+	 *                   threads, false to require calls to {@link #drain()}
+	 */
+	public EventQueue(EventBus bus, int capacity, QueueOverflowPolicy policy, boolean asyncDrain) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be at least 1");
+		this.bus = bus;
+		this.capacity = capacity;
+		this.policy = policy;
+		this.asyncDrain = asyncDrain;
+		drainBuffer = new EventObject[Math.min(capacity, 1024)];
+	}
+
+	/**
+	 * Adds an event to the queue
+	 * 
+	 * @param event Event to add
+	 * @return True if the event was added or coalesced, false if it was rejected
+	 *         because the queue is full
+	 */
+	public boolean enqueue(EventObject event) {
+		Object key = null;
+		if (event instanceof ICoalescingEvent)
+			key = ((ICoalescingEvent) event).getCoalescingKey();
+
+		boolean scheduleDrain = false;
+		synchronized (lock) {
+			// Replace a pending event with the same key
+			if (key != null) {
+				HashMap<Object, PendingEvent> keys = coalescing.get(event.getClass());
+				if (keys != null) {
+					PendingEvent existing = keys.get(key);
+					if (existing != null) {
+						existing.event = event;
+						coalesced.increment();
+						return true;
+					}
+				}
+			}
+
+			// Handle overflow
+			while (pending.size() >= capacity) {
+				if (policy == QueueOverflowPolicy.REJECT) {
+					rejected.increment();
+					return false;
+				} else if (policy == QueueOverflowPolicy.DROP_OLDEST) {
+					forget(pending.poll());
+					dropped.increment();
+				} else if (Thread.currentThread() == drainingThread) {
+					// Listeners run by drain cannot wait for the drain they are part of
+					rejected.increment();
+					return false;
+				} else {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						rejected.increment();
+						return false;
+					}
+				}
+			}
+
+			// Add
+			PendingEvent p = new PendingEvent();
+			p.event = event;
+			p.key = key;
+			pending.add(p);
+			if (key != null)
+				coalescing.computeIfAbsent(event.getClass(), t -> new HashMap<Object, PendingEvent>()).put(key, p);
+			enqueued.increment();
+			if (pending.size() > peakDepth)
+				peakDepth = pending.size();
+			if (asyncDrain && !drainScheduled) {
+				drainScheduled = true;
+				scheduleDrain = true;
+			}
+		}
+
+		// Start draining
+		if (scheduleDrain)
+			AsyncTask.runAsync(this::runAsyncDrain);
+		return true;
+	}
+
+	private void forget(PendingEvent p) {
+		if (p.key == null)
+			return;
+		HashMap<Object, PendingEvent> keys = coalescing.get(p.event.getClass());
+		if (keys != null && keys.get(p.key) == p) {
+			keys.remove(p.key);
+			if (keys.isEmpty())
+				coalescing.remove(p.event.getClass());
+		}
+	}
+
+	private void runAsyncDrain() {
+		while (true) {
+			try {
+				drain();
+			} catch (Throwable e) {
+				logger.error("An error occurred while draining an event queue", e);
+			}
+			synchronized (lock) {
+				if (pending.isEmpty()) {
+					drainScheduled = false;
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Delivers all pending events to the event bus, events are delivered in
+	 * queue order, consecutive events of the same type are delivered as one batch
+	 * 
+	 * @return Amount of delivered events
+	 */
+	public int drain() {
+		int total = 0;
+		synchronized (drainLock) {
+			// Recorded so listeners enqueueing into a full queue do not wait on themselves
+			Thread previous = drainingThread;
+			drainingThread = Thread.currentThread();
+			try {
+				while (true) {
+					// Take a batch
+					int count = 0;
+					synchronized (lock) {
+						while (count < drainBuffer.length && !pending.isEmpty()) {
+							PendingEvent p = pending.poll();
+							forget(p);
+							drainBuffer[count++] = p.event;
+						}
+						if (count != 0 && policy == QueueOverflowPolicy.BLOCK)
+							lock.notifyAll();
+					}
+					if (count == 0)
+						break;
+
+					// Deliver
+					try {
+						bus.dispatchEvents(drainBuffer, count);
+					} finally {
+						Arrays.fill(drainBuffer, 0, count, null);
+						delivered.add(count);
+					}
+					total += count;
+				}
+			} finally {
+				drainingThread = previous;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Retrieves the amount of pending events
+	 * 
+	 * @return Queue depth
+	 */
+	public int getDepth() {
+		synchronized (lock) {
+			return pending.size();
+		}
+	}
+
+	/**
+	 * Retrieves the highest amount of pending events seen by this queue
+	 * 
+	 * @return Peak queue depth
+	 */
+	public int getPeakDepth() {
+		return peakDepth;
+	}
+
+	/**
+	 * Retrieves the queue capacity
+	 * 
+	 * @return Maximum amount of pending events
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Retrieves the overflow policy
+	 * 
+	 * @return QueueOverflowPolicy value
+	 */
+	public QueueOverflowPolicy getOverflowPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Retrieves the amount of events added to the queue, not including coalesced
+	 * events
+	 * 
+	 * @return Enqueued event count
+	 */
+	public long getEnqueuedCount() {
+		return enqueued.sum();
+	}
+
+	/**
+	 * Retrieves the amount of events delivered to the event bus
+	 * 
+	 * @return Delivered event count
+	 */
+	public long getDeliveredCount() {
+		return delivered.sum();
+	}
+
+	/**
+	 * Retrieves the amount of events that replaced a pending event
+	 * 
+	 * @return Coalesced event count
+	 */
+	public long getCoalescedCount() {
+		return coalesced.sum();
+	}
+
+	/**
+	 * Retrieves the amount of pending events dropped to make room for new events
+	 * 
+	 * @return Dropped event count
+	 */
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Retrieves the amount of events that were rejected because the queue was
+	 * full
+	 * 
+	 * @return Rejected event count
+	 */
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+
+}
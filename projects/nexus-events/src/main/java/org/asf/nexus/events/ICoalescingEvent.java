@@ -0,0 +1,23 @@
+package org.asf.nexus.events;
+
+/**
+ * 
+ * Interface for events that can be coalesced in an {@link EventQueue}, when an
+ * event is queued while an event of the same type and with an equal coalescing
+ * key is still pending, the pending event is replaced so that only the latest
+ * event is delivered
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public interface ICoalescingEvent {
+
+	/**
+	 * Retrieves the coalescing key of this event, for example a player or object
+	 * ID
+	 * 
+	 * @return Coalescing key, null to disable coalescing for this event
+	 */
+	public Object getCoalescingKey();
+
+}
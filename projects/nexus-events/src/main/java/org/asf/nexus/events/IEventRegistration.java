@@ -0,0 +1,36 @@
+package org.asf.nexus.events;
+
+/**
+ * 
+ * Handle of a receiver registration, closing the handle removes all listeners
+ * of the receiver without rescanning its methods
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public interface IEventRegistration extends AutoCloseable {
+
+	/**
+	 * Checks if the registration is still active
+	 * 
+	 * @return True if the receiver is still registered, false if the handle was
+	 *         closed or the weakly-registered receiver was garbage collected
+	 */
+	public boolean isActive();
+
+	/**
+	 * Checks if the receiver is weakly referenced
+	 * 
+	 * @return True if the registration does not keep the receiver alive, false
+	 *         otherwise
+	 */
+	public boolean isWeak();
+
+	/**
+	 * Removes all listeners of the receiver, listeners stop receiving events
+	 * immediately and are removed from the dispatch chains lazily
+	 */
+	@Override
+	public void close();
+
+}
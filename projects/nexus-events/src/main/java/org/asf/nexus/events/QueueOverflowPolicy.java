@@ -0,0 +1,29 @@
+package org.asf.nexus.events;
+
+/**
+ * 
+ * Defines what an {@link EventQueue} does when an event is added while the
+ * queue is full
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public enum QueueOverflowPolicy {
+
+	/**
+	 * Blocks the producer until the queue has room, events added by listeners
+	 * while the queue is being drained on their thread are rejected instead
+	 */
+	BLOCK,
+
+	/**
+	 * Drops the oldest pending event to make room for the new event
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * Rejects the new event
+	 */
+	REJECT
+
+}
@@ -4,7 +4,7 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.asf.nexus.events.EventBus;
 import org.asf.nexus.events.EventObject;
@@ -15,17 +15,15 @@ import org.asf.nexus.events.conditions.interfaces.IGenericEventCondition;
 
 public class GenericConstructorImpl implements IEventConditionConstructor {
 
-	private static HashMap<String, IGenericEventCondition> conditions = new HashMap<String, IGenericEventCondition>();
+	private static ConcurrentHashMap<Class<?>, IGenericEventCondition> conditions = new ConcurrentHashMap<Class<?>, IGenericEventCondition>();
 
 	@Override
 	public IGenericEventCondition construct(IEventReceiver receiverType, Method listener, EventObject event,
 			Annotation annotation, EventBus bus) {
 		// Cast annotation type
 		EventCondition anno = (EventCondition) annotation;
-		synchronized (conditions) {
+		return conditions.computeIfAbsent(anno.value(), t -> {
 			Class<? extends IGenericEventCondition> condType = anno.value();
-			if (conditions.containsKey(condType.getTypeName()))
-				return conditions.get(condType.getTypeName());
 
 			// Constructor
 			Constructor<? extends IGenericEventCondition> ctor;
@@ -38,14 +36,12 @@ public class GenericConstructorImpl implements IEventConditionConstructor {
 
 			// Create instance
 			try {
-				IGenericEventCondition inst = ctor.newInstance();
-				conditions.put(condType.getTypeName(), inst);
-				return inst;
+				return ctor.newInstance();
 			} catch (InstantiationException | IllegalAccessException | IllegalArgumentException
 					| InvocationTargetException e) {
 				throw new RuntimeException("Failed to create instance of condition type " + condType.getTypeName(), e);
 			}
-		}
+		});
 	}
 
 }
@@ -9,12 +9,25 @@ import org.asf.nexus.events.IEventReceiver;
 
 public interface IEventConditionConstructor {
 
+	/**
+	 * Indicates if the constructor needs the event object to construct
+	 * conditions, by default conditions are constructed once when the listener is
+	 * registered and reused for every event
+	 * 
+	 * @return True to construct conditions for each dispatched event, false to
+	 *         construct them once at registration
+	 */
+	public default boolean isPerEvent() {
+		return false;
+	}
+
 	/**
 	 * Called to construct event conditions
 	 * 
 	 * @param receiverType Receiver type
 	 * @param listener     Event listener method
-	 * @param event        Event object
+	 * @param event        Event object, null if the condition is constructed at
+	 *                     registration (see {@link #isPerEvent()})
 	 * @param annotation   Annotation that was used to add the condition
 	 * @param bus          The event bus that is registering the listener
 	 * @return IGenericEventCondition instance
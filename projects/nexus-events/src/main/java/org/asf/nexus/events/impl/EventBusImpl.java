@@ -1,15 +1,26 @@
 package org.asf.nexus.events.impl;
 
 import java.lang.annotation.Annotation;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -17,92 +28,161 @@ import org.asf.nexus.events.EventBus;
 import org.asf.nexus.events.EventListener;
 import org.asf.nexus.events.EventObject;
 import org.asf.nexus.events.IEventReceiver;
+import org.asf.nexus.events.IEventRegistration;
 import org.asf.nexus.events.SupplierEventObject;
 import org.asf.nexus.events.conditions.EventConditionConstructor;
 import org.asf.nexus.events.conditions.RepeatableTarget;
 import org.asf.nexus.events.conditions.interfaces.IEventConditionConstructor;
 import org.asf.nexus.events.conditions.interfaces.IGenericEventCondition;
-import org.asf.nexus.events.impl.asm.BinaryClassLoader;
+import org.asf.nexus.events.impl.asm.EventDispatcherFactory;
 import org.asf.nexus.events.impl.asm.IEventDispatcher;
 import org.asf.nexus.events.impl.asm.IStaticEventDispatcher;
 import org.asf.nexus.events.impl.asm.IStaticSupplierEventDispatcher;
 import org.asf.nexus.events.impl.asm.ISupplierEventDispatcher;
-import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.tree.InsnNode;
-import org.objectweb.asm.tree.MethodInsnNode;
-import org.objectweb.asm.tree.MethodNode;
-import org.objectweb.asm.tree.TypeInsnNode;
-import org.objectweb.asm.tree.VarInsnNode;
+import org.asf.nexus.events.metrics.EventMetricsSnapshot;
 
 public class EventBusImpl extends EventBus {
 
-	private EventBus parent;
+	private EventBusImpl parent;
 	private Logger eventLog = LogManager.getLogger("EVENTBUS");
 
-	private ArrayList<String> loadedEvents = new ArrayList<String>();
-	private HashMap<String, ArrayList<Consumer<?>>> listeners = new HashMap<String, ArrayList<Consumer<?>>>();
-	private ArrayList<String> loadedStaticEventListeners = new ArrayList<String>();
-	private ArrayList<IEventReceiver> boundReceivers = new ArrayList<IEventReceiver>();
+	private final Object registryLock = new Object();
+	private final Object chainLock = new Object();
+	private static final HashMap<Class<?>, EventContainerListener[]> EMPTY_REGISTRY = new HashMap<Class<?>, EventContainerListener[]>();
+	private static final EventContainerListener[] NO_LISTENERS = new EventContainerListener[0];
 
-	private static BinaryClassLoader binLoader = new BinaryClassLoader(EventBusImpl.class.getClassLoader());
-	private static HashMap<String, IStaticEventDispatcher> staticDispatchers = new HashMap<String, IStaticEventDispatcher>();
-	private static HashMap<String, IEventDispatcher> objDispatchers = new HashMap<String, IEventDispatcher>();
-	private static HashMap<String, IStaticSupplierEventDispatcher> staticSupDispatchers = new HashMap<String, IStaticSupplierEventDispatcher>();
-	private static HashMap<String, ISupplierEventDispatcher> objSupDispatchers = new HashMap<String, ISupplierEventDispatcher>();
+	// Copy-on-write registry, published maps and arrays are never modified
+	private volatile HashMap<Class<?>, EventContainerListener[]> listeners = EMPTY_REGISTRY;
+	private volatile HashMap<Class<?>, EventContainerListener[]> subtypeListeners = EMPTY_REGISTRY;
+
+	// Flattened chains by event type (including parent bus listeners), resolved
+	// chains are shared with child buses, dispatch chains may be metered, chains
+	// built while the version changed are not published
+	private final ConcurrentHashMap<Class<?>, EventContainerListener[]> resolvedChains = new ConcurrentHashMap<Class<?>, EventContainerListener[]>();
+	private final ConcurrentHashMap<Class<?>, EventContainerListener[]> chains = new ConcurrentHashMap<Class<?>, EventContainerListener[]>();
+	private volatile int chainVersion;
+	private ArrayList<WeakReference<EventBusImpl>> children = new ArrayList<WeakReference<EventBusImpl>>();
+
+	private LongAdder shortCircuits = new LongAdder();
+	private LongAdder skippedListeners = new LongAdder();
+
+	// Listeners are only wrapped in metering delegates while metrics are enabled
+	private volatile boolean metricsEnabled = System.getProperty("eventMetrics") != null;
+	private EventMetricsRecorder metrics = new EventMetricsRecorder(eventLog);
+
+	private HashSet<String> loadedEvents = new HashSet<String>();
+
+	// Receiver registrations by identity hash code, listeners of closed or
+	// collected registrations are skipped and purged lazily
+	private HashMap<Integer, ArrayList<ReceiverRegistration>> receivers = new HashMap<Integer, ArrayList<ReceiverRegistration>>();
+	private HashMap<String, StaticListener> staticListeners = new HashMap<String, StaticListener>();
+	private ReferenceQueue<IEventReceiver> collected = new ReferenceQueue<IEventReceiver>();
+	private volatile boolean purgePending;
+	private AtomicBoolean purging = new AtomicBoolean();
+
+	// Supertype index used to look up subtype listeners, the event class itself
+	// first, then its superclasses, then all implemented interfaces
+	private static final ClassValue<Class<?>[]> eventHierarchy = new ClassValue<Class<?>[]>() {
+
+		@Override
+		protected Class<?>[] computeValue(Class<?> type) {
+			LinkedHashSet<Class<?>> types = new LinkedHashSet<Class<?>>();
+			for (Class<?> cls = type; cls != null && cls != Object.class; cls = cls.getSuperclass())
+				types.add(cls);
+			ArrayList<Class<?>> queue = new ArrayList<Class<?>>(types);
+			for (int i = 0; i < queue.size(); i++) {
+				for (Class<?> inter : queue.get(i).getInterfaces()) {
+					if (types.add(inter))
+						queue.add(inter);
+				}
+			}
+			return types.toArray(t -> new Class<?>[t]);
+		}
+
+	};
 
 	private static HashMap<String, IEventConditionConstructor> conditionCtors = new HashMap<String, IEventConditionConstructor>();
 
-	private class EventCondData {
+	private static class EventCondData {
 		public IEventConditionConstructor ctor;
 		public Annotation anno;
 	}
 
+	private static class ListenerConditions {
+		public IGenericEventCondition[] resolved;
+		public EventCondData[] perEvent;
+
+		public boolean match(IEventReceiver receiver, Method meth, EventObject event, EventBus bus) {
+			// Conditions resolved at registration
+			for (IGenericEventCondition condition : resolved) {
+				if (!condition.match(receiver, meth, event))
+					return false;
+			}
+
+			// Conditions that need the event object
+			for (EventCondData cond : perEvent) {
+				IGenericEventCondition condition = cond.ctor.construct(receiver, meth, event, cond.anno, bus);
+				if ((receiver != null || condition.supportsStatic()) && !condition.match(receiver, meth, event))
+					return false;
+			}
+			return true;
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	@Override
-	public void addAllEventsFromReceiver(IEventReceiver receiver) {
+	public IEventRegistration addAllEventsFromReceiver(IEventReceiver receiver, boolean weak) {
 		// Check
-		synchronized (boundReceivers) {
-			if (boundReceivers.contains(receiver))
-				return;
-			boundReceivers.add(receiver);
+		ReceiverRegistration registration;
+		synchronized (receivers) {
+			ReceiverRegistration existing = findRegistration(receiver);
+			if (existing != null)
+				return existing;
+			registration = new ReceiverRegistration(receiver, weak);
+			receivers.computeIfAbsent(registration.hash, t -> new ArrayList<ReceiverRegistration>())
+					.add(registration);
 		}
 
+		// Drop listeners of removed receivers before growing the registry
+		releaseCollectedReceivers();
+		if (purgePending)
+			purgeDeadListeners();
+
 		// Log subscription
 		eventLog.info("Registering all events in " + receiver.getClass().getTypeName() + "...");
 
 		// Loop through the class and register events
-		try {
-			// Preload
-			binLoader.loadClass(receiver.getClass().getTypeName());
-		} catch (ClassNotFoundException e) {
-		}
+		ArrayList<EventContainerListener> added = new ArrayList<EventContainerListener>();
 		for (Method meth : receiver.getClass().getMethods()) {
 			if (meth.isAnnotationPresent(EventListener.class) && Modifier.isPublic(meth.getModifiers())
 					&& !Modifier.isAbstract(meth.getModifiers())) {
 				// Find the event object
-				if (meth.getParameterCount() == 1 && EventObject.class.isAssignableFrom(meth.getParameterTypes()[0])) {
+				boolean includeSubtypes = meth.getAnnotation(EventListener.class).includeSubtypes();
+				if (meth.getParameterCount() == 1 && isEventType(meth.getParameterTypes()[0], includeSubtypes)) {
 					// Find event path
 					Class<?> eventType = meth.getParameterTypes()[0];
-					if (EventObject.class.isAssignableFrom(eventType)) {
+					if (isEventType(eventType, includeSubtypes)) {
 						// Check if static
+						ReceiverRegistration staticOwner = null;
 						if (Modifier.isStatic(meth.getModifiers())) {
 							String stPth = receiver.getClass().getTypeName() + "_" + meth.getName();
-							synchronized (loadedStaticEventListeners) {
-								// Check if the static event listener is already loaded, if it is, skip this
-								// event listener to prevent duplicate registration of static event listeners
-								if (!loadedStaticEventListeners.contains(stPth))
-									loadedStaticEventListeners.add(stPth);
-								else
+							synchronized (receivers) {
+								// Static event listeners are registered once and shared by all receivers of
+								// the type, they are removed together with the last of those receivers
+								registration.staticListeners.add(stPth);
+								StaticListener st = staticListeners.get(stPth);
+								if (st != null) {
+									st.references++;
 									continue;
+								}
+								st = new StaticListener();
+								st.owner = new ReceiverRegistration(null, false);
+								st.references = 1;
+								staticListeners.put(stPth, st);
+								staticOwner = st.owner;
 							}
 						}
-
-						try {
-							// Preload
-							binLoader.loadClass(eventType.getTypeName());
-						} catch (ClassNotFoundException e) {
-						}
+						ReceiverRegistration owner = staticOwner != null ? staticOwner : registration;
 
 						// Make accessible
 						meth.setAccessible(true);
@@ -110,15 +190,14 @@ public class EventBusImpl extends EventBus {
 						// Find all conditions
 						ArrayList<EventCondData> conditionCtors = new ArrayList<EventCondData>();
 						findConditions(meth, conditionCtors);
+						ListenerConditions conditions = resolveConditions(
+								Modifier.isStatic(meth.getModifiers()) ? null : receiver, meth, conditionCtors);
 
 						// Add listener
 						String path = eventType.getTypeName();
 						boolean toLoad = false;
 						synchronized (loadedEvents) {
-							if (!loadedEvents.contains(path)) {
-								loadedEvents.add(path);
-								toLoad = true;
-							}
+							toLoad = loadedEvents.add(path);
 						}
 						if (toLoad) {
 							// Load event
@@ -130,105 +209,143 @@ public class EventBusImpl extends EventBus {
 							if (ev != null)
 								ev.onRegister(this);
 						}
-						synchronized (listeners) {
-							ArrayList<Consumer<?>> events = new ArrayList<Consumer<?>>();
-							if (listeners.containsKey(path))
-								events = new ArrayList<Consumer<?>>(listeners.get(path));
-							EventContainerListener l = new EventContainerListener();
-							l.owner = receiver;
-
-							// Check if supplier
-							if (!SupplierEventObject.class.isAssignableFrom(eventType)) {
-								// Get dispatcher
-								if (!Modifier.isStatic(meth.getModifiers())) {
-									// Regular
-									IEventDispatcher disp = getDispatcher(receiver.getClass(), meth, eventType);
-									l.delegate = t -> {
-										// Go through conditions
-										for (EventCondData cond : conditionCtors) {
-											IGenericEventCondition condition = cond.ctor.construct(receiver, meth,
-													(EventObject) t, cond.anno, EventBusImpl.this);
-											if (!condition.match(receiver, meth, (EventObject) t))
-												return;
-										}
-
-										// Dispatch
-										disp.dispatch(receiver, (EventObject) t);
-									};
-								} else {
-									// Static
-									IStaticEventDispatcher disp = getStaticDispatcher(receiver.getClass(), meth,
-											eventType);
-									l.delegate = t -> {
-										// Go through conditions
-										for (EventCondData cond : conditionCtors) {
-											IGenericEventCondition condition = cond.ctor.construct(null, meth,
-													(EventObject) t, cond.anno, EventBusImpl.this);
-											if (condition.supportsStatic()
-													&& !condition.match(null, meth, (EventObject) t))
-												return;
-										}
-
-										// Dispatch
-										disp.dispatch((EventObject) t);
-									};
-								}
+
+						// Create listener
+						EventContainerListener l = new EventContainerListener();
+						l.owner = owner;
+						l.eventType = eventType;
+						l.includeSubtypes = includeSubtypes;
+						l.priority = meth.getAnnotation(EventListener.class).priority();
+						l.name = receiver.getClass().getTypeName() + ":" + meth.getName();
+
+						// Check if supplier
+						if (!SupplierEventObject.class.isAssignableFrom(eventType)) {
+							// Get dispatcher
+							if (!Modifier.isStatic(meth.getModifiers())) {
+								// Regular
+								IEventDispatcher disp = EventDispatcherFactory.getDispatcher(meth);
+								l.delegate = t -> {
+									// Skip receivers that were removed or collected
+									IEventReceiver rec = owner.getReceiver();
+									if (rec == null) {
+										purgeDeadListeners();
+										return;
+									}
+
+									// Check conditions
+									if (conditions != null
+											&& !conditions.match(rec, meth, (EventObject) t, EventBusImpl.this))
+										return;
+
+									// Dispatch
+									disp.dispatch(rec, (EventObject) t);
+								};
 							} else {
-								// Get dispatcher
-								if (!Modifier.isStatic(meth.getModifiers())) {
-									// Regular
-									ISupplierEventDispatcher disp = getSupplierDispatcher(receiver.getClass(), meth,
-											eventType);
-									l.delegate = t -> {
-										// Go through conditions
-										for (EventCondData cond : conditionCtors) {
-											IGenericEventCondition condition = cond.ctor.construct(receiver, meth,
-													(EventObject) t, cond.anno, EventBusImpl.this);
-											if (!condition.match(receiver, meth, (EventObject) t))
-												return;
-										}
-
-										// Dispatch
-										@SuppressWarnings("rawtypes")
-										SupplierEventObject e = (SupplierEventObject<?>) t;
-										Object ret = disp.dispatch(receiver, e);
-										if (ret != null) {
-											e.setResult(ret);
-										}
-									};
-								} else {
-									// Static
-									IStaticSupplierEventDispatcher disp = getStaticSupplierDispatcher(
-											receiver.getClass(), meth, eventType);
-									l.delegate = t -> {
-										// Go through conditions
-										for (EventCondData cond : conditionCtors) {
-											IGenericEventCondition condition = cond.ctor.construct(null, meth,
-													(EventObject) t, cond.anno, EventBusImpl.this);
-											if (condition.supportsStatic()
-													&& !condition.match(null, meth, (EventObject) t))
-												return;
-										}
-
-										// Dispatch
-										@SuppressWarnings("rawtypes")
-										SupplierEventObject e = (SupplierEventObject<?>) t;
-										Object ret = disp.dispatch(e);
-										if (ret != null) {
-											e.setResult(ret);
-										}
-									};
-								}
+								// Static
+								IStaticEventDispatcher disp = EventDispatcherFactory.getStaticDispatcher(meth);
+								l.delegate = t -> {
+									// Skip listeners that were removed
+									if (owner.closed) {
+										purgeDeadListeners();
+										return;
+									}
+
+									// Check conditions
+									if (conditions != null
+											&& !conditions.match(null, meth, (EventObject) t, EventBusImpl.this))
+										return;
+
+									// Dispatch
+									disp.dispatch((EventObject) t);
+								};
+							}
+						} else {
+							// Get dispatcher
+							if (!Modifier.isStatic(meth.getModifiers())) {
+								// Regular
+								ISupplierEventDispatcher disp = EventDispatcherFactory.getSupplierDispatcher(meth);
+								l.delegate = t -> {
+									// Skip receivers that were removed or collected
+									IEventReceiver rec = owner.getReceiver();
+									if (rec == null) {
+										purgeDeadListeners();
+										return;
+									}
+
+									// Check conditions
+									if (conditions != null
+											&& !conditions.match(rec, meth, (EventObject) t, EventBusImpl.this))
+										return;
+
+									// Dispatch
+									@SuppressWarnings("rawtypes")
+									SupplierEventObject e = (SupplierEventObject<?>) t;
+									Object ret = disp.dispatch(rec, e);
+									if (ret != null) {
+										e.setResult(ret);
+									}
+								};
+							} else {
+								// Static
+								IStaticSupplierEventDispatcher disp = EventDispatcherFactory
+										.getStaticSupplierDispatcher(meth);
+								l.delegate = t -> {
+									// Skip listeners that were removed
+									if (owner.closed) {
+										purgeDeadListeners();
+										return;
+									}
+
+									// Check conditions
+									if (conditions != null
+											&& !conditions.match(null, meth, (EventObject) t, EventBusImpl.this))
+										return;
+
+									// Dispatch
+									@SuppressWarnings("rawtypes")
+									SupplierEventObject e = (SupplierEventObject<?>) t;
+									Object ret = disp.dispatch(e);
+									if (ret != null) {
+										e.setResult(ret);
+									}
+								};
 							}
-							eventLog.debug("Attaching event handler " + receiver.getClass().getTypeName() + ":"
-									+ meth.getName() + " to event " + eventType.getTypeName());
-							events.add(l);
-							listeners.put(path, events);
 						}
+						eventLog.debug("Attaching event handler " + receiver.getClass().getTypeName() + ":"
+								+ meth.getName() + " to event " + eventType.getTypeName());
+						added.add(l);
 					}
 				}
 			}
 		}
+		attachListeners(added);
+		return registration;
+	}
+
+	private ListenerConditions resolveConditions(IEventReceiver receiver, Method meth,
+			ArrayList<EventCondData> conditionCtors) {
+		if (conditionCtors.isEmpty())
+			return null;
+
+		// Construct conditions once, unless the constructor needs the event object
+		ArrayList<IGenericEventCondition> resolved = new ArrayList<IGenericEventCondition>();
+		ArrayList<EventCondData> perEvent = new ArrayList<EventCondData>();
+		for (EventCondData cond : conditionCtors) {
+			if (cond.ctor.isPerEvent()) {
+				perEvent.add(cond);
+				continue;
+			}
+			IGenericEventCondition condition = cond.ctor.construct(receiver, meth, null, cond.anno, this);
+			if (receiver == null && !condition.supportsStatic())
+				continue;
+			resolved.add(condition);
+		}
+		if (resolved.isEmpty() && perEvent.isEmpty())
+			return null;
+		ListenerConditions conditions = new ListenerConditions();
+		conditions.resolved = resolved.toArray(t -> new IGenericEventCondition[t]);
+		conditions.perEvent = perEvent.toArray(t -> new EventCondData[t]);
+		return conditions;
 	}
 
 	private void findConditions(Method meth, ArrayList<EventCondData> conditionCtors) {
@@ -296,95 +413,26 @@ public class EventBusImpl extends EventBus {
 	@Override
 	public void removeAllEventsFromReceiver(IEventReceiver receiver) {
 		// Check
-		synchronized (boundReceivers) {
-			if (!boundReceivers.contains(receiver))
-				return;
-			boundReceivers.remove(receiver);
+		ReceiverRegistration registration;
+		synchronized (receivers) {
+			registration = findRegistration(receiver);
 		}
+		if (registration == null)
+			return;
 
 		// Log subscription
 		eventLog.info("De-registering all events in " + receiver.getClass().getTypeName() + "...");
-
-		// Loop through the class and de-register events
-		for (Method meth : receiver.getClass().getMethods()) {
-			if (meth.isAnnotationPresent(EventListener.class) && Modifier.isPublic(meth.getModifiers())
-					&& !Modifier.isAbstract(meth.getModifiers())) {
-				// Find the event object
-				if (meth.getParameterCount() == 1 && EventObject.class.isAssignableFrom(meth.getParameterTypes()[0])) {
-					// Find event path
-					Class<?> eventType = meth.getParameterTypes()[0];
-					if (EventObject.class.isAssignableFrom(eventType)) {
-						// Check if static
-						if (Modifier.isStatic(meth.getModifiers())) {
-							String stPth = receiver.getClass().getTypeName() + "_" + meth.getName();
-							synchronized (loadedStaticEventListeners) {
-								// Check if the static event listener is known
-								if (loadedStaticEventListeners.contains(stPth)) {
-									// It is, check if there are any other listeners of the same type
-									boolean found = false;
-									synchronized (boundReceivers) {
-										for (IEventReceiver rec : boundReceivers) {
-											if (meth.getDeclaringClass().isAssignableFrom(rec.getClass())) {
-												found = true;
-												break;
-											}
-										}
-									}
-									if (found) {
-										// Still present
-										// Skip de-registering
-										continue;
-									}
-
-									// De-register
-									loadedStaticEventListeners.remove(stPth);
-								}
-							}
-						}
-
-						// Find listeners
-						meth.setAccessible(true);
-						String path = eventType.getTypeName();
-						if (listeners.containsKey(path)) {
-							synchronized (listeners) {
-								ArrayList<Consumer<?>> events = new ArrayList<Consumer<?>>();
-								if (listeners.containsKey(path))
-									events = new ArrayList<Consumer<?>>(listeners.get(path));
-
-								// Remove
-								Consumer<?>[] evs = events.toArray(t -> new Consumer<?>[t]);
-								for (Consumer<?> ev : evs) {
-									if (ev instanceof EventContainerListener) {
-										EventContainerListener l = (EventContainerListener) ev;
-										if (l.owner == receiver) {
-											eventLog.debug("Detaching event handler "
-													+ receiver.getClass().getTypeName() + ":" + meth.getName()
-													+ " from event " + eventType.getTypeName());
-											events.remove(l);
-										}
-									}
-								}
-
-								listeners.put(path, events);
-							}
-						}
-					}
-
-				}
-			}
-		}
+		registration.close();
 	}
 
 	@Override
-	public <T extends EventObject> void addEventHandler(Class<T> eventClass, Consumer<T> eventHandler) {
+	public <T extends EventObject> void addEventHandler(Class<T> eventClass, Consumer<T> eventHandler,
+			int priority) {
 		// Load event
 		String path = eventClass.getTypeName();
 		boolean toLoad = false;
 		synchronized (loadedEvents) {
-			if (!loadedEvents.contains(path)) {
-				loadedEvents.add(path);
-				toLoad = true;
-			}
+			toLoad = loadedEvents.add(path);
 		}
 		if (toLoad) {
 			// Load event
@@ -398,320 +446,561 @@ public class EventBusImpl extends EventBus {
 		}
 
 		// Register
-		synchronized (listeners) {
-			ArrayList<Consumer<?>> events = new ArrayList<Consumer<?>>();
-			if (listeners.containsKey(path))
-				events = new ArrayList<Consumer<?>>(listeners.get(path));
+		eventLog.debug("Attaching event handler " + eventHandler + " to event " + eventClass.getTypeName());
+		attachListener(eventClass, handlerListener(eventHandler, priority), false);
+	}
 
-			events.add(eventHandler);
-			eventLog.debug("Attaching event handler " + eventHandler + " to event " + eventClass.getTypeName());
+	@Override
+	public <T> void addSubtypeEventHandler(Class<T> baseType, Consumer<T> eventHandler, int priority) {
+		if (!isEventType(baseType, true))
+			throw new IllegalArgumentException(
+					"Type " + baseType.getTypeName() + " is not an event type or an interface");
 
-			listeners.put(path, events);
+		// Register
+		eventLog.debug("Attaching event handler " + eventHandler + " to event " + baseType.getTypeName()
+				+ " and its subtypes");
+		attachListener(baseType, handlerListener(eventHandler, priority), true);
+	}
+
+	@Override
+	public <T> void removeSubtypeEventHandler(Class<T> baseType, Consumer<T> eventHandler) {
+		// Remove listener
+		synchronized (registryLock) {
+			EventContainerListener[] current = subtypeListeners.get(baseType);
+			if (current == null)
+				return;
+			ArrayList<EventContainerListener> events = new ArrayList<EventContainerListener>(Arrays.asList(current));
+			if (!events.removeIf(new Predicate<EventContainerListener>() {
+				boolean found;
+
+				@Override
+				public boolean test(EventContainerListener t) {
+					// Only remove the first registration of the handler
+					if (found || t.owner != null || !t.delegate.equals(eventHandler))
+						return false;
+					found = true;
+					t.removed = true;
+					return true;
+				}
+			}))
+				return;
+			eventLog.debug("Detaching event handler " + eventHandler + " from event " + baseType.getTypeName()
+					+ " and its subtypes");
+			replaceListeners(baseType, events, true);
 		}
 	}
 
 	@Override
 	public <T extends EventObject> void removeEventHandler(Class<T> eventClass, Consumer<T> eventHandler) {
-		// Add listener
-		String path = eventClass.getTypeName();
-		if (!listeners.containsKey(path))
-			return;
-		synchronized (listeners) {
-			ArrayList<Consumer<?>> events = new ArrayList<Consumer<?>>();
-			if (listeners.containsKey(path))
-				events = new ArrayList<Consumer<?>>(listeners.get(path));
-
-			events.remove(eventHandler);
+		// Remove listener
+		synchronized (registryLock) {
+			EventContainerListener[] current = listeners.get(eventClass);
+			if (current == null)
+				return;
+			ArrayList<EventContainerListener> events = new ArrayList<EventContainerListener>(Arrays.asList(current));
+			if (!events.removeIf(new Predicate<EventContainerListener>() {
+				boolean found;
+
+				@Override
+				public boolean test(EventContainerListener t) {
+					// Only remove the first registration of the handler
+					if (found || t.owner != null || !t.delegate.equals(eventHandler))
+						return false;
+					found = true;
+					t.removed = true;
+					return true;
+				}
+			}))
+				return;
 			eventLog.debug("Detaching event handler " + eventHandler + " from event " + eventClass.getTypeName());
-
-			listeners.put(path, events);
+			replaceListeners(eventClass, events, false);
 		}
 	}
 
 	@Override
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public void dispatchEvent(EventObject event) {
-		if (parent != null)
-			parent.dispatchEvent(event);
-		if (listeners.containsKey(event.getClass().getTypeName())) {
-			// Dispatch event
-			ArrayList<Consumer<?>> events = this.listeners.get(event.getClass().getTypeName());
-			for (Consumer ev : events) {
-				ev.accept(event);
+		// Single identity lookup, the chain already contains parent listeners
+		EventContainerListener[] chain = chains.get(event.getClass());
+		if (chain == null)
+			chain = buildChain(event.getClass());
+
+		// Dispatch event
+		if (!event.stopsWhenHandled()) {
+			for (EventContainerListener ev : chain) {
+				((Consumer) ev.delegate).accept(event);
+			}
+			return;
+		}
+
+		// Dispatch until a listener handles the event
+		for (int i = 0; i < chain.length; i++) {
+			((Consumer) chain[i].delegate).accept(event);
+			if (event.isHandled()) {
+				if (i + 1 < chain.length) {
+					shortCircuits.increment();
+					skippedListeners.add(chain.length - i - 1);
+				}
+				return;
 			}
 		}
 	}
 
+	@Override
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public void dispatchEvents(EventObject[] events, int count) {
+		int start = 0;
+		while (start < count) {
+			// Find the run of events with the same type
+			Class<?> type = events[start].getClass();
+			int end = start + 1;
+			while (end < count && events[end].getClass() == type)
+				end++;
+
+			// Events that stop when handled need per-event dispatch
+			if (events[start].stopsWhenHandled()) {
+				for (int i = start; i < end; i++)
+					dispatchEvent(events[i]);
+				start = end;
+				continue;
+			}
+
+			// Deliver the whole run to each listener in turn
+			EventContainerListener[] chain = chains.get(type);
+			if (chain == null)
+				chain = buildChain(type);
+			for (EventContainerListener ev : chain) {
+				Consumer delegate = ev.delegate;
+				for (int i = start; i < end; i++)
+					delegate.accept(events[i]);
+			}
+			start = end;
+		}
+	}
+
+	@Override
+	public long getShortCircuitCount() {
+		return shortCircuits.sum();
+	}
+
+	@Override
+	public long getSkippedListenerCount() {
+		return skippedListeners.sum();
+	}
+
+	@Override
+	public void setMetricsEnabled(boolean enabled) {
+		synchronized (registryLock) {
+			if (metricsEnabled == enabled)
+				return;
+			metricsEnabled = enabled;
+			invalidateDispatchChains();
+		}
+	}
+
+	@Override
+	public boolean isMetricsEnabled() {
+		return metricsEnabled;
+	}
+
+	@Override
+	public void setMetricsSampleRate(int rate) {
+		metrics.setSampleRate(rate);
+	}
+
+	@Override
+	public int getMetricsSampleRate() {
+		return metrics.getSampleRate();
+	}
+
+	@Override
+	public void setSlowListenerThreshold(long threshold, TimeUnit unit) {
+		metrics.setSlowThreshold(unit.toNanos(threshold));
+	}
+
+	@Override
+	public long getSlowListenerThreshold(TimeUnit unit) {
+		return unit.convert(metrics.getSlowThreshold(), TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public EventMetricsSnapshot getMetrics() {
+		return metrics.snapshot();
+	}
+
+	@Override
+	public void resetMetrics() {
+		synchronized (registryLock) {
+			// Rebuild chains so that they record into new counters
+			metrics.reset();
+			if (metricsEnabled)
+				invalidateDispatchChains();
+		}
+	}
+
 	@Override
 	public EventBus createBus() {
 		EventBusImpl ev = new EventBusImpl();
 		ev.parent = this;
+		synchronized (children) {
+			children.removeIf(t -> t.get() == null);
+			children.add(new WeakReference<EventBusImpl>(ev));
+		}
 		return ev;
 	}
 
-	private IStaticEventDispatcher getStaticDispatcher(Class<?> type, Method method, Class<?> eventObject) {
-		String eventPth = type.getTypeName().replace(".", "/") + "/" + eventObject.getTypeName().replace(".", "/") + "_"
-				+ method.getName().replace(".", "/");
-		synchronized (staticDispatchers) {
-			if (staticDispatchers.containsKey(eventPth))
-				return staticDispatchers.get(eventPth);
-
-			// Generate bytecode
-			ClassNode syn = new ClassNode(Opcodes.ASM9);
-			syn.superName = "java/lang/Object";
-			syn.version = Opcodes.V1_6;
-			syn.name = eventPth + "$Synthetic_" + System.currentTimeMillis();
-			syn.interfaces.add("org/asf/nexus/events/impl/asm/IStaticEventDispatcher");
-			syn.access = Opcodes.ACC_PUBLIC | Opcodes.ACC_SYNTHETIC;
-
-			// Generate constructor
-			MethodNode init = new MethodNode();
-			init.access = Opcodes.ACC_PUBLIC;
-			init.name = "<init>";
-			init.desc = "()V";
-			init.instructions.add(new VarInsnNode(Opcodes.ALOAD, 0));
-			init.instructions
-					.add(new MethodInsnNode(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false));
-			init.instructions.add(new InsnNode(Opcodes.RETURN));
-			syn.methods.add(init);
-
-			// Generate dispatcher
-			MethodNode setup = new MethodNode();
-			setup.name = "dispatch";
-			setup.desc = "(Lorg/asf/nexus/events/EventObject;)V";
-			setup.access = Opcodes.ACC_PUBLIC;
-
-			setup.instructions.add(new VarInsnNode(Opcodes.ALOAD, 1));
-			setup.instructions.add(new TypeInsnNode(Opcodes.CHECKCAST, eventObject.getTypeName().replace(".", "/")));
-			setup.instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, type.getTypeName().replace(".", "/"),
-					method.getName(),
-					"(" + getDescriptors(eventObject) + ")" + getDescriptor(method.getReturnType().getTypeName())));
-			if (!method.getReturnType().getTypeName().equals("void"))
-				setup.instructions.add(new InsnNode(Opcodes.POP));
-			setup.instructions.add(new InsnNode(Opcodes.RETURN));
-			syn.methods.add(setup);
-
-			// Create instance
-			Class<IStaticEventDispatcher> dp = binLoader.loadClassBinary(syn, IStaticEventDispatcher.class);
-			try {
-				IStaticEventDispatcher inst = dp.getConstructor().newInstance();
-				staticDispatchers.put(eventPth, inst);
-				return inst;
-			} catch (InstantiationException | IllegalAccessException | IllegalArgumentException
-					| InvocationTargetException | NoSuchMethodException | SecurityException e) {
-				throw new RuntimeException(e);
+	private static boolean isEventType(Class<?> type, boolean includeSubtypes) {
+		// Interfaces can only be listened to with subtype dispatch
+		return EventObject.class.isAssignableFrom(type) || (includeSubtypes && type.isInterface());
+	}
+
+	private static EventContainerListener handlerListener(Consumer<?> eventHandler, int priority) {
+		EventContainerListener l = new EventContainerListener();
+		l.delegate = eventHandler;
+		l.priority = priority;
+		l.name = eventHandler.toString();
+		return l;
+	}
+
+	private void attachListener(Class<?> eventType, EventContainerListener listener, boolean includeSubtypes) {
+		listener.eventType = eventType;
+		listener.includeSubtypes = includeSubtypes;
+		ArrayList<EventContainerListener> added = new ArrayList<EventContainerListener>();
+		added.add(listener);
+		attachListeners(added);
+	}
+
+	private void attachListeners(ArrayList<EventContainerListener> added) {
+		if (added.isEmpty())
+			return;
+		synchronized (registryLock) {
+			// Copy each registry once for all listeners of a receiver
+			HashMap<Class<?>, EventContainerListener[]> regular = null;
+			HashMap<Class<?>, EventContainerListener[]> subtypes = null;
+			HashSet<Class<?>> types = new HashSet<Class<?>>();
+			HashSet<Class<?>> baseTypes = new HashSet<Class<?>>();
+			for (EventContainerListener listener : added) {
+				HashMap<Class<?>, EventContainerListener[]> registry;
+				if (listener.includeSubtypes) {
+					if (subtypes == null)
+						subtypes = new HashMap<Class<?>, EventContainerListener[]>(subtypeListeners);
+					registry = subtypes;
+					baseTypes.add(listener.eventType);
+				} else {
+					if (regular == null)
+						regular = new HashMap<Class<?>, EventContainerListener[]>(listeners);
+					registry = regular;
+					types.add(listener.eventType);
+				}
+				EventContainerListener[] current = registry.getOrDefault(listener.eventType, NO_LISTENERS);
+				EventContainerListener[] events = Arrays.copyOf(current, current.length + 1);
+				events[current.length] = listener;
+				registry.put(listener.eventType, events);
 			}
+			if (regular != null)
+				listeners = regular;
+			if (subtypes != null)
+				subtypeListeners = subtypes;
+			invalidateChains(types, baseTypes);
 		}
 	}
 
-	private IEventDispatcher getDispatcher(Class<?> type, Method method, Class<?> eventType) {
-		String eventPth = type.getTypeName().replace(".", "/") + "/" + eventType.getTypeName().replace(".", "/") + "_"
-				+ method.getName().replace(".", "/");
-		synchronized (objDispatchers) {
-			if (objDispatchers.containsKey(eventPth))
-				return objDispatchers.get(eventPth);
-
-			// Generate bytecode
-			ClassNode syn = new ClassNode(Opcodes.ASM9);
-			syn.superName = "java/lang/Object";
-			syn.version = Opcodes.V1_6;
-			syn.name = eventPth + "$Synthetic_" + System.currentTimeMillis();
-			syn.interfaces.add("org/asf/nexus/events/impl/asm/IEventDispatcher");
-			syn.access = Opcodes.ACC_PUBLIC | Opcodes.ACC_SYNTHETIC;
-
-			// Generate constructor
-			MethodNode init = new MethodNode();
-			init.access = Opcodes.ACC_PUBLIC;
-			init.name = "<init>";
-			init.desc = "()V";
-			init.instructions.add(new VarInsnNode(Opcodes.ALOAD, 0));
-			init.instructions
-					.add(new MethodInsnNode(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false));
-			init.instructions.add(new InsnNode(Opcodes.RETURN));
-			syn.methods.add(init);
-
-			// Generate dispatcher
-			MethodNode setup = new MethodNode();
-			setup.name = "dispatch";
-			setup.desc = "(Lorg/asf/nexus/events/IEventReceiver;Lorg/asf/nexus/events/EventObject;)V";
-			setup.access = Opcodes.ACC_PUBLIC;
-
-			setup.instructions.add(new VarInsnNode(Opcodes.ALOAD, 1));
-			setup.instructions.add(new TypeInsnNode(Opcodes.CHECKCAST, type.getTypeName().replace(".", "/")));
-			setup.instructions.add(new VarInsnNode(Opcodes.ALOAD, 2));
-			setup.instructions.add(new TypeInsnNode(Opcodes.CHECKCAST, eventType.getTypeName().replace(".", "/")));
-			setup.instructions.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, type.getTypeName().replace(".", "/"),
-					method.getName(),
-					"(" + getDescriptors(eventType) + ")" + getDescriptor(method.getReturnType().getTypeName())));
-			if (!method.getReturnType().getTypeName().equals("void"))
-				setup.instructions.add(new InsnNode(Opcodes.POP));
-			setup.instructions.add(new InsnNode(Opcodes.RETURN));
-			syn.methods.add(setup);
-
-			// Create instance
-			Class<IEventDispatcher> dp = binLoader.loadClassBinary(syn, IEventDispatcher.class);
-			try {
-				IEventDispatcher inst = dp.getConstructor().newInstance();
-				objDispatchers.put(eventPth, inst);
-				return inst;
-			} catch (InstantiationException | IllegalAccessException | IllegalArgumentException
-					| InvocationTargetException | NoSuchMethodException | SecurityException e) {
-				throw new RuntimeException(e);
+	private ReceiverRegistration findRegistration(IEventReceiver receiver) {
+		ArrayList<ReceiverRegistration> bucket = receivers.get(System.identityHashCode(receiver));
+		if (bucket != null) {
+			for (ReceiverRegistration registration : bucket) {
+				if (registration.getReceiver() == receiver)
+					return registration;
 			}
 		}
+		return null;
 	}
 
-	private IStaticSupplierEventDispatcher getStaticSupplierDispatcher(Class<?> type, Method method,
-			Class<?> eventObject) {
-		String eventPth = type.getTypeName().replace(".", "/") + "/" + eventObject.getTypeName().replace(".", "/") + "_"
-				+ method.getName().replace(".", "/");
-		synchronized (staticSupDispatchers) {
-			if (staticSupDispatchers.containsKey(eventPth))
-				return staticSupDispatchers.get(eventPth);
-
-			// Generate bytecode
-			ClassNode syn = new ClassNode(Opcodes.ASM9);
-			syn.superName = "java/lang/Object";
-			syn.version = Opcodes.V1_6;
-			syn.name = eventPth + "$Synthetic_" + System.currentTimeMillis();
-			syn.interfaces.add("org/asf/nexus/events/impl/asm/IStaticSupplierEventDispatcher");
-			syn.access = Opcodes.ACC_PUBLIC | Opcodes.ACC_SYNTHETIC;
-
-			// Generate constructor
-			MethodNode init = new MethodNode();
-			init.access = Opcodes.ACC_PUBLIC;
-			init.name = "<init>";
-			init.desc = "()V";
-			init.instructions.add(new VarInsnNode(Opcodes.ALOAD, 0));
-			init.instructions
-					.add(new MethodInsnNode(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false));
-			init.instructions.add(new InsnNode(Opcodes.RETURN));
-			syn.methods.add(init);
-
-			// Generate dispatcher
-			MethodNode setup = new MethodNode();
-			setup.name = "dispatch";
-			setup.desc = "(Lorg/asf/nexus/events/SupplierEventObject;)Ljava/lang/Object;";
-			setup.access = Opcodes.ACC_PUBLIC;
-
-			setup.instructions.add(new VarInsnNode(Opcodes.ALOAD, 1));
-			setup.instructions.add(new TypeInsnNode(Opcodes.CHECKCAST, eventObject.getTypeName().replace(".", "/")));
-			setup.instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, type.getTypeName().replace(".", "/"),
-					method.getName(),
-					"(" + getDescriptors(eventObject) + ")" + getDescriptor(method.getReturnType().getTypeName())));
-			setup.instructions.add(new InsnNode(Opcodes.ARETURN));
-			syn.methods.add(setup);
-
-			// Create instance
-			Class<IStaticSupplierEventDispatcher> dp = binLoader.loadClassBinary(syn,
-					IStaticSupplierEventDispatcher.class);
-			try {
-				IStaticSupplierEventDispatcher inst = dp.getConstructor().newInstance();
-				staticSupDispatchers.put(eventPth, inst);
-				return inst;
-			} catch (InstantiationException | IllegalAccessException | IllegalArgumentException
-					| InvocationTargetException | NoSuchMethodException | SecurityException e) {
-				throw new RuntimeException(e);
+	private void releaseCollectedReceivers() {
+		ReceiverRegistration registration;
+		while ((registration = (ReceiverRegistration) collected.poll()) != null)
+			registration.close();
+	}
+
+	private void purgeDeadListeners() {
+		// Only one thread purges at a time, others keep skipping dead listeners
+		if (!purging.compareAndSet(false, true))
+			return;
+		try {
+			releaseCollectedReceivers();
+			synchronized (registryLock) {
+				purgePending = false;
+				HashSet<Class<?>> types = new HashSet<Class<?>>();
+				HashSet<Class<?>> baseTypes = new HashSet<Class<?>>();
+				HashMap<Class<?>, EventContainerListener[]> regular = withoutDeadListeners(listeners, types);
+				HashMap<Class<?>, EventContainerListener[]> subtypes = withoutDeadListeners(subtypeListeners,
+						baseTypes);
+				if (regular == listeners && subtypes == subtypeListeners)
+					return;
+				listeners = regular;
+				subtypeListeners = subtypes;
+				invalidateChains(types, baseTypes);
 			}
+		} finally {
+			purging.set(false);
 		}
 	}
 
-	private ISupplierEventDispatcher getSupplierDispatcher(Class<?> type, Method method, Class<?> eventType) {
-		String eventPth = type.getTypeName().replace(".", "/") + "/" + eventType.getTypeName().replace(".", "/") + "_"
-				+ method.getName().replace(".", "/");
-		synchronized (objSupDispatchers) {
-			if (objSupDispatchers.containsKey(eventPth))
-				return objSupDispatchers.get(eventPth);
-
-			// Generate bytecode
-			ClassNode syn = new ClassNode(Opcodes.ASM9);
-			syn.superName = "java/lang/Object";
-			syn.version = Opcodes.V1_6;
-			syn.name = eventPth + "$Synthetic_" + System.currentTimeMillis();
-			syn.interfaces.add("org/asf/nexus/events/impl/asm/ISupplierEventDispatcher");
-			syn.access = Opcodes.ACC_PUBLIC | Opcodes.ACC_SYNTHETIC;
-
-			// Generate constructor
-			MethodNode init = new MethodNode();
-			init.access = Opcodes.ACC_PUBLIC;
-			init.name = "<init>";
-			init.desc = "()V";
-			init.instructions.add(new VarInsnNode(Opcodes.ALOAD, 0));
-			init.instructions
-					.add(new MethodInsnNode(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false));
-			init.instructions.add(new InsnNode(Opcodes.RETURN));
-			syn.methods.add(init);
-
-			// Generate dispatcher
-			MethodNode setup = new MethodNode();
-			setup.name = "dispatch";
-			setup.desc = "(Lorg/asf/nexus/events/IEventReceiver;Lorg/asf/nexus/events/SupplierEventObject;)Ljava/lang/Object;";
-			setup.access = Opcodes.ACC_PUBLIC;
-
-			setup.instructions.add(new VarInsnNode(Opcodes.ALOAD, 1));
-			setup.instructions.add(new TypeInsnNode(Opcodes.CHECKCAST, type.getTypeName().replace(".", "/")));
-			setup.instructions.add(new VarInsnNode(Opcodes.ALOAD, 2));
-			setup.instructions.add(new TypeInsnNode(Opcodes.CHECKCAST, eventType.getTypeName().replace(".", "/")));
-			setup.instructions.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, type.getTypeName().replace(".", "/"),
-					method.getName(),
-					"(" + getDescriptors(eventType) + ")" + getDescriptor(method.getReturnType().getTypeName())));
-			setup.instructions.add(new InsnNode(Opcodes.ARETURN));
-			syn.methods.add(setup);
-
-			// Create instance
-			Class<ISupplierEventDispatcher> dp = binLoader.loadClassBinary(syn, ISupplierEventDispatcher.class);
-			try {
-				ISupplierEventDispatcher inst = dp.getConstructor().newInstance();
-				objSupDispatchers.put(eventPth, inst);
-				return inst;
-			} catch (InstantiationException | IllegalAccessException | IllegalArgumentException
-					| InvocationTargetException | NoSuchMethodException | SecurityException e) {
-				throw new RuntimeException(e);
+	private static HashMap<Class<?>, EventContainerListener[]> withoutDeadListeners(
+			HashMap<Class<?>, EventContainerListener[]> registry, HashSet<Class<?>> changed) {
+		HashMap<Class<?>, EventContainerListener[]> res = registry;
+		for (Map.Entry<Class<?>, EventContainerListener[]> entry : registry.entrySet()) {
+			// Weak receivers may be collected at any time, so check each listener once
+			EventContainerListener[] current = entry.getValue();
+			EventContainerListener[] events = new EventContainerListener[current.length];
+			int alive = 0;
+			for (EventContainerListener l : current) {
+				if (l.owner == null || !l.owner.isDead())
+					events[alive++] = l;
 			}
+			if (alive == current.length)
+				continue;
+			changed.add(entry.getKey());
+
+			// Copy the registry on the first change
+			if (res == registry)
+				res = new HashMap<Class<?>, EventContainerListener[]>(registry);
+			if (alive == 0)
+				res.remove(entry.getKey());
+			else
+				res.put(entry.getKey(), Arrays.copyOf(events, alive));
+		}
+		return res;
+	}
+
+	private void replaceListeners(Class<?> eventType, ArrayList<EventContainerListener> events,
+			boolean includeSubtypes) {
+		HashMap<Class<?>, EventContainerListener[]> registry = new HashMap<Class<?>, EventContainerListener[]>(
+				includeSubtypes ? subtypeListeners : listeners);
+		if (events.isEmpty())
+			registry.remove(eventType);
+		else
+			registry.put(eventType, events.toArray(t -> new EventContainerListener[t]));
+		if (includeSubtypes)
+			subtypeListeners = registry;
+		else
+			listeners = registry;
+		if (includeSubtypes)
+			invalidateChains(Set.of(), Set.of(eventType));
+		else
+			invalidateChains(Set.of(eventType), Set.of());
+	}
+
+	private static EventContainerListener[] concat(EventContainerListener[] first, EventContainerListener[] second) {
+		if (first.length == 0)
+			return second;
+		if (second.length == 0)
+			return first;
+		EventContainerListener[] res = Arrays.copyOf(first, first.length + second.length);
+		System.arraycopy(second, 0, res, first.length, second.length);
+		return res;
+	}
+
+	private void invalidateChains(Set<Class<?>> types, Set<Class<?>> baseTypes) {
+		// Drop the chains of the changed event types, and of all their subtypes if
+		// subtype listeners changed
+		Predicate<Class<?>> affected = t -> types.contains(t) || inherits(t, baseTypes);
+		synchronized (chainLock) {
+			chainVersion++;
+			resolvedChains.keySet().removeIf(affected);
+			chains.keySet().removeIf(affected);
+		}
+		metrics.prune(t -> ((EventContainerListener) t).isRemoved());
+
+		// Buses created from this bus include our listeners in their chains
+		ArrayList<EventBusImpl> buses = new ArrayList<EventBusImpl>();
+		synchronized (children) {
+			children.removeIf(t -> {
+				EventBusImpl child = t.get();
+				if (child == null)
+					return true;
+				buses.add(child);
+				return false;
+			});
+		}
+		for (EventBusImpl child : buses)
+			child.invalidateChains(types, baseTypes);
+	}
+
+	private void invalidateDispatchChains() {
+		// Metering only affects the dispatch chains of this bus
+		synchronized (chainLock) {
+			chainVersion++;
+			chains.clear();
 		}
 	}
 
-	static final Map<Class<?>, Class<?>> PRIMITIVES = Map.of(byte.class, Byte.class, short.class, Short.class,
-			int.class, Integer.class, long.class, Long.class, float.class, Float.class, double.class, Double.class,
-			boolean.class, Boolean.class, char.class, Character.class);
-	private static Map<Character, String> descriptors = Map.of('V', "void", 'Z', "boolean", 'I', "int", 'J', "long",
-			'D', "double", 'F', "float", 'S', "short", 'C', "char", 'B', "byte");
+	private static boolean inherits(Class<?> eventType, Set<Class<?>> baseTypes) {
+		if (baseTypes.isEmpty())
+			return false;
+		for (Class<?> type : eventHierarchy.get(eventType)) {
+			if (baseTypes.contains(type))
+				return true;
+		}
+		return false;
+	}
 
-	private static String getDescriptors(Class<?>... types) {
-		StringBuilder b = new StringBuilder();
-		for (Class<?> type : types) {
-			b.append(getDescriptor(type.getTypeName()));
+	private EventContainerListener[] buildChain(Class<?> eventType) {
+		while (true) {
+			int version = chainVersion;
+			EventContainerListener[] chain = resolveChain(eventType);
+
+			// Wrap listeners in metering delegates
+			if (metricsEnabled) {
+				EventContainerListener[] metered = new EventContainerListener[chain.length];
+				for (int i = 0; i < chain.length; i++) {
+					EventContainerListener l = new EventContainerListener();
+					l.owner = chain[i].owner;
+					l.priority = chain[i].priority;
+					l.name = chain[i].name;
+					l.registered = chain[i];
+					l.delegate = metrics.meter(eventType, chain[i], chain[i].name, chain[i].delegate, i == 0);
+					metered[i] = l;
+				}
+				chain = metered;
+			}
+
+			// Publish unless the chain was invalidated while building
+			synchronized (chainLock) {
+				if (version != chainVersion)
+					continue;
+				EventContainerListener[] existing = chains.putIfAbsent(eventType, chain);
+				return existing != null ? existing : chain;
+			}
 		}
-		return b.toString();
 	}
 
-	private static String getDescriptor(String type) {
-		String prefix = "";
-		while (type.contains("[]")) {
-			prefix += "[";
-			type = type.substring(0, type.lastIndexOf("["));
+	private EventContainerListener[] resolveChain(Class<?> eventType) {
+		EventContainerListener[] chain = resolvedChains.get(eventType);
+		if (chain != null)
+			return chain;
+		while (true) {
+			int version = chainVersion;
+
+			// Exact listeners, then subtype listeners from most to least specific type
+			chain = listeners.getOrDefault(eventType, NO_LISTENERS);
+			HashMap<Class<?>, EventContainerListener[]> subtypes = subtypeListeners;
+			if (!subtypes.isEmpty()) {
+				for (Class<?> type : eventHierarchy.get(eventType)) {
+					EventContainerListener[] inherited = subtypes.get(type);
+					if (inherited != null)
+						chain = concat(chain, inherited);
+				}
+			}
+
+			// Merge parent listeners in front of our own
+			if (parent != null)
+				chain = concat(parent.resolveChain(eventType), chain);
+
+			// Sort by priority, stable so that equal priorities keep registration order
+			if (chain.length > 1) {
+				chain = chain.clone();
+				Arrays.sort(chain, (t1, t2) -> Integer.compare(t2.priority, t1.priority));
+			}
+
+			// Publish unless the chain was invalidated while building
+			synchronized (chainLock) {
+				if (version != chainVersion)
+					continue;
+				EventContainerListener[] existing = resolvedChains.putIfAbsent(eventType, chain);
+				return existing != null ? existing : chain;
+			}
 		}
-		int i = 0;
-		for (String desc : descriptors.values()) {
-			if (desc.equals(type))
-				return prefix + descriptors.keySet().toArray(t -> new Character[t])[i].toString();
-			i++;
+	}
+
+	private static class EventContainerListener {
+
+		public ReceiverRegistration owner;
+		public Consumer<?> delegate;
+		public int priority;
+		public String name;
+		public Class<?> eventType;
+		public boolean includeSubtypes;
+		public volatile boolean removed;
+
+		// Registered listener wrapped by a metering listener
+		public EventContainerListener registered;
+
+		public boolean isRemoved() {
+			if (registered != null)
+				return registered.isRemoved();
+			return removed || (owner != null && owner.isDead());
 		}
-		if (type == "")
-			return "";
-		return prefix + "L" + type.replaceAll("\\.", "/") + ";";
+
 	}
 
-	@SuppressWarnings("rawtypes")
-	private static class EventContainerListener implements Consumer {
+	private static class StaticListener {
+
+		public ReceiverRegistration owner;
+		public int references;
+
+	}
+
+	private class ReceiverRegistration extends WeakReference<IEventReceiver> implements IEventRegistration {
+
+		public int hash;
+		public IEventReceiver strong;
+		public boolean weak;
+		public volatile boolean closed;
+		public ArrayList<String> staticListeners = new ArrayList<String>();
+
+		public ReceiverRegistration(IEventReceiver receiver, boolean weak) {
+			super(receiver, weak ? collected : null);
+			this.weak = weak;
+			if (!weak)
+				strong = receiver;
+			hash = System.identityHashCode(receiver);
+		}
+
+		public IEventReceiver getReceiver() {
+			if (closed)
+				return null;
+			return strong != null ? strong : get();
+		}
 
-		public IEventReceiver owner;
-		public Consumer delegate;
+		public boolean isDead() {
+			return closed || (weak && get() == null);
+		}
 
 		@Override
-		@SuppressWarnings("unchecked")
-		public void accept(Object t) {
-			delegate.accept(t);
+		public boolean isActive() {
+			return !isDead();
+		}
+
+		@Override
+		public boolean isWeak() {
+			return weak;
+		}
+
+		@Override
+		public void close() {
+			synchronized (receivers) {
+				if (closed)
+					return;
+				closed = true;
+				strong = null;
+
+				// Remove registration
+				ArrayList<ReceiverRegistration> bucket = receivers.get(hash);
+				if (bucket != null && bucket.remove(this) && bucket.isEmpty())
+					receivers.remove(hash);
+
+				// Release shared static listeners
+				for (String path : staticListeners) {
+					StaticListener st = EventBusImpl.this.staticListeners.get(path);
+					if (st != null && --st.references == 0) {
+						st.owner.closed = true;
+						EventBusImpl.this.staticListeners.remove(path);
+					}
+				}
+				staticListeners.clear();
+			}
+			purgePending = true;
 		}
 
 	}
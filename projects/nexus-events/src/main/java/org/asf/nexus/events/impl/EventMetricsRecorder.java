@@ -0,0 +1,178 @@
+package org.asf.nexus.events.impl;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.apache.logging.log4j.Logger;
+import org.asf.nexus.events.metrics.EventMetricsSnapshot;
+import org.asf.nexus.events.metrics.EventTypeMetrics;
+import org.asf.nexus.events.metrics.ListenerMetrics;
+
+/**
+ * 
+ * Records per event type and per listener dispatch metrics, listeners are
+ * wrapped in metering delegates when dispatch chains are built so buses
+ * without metrics do not pay for them
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+class EventMetricsRecorder {
+
+	private static final long SLOW_LOG_INTERVAL = 1000000000l;
+
+	private Logger logger;
+	private volatile int sampleRate = Integer.getInteger("eventMetricsSampleRate", 16);
+	private volatile long slowThreshold = Long.getLong("eventSlowListenerMs", 0) * 1000000l;
+	private ConcurrentHashMap<Class<?>, TypeStats> types = new ConcurrentHashMap<Class<?>, TypeStats>();
+
+	private static class TypeStats {
+		public LongAdder dispatches = new LongAdder();
+		public ConcurrentHashMap<Object, ListenerStats> listeners = new ConcurrentHashMap<Object, ListenerStats>();
+	}
+
+	private static class ListenerStats {
+		public String name;
+		public LongAdder invocations = new LongAdder();
+		public LongAdder exceptions = new LongAdder();
+		public LongAdder slow = new LongAdder();
+		public LongAdder sampled = new LongAdder();
+		public LongAdder sampledNanos = new LongAdder();
+		public AtomicLong maxNanos = new AtomicLong();
+		public AtomicLongArray histogram = new AtomicLongArray(64);
+		public volatile long lastSlowLog;
+	}
+
+	public EventMetricsRecorder(Logger logger) {
+		this.logger = logger;
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	public void setSampleRate(int sampleRate) {
+		if (sampleRate <= 0)
+			throw new IllegalArgumentException("Sample rate must be at least 1");
+		this.sampleRate = sampleRate;
+	}
+
+	public long getSlowThreshold() {
+		return slowThreshold;
+	}
+
+	public void setSlowThreshold(long nanos) {
+		slowThreshold = nanos;
+	}
+
+	/**
+	 * Wraps a listener delegate in a metering delegate
+	 * 
+	 * @param eventType     Event type of the dispatch chain
+	 * @param listener      Listener key, metrics are kept per key and event type
+	 * @param name          Listener name
+	 * @param delegate      Delegate to wrap
+	 * @param countDispatch True to count events delivered to the chain, set for
+	 *                      the first listener of a chain only
+	 * @return Metering delegate
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public Consumer<?> meter(Class<?> eventType, Object listener, String name, Consumer<?> delegate,
+			boolean countDispatch) {
+		TypeStats type = types.computeIfAbsent(eventType, t -> new TypeStats());
+		ListenerStats stats = type.listeners.computeIfAbsent(listener, t -> {
+			ListenerStats s = new ListenerStats();
+			s.name = name;
+			return s;
+		});
+		Consumer target = delegate;
+		return t -> {
+			if (countDispatch)
+				type.dispatches.increment();
+			stats.invocations.increment();
+
+			// Only time a sample of the invocations
+			int rate = sampleRate;
+			if (rate > 1 && ThreadLocalRandom.current().nextInt(rate) != 0) {
+				try {
+					target.accept(t);
+				} catch (Throwable e) {
+					stats.exceptions.increment();
+					throw e;
+				}
+				return;
+			}
+			long start = System.nanoTime();
+			try {
+				target.accept(t);
+			} catch (Throwable e) {
+				stats.exceptions.increment();
+				throw e;
+			} finally {
+				record(eventType, stats, System.nanoTime() - start);
+			}
+		};
+	}
+
+	private void record(Class<?> eventType, ListenerStats stats, long nanos) {
+		stats.sampled.increment();
+		stats.sampledNanos.add(nanos);
+		stats.maxNanos.accumulateAndGet(nanos, Math::max);
+		stats.histogram.incrementAndGet(64 - Long.numberOfLeadingZeros(Math.max(nanos, 0)) & 63);
+
+		// Check threshold
+		long threshold = slowThreshold;
+		if (threshold > 0 && nanos >= threshold) {
+			stats.slow.increment();
+			long now = System.nanoTime();
+			long last = stats.lastSlowLog;
+
+			// Limit logging to once per interval per listener
+			if (last == 0 || now - last >= SLOW_LOG_INTERVAL) {
+				stats.lastSlowLog = now;
+				logger.warn("Slow event listener: " + stats.name + " took " + (nanos / 1000000d) + "ms to handle "
+						+ eventType.getTypeName());
+			}
+		}
+	}
+
+	/**
+	 * Drops the metrics of listeners that were removed from the bus
+	 * 
+	 * @param removed Predicate returning true for listener keys of removed
+	 *                listeners
+	 */
+	public void prune(Predicate<Object> removed) {
+		for (TypeStats type : types.values())
+			type.listeners.keySet().removeIf(removed);
+	}
+
+	public void reset() {
+		types.clear();
+	}
+
+	public EventMetricsSnapshot snapshot() {
+		ArrayList<EventTypeMetrics> res = new ArrayList<EventTypeMetrics>();
+		for (Map.Entry<Class<?>, TypeStats> type : types.entrySet()) {
+			ArrayList<ListenerMetrics> listeners = new ArrayList<ListenerMetrics>();
+			for (ListenerStats stats : type.getValue().listeners.values()) {
+				long[] histogram = new long[stats.histogram.length()];
+				for (int i = 0; i < histogram.length; i++)
+					histogram[i] = stats.histogram.get(i);
+				listeners.add(new ListenerMetrics(stats.name, type.getKey(), stats.invocations.sum(),
+						stats.exceptions.sum(), stats.slow.sum(), stats.sampled.sum(), stats.sampledNanos.sum(),
+						stats.maxNanos.get(), histogram));
+			}
+			res.add(new EventTypeMetrics(type.getKey(), type.getValue().dispatches.sum(), listeners));
+		}
+		return new EventMetricsSnapshot(System.currentTimeMillis(), res);
+	}
+
+}
@@ -0,0 +1,235 @@
+package org.asf.nexus.events.impl.asm;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.asf.nexus.events.EventObject;
+import org.asf.nexus.events.IEventReceiver;
+import org.asf.nexus.events.SupplierEventObject;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * 
+ * Creates event dispatchers for listener methods, dispatchers are generated as
+ * hidden classes next to the listener's declaring class and are cached per
+ * declaring class, so they can be unloaded together with it
+ * 
+ * When a hidden class cannot be defined (for example when the declaring class
+ * is in a different module) a method handle based dispatcher is used instead
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public class EventDispatcherFactory {
+
+	private static final Class<?>[] DISPATCHER_TYPES = new Class<?>[] { IEventDispatcher.class,
+			IStaticEventDispatcher.class, ISupplierEventDispatcher.class, IStaticSupplierEventDispatcher.class };
+
+	// One dispatcher map per dispatcher type, keyed by listener method
+	private static final ClassValue<ConcurrentHashMap<Method, Object>[]> dispatchers = new ClassValue<ConcurrentHashMap<Method, Object>[]>() {
+
+		@Override
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		protected ConcurrentHashMap<Method, Object>[] computeValue(Class<?> type) {
+			ConcurrentHashMap<Method, Object>[] maps = new ConcurrentHashMap[DISPATCHER_TYPES.length];
+			for (int i = 0; i < maps.length; i++)
+				maps[i] = new ConcurrentHashMap<Method, Object>();
+			return maps;
+		}
+
+	};
+
+	/**
+	 * Retrieves the dispatcher of a instance listener method
+	 * 
+	 * @param method Listener method
+	 * @return IEventDispatcher instance
+	 */
+	public static IEventDispatcher getDispatcher(Method method) {
+		return (IEventDispatcher) getOrCreate(method, 0);
+	}
+
+	/**
+	 * Retrieves the dispatcher of a static listener method
+	 * 
+	 * @param method Listener method
+	 * @return IStaticEventDispatcher instance
+	 */
+	public static IStaticEventDispatcher getStaticDispatcher(Method method) {
+		return (IStaticEventDispatcher) getOrCreate(method, 1);
+	}
+
+	/**
+	 * Retrieves the dispatcher of a instance supplier event listener method
+	 * 
+	 * @param method Listener method
+	 * @return ISupplierEventDispatcher instance
+	 */
+	public static ISupplierEventDispatcher getSupplierDispatcher(Method method) {
+		return (ISupplierEventDispatcher) getOrCreate(method, 2);
+	}
+
+	/**
+	 * Retrieves the dispatcher of a static supplier event listener method
+	 * 
+	 * @param method Listener method
+	 * @return IStaticSupplierEventDispatcher instance
+	 */
+	public static IStaticSupplierEventDispatcher getStaticSupplierDispatcher(Method method) {
+		return (IStaticSupplierEventDispatcher) getOrCreate(method, 3);
+	}
+
+	private static Object getOrCreate(Method method, int type) {
+		// Generation only locks the map bin of the method, not other listeners
+		Class<?> dispatcherType = DISPATCHER_TYPES[type];
+		return dispatchers.get(method.getDeclaringClass())[type].computeIfAbsent(method, t -> {
+			try {
+				return defineHiddenDispatcher(method, dispatcherType);
+			} catch (IllegalAccessException e) {
+				return createHandleDispatcher(method, dispatcherType);
+			}
+		});
+	}
+
+	private static Object defineHiddenDispatcher(Method method, Class<?> dispatcherType)
+			throws IllegalAccessException {
+		boolean isStatic = Modifier.isStatic(method.getModifiers());
+		boolean supplier = dispatcherType == ISupplierEventDispatcher.class
+				|| dispatcherType == IStaticSupplierEventDispatcher.class;
+		Class<?> owner = method.getDeclaringClass();
+		Type eventType = Type.getType(method.getParameterTypes()[0]);
+		Type returnType = Type.getType(method.getReturnType());
+		String ownerName = Type.getInternalName(owner);
+
+		// Generate bytecode
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC,
+				ownerName + "$EventDispatcher", null, "java/lang/Object",
+				new String[] { Type.getInternalName(dispatcherType) });
+
+		// Generate constructor
+		MethodVisitor init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+		init.visitCode();
+		init.visitVarInsn(Opcodes.ALOAD, 0);
+		init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+		init.visitInsn(Opcodes.RETURN);
+		init.visitMaxs(0, 0);
+		init.visitEnd();
+
+		// Generate dispatcher
+		String desc = "(" + (isStatic ? "" : Type.getDescriptor(IEventReceiver.class))
+				+ Type.getDescriptor(supplier ? SupplierEventObject.class : EventObject.class) + ")"
+				+ (supplier ? "Ljava/lang/Object;" : "V");
+		MethodVisitor disp = writer.visitMethod(Opcodes.ACC_PUBLIC, "dispatch", desc, null, null);
+		disp.visitCode();
+		if (!isStatic) {
+			disp.visitVarInsn(Opcodes.ALOAD, 1);
+			disp.visitTypeInsn(Opcodes.CHECKCAST, ownerName);
+		}
+		disp.visitVarInsn(Opcodes.ALOAD, isStatic ? 1 : 2);
+		disp.visitTypeInsn(Opcodes.CHECKCAST, eventType.getInternalName());
+		if (isStatic)
+			disp.visitMethodInsn(Opcodes.INVOKESTATIC, ownerName, method.getName(),
+					Type.getMethodDescriptor(method), owner.isInterface());
+		else
+			disp.visitMethodInsn(owner.isInterface() ? Opcodes.INVOKEINTERFACE : Opcodes.INVOKEVIRTUAL, ownerName,
+					method.getName(), Type.getMethodDescriptor(method), owner.isInterface());
+		if (!supplier) {
+			// Discard the return value
+			if (returnType.getSize() == 2)
+				disp.visitInsn(Opcodes.POP2);
+			else if (returnType.getSize() == 1)
+				disp.visitInsn(Opcodes.POP);
+			disp.visitInsn(Opcodes.RETURN);
+		} else {
+			// Return the result as object
+			if (returnType.getSort() == Type.VOID)
+				disp.visitInsn(Opcodes.ACONST_NULL);
+			else if (returnType.getSort() != Type.OBJECT && returnType.getSort() != Type.ARRAY) {
+				Class<?> boxed = MethodType.methodType(method.getReturnType()).wrap().returnType();
+				disp.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(boxed), "valueOf",
+						"(" + returnType.getDescriptor() + ")" + Type.getDescriptor(boxed), false);
+			}
+			disp.visitInsn(Opcodes.ARETURN);
+		}
+		disp.visitMaxs(0, 0);
+		disp.visitEnd();
+		writer.visitEnd();
+
+		// Define the class next to the listener, it is unloaded together with it
+		Lookup lookup = MethodHandles.privateLookupIn(owner, MethodHandles.lookup());
+		Lookup hidden = lookup.defineHiddenClass(writer.toByteArray(), true);
+		try {
+			return hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class)).invoke();
+		} catch (Throwable e) {
+			throw new RuntimeException("Failed to create event dispatcher for " + owner.getTypeName() + ":"
+					+ method.getName(), e);
+		}
+	}
+
+	private static Object createHandleDispatcher(Method method, Class<?> dispatcherType) {
+		MethodHandle handle;
+		try {
+			method.setAccessible(true);
+			handle = MethodHandles.lookup().unreflect(method);
+		} catch (IllegalAccessException | RuntimeException e) {
+			throw new RuntimeException("Failed to create event dispatcher for "
+					+ method.getDeclaringClass().getTypeName() + ":" + method.getName(), e);
+		}
+
+		// Adapt the handle to the dispatcher signature
+		if (dispatcherType == IEventDispatcher.class) {
+			MethodHandle h = handle.asType(MethodType.methodType(void.class, IEventReceiver.class, EventObject.class));
+			return (IEventDispatcher) (receiver, event) -> {
+				try {
+					h.invokeExact(receiver, event);
+				} catch (Throwable e) {
+					throw EventDispatcherFactory.<RuntimeException>sneakyThrow(e);
+				}
+			};
+		} else if (dispatcherType == IStaticEventDispatcher.class) {
+			MethodHandle h = handle.asType(MethodType.methodType(void.class, EventObject.class));
+			return (IStaticEventDispatcher) (event) -> {
+				try {
+					h.invokeExact(event);
+				} catch (Throwable e) {
+					throw EventDispatcherFactory.<RuntimeException>sneakyThrow(e);
+				}
+			};
+		} else if (dispatcherType == ISupplierEventDispatcher.class) {
+			MethodHandle h = handle
+					.asType(MethodType.methodType(Object.class, IEventReceiver.class, SupplierEventObject.class));
+			return (ISupplierEventDispatcher) (receiver, event) -> {
+				try {
+					return (Object) h.invokeExact(receiver, event);
+				} catch (Throwable e) {
+					throw EventDispatcherFactory.<RuntimeException>sneakyThrow(e);
+				}
+			};
+		} else {
+			MethodHandle h = handle.asType(MethodType.methodType(Object.class, SupplierEventObject.class));
+			return (IStaticSupplierEventDispatcher) (event) -> {
+				try {
+					return (Object) h.invokeExact(event);
+				} catch (Throwable e) {
+					throw EventDispatcherFactory.<RuntimeException>sneakyThrow(e);
+				}
+			};
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T extends Throwable> T sneakyThrow(Throwable e) throws T {
+		// Rethrow checked exceptions unchanged, like the generated dispatchers
+		throw (T) e;
+	}
+
+}
@@ -0,0 +1,78 @@
+package org.asf.nexus.events.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 
+ * Point-in-time snapshot of the dispatch metrics of an event bus
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public class EventMetricsSnapshot {
+
+	private long timestamp;
+	private List<EventTypeMetrics> eventTypes;
+
+	/**
+	 * Creates a metrics snapshot
+	 * 
+	 * @param timestamp  Snapshot time in milliseconds since the epoch
+	 * @param eventTypes Event type metrics
+	 */
+	public EventMetricsSnapshot(long timestamp, List<EventTypeMetrics> eventTypes) {
+		this.timestamp = timestamp;
+		this.eventTypes = List.copyOf(eventTypes);
+	}
+
+	/**
+	 * Retrieves the time the snapshot was taken
+	 * 
+	 * @return Snapshot time in milliseconds since the epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Retrieves the metrics of all event types that were dispatched
+	 * 
+	 * @return List of EventTypeMetrics instances
+	 */
+	public List<EventTypeMetrics> getEventTypes() {
+		return eventTypes;
+	}
+
+	/**
+	 * Retrieves the metrics of a event type
+	 * 
+	 * @param eventType Event type
+	 * @return EventTypeMetrics instance or null if the type was not dispatched
+	 */
+	public EventTypeMetrics getEventType(Class<?> eventType) {
+		for (EventTypeMetrics type : eventTypes) {
+			if (type.getEventType() == eventType)
+				return type;
+		}
+		return null;
+	}
+
+	/**
+	 * Retrieves the listeners with the highest estimated total time
+	 * 
+	 * @param count Maximum amount of listeners to return
+	 * @return List of ListenerMetrics instances, slowest first
+	 */
+	public List<ListenerMetrics> getTopListeners(int count) {
+		ArrayList<ListenerMetrics> listeners = new ArrayList<ListenerMetrics>();
+		for (EventTypeMetrics type : eventTypes)
+			listeners.addAll(type.getListeners());
+		listeners.sort(Comparator.comparingLong((ListenerMetrics t) -> t.getTotalTime(TimeUnit.NANOSECONDS))
+				.reversed());
+		return listeners.subList(0, Math.min(count, listeners.size()));
+	}
+
+}
@@ -0,0 +1,97 @@
+package org.asf.nexus.events.metrics;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 
+ * Metrics snapshot of a single event type
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public class EventTypeMetrics {
+
+	private Class<?> eventType;
+	private long dispatches;
+	private List<ListenerMetrics> listeners;
+
+	/**
+	 * Creates a event type metrics snapshot
+	 * 
+	 * @param eventType  Event type
+	 * @param dispatches Amount of events delivered to listeners
+	 * @param listeners  Listener metrics
+	 */
+	public EventTypeMetrics(Class<?> eventType, long dispatches, List<ListenerMetrics> listeners) {
+		this.eventType = eventType;
+		this.dispatches = dispatches;
+		this.listeners = List.copyOf(listeners);
+	}
+
+	/**
+	 * Retrieves the event type
+	 * 
+	 * @return Event type
+	 */
+	public Class<?> getEventType() {
+		return eventType;
+	}
+
+	/**
+	 * Retrieves the amount of events of this type that were delivered to at
+	 * least one listener
+	 * 
+	 * @return Dispatch count
+	 */
+	public long getDispatchCount() {
+		return dispatches;
+	}
+
+	/**
+	 * Retrieves the metrics of all listeners that received this event type
+	 * 
+	 * @return List of ListenerMetrics instances
+	 */
+	public List<ListenerMetrics> getListeners() {
+		return listeners;
+	}
+
+	/**
+	 * Retrieves the total amount of listener invocations for this event type
+	 * 
+	 * @return Invocation count
+	 */
+	public long getInvocationCount() {
+		long total = 0;
+		for (ListenerMetrics listener : listeners)
+			total += listener.getInvocationCount();
+		return total;
+	}
+
+	/**
+	 * Retrieves the total amount of listener exceptions for this event type
+	 * 
+	 * @return Exception count
+	 */
+	public long getExceptionCount() {
+		long total = 0;
+		for (ListenerMetrics listener : listeners)
+			total += listener.getExceptionCount();
+		return total;
+	}
+
+	/**
+	 * Retrieves the estimated total time spent in listeners of this event type
+	 * 
+	 * @param unit Time unit
+	 * @return Estimated cumulative latency
+	 */
+	public long getTotalTime(TimeUnit unit) {
+		long total = 0;
+		for (ListenerMetrics listener : listeners)
+			total += listener.getTotalTime(TimeUnit.NANOSECONDS);
+		return unit.convert(total, TimeUnit.NANOSECONDS);
+	}
+
+}
@@ -0,0 +1,191 @@
+package org.asf.nexus.events.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 
+ * Metrics snapshot of a single event listener for a single event type
+ * 
+ * Latency is measured for a sample of the invocations (see
+ * {@link org.asf.nexus.events.EventBus#setMetricsSampleRate(int)}), times and
+ * percentiles are estimated from the sampled invocations
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public class ListenerMetrics {
+
+	private String listener;
+	private Class<?> eventType;
+	private long invocations;
+	private long exceptions;
+	private long slowInvocations;
+	private long sampled;
+	private long sampledNanos;
+	private long maxNanos;
+	private long[] histogram;
+
+	/**
+	 * Creates a listener metrics snapshot
+	 * 
+	 * @param listener        Listener name
+	 * @param eventType       Event type
+	 * @param invocations     Amount of invocations
+	 * @param exceptions      Amount of invocations that threw an exception
+	 * @param slowInvocations Amount of timed invocations that exceeded the slow
+	 *                        listener threshold
+	 * @param sampled         Amount of timed invocations
+	 * @param sampledNanos    Total time of all timed invocations in nanoseconds
+	 * @param maxNanos        Longest timed invocation in nanoseconds
+	 * @param histogram       Latency histogram, element <code>i</code> holds the
+	 *                        amount of timed invocations that took less than
+	 *                        <code>2^i</code> nanoseconds but at least
+	 *                        <code>2^(i-1)</code>
+	 */
+	public ListenerMetrics(String listener, Class<?> eventType, long invocations, long exceptions,
+			long slowInvocations, long sampled, long sampledNanos, long maxNanos, long[] histogram) {
+		this.listener = listener;
+		this.eventType = eventType;
+		this.invocations = invocations;
+		this.exceptions = exceptions;
+		this.slowInvocations = slowInvocations;
+		this.sampled = sampled;
+		this.sampledNanos = sampledNanos;
+		this.maxNanos = maxNanos;
+		this.histogram = histogram;
+	}
+
+	/**
+	 * Retrieves the listener name, the receiver type and method name for
+	 * annotated listeners
+	 * 
+	 * @return Listener name
+	 */
+	public String getListener() {
+		return listener;
+	}
+
+	/**
+	 * Retrieves the event type
+	 * 
+	 * @return Event type
+	 */
+	public Class<?> getEventType() {
+		return eventType;
+	}
+
+	/**
+	 * Retrieves the amount of times the listener was invoked
+	 * 
+	 * @return Invocation count
+	 */
+	public long getInvocationCount() {
+		return invocations;
+	}
+
+	/**
+	 * Retrieves the amount of invocations that threw an exception
+	 * 
+	 * @return Exception count
+	 */
+	public long getExceptionCount() {
+		return exceptions;
+	}
+
+	/**
+	 * Retrieves the amount of timed invocations that exceeded the slow listener
+	 * threshold
+	 * 
+	 * @return Slow invocation count
+	 */
+	public long getSlowInvocationCount() {
+		return slowInvocations;
+	}
+
+	/**
+	 * Retrieves the amount of invocations that were timed
+	 * 
+	 * @return Sampled invocation count
+	 */
+	public long getSampledCount() {
+		return sampled;
+	}
+
+	/**
+	 * Retrieves the estimated total time spent in the listener
+	 * 
+	 * @param unit Time unit
+	 * @return Estimated cumulative latency
+	 */
+	public long getTotalTime(TimeUnit unit) {
+		if (sampled == 0)
+			return 0;
+		return unit.convert((long) ((double) sampledNanos / sampled * invocations), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Retrieves the mean invocation time
+	 * 
+	 * @param unit Time unit
+	 * @return Mean latency
+	 */
+	public long getMeanTime(TimeUnit unit) {
+		if (sampled == 0)
+			return 0;
+		return unit.convert(sampledNanos / sampled, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Retrieves the longest timed invocation
+	 * 
+	 * @param unit Time unit
+	 * @return Maximum latency
+	 */
+	public long getMaxTime(TimeUnit unit) {
+		return unit.convert(maxNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Estimates a latency percentile, the result is interpolated within
+	 * power-of-two buckets
+	 * 
+	 * @param percentile Percentile, for example 99 for the 99th percentile
+	 * @param unit       Time unit
+	 * @return Estimated latency at the given percentile
+	 */
+	public long getPercentile(double percentile, TimeUnit unit) {
+		if (percentile < 0 || percentile > 100)
+			throw new IllegalArgumentException("Percentile must be between 0 and 100");
+		long total = 0;
+		for (long count : histogram)
+			total += count;
+		if (total == 0)
+			return 0;
+
+		// Find the bucket holding the requested rank
+		double rank = Math.max(1, Math.ceil(percentile / 100d * total));
+		long seen = 0;
+		for (int i = 0; i < histogram.length; i++) {
+			if (histogram[i] == 0)
+				continue;
+			if (seen + histogram[i] >= rank) {
+				if (i == 0)
+					return 0;
+				long low = 1l << (i - 1);
+				long high = i == 63 ? Long.MAX_VALUE : (1l << i) - 1;
+				long nanos = low + (long) ((high - low) * ((rank - seen) / histogram[i]));
+				return unit.convert(Math.min(nanos, maxNanos), TimeUnit.NANOSECONDS);
+			}
+			seen += histogram[i];
+		}
+		return unit.convert(maxNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public String toString() {
+		return listener + " (" + eventType.getTypeName() + "): " + invocations + " invocations, " + exceptions
+				+ " exceptions, mean " + getMeanTime(TimeUnit.MICROSECONDS) + "us, p99 "
+				+ getPercentile(99, TimeUnit.MICROSECONDS) + "us, max " + getMaxTime(TimeUnit.MICROSECONDS) + "us";
+	}
+
+}
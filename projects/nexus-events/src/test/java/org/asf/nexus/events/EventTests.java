@@ -1,12 +1,26 @@
 package org.asf.nexus.events;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Retention;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.asf.nexus.events.conditions.EventCondition;
+import org.asf.nexus.events.conditions.EventConditionConstructor;
 import org.asf.nexus.events.conditions.interfaces.IEventCondition;
+import org.asf.nexus.events.conditions.interfaces.IEventConditionConstructor;
+import org.asf.nexus.events.conditions.interfaces.IGenericEventCondition;
+import org.asf.nexus.events.metrics.EventTypeMetrics;
+import org.asf.nexus.events.metrics.ListenerMetrics;
+import org.asf.nexus.tasks.async.AsyncTask;
 import org.junit.Test;
 
 public class EventTests {
@@ -20,6 +34,12 @@ public class EventTests {
 	public static class TestEventThree extends EventObject {
 	}
 
+	public static class TestMetricsEvent extends EventObject {
+	}
+
+	public static class TestSessionEvent extends EventObject {
+	}
+
 	public static class TestEventFour extends SupplierEventObject<String> {
 	}
 
@@ -40,6 +60,120 @@ public class EventTests {
 
 	}
 
+	public static class TestEventSix extends EventObject {
+		public boolean allow;
+	}
+
+	public static class CountingConditionConstructor implements IEventConditionConstructor {
+		public static int constructed;
+
+		@Override
+		public IGenericEventCondition construct(IEventReceiver receiverType, Method listener, EventObject event,
+				Annotation annotation, EventBus bus) {
+			constructed++;
+			return (receiver, meth, ev) -> ((TestEventSix) ev).allow;
+		}
+
+	}
+
+	@Retention(RUNTIME)
+	@EventConditionConstructor(CountingConditionConstructor.class)
+	public static @interface CountingCondition {
+	}
+
+	public static class CountingReceiver implements IEventReceiver {
+		public int received;
+
+		@EventListener
+		@CountingCondition
+		public void test(TestEventSix event) {
+			received++;
+		}
+	}
+
+	public static class SessionReceiver implements IEventReceiver {
+		public static int staticReceived;
+		public int received;
+
+		@EventListener
+		public void onSession(TestSessionEvent event) {
+			received++;
+		}
+
+		@EventListener
+		public static void onSessionStatic(TestSessionEvent event) {
+			staticReceived++;
+		}
+	}
+
+	public static interface IPlayerEvent {
+	}
+
+	public static class TestBaseEvent extends EventObject {
+	}
+
+	public static class TestDerivedEvent extends TestBaseEvent implements IPlayerEvent {
+	}
+
+	public static class SubtypeReceiver implements IEventReceiver {
+		public int receivedBase;
+		public int receivedPlayer;
+		public int receivedExact;
+
+		@EventListener(includeSubtypes = true)
+		public void base(TestBaseEvent event) {
+			receivedBase++;
+		}
+
+		@EventListener(includeSubtypes = true)
+		public void player(IPlayerEvent event) {
+			receivedPlayer++;
+		}
+
+		@EventListener
+		public void exact(TestBaseEvent event) {
+			receivedExact++;
+		}
+	}
+
+	public static class TestLookupEvent extends SupplierEventObject<String> {
+		@Override
+		public boolean stopsWhenHandled() {
+			return true;
+		}
+	}
+
+	public static class PriorityReceiver implements IEventReceiver {
+		public String order = "";
+
+		@EventListener(priority = -1)
+		public String low(TestLookupEvent event) {
+			order += "low";
+			return "low";
+		}
+
+		@EventListener(priority = 10)
+		public String high(TestLookupEvent event) {
+			order += "high";
+			return null;
+		}
+	}
+
+	public static class TestPositionEvent extends EventObject implements ICoalescingEvent {
+		public int player;
+		public int position;
+
+		public TestPositionEvent(int player, int position) {
+			this.player = player;
+			this.position = position;
+		}
+
+		@Override
+		public Object getCoalescingKey() {
+			return player;
+		}
+	}
+
 	public static class TestEventReceivers implements IEventReceiver {
 		public boolean receivedTestOne;
 		public static boolean receivedTestTwo;
@@ -164,4 +298,301 @@ public class EventTests {
 		assertTrue(rec.receivedTestSix);
 	}
 
+	@Test
+	public void testChildBus() {
+		EventBus parent = EventBus.getInstance().createBus();
+		EventBus child = parent.createBus();
+		int[] counts = new int[2];
+
+		// Chains are rebuilt when the parent changes after a dispatch
+		child.dispatchEvent(new TestEventTwo());
+		Consumer<TestEventTwo> parentHandler = ev -> counts[0]++;
+		parent.addEventHandler(TestEventTwo.class, parentHandler);
+		child.addEventHandler(TestEventTwo.class, ev -> counts[1]++);
+		child.dispatchEvent(new TestEventTwo());
+		assertEquals(1, counts[0]);
+		assertEquals(1, counts[1]);
+
+		parent.removeEventHandler(TestEventTwo.class, parentHandler);
+		child.dispatchEvent(new TestEventTwo());
+		parent.dispatchEvent(new TestEventTwo());
+		assertEquals(1, counts[0]);
+		assertEquals(2, counts[1]);
+	}
+
+	@Test
+	public void testChildBusInvalidation() {
+		EventBus parent = EventBus.getInstance().createBus();
+		EventBus child = parent.createBus();
+		int[] counts = new int[2];
+		child.addEventHandler(TestEventOne.class, ev -> counts[0]++);
+		child.dispatchEvent(new TestEventOne());
+		child.dispatchEvent(new TestDerivedEvent());
+
+		// Subtype handlers on the parent reach cached child chains of subtypes
+		Consumer<IPlayerEvent> handler = ev -> counts[1]++;
+		parent.addSubtypeEventHandler(IPlayerEvent.class, handler);
+		child.dispatchEvent(new TestDerivedEvent());
+		child.dispatchEvent(new TestEventOne());
+		assertEquals(1, counts[1]);
+		assertEquals(2, counts[0]);
+
+		// Metrics only meter dispatches on the bus they were enabled on
+		parent.setMetricsEnabled(true);
+		child.dispatchEvent(new TestDerivedEvent());
+		assertEquals(2, counts[1]);
+		assertEquals(0, parent.getMetrics().getEventTypes().size());
+		parent.dispatchEvent(new TestDerivedEvent());
+		assertEquals(1, parent.getMetrics().getEventType(TestDerivedEvent.class).getDispatchCount());
+
+		parent.removeSubtypeEventHandler(IPlayerEvent.class, handler);
+		child.dispatchEvent(new TestDerivedEvent());
+		assertEquals(3, counts[1]);
+	}
+
+	@Test
+	public void testConditionsResolvedOnce() {
+		EventBus bus = EventBus.getInstance().createBus();
+		CountingReceiver receiver = new CountingReceiver();
+		CountingConditionConstructor.constructed = 0;
+		bus.addAllEventsFromReceiver(receiver);
+		for (int i = 0; i < 10; i++) {
+			TestEventSix ev = new TestEventSix();
+			ev.allow = i % 2 == 0;
+			bus.dispatchEvent(ev);
+		}
+		assertEquals(1, CountingConditionConstructor.constructed);
+		assertEquals(5, receiver.received);
+	}
+
+	@Test
+	public void testSubtypeDispatch() {
+		EventBus bus = EventBus.getInstance().createBus();
+		SubtypeReceiver receiver = new SubtypeReceiver();
+		bus.addAllEventsFromReceiver(receiver);
+		bus.dispatchEvent(new TestBaseEvent());
+		bus.dispatchEvent(new TestDerivedEvent());
+		assertEquals(2, receiver.receivedBase);
+		assertEquals(1, receiver.receivedPlayer);
+		assertEquals(1, receiver.receivedExact);
+
+		// Handlers added later invalidate the cached chains
+		int[] count = new int[1];
+		Consumer<IPlayerEvent> handler = ev -> count[0]++;
+		bus.addSubtypeEventHandler(IPlayerEvent.class, handler);
+		bus.createBus().dispatchEvent(new TestDerivedEvent());
+		assertEquals(1, count[0]);
+		assertEquals(3, receiver.receivedBase);
+		bus.removeSubtypeEventHandler(IPlayerEvent.class, handler);
+		bus.removeAllEventsFromReceiver(receiver);
+		bus.dispatchEvent(new TestDerivedEvent());
+		assertEquals(1, count[0]);
+		assertEquals(3, receiver.receivedBase);
+	}
+
+	@Test
+	public void testPriorityShortCircuit() {
+		EventBus bus = EventBus.getInstance().createBus();
+		PriorityReceiver receiver = new PriorityReceiver();
+		bus.addAllEventsFromReceiver(receiver);
+		bus.addEventHandler(TestLookupEvent.class, ev -> {
+			receiver.order += "mid";
+			return "mid";
+		}, 5);
+
+		// The mid handler sets a result, the low priority listener is skipped
+		assertEquals("mid", bus.dispatchEvent(new TestLookupEvent()));
+		assertEquals("highmid", receiver.order);
+		assertEquals(1, bus.getShortCircuitCount());
+		assertEquals(1, bus.getSkippedListenerCount());
+	}
+
+	@Test
+	public void testEventQueue() {
+		EventBus bus = EventBus.getInstance().createBus();
+		ArrayList<String> received = new ArrayList<String>();
+		bus.addEventHandler(TestPositionEvent.class, ev -> received.add("a" + ev.player + ":" + ev.position));
+		bus.addEventHandler(TestPositionEvent.class, ev -> received.add("b" + ev.player + ":" + ev.position));
+
+		// Coalescing keeps the latest event per key in its original position
+		EventQueue queue = bus.createQueue(2, QueueOverflowPolicy.REJECT);
+		assertTrue(queue.enqueue(new TestPositionEvent(1, 1)));
+		assertTrue(queue.enqueue(new TestPositionEvent(2, 1)));
+		assertTrue(queue.enqueue(new TestPositionEvent(1, 2)));
+		assertFalse(queue.enqueue(new TestPositionEvent(3, 1)));
+		assertEquals(2, queue.getDepth());
+		assertEquals(2, queue.drain());
+		assertEquals("[a1:2, a2:1, b1:2, b2:1]", received.toString());
+		assertEquals(1, queue.getCoalescedCount());
+		assertEquals(1, queue.getRejectedCount());
+
+		// Dropping the oldest event
+		received.clear();
+		queue = bus.createQueue(2, QueueOverflowPolicy.DROP_OLDEST);
+		for (int i = 1; i <= 3; i++)
+			queue.enqueue(new TestPositionEvent(i, 0));
+		queue.drain();
+		assertEquals("[a2:0, a3:0, b2:0, b3:0]", received.toString());
+		assertEquals(1, queue.getDroppedCount());
+	}
+
+	@Test
+	public void testEventQueueAsyncDrain() throws InterruptedException {
+		EventBus bus = EventBus.getInstance().createBus();
+		int[] count = new int[1];
+		bus.addEventHandler(TestEventOne.class, ev -> {
+			synchronized (count) {
+				count[0]++;
+			}
+		});
+		EventQueue queue = bus.createQueue(16, QueueOverflowPolicy.BLOCK, true);
+		for (int i = 0; i < 1000; i++)
+			queue.enqueue(new TestEventOne());
+		for (int i = 0; i < 500 && queue.getDeliveredCount() != 1000; i++)
+			Thread.sleep(10);
+		assertEquals(1000, queue.getDeliveredCount());
+		synchronized (count) {
+			assertEquals(1000, count[0]);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testEventQueueReentrantBlock() {
+		EventBus bus = EventBus.getInstance().createBus();
+		EventQueue queue = bus.createQueue(2, QueueOverflowPolicy.BLOCK);
+		ArrayList<Boolean> results = new ArrayList<Boolean>();
+		bus.addEventHandler(TestEventOne.class, ev -> {
+			for (int i = 0; i < 3; i++)
+				results.add(queue.enqueue(new TestEventTwo()));
+		});
+
+		// Listeners filling the queue they are drained from are rejected instead of blocking
+		queue.enqueue(new TestEventOne());
+		assertEquals(3, queue.drain());
+		assertEquals("[true, true, false]", results.toString());
+		assertEquals(1, queue.getRejectedCount());
+	}
+
+	@Test
+	public void testOrderedDispatch() {
+		EventBus bus = EventBus.getInstance().createBus();
+		int[][] seen = new int[4][1];
+		boolean[] ordered = new boolean[] { true };
+		bus.addEventHandler(TestPositionEvent.class, ev -> {
+			// Lanes never run two events of the same player at once
+			int[] last = seen[ev.player];
+			if (last[0] != ev.position - 1)
+				ordered[0] = false;
+			last[0] = ev.position;
+		});
+		ArrayList<AsyncTask<Void>> tasks = new ArrayList<AsyncTask<Void>>();
+		for (int i = 1; i <= 500; i++) {
+			for (int player = 0; player < 4; player++)
+				tasks.add(bus.dispatchEventOrdered(player, new TestPositionEvent(player, i)));
+		}
+		AsyncTask.allOf(tasks.toArray(t -> new AsyncTask<?>[t])).block();
+		assertTrue(ordered[0]);
+		for (int player = 0; player < 4; player++)
+			assertEquals(500, seen[player][0]);
+		assertEquals(2000, bus.getEventLanes().getSubmittedCount());
+	}
+
+	@Test
+	public void testMetrics() {
+		EventBus bus = EventBus.getInstance().createBus();
+		bus.addEventHandler(TestMetricsEvent.class, ev -> {
+		}, 1);
+		bus.addEventHandler(TestMetricsEvent.class, ev -> {
+			throw new IllegalStateException();
+		});
+
+		// Nothing is recorded while metrics are disabled
+		dispatchIgnoringErrors(bus, 5);
+		assertEquals(0, bus.getMetrics().getEventTypes().size());
+
+		// Time every invocation
+		bus.setMetricsEnabled(true);
+		bus.setMetricsSampleRate(1);
+		dispatchIgnoringErrors(bus, 10);
+		EventTypeMetrics type = bus.getMetrics().getEventType(TestMetricsEvent.class);
+		assertEquals(10, type.getDispatchCount());
+		assertEquals(20, type.getInvocationCount());
+		assertEquals(10, type.getExceptionCount());
+		for (ListenerMetrics listener : type.getListeners()) {
+			assertEquals(10, listener.getSampledCount());
+			assertTrue(listener.getPercentile(50, TimeUnit.NANOSECONDS) <= listener.getMaxTime(TimeUnit.NANOSECONDS));
+		}
+
+		// Reset
+		bus.resetMetrics();
+		dispatchIgnoringErrors(bus, 1);
+		assertEquals(1, bus.getMetrics().getEventType(TestMetricsEvent.class).getDispatchCount());
+	}
+
+	@Test
+	public void testMetricsPruning() {
+		EventBus bus = EventBus.getInstance().createBus();
+		bus.setMetricsEnabled(true);
+
+		// Metrics of removed receivers and handlers are dropped
+		for (int i = 0; i < 50; i++) {
+			IEventRegistration registration = bus.addAllEventsFromReceiver(new SessionReceiver());
+			Consumer<TestSessionEvent> handler = ev -> {
+			};
+			bus.addEventHandler(TestSessionEvent.class, handler);
+			bus.dispatchEvent(new TestSessionEvent());
+			bus.removeEventHandler(TestSessionEvent.class, handler);
+			registration.close();
+		}
+		bus.dispatchEvent(new TestSessionEvent());
+		bus.dispatchEvent(new TestSessionEvent());
+		assertEquals(0, bus.getMetrics().getEventType(TestSessionEvent.class).getListeners().size());
+	}
+
+	@Test
+	public void testRegistrationHandles() throws InterruptedException {
+		EventBus bus = EventBus.getInstance().createBus();
+		SessionReceiver first = new SessionReceiver();
+		SessionReceiver second = new SessionReceiver();
+		IEventRegistration registration = bus.addAllEventsFromReceiver(first);
+		assertTrue(registration == bus.addAllEventsFromReceiver(first));
+		bus.addAllEventsFromReceiver(second);
+
+		// The static listener is shared and stays until the last receiver is removed
+		SessionReceiver.staticReceived = 0;
+		bus.dispatchEvent(new TestSessionEvent());
+		registration.close();
+		assertFalse(registration.isActive());
+		bus.dispatchEvent(new TestSessionEvent());
+		assertEquals(1, first.received);
+		assertEquals(2, second.received);
+		assertEquals(2, SessionReceiver.staticReceived);
+		bus.removeAllEventsFromReceiver(second);
+		bus.dispatchEvent(new TestSessionEvent());
+		assertEquals(2, SessionReceiver.staticReceived);
+
+		// Weak receivers are released once collected
+		IEventRegistration weak = bus.addAllEventsFromReceiver(new SessionReceiver(), true);
+		assertTrue(weak.isWeak());
+		for (int i = 0; i < 100 && weak.isActive(); i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertFalse(weak.isActive());
+		SessionReceiver third = new SessionReceiver();
+		bus.addAllEventsFromReceiver(third, true);
+		bus.dispatchEvent(new TestSessionEvent());
+		assertEquals(1, third.received);
+		assertEquals(3, SessionReceiver.staticReceived);
+	}
+
+	private static void dispatchIgnoringErrors(EventBus bus, int count) {
+		for (int i = 0; i < count; i++) {
+			try {
+				bus.dispatchEvent(new TestMetricsEvent());
+			} catch (IllegalStateException e) {
+			}
+		}
+	}
+
 }
@@ -0,0 +1,99 @@
+package org.asf.nexus.tasks.async;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 
+ * Measures wake-up latency and CPU time burned by threads blocking on slow
+ * async tasks
+ * 
+ * @author Sky Swimmer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class AsyncTaskBlockBenchmark {
+
+	@Param({ "1000" })
+	public int waiters;
+
+	@Param({ "10", "100" })
+	public int taskMillis;
+
+	private ExecutorService waiterPool;
+	private ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class CpuCounters {
+		/**
+		 * Total CPU time consumed by all waiters while blocked
+		 */
+		public long waiterCpuNanos;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			waiterCpuNanos = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() {
+		waiterPool = Executors.newFixedThreadPool(waiters);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		waiterPool.shutdownNow();
+	}
+
+	@Benchmark
+	public void blockOnSlowTask(CpuCounters counters) throws InterruptedException {
+		AsyncTask<Void> task = AsyncTask.runAsync(() -> {
+			try {
+				Thread.sleep(taskMillis);
+			} catch (InterruptedException e) {
+			}
+		});
+
+		// Have every waiter block on the same task
+		CountDownLatch done = new CountDownLatch(waiters);
+		LongAdder cpu = new LongAdder();
+		for (int i = 0; i < waiters; i++) {
+			waiterPool.execute(() -> {
+				long start = threadBean.getCurrentThreadCpuTime();
+				task.block();
+				cpu.add(threadBean.getCurrentThreadCpuTime() - start);
+				done.countDown();
+			});
+		}
+		done.await();
+		counters.waiterCpuNanos += cpu.sum();
+	}
+
+}
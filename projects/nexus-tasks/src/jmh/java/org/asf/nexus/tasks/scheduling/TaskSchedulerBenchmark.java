@@ -0,0 +1,77 @@
+package org.asf.nexus.tasks.scheduling;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 
+ * Measures tick, scheduling and cancellation cost with a million pending
+ * timers
+ * 
+ * @author Sky Swimmer
+ *
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TaskSchedulerBenchmark {
+
+	@Param({ "1000000" })
+	public int timers;
+
+	private TaskScheduler scheduler;
+	private Runnable action = () -> {
+	};
+
+	@Setup(Level.Trial)
+	public void setup() {
+		// Schedule per-session style timeouts between one minute and one hour out
+		Random rnd = new Random(1234);
+		scheduler = new TaskScheduler();
+		for (int i = 0; i < timers; i++) {
+			if (i % 2 == 0)
+				scheduler.afterMs(action, 60000 + rnd.nextInt(3540000));
+			else
+				scheduler.delayed(action, 1200 + rnd.nextInt(70000));
+		}
+
+		// Some work that is due every tick
+		for (int i = 0; i < 100; i++)
+			scheduler.repeat(action);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public void tick() {
+		scheduler.tick();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public TaskScheduler scheduleAndCancelAll() {
+		TaskScheduler sched = new TaskScheduler();
+		ScheduledTask[] scheduled = new ScheduledTask[timers];
+		for (int i = 0; i < timers; i++)
+			scheduled[i] = sched.afterMs(action, 60000 + (i % 3540000));
+		for (int i = 0; i < timers; i++)
+			sched.cancel(scheduled[i]);
+		return sched;
+	}
+
+}
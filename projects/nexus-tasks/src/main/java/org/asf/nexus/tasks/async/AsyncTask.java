@@ -1,6 +1,17 @@
 package org.asf.nexus.tasks.async;
 
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -11,12 +22,20 @@ import java.util.function.Supplier;
  *
  */
 public class AsyncTask<T> {
+	private static final int STATE_PENDING = 0;
+	private static final int STATE_RUNNING = 1;
+	private static final int STATE_COMPLETED = 2;
+	private static final int STATE_CANCELLED = 3;
+
 	private Supplier<T> action;
 	private Runnable actionR;
-	private boolean run;
 	private T result;
-	boolean running;
-	boolean slatedForAsyncRun;
+	private Throwable failure;
+	private AsyncTask<?>[] sources;
+	private ArrayList<Runnable> continuations;
+	private AtomicInteger state = new AtomicInteger(STATE_PENDING);
+	private final CountDownLatch completion = new CountDownLatch(1);
+	volatile boolean slatedForAsyncRun;
 
 	private AsyncTask() {
 	}
@@ -41,7 +60,9 @@ public class AsyncTask<T> {
 	 */
 	public static <T> T await(AsyncTask<T> task) {
 		// Check current thread
-		if (Thread.currentThread() instanceof AsyncTaskThreadHandler)
+		// Pool workers run nested tasks inline, blocking them would tie up the pool,
+		// executors with cheap blocking (virtual threads) await a separate run
+		if (AsyncTaskManager.isAsyncThread() && !AsyncTaskManager.getExecutor().supportsBlockingAwait())
 			return runSynced(task);
 
 		// Run async
@@ -102,10 +123,7 @@ public class AsyncTask<T> {
 	 * @return AsyncTask instance
 	 */
 	public static AsyncTask<Void> runAsync(AsyncTask<Void> task, Runnable callback) {
-		return runAsync(() -> {
-			task.getResult();
-			callback.run();
-		});
+		return runAsync(task).thenRun(callback);
 	}
 
 	/**
@@ -117,8 +135,7 @@ public class AsyncTask<T> {
 	 * @return AsyncTask instance
 	 */
 	public static <T> AsyncTask<T> runAsync(AsyncTask<T> task, Consumer<T> callback) {
-		return runAsync(() -> {
-			T res = task.getResult();
+		return runAsync(task).thenApply(res -> {
 			callback.accept(res);
 			return res;
 		});
@@ -165,25 +182,340 @@ public class AsyncTask<T> {
 		return task;
 	}
 
+	/**
+	 * Creates a task that is completed with a value from the outside instead of
+	 * running an action
+	 * 
+	 * @param <T> Return type
+	 * @return AsyncTask instance
+	 */
+	public static <T> AsyncTask<T> createPending() {
+		return new AsyncTask<T>();
+	}
+
+	/**
+	 * Creates a task that completes when the given future completes
+	 * 
+	 * @param <T>    Return type
+	 * @param future Future to wrap
+	 * @return AsyncTask instance
+	 */
+	public static <T> AsyncTask<T> fromFuture(CompletionStage<T> future) {
+		AsyncTask<T> task = createPending();
+		future.whenComplete((res, err) -> {
+			if (err instanceof CompletionException && err.getCause() != null)
+				err = err.getCause();
+			if (err instanceof CancellationException)
+				task.cancel();
+			else if (err != null)
+				task.fail(err);
+			else
+				task.complete(res);
+		});
+		return task;
+	}
+
+	/**
+	 * Creates a task that completes once all given tasks have completed
+	 * 
+	 * @param tasks Tasks to wait for
+	 * @return AsyncTask instance, fails if any of the given tasks fails
+	 */
+	public static AsyncTask<Void> allOf(AsyncTask<?>... tasks) {
+		AsyncTask<Void> res = createPending();
+		res.sources = tasks;
+		if (tasks.length == 0) {
+			res.complete(null);
+			return res;
+		}
+		AtomicInteger remaining = new AtomicInteger(tasks.length);
+		for (AsyncTask<?> task : tasks) {
+			task.onCompletion(() -> {
+				if (task.isCancelled())
+					res.cancel();
+				else if (task.failure != null)
+					res.fail(task.failure);
+				else if (remaining.decrementAndGet() == 0)
+					res.complete(null);
+			});
+		}
+		return res;
+	}
+
+	/**
+	 * Creates a task that completes once any of the given tasks have completed
+	 * 
+	 * @param tasks Tasks to wait for
+	 * @return AsyncTask instance with the result of the first task that completes
+	 * @throws IllegalArgumentException If no tasks are given
+	 */
+	public static AsyncTask<Object> anyOf(AsyncTask<?>... tasks) {
+		if (tasks.length == 0)
+			throw new IllegalArgumentException("At least one task is required");
+		AsyncTask<Object> res = createPending();
+		res.sources = tasks;
+		for (AsyncTask<?> task : tasks) {
+			task.onCompletion(() -> res.completeFrom(task, task.result));
+		}
+		return res;
+	}
+
+	/**
+	 * Creates a task that runs a function with the result of this task once it
+	 * completes, the function is called from the thread that completes this task
+	 * 
+	 * @param <R> Result type of the new task
+	 * @param fn  Function to apply to the result
+	 * @return AsyncTask instance
+	 */
+	public <R> AsyncTask<R> thenApply(Function<? super T, ? extends R> fn) {
+		AsyncTask<R> next = createStage();
+		onCompletion(() -> {
+			if (isCancelled() || failure != null) {
+				next.completeFrom(this, null);
+				return;
+			}
+			R res;
+			try {
+				res = fn.apply(result);
+			} catch (Throwable e) {
+				next.fail(e);
+				return;
+			}
+			next.complete(res);
+		});
+		return next;
+	}
+
+	/**
+	 * Creates a task that runs a consumer with the result of this task once it
+	 * completes, the consumer is called from the thread that completes this task
+	 * 
+	 * @param action Consumer to call with the result
+	 * @return AsyncTask instance
+	 */
+	public AsyncTask<Void> thenAccept(Consumer<? super T> action) {
+		return thenApply(res -> {
+			action.accept(res);
+			return null;
+		});
+	}
+
+	/**
+	 * Creates a task that runs an action once this task completes, the action is
+	 * called from the thread that completes this task
+	 * 
+	 * @param action Action to run
+	 * @return AsyncTask instance
+	 */
+	public AsyncTask<Void> thenRun(Runnable action) {
+		return thenApply(res -> {
+			action.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Creates a task that continues with the task returned by the given function
+	 * once this task completes, the returned task is started asynchronously if it
+	 * was not already started
+	 * 
+	 * @param <R> Result type of the new task
+	 * @param fn  Function creating the next task
+	 * @return AsyncTask instance
+	 */
+	public <R> AsyncTask<R> thenCompose(Function<? super T, AsyncTask<R>> fn) {
+		AsyncTask<R> next = createStage();
+		onCompletion(() -> {
+			if (isCancelled() || failure != null) {
+				next.completeFrom(this, null);
+				return;
+			}
+			AsyncTask<R> inner;
+			try {
+				inner = runAsync(fn.apply(result));
+			} catch (Throwable e) {
+				next.fail(e);
+				return;
+			}
+			inner.onCompletion(() -> next.completeFrom(inner, inner.result));
+		});
+		return next;
+	}
+
+	/**
+	 * Creates a task that recovers from failures of this task, the function is
+	 * called with the exception if this task fails, otherwise the result is passed
+	 * through
+	 * 
+	 * @param fn Function called to create a fallback result
+	 * @return AsyncTask instance
+	 */
+	public AsyncTask<T> exceptionally(Function<Throwable, ? extends T> fn) {
+		AsyncTask<T> next = createStage();
+		onCompletion(() -> {
+			if (isCancelled() || failure == null) {
+				next.completeFrom(this, result);
+				return;
+			}
+			T res;
+			try {
+				res = fn.apply(failure);
+			} catch (Throwable e) {
+				next.fail(e);
+				return;
+			}
+			next.complete(res);
+		});
+		return next;
+	}
+
+	/**
+	 * Creates a CompletableFuture that completes when this task completes, this
+	 * does not start the task
+	 * 
+	 * @return CompletableFuture instance
+	 */
+	public CompletableFuture<T> toCompletableFuture() {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		onCompletion(() -> {
+			if (isCancelled())
+				future.cancel(false);
+			else if (failure != null)
+				future.completeExceptionally(failure);
+			else
+				future.complete(result);
+		});
+		return future;
+	}
+
+	/**
+	 * Completes a pending task with a result value
+	 * 
+	 * @param value Result value
+	 * @return True if the task was completed, false if it was already started or
+	 *         completed
+	 */
+	public boolean complete(T value) {
+		if (!state.compareAndSet(STATE_PENDING, STATE_RUNNING))
+			return false;
+		result = value;
+		finish(STATE_COMPLETED);
+		return true;
+	}
+
+	/**
+	 * Completes a pending task with a failure
+	 * 
+	 * @param error Exception that caused the task to fail
+	 * @return True if the task was completed, false if it was already started or
+	 *         completed
+	 */
+	public boolean fail(Throwable error) {
+		if (!state.compareAndSet(STATE_PENDING, STATE_RUNNING))
+			return false;
+		failure = error;
+		finish(STATE_COMPLETED);
+		return true;
+	}
+
+	private <R> AsyncTask<R> createStage() {
+		AsyncTask<R> stage = createPending();
+		stage.sources = new AsyncTask<?>[] { this };
+		return stage;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void completeFrom(AsyncTask<?> source, Object value) {
+		if (source.isCancelled())
+			cancel();
+		else if (source.failure != null)
+			fail(source.failure);
+		else
+			complete((T) value);
+	}
+
+	private void onCompletion(Runnable callback) {
+		synchronized (this) {
+			if (!hasCompleted()) {
+				if (continuations == null)
+					continuations = new ArrayList<Runnable>();
+				continuations.add(callback);
+				return;
+			}
+		}
+		callback.run();
+	}
+
+	private boolean isPending() {
+		return action == null && actionR == null;
+	}
+
 	void run() {
+		// Pending tasks are completed from the outside, start their sources instead
+		if (isPending()) {
+			if (sources != null)
+				for (AsyncTask<?> source : sources)
+					AsyncTaskManager.runAsync(source);
+			return;
+		}
+		runAction();
+	}
+
+	private boolean runAction() {
+		// Claim the task, another thread may have started or cancelled it already
+		if (!state.compareAndSet(STATE_PENDING, STATE_RUNNING))
+			return false;
 		try {
-			running = true;
 			if (action != null)
 				result = action.get();
 			else
 				actionR.run();
+		} catch (Throwable e) {
+			// Keep the failure for getResult, rethrowing would unwind the worker thread
+			failure = e;
 		} finally {
-			run = true;
+			finish(STATE_COMPLETED);
+		}
+		return true;
+	}
+
+	private void finish(int finalState) {
+		state.set(finalState);
+		completion.countDown();
+
+		// Run continuations
+		ArrayList<Runnable> conts;
+		synchronized (this) {
+			conts = continuations;
+			continuations = null;
+		}
+		if (conts != null) {
+			for (Runnable cont : conts)
+				cont.run();
 		}
 	}
 
 	/**
 	 * Runs the the task synchronously
+	 * 
+	 * @throws CompletionException If the task failed with a checked exception,
+	 *                             unchecked exceptions are rethrown as-is
 	 */
 	public void execute() {
-		if (slatedForAsyncRun || run || running)
+		if (slatedForAsyncRun || state.get() != STATE_PENDING)
 			return;
-		run();
+		if (isPending()) {
+			// Run sources synchronously
+			if (sources != null)
+				for (AsyncTask<?> source : sources)
+					source.execute();
+			return;
+		}
+
+		// Failures of tasks run by the caller are rethrown to the caller
+		if (runAction() && failure != null)
+			resultOrThrow();
 	}
 
 	/**
@@ -192,38 +524,171 @@ public class AsyncTask<T> {
 	 * @return True if started, false otherwise
 	 */
 	public boolean hasStarted() {
-		return running;
+		int st = state.get();
+		return st == STATE_RUNNING || st == STATE_COMPLETED;
 	}
 
 	/**
-	 * Retrieves the result of the task (blocks until completion)
+	 * Retrieves the result of the task (blocks until completion), failures of
+	 * tasks that ran asynchronously are rethrown as well instead of returning null
 	 * 
 	 * @return Result value
+	 * @throws CancellationException If the task was cancelled
+	 * @throws CompletionException   If the task failed with a checked exception,
+	 *                               unchecked exceptions are rethrown as-is
 	 */
 	public T getResult() {
 		block();
+		return resultOrThrow();
+	}
+
+	/**
+	 * Retrieves the result of the task, blocks until completion or until the
+	 * timeout is reached
+	 * 
+	 * @param timeout Maximum amount of time to wait
+	 * @param unit    Timeout time unit
+	 * @return Result value
+	 * @throws TimeoutException      If the task did not complete in time
+	 * @throws CancellationException If the task was cancelled
+	 * @throws CompletionException   If the task failed with a checked exception,
+	 *                               unchecked exceptions are rethrown as-is
+	 */
+	public T getResult(long timeout, TimeUnit unit) throws TimeoutException {
+		if (!block(timeout, unit))
+			throw new TimeoutException("Task did not complete within " + timeout + " " + unit);
+		return resultOrThrow();
+	}
+
+	private T resultOrThrow() {
+		if (state.get() == STATE_CANCELLED)
+			throw new CancellationException("Task was cancelled");
+		if (failure != null) {
+			if (failure instanceof RuntimeException)
+				throw (RuntimeException) failure;
+			if (failure instanceof Error)
+				throw (Error) failure;
+			throw new CompletionException(failure);
+		}
 		return result;
 	}
 
 	/**
 	 * Checks if the task has completed
 	 * 
-	 * @return True if completed, false otherwise
+	 * @return True if completed or cancelled, false otherwise
 	 */
 	public boolean hasCompleted() {
-		return run;
+		int st = state.get();
+		return st == STATE_COMPLETED || st == STATE_CANCELLED;
+	}
+
+	/**
+	 * Checks if the task completed with an exception
+	 * 
+	 * @return True if the task failed, false otherwise
+	 */
+	public boolean hasFailed() {
+		return state.get() == STATE_COMPLETED && failure != null;
+	}
+
+	/**
+	 * Retrieves the exception the task failed with
+	 * 
+	 * @return Throwable instance or null if the task did not fail
+	 */
+	public Throwable getFailure() {
+		return hasFailed() ? failure : null;
+	}
+
+	/**
+	 * Checks if the task was cancelled
+	 * 
+	 * @return True if cancelled, false otherwise
+	 */
+	public boolean isCancelled() {
+		return state.get() == STATE_CANCELLED;
+	}
+
+	/**
+	 * Cancels the task, only tasks that have not yet been started can be cancelled
+	 * 
+	 * @return True if the task was cancelled, false if it already started
+	 */
+	public boolean cancel() {
+		if (!state.compareAndSet(STATE_PENDING, STATE_CANCELLED))
+			return state.get() == STATE_CANCELLED;
+		finish(STATE_CANCELLED);
+		return true;
 	}
 
 	/**
 	 * Blocks until the task finishes
 	 */
 	public void block() {
-		if (!running && !slatedForAsyncRun)
+		if (!slatedForAsyncRun)
 			execute();
-		if (run)
+		if (hasCompleted())
 			return;
-		while (!run)
-			;
+		awaitCompletion(false, 0);
+	}
+
+	/**
+	 * Blocks until the task finishes or until the timeout is reached
+	 * 
+	 * @param timeout Maximum amount of time to wait
+	 * @param unit    Timeout time unit
+	 * @return True if the task completed, false if the timeout was reached
+	 */
+	public boolean block(long timeout, TimeUnit unit) {
+		if (!slatedForAsyncRun)
+			execute();
+		if (hasCompleted())
+			return true;
+		awaitCompletion(true, System.nanoTime() + unit.toNanos(timeout));
+		return hasCompleted();
+	}
+
+	private void awaitCompletion(boolean timed, long deadline) {
+		// Park until completion, worker threads of a work-stealing pool are
+		// compensated for while blocked so nested awaits cannot starve the pool
+		boolean interrupted = false;
+		CompletionBlocker blocker = new CompletionBlocker(timed, deadline);
+		while (true) {
+			try {
+				ForkJoinPool.managedBlock(blocker);
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	private class CompletionBlocker implements ForkJoinPool.ManagedBlocker {
+		private boolean timed;
+		private long deadline;
+
+		public CompletionBlocker(boolean timed, long deadline) {
+			this.timed = timed;
+			this.deadline = deadline;
+		}
+
+		@Override
+		public boolean block() throws InterruptedException {
+			// Latch-based waiting parks without pinning the carrier of virtual threads
+			if (!timed)
+				completion.await();
+			else
+				completion.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+			return true;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			return hasCompleted() || (timed && deadline - System.nanoTime() <= 0);
+		}
 	}
 
 }
@@ -0,0 +1,232 @@
+package org.asf.nexus.tasks.async;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * 
+ * Ordered task lanes - tasks submitted with the same key run one at a time in
+ * submission order, tasks with different keys run in parallel on the async
+ * task executor
+ * 
+ * Lanes are created when a task is submitted for a new key and are removed
+ * once they run out of work
+ * 
+ * @param <K> Lane key type
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public class AsyncTaskLanes<K> {
+
+	private static final int DEFAULT_BATCH_SIZE = 64;
+
+	private Logger logger = LogManager.getLogger("AsyncTaskManager");
+	private ConcurrentHashMap<K, Lane> lanes = new ConcurrentHashMap<K, Lane>();
+	private int batchSize;
+
+	private LongAdder submitted = new LongAdder();
+	private LongAdder completed = new LongAdder();
+	private volatile int maxQueueDepth;
+
+	private class Lane implements Runnable {
+		public K key;
+		public ArrayDeque<AsyncTask<?>> queue = new ArrayDeque<AsyncTask<?>>();
+		public boolean scheduled;
+		public boolean retired;
+		public long processed;
+
+		@Override
+		public void run() {
+			// Run a limited batch so that busy lanes do not starve other work
+			for (int i = 0; i < batchSize; i++) {
+				AsyncTask<?> task;
+				synchronized (this) {
+					task = queue.poll();
+					if (task == null) {
+						scheduled = false;
+						retired = true;
+						lanes.remove(key, this);
+						return;
+					}
+				}
+				try {
+					task.run();
+				} catch (Throwable e) {
+					logger.error("An error occurred while running an async task", e);
+				} finally {
+					synchronized (this) {
+						processed++;
+					}
+					completed.increment();
+				}
+			}
+
+			// Continue later
+			AsyncTaskManager.getExecutor().execute(this);
+		}
+	}
+
+	/**
+	 * Creates a lane set that runs up to 64 tasks of a lane before yielding the
+	 * worker thread
+	 */
+	public AsyncTaskLanes() {
+		this(DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Creates a lane set
+	 * 
+	 * @param batchSize Amount of tasks a lane may run before yielding the worker
+	 *                  thread to other lanes
+	 */
+	public AsyncTaskLanes(int batchSize) {
+		if (batchSize <= 0)
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Runs a action in the lane of the given key
+	 * 
+	 * @param key    Lane key
+	 * @param action Action to run
+	 * @return AsyncTask instance
+	 */
+	public AsyncTask<Void> runAsync(K key, Runnable action) {
+		return submit(key, AsyncTask.createTask(action));
+	}
+
+	/**
+	 * Runs a action in the lane of the given key
+	 * 
+	 * @param <T>    Return type
+	 * @param key    Lane key
+	 * @param action Action to run
+	 * @return AsyncTask instance
+	 */
+	public <T> AsyncTask<T> runAsync(K key, Supplier<T> action) {
+		return submit(key, AsyncTask.createTask(action));
+	}
+
+	private <T> AsyncTask<T> submit(K key, AsyncTask<T> task) {
+		// Prevent the task from being run outside of its lane
+		task.slatedForAsyncRun = true;
+		submitted.increment();
+		while (true) {
+			Lane lane = lanes.computeIfAbsent(key, k -> {
+				Lane l = new Lane();
+				l.key = k;
+				return l;
+			});
+			boolean schedule = false;
+			synchronized (lane) {
+				// The lane may have been removed after running out of work
+				if (lane.retired)
+					continue;
+				lane.queue.add(task);
+				if (lane.queue.size() > maxQueueDepth)
+					maxQueueDepth = lane.queue.size();
+				if (!lane.scheduled) {
+					lane.scheduled = true;
+					schedule = true;
+				}
+			}
+			if (schedule)
+				AsyncTaskManager.getExecutor().execute(lane);
+			return task;
+		}
+	}
+
+	/**
+	 * Retrieves the amount of active lanes
+	 * 
+	 * @return Lane count
+	 */
+	public int getLaneCount() {
+		return lanes.size();
+	}
+
+	/**
+	 * Retrieves the amount of queued tasks in a lane, not including the task
+	 * that is currently running
+	 * 
+	 * @param key Lane key
+	 * @return Queue depth
+	 */
+	public int getQueueDepth(K key) {
+		Lane lane = lanes.get(key);
+		if (lane == null)
+			return 0;
+		synchronized (lane) {
+			return lane.queue.size();
+		}
+	}
+
+	/**
+	 * Retrieves the queue depth of all active lanes
+	 * 
+	 * @return Map of lane keys to queue depths
+	 */
+	public Map<K, Integer> getQueueDepths() {
+		HashMap<K, Integer> depths = new HashMap<K, Integer>();
+		for (Lane lane : lanes.values()) {
+			synchronized (lane) {
+				if (!lane.retired)
+					depths.put(lane.key, lane.queue.size());
+			}
+		}
+		return depths;
+	}
+
+	/**
+	 * Retrieves the amount of tasks a active lane has run
+	 * 
+	 * @param key Lane key
+	 * @return Processed task count, 0 if the lane is not active
+	 */
+	public long getProcessedCount(K key) {
+		Lane lane = lanes.get(key);
+		if (lane == null)
+			return 0;
+		synchronized (lane) {
+			return lane.processed;
+		}
+	}
+
+	/**
+	 * Retrieves the highest queue depth seen in any lane
+	 * 
+	 * @return Maximum queue depth
+	 */
+	public int getMaxQueueDepth() {
+		return maxQueueDepth;
+	}
+
+	/**
+	 * Retrieves the amount of tasks submitted to all lanes
+	 * 
+	 * @return Submitted task count
+	 */
+	public long getSubmittedCount() {
+		return submitted.sum();
+	}
+
+	/**
+	 * Retrieves the amount of tasks run by all lanes
+	 * 
+	 * @return Completed task count
+	 */
+	public long getCompletedCount() {
+		return completed.sum();
+	}
+
+}
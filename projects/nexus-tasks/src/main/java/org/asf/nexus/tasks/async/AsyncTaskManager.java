@@ -1,10 +1,8 @@
 package org.asf.nexus.tasks.async;
 
-import java.util.ArrayList;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Consumer;
-import java.util.function.Predicate;
 import java.util.function.Supplier;
-import java.util.stream.Stream;
 
 /**
  * 
@@ -15,15 +13,70 @@ import java.util.stream.Stream;
  */
 public class AsyncTaskManager {
 
-	static ArrayList<AsyncTaskThreadHandler> threads = new ArrayList<AsyncTaskThreadHandler>();
-	private static ArrayList<AsyncTask<?>> queuedActions = new ArrayList<AsyncTask<?>>();
+	private static volatile IAsyncTaskExecutor executor;
 
-	static AsyncTask<?> obtainNext() {
-		synchronized (queuedActions) {
-			if (queuedActions.size() == 0)
-				return null;
-			return queuedActions.remove(0);
+	/**
+	 * Retrieves the executor used to run asynchronous tasks
+	 * 
+	 * @return IAsyncTaskExecutor instance
+	 */
+	public static IAsyncTaskExecutor getExecutor() {
+		IAsyncTaskExecutor exec = executor;
+		if (exec == null) {
+			synchronized (AsyncTaskManager.class) {
+				if (executor == null) {
+					if (System.getProperty("asyncVirtualThreads") != null)
+						executor = new VirtualThreadTaskExecutor();
+					else
+						executor = new WorkStealingTaskExecutor();
+				}
+				exec = executor;
+			}
 		}
+		return exec;
+	}
+
+	/**
+	 * Assigns the executor used to run asynchronous tasks, the previous executor
+	 * is shut down after it finishes its queued tasks
+	 * 
+	 * @param newExecutor New IAsyncTaskExecutor instance
+	 */
+	public static void setExecutor(IAsyncTaskExecutor newExecutor) {
+		if (newExecutor == null)
+			throw new IllegalArgumentException("Executor cannot be null");
+		IAsyncTaskExecutor old;
+		synchronized (AsyncTaskManager.class) {
+			old = executor;
+			executor = newExecutor;
+		}
+		if (old != null && old != newExecutor)
+			old.shutdown();
+	}
+
+	/**
+	 * Checks if the current thread is an async task worker thread
+	 * 
+	 * @return True if the current thread is owned by the active executor, false
+	 *         otherwise
+	 */
+	public static boolean isAsyncThread() {
+		IAsyncTaskExecutor exec = executor;
+		return exec != null && exec.isWorkerThread();
+	}
+
+	/**
+	 * Switches the async task system to run each task on its own virtual thread,
+	 * falls back to a platform thread pool if the runtime does not support virtual
+	 * threads
+	 * 
+	 * @return True if virtual threads are used, false if the runtime does not
+	 *         support them and the platform pool is used instead
+	 */
+	public static boolean useVirtualThreads() {
+		VirtualThreadTaskExecutor exec = new VirtualThreadTaskExecutor();
+		setExecutor(exec);
+		return exec.isVirtual();
 	}
 
 	/**
@@ -85,10 +138,7 @@ public class AsyncTaskManager {
 	 * @return AsyncTask instance
 	 */
 	public static AsyncTask<Void> runAsync(AsyncTask<Void> task, Runnable callback) {
-		return runAsync(() -> {
-			task.getResult();
-			callback.run();
-		});
+		return runAsync(task).thenRun(callback);
 	}
 
 	/**
@@ -100,8 +150,7 @@ public class AsyncTaskManager {
 	 * @return AsyncTask instance
 	 */
 	public static <T> AsyncTask<T> runAsync(AsyncTask<T> task, Consumer<T> callback) {
-		return runAsync(() -> {
-			T res = task.getResult();
+		return runAsync(task).thenApply(res -> {
 			callback.accept(res);
 			return res;
 		});
@@ -117,35 +166,24 @@ public class AsyncTaskManager {
 	public static <T> AsyncTask<T> runAsync(AsyncTask<T> task) {
 		if (task.hasCompleted())
 			return task;
-		if (task.slatedForAsyncRun || task.running)
+		if (task.slatedForAsyncRun || task.hasStarted())
 			return task;
 		task.slatedForAsyncRun = true;
-		synchronized (threads) {
-			// Check if a thread is available, if not, start a new one
-			AsyncTaskThreadHandler[] ths = threads.toArray(new AsyncTaskThreadHandler[0]);
-			if (!Stream.of(ths).anyMatch(new Predicate<AsyncTaskThreadHandler>() {
-
-				@Override
-				public boolean test(AsyncTaskThreadHandler t) {
-					return t.isAvailable();
-				}
-
-			})) {
-				// Start new thread
-				AsyncTaskThreadHandler handler = new AsyncTaskThreadHandler();
-				handler.setName("Async task thread");
-				threads.add(handler);
-				handler.setDaemon(true);
-				handler.start();
+		while (true) {
+			IAsyncTaskExecutor exec = getExecutor();
+			try {
+				exec.execute(task::run);
+				return task;
+			} catch (RejectedExecutionException e) {
+				// A replaced executor may have been shut down in the meantime, retry with
+				// the current one, if that one rejects the task as well run it inline so
+				// waiters are not left blocking on a task that never runs
+				if (getExecutor() != exec)
+					continue;
+				task.slatedForAsyncRun = false;
+				task.run();
+				return task;
 			}
-
-			// Add task
-			synchronized (queuedActions) {
-				queuedActions.add(task);
-			}
-
-			// Return
-			return task;
 		}
 	}
 
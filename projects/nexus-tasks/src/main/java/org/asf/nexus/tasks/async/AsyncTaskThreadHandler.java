@@ -1,48 +1,14 @@
 package org.asf.nexus.tasks.async;
 
-class AsyncTaskThreadHandler extends Thread {
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 
-	private boolean available;
+class AsyncTaskThreadHandler extends ForkJoinWorkerThread {
 
-	public boolean isAvailable() {
-		return available;
-	}
-
-	@Override
-	public void run() {
-		try {
-			while (true) {
-				available = true;
-
-				// Wait for a task
-				AsyncTask<?> task = null;
-				long start = System.currentTimeMillis();
-				while ((System.currentTimeMillis() - start) < 30000) {
-					task = AsyncTaskManager.obtainNext();
-					if (task != null)
-						break;
-					try {
-						Thread.sleep(1);
-					} catch (InterruptedException e) {
-					}
-				}
-
-				// No longer available
-				available = false;
-
-				// If no task was selected after 30 seconds, exit
-				if (task == null)
-					break;
-
-				// Run task
-				task.run();
-			}
-		} finally {
-			// End
-			synchronized (AsyncTaskManager.threads) {
-				AsyncTaskManager.threads.remove(this);
-			}
-		}
+	AsyncTaskThreadHandler(ForkJoinPool pool) {
+		super(pool);
+		setName("Async task thread");
+		setDaemon(true);
 	}
 
 }
@@ -0,0 +1,47 @@
+package org.asf.nexus.tasks.async;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 
+ * Async task executor interface - backend used by the async task manager to
+ * run asynchronous tasks
+ * 
+ * @author Sky Swimmer
+ *
+ */
+public interface IAsyncTaskExecutor {
+
+	/**
+	 * Schedules an action for execution
+	 * 
+	 * @param action Action to run
+	 * @throws RejectedExecutionException If the executor has been shut down
+	 */
+	public void execute(Runnable action);
+
+	/**
+	 * Checks if the calling thread is owned by this executor
+	 * 
+	 * @return True if the current thread is a worker thread of this executor,
+	 *         false otherwise
+	 */
+	public boolean isWorkerThread();
+
+	/**
+	 * Checks if worker threads can block on other tasks without tying up the
+	 * executor, if false, awaits made from worker threads are run inline
+	 * 
+	 * @return True if worker threads may block cheaply, false otherwise
+	 */
+	public default boolean supportsBlockingAwait() {
+		return false;
+	}
+
+	/**
+	 * Shuts down the executor, queued actions will still be run but no new actions
+	 * will be accepted
+	 */
+	public void shutdown();
+
+}
@@ -0,0 +1,107 @@
+package org.asf.nexus.tasks.async;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * 
+ * Virtual thread task executor - runs each task on its own virtual thread if
+ * the runtime supports it, falls back to a work-stealing platform thread pool
+ * otherwise
+ * 
+ * @author Sky Swimmer
+ *
+ */
+public class VirtualThreadTaskExecutor implements IAsyncTaskExecutor {
+
+	private static final ThreadFactory virtualThreadFactory = findVirtualThreadFactory();
+
+	private Logger logger = LogManager.getLogger("AsyncTaskManager");
+	private ThreadLocal<Boolean> workerMarker = new ThreadLocal<Boolean>();
+	private WorkStealingTaskExecutor fallback;
+	private volatile boolean shutdown;
+
+	/**
+	 * Creates the executor
+	 */
+	public VirtualThreadTaskExecutor() {
+		if (virtualThreadFactory == null)
+			fallback = new WorkStealingTaskExecutor();
+	}
+
+	/**
+	 * Checks if the runtime supports virtual threads
+	 * 
+	 * @return True if supported, false otherwise
+	 */
+	public static boolean isSupported() {
+		return virtualThreadFactory != null;
+	}
+
+	private static ThreadFactory findVirtualThreadFactory() {
+		// Virtual threads were added in Java 21, look them up reflectively so this
+		// module still runs on older runtimes
+		try {
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "Async task thread ",
+					0l);
+			return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Checks if this executor runs tasks on virtual threads
+	 * 
+	 * @return True if virtual threads are in use, false if the platform thread
+	 *         pool fallback is in use
+	 */
+	public boolean isVirtual() {
+		return fallback == null;
+	}
+
+	@Override
+	public void execute(Runnable action) {
+		if (fallback != null) {
+			fallback.execute(action);
+			return;
+		}
+		if (shutdown)
+			throw new RejectedExecutionException("Executor has been shut down");
+
+		// Start virtual thread
+		Thread th = virtualThreadFactory.newThread(() -> {
+			workerMarker.set(true);
+			action.run();
+		});
+		th.setUncaughtExceptionHandler((t, e) -> {
+			logger.error("An error occurred while running an async task", e);
+		});
+		th.start();
+	}
+
+	@Override
+	public boolean isWorkerThread() {
+		if (fallback != null)
+			return fallback.isWorkerThread();
+		return workerMarker.get() != null;
+	}
+
+	@Override
+	public boolean supportsBlockingAwait() {
+		return fallback == null;
+	}
+
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		if (fallback != null)
+			fallback.shutdown();
+	}
+
+}
@@ -0,0 +1,92 @@
+package org.asf.nexus.tasks.async;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * 
+ * Work-stealing task executor - runs tasks on a bounded pool of worker threads
+ * that each have their own task deque, idle workers steal queued tasks from
+ * busy workers
+ * 
+ * @author Sky Swimmer
+ *
+ */
+public class WorkStealingTaskExecutor implements IAsyncTaskExecutor {
+
+	private static final int DEFAULT_MAX_POOL_SIZE = 256;
+	private static final long DEFAULT_IDLE_TIMEOUT = 30000;
+
+	private ForkJoinPool pool;
+	private Logger logger = LogManager.getLogger("AsyncTaskManager");
+
+	/**
+	 * Creates a executor with one core thread per processor, a maximum of 256
+	 * threads and a idle timeout of 30 seconds
+	 */
+	public WorkStealingTaskExecutor() {
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_POOL_SIZE, DEFAULT_IDLE_TIMEOUT,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Creates a work-stealing executor
+	 * 
+	 * @param corePoolSize Amount of threads that actively run tasks
+	 * @param maxPoolSize  Maximum amount of threads, including threads started
+	 *                     to compensate for workers blocking on other tasks
+	 * @param idleTimeout  Time a thread may stay idle before it is retired
+	 * @param unit         Idle timeout time unit
+	 * @throws IllegalArgumentException If a pool size or the idle timeout is out
+	 *                                  of range
+	 */
+	public WorkStealingTaskExecutor(int corePoolSize, int maxPoolSize, long idleTimeout, TimeUnit unit) {
+		if (corePoolSize <= 0)
+			throw new IllegalArgumentException("Core pool size must be at least 1");
+		if (maxPoolSize < corePoolSize)
+			throw new IllegalArgumentException("Maximum pool size cannot be smaller than the core pool size");
+		if (idleTimeout <= 0)
+			throw new IllegalArgumentException("Idle timeout must be greater than zero");
+		pool = new ForkJoinPool(corePoolSize, t -> new AsyncTaskThreadHandler(t), (t, e) -> {
+			logger.error("An error occurred while running an async task", e);
+		}, true, 0, maxPoolSize, 1, p -> true, idleTimeout, unit);
+	}
+
+	@Override
+	public void execute(Runnable action) {
+		pool.execute(action);
+	}
+
+	@Override
+	public boolean isWorkerThread() {
+		Thread thread = Thread.currentThread();
+		return thread instanceof AsyncTaskThreadHandler && ((AsyncTaskThreadHandler) thread).getPool() == pool;
+	}
+
+	@Override
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Retrieves the amount of threads currently in the pool
+	 * 
+	 * @return Pool thread count
+	 */
+	public int getPoolSize() {
+		return pool.getPoolSize();
+	}
+
+	/**
+	 * Retrieves the amount of tasks waiting to be run
+	 * 
+	 * @return Queued task count
+	 */
+	public long getQueuedTaskCount() {
+		return pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount();
+	}
+
+}
@@ -9,7 +9,7 @@ package org.asf.nexus.tasks.scheduling;
  */
 public class ScheduledTask {
 	Runnable action;
-	boolean ran;
+	volatile boolean ran;
 
 	boolean async;
 
@@ -18,9 +18,22 @@ public class ScheduledTask {
 
 	int interval;
 	int limit = 1;
-	int cInterval;
 	int cCount;
 
+	TaskScheduler scheduler;
+	boolean cancelled;
+	boolean fixedRate;
+	volatile long lateBy;
+	volatile long skippedRuns;
+
+	// Timing wheel entry
+	long expiry;
+	TimingWheel wheel;
+	ScheduledTask wheelPrev;
+	ScheduledTask wheelNext;
+	int wheelLevel;
+	int wheelSlot;
+
 	ScheduledTask() {
 	}
 
@@ -52,11 +65,48 @@ public class ScheduledTask {
 	 * Blocks until the task has been invoked successfully
 	 */
 	public void block() {
-		while (!ran)
-			try {
-				Thread.sleep(1);
-			} catch (InterruptedException e) {
+		if (ran)
+			return;
+		boolean interrupted = false;
+		synchronized (this) {
+			while (!ran) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
 			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	void markRan() {
+		if (ran)
+			return;
+		synchronized (this) {
+			ran = true;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Retrieves how late the last run of a time-based task started
+	 * 
+	 * @return Amount of milliseconds the last run started after it was due
+	 */
+	public long getLateBy() {
+		return lateBy;
+	}
+
+	/**
+	 * Retrieves the amount of runs that were skipped because the task fell behind
+	 * its fixed-rate schedule
+	 * 
+	 * @return Skipped run count
+	 */
+	public long getSkippedRuns() {
+		return skippedRuns;
 	}
 
 	/**
@@ -94,9 +144,9 @@ public class ScheduledTask {
 	 * @return Amount of ticks before the task runs
 	 */
 	public int getTicksBeforeStart() {
-		if (interval <= 0 || cCount >= limit)
+		if (interval <= 0 || (limit != -1 && cCount >= limit) || timeWait != -1)
 			return 0;
-		return interval - cInterval;
+		return (int) Math.max(0, expiry - 1 - scheduler.getCurrentTick());
 	}
 
 }
@@ -1,6 +1,8 @@
 package org.asf.nexus.tasks.scheduling;
 
 import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -15,24 +17,45 @@ import org.asf.nexus.tasks.async.AsyncTask;
  */
 public class TaskScheduler {
 
-	private ArrayList<ScheduledTask> tasks = new ArrayList<ScheduledTask>();
+	private Object tasksLock = new Object();
+	private long currentTick;
+	private TimingWheel tickTasks = new TimingWheel(0);
+	private TimingWheel timeTasks = new TimingWheel(System.currentTimeMillis());
 	private Logger logger = LogManager.getLogger("TaskScheduler");
 
+	private volatile Thread driver;
+	private volatile long lastTickLateness;
+	private volatile long maxTickLateness;
+	private volatile long tickOverruns;
+	private volatile long skippedTicks;
+
 	/**
 	 * Ticks the task scheduler, required for tasks to be executed, should be run
 	 * from either a loop, a server tick event, or a game engine tick/update call
+	 * 
+	 * Not needed if the built-in driver has been started through
+	 * {@link #startDriver(long, TickMode)}
 	 */
 	public void tick() {
-		ArrayList<ScheduledTask> tasksL;
-		synchronized (tasks) {
-			tasksL = new ArrayList<ScheduledTask>(tasks);
+		runDueTasks(true);
+	}
+
+	private void runDueTasks(boolean advanceTick) {
+		// Collect due tasks, only tasks whose slot came up are touched
+		ArrayList<ScheduledTask> due = new ArrayList<ScheduledTask>();
+		long now = System.currentTimeMillis();
+		synchronized (tasksLock) {
+			if (advanceTick) {
+				currentTick++;
+				tickTasks.advance(currentTick, due);
+			}
+			timeTasks.advance(now, due);
 		}
 
 		// Run tasks
-		for (ScheduledTask task : tasksL) {
-			if ((task.timeWait != -1 && System.currentTimeMillis() - task.timeStart < task.timeWait)
-					|| (task.interval != -1 && task.cInterval++ < task.interval))
-				continue;
+		for (ScheduledTask task : due) {
+			if (task.timeWait != -1)
+				task.lateBy = now - task.expiry;
 
 			// Run the action
 			if (!task.async) {
@@ -46,47 +69,243 @@ public class TaskScheduler {
 					} else
 						task.action.run();
 				} finally {
-					task.ran = true;
-
-					// Reset
-					task.cInterval = 0;
-					task.timeStart = System.currentTimeMillis();
-
-					// Increase count
-					if (task.limit != -1)
-						task.cCount++;
-
-					// Remove if needed
-					if (task.limit != -1 && task.cCount >= task.limit) {
-						synchronized (tasks) {
-							tasks.remove(task);
-						}
-					}
+					task.markRan();
+					reschedule(task);
 				}
 			} else {
 				AsyncTask.runAsync(() -> {
 					try {
 						task.action.run();
 					} finally {
-						task.ran = true;
+						task.markRan();
 					}
 				});
+				reschedule(task);
+			}
+		}
+	}
 
-				// Reset
-				task.cInterval = 0;
-				task.timeStart = System.currentTimeMillis();
+	private void reschedule(ScheduledTask task) {
+		// Reset
+		long now = System.currentTimeMillis();
+		if (task.fixedRate) {
+			// Keep the schedule aligned, skip runs that were missed entirely
+			long next = task.expiry + task.timeWait;
+			if (now - next >= task.timeWait) {
+				long skipped = (now - next) / task.timeWait;
+				next += skipped * task.timeWait;
+				task.skippedRuns += skipped;
+			}
+			task.timeStart = next - task.timeWait;
+		} else
+			task.timeStart = now;
+
+		// Increase count
+		if (task.limit != -1)
+			task.cCount++;
+
+		// Schedule next run if the limit has not been reached
+		if (task.limit != -1 && task.cCount >= task.limit)
+			return;
+		synchronized (tasksLock) {
+			if (!task.cancelled)
+				schedule(task);
+		}
+	}
 
-				// Increase count
-				if (task.limit != -1)
-					task.cCount++;
+	private void schedule(ScheduledTask task) {
+		if (task.timeWait != -1)
+			timeTasks.add(task, task.timeStart + task.timeWait);
+		else
+			tickTasks.add(task, currentTick + task.interval + 1);
+	}
 
-				// Remove if needed
-				if (task.limit != -1 && task.cCount >= task.limit) {
-					synchronized (tasks) {
-						tasks.remove(task);
-					}
-				}
+	private ScheduledTask add(ScheduledTask task) {
+		task.scheduler = this;
+		synchronized (tasksLock) {
+			schedule(task);
+		}
+
+		// Wake the driver so it can recompute its sleep deadline
+		Thread th = driver;
+		if (th != null)
+			LockSupport.unpark(th);
+		return task;
+	}
+
+	/**
+	 * Starts the built-in driver thread, which ticks the scheduler at a fixed
+	 * tick rate while tick-based tasks are scheduled and otherwise sleeps until
+	 * the next wall-clock task is due
+	 * 
+	 * @param tickInterval Milliseconds between ticks
+	 * @param mode         Tick timing mode
+	 */
+	public void startDriver(long tickInterval, TickMode mode) {
+		if (tickInterval <= 0)
+			throw new IllegalArgumentException("Tick interval must be at least 1 millisecond");
+		synchronized (tasksLock) {
+			if (driver != null)
+				throw new IllegalStateException("Scheduler driver is already running");
+			Thread th = new Thread(() -> runDriver(TimeUnit.MILLISECONDS.toNanos(tickInterval), mode),
+					"Task scheduler driver");
+			th.setDaemon(true);
+			driver = th;
+			th.start();
+		}
+	}
+
+	/**
+	 * Starts the built-in driver thread with fixed-rate ticking
+	 * 
+	 * @param tickInterval Milliseconds between ticks
+	 */
+	public void startDriver(long tickInterval) {
+		startDriver(tickInterval, TickMode.FIXED_RATE);
+	}
+
+	/**
+	 * Stops the built-in driver thread
+	 */
+	public void stopDriver() {
+		Thread th;
+		synchronized (tasksLock) {
+			th = driver;
+			driver = null;
+		}
+		if (th != null)
+			LockSupport.unpark(th);
+	}
+
+	/**
+	 * Checks if the built-in driver thread is running
+	 * 
+	 * @return True if running, false otherwise
+	 */
+	public boolean isDriverRunning() {
+		return driver != null;
+	}
+
+	private void runDriver(long period, TickMode mode) {
+		Thread self = Thread.currentThread();
+		long nextTick = System.nanoTime() + period;
+		boolean ticking = false;
+		while (driver == self) {
+			// Find the next deadline
+			long now = System.nanoTime();
+			boolean hasTickTasks;
+			long nextTimeTask;
+			synchronized (tasksLock) {
+				hasTickTasks = tickTasks.size() != 0;
+				nextTimeTask = timeTasks.nextEventTime();
+			}
+			if (hasTickTasks && !ticking)
+				nextTick = now + period;
+			ticking = hasTickTasks;
+			long deadline = now + TimeUnit.SECONDS.toNanos(1);
+			if (nextTimeTask != Long.MAX_VALUE) {
+				long timeDeadline = now
+						+ TimeUnit.MILLISECONDS.toNanos(nextTimeTask - System.currentTimeMillis());
+				if (timeDeadline - deadline < 0)
+					deadline = timeDeadline;
+			}
+			if (ticking && nextTick - deadline < 0)
+				deadline = nextTick;
+
+			// Sleep until the deadline or until new tasks are added, wall-clock
+			// sleeps are capped at a second to follow system clock adjustments
+			if (deadline - now > 0) {
+				LockSupport.parkNanos(this, deadline - now);
+				continue;
 			}
+
+			// Run
+			boolean tickDue = ticking && nextTick - now <= 0;
+			try {
+				runDueTasks(tickDue);
+			} catch (Throwable e) {
+				logger.error("An error occurred while ticking the task scheduler", e);
+			}
+			if (!tickDue)
+				continue;
+
+			// Record timing
+			long lateness = now - nextTick;
+			lastTickLateness = lateness;
+			if (lateness > maxTickLateness)
+				maxTickLateness = lateness;
+			if (mode == TickMode.FIXED_RATE) {
+				// Compensate for drift by aligning to the original schedule
+				nextTick += period;
+				long behind = System.nanoTime() - nextTick;
+				if (behind >= period) {
+					long skipped = behind / period;
+					nextTick += skipped * period;
+					skippedTicks += skipped;
+					tickOverruns++;
+				}
+			} else
+				nextTick = System.nanoTime() + period;
+		}
+	}
+
+	/**
+	 * Retrieves how late the last driver tick started
+	 * 
+	 * @param unit Time unit to return the value in
+	 * @return Lateness of the last tick
+	 */
+	public long getLastTickLateness(TimeUnit unit) {
+		return unit.convert(lastTickLateness, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Retrieves the highest lateness of any driver tick, measured in nanoseconds
+	 * from the time the tick was scheduled for to the time the driver woke up to
+	 * run it, the value is kept for the lifetime of the scheduler and is not reset
+	 * when the driver is stopped or restarted
+	 * 
+	 * @param unit Time unit to return the value in, the value is truncated
+	 * @return Highest tick lateness
+	 */
+	public long getMaxTickLateness(TimeUnit unit) {
+		return unit.convert(maxTickLateness, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Retrieves how often a driver tick took longer than the tick interval in
+	 * fixed-rate mode
+	 * 
+	 * @return Tick overrun count
+	 */
+	public long getTickOverruns() {
+		return tickOverruns;
+	}
+
+	/**
+	 * Retrieves the amount of ticks that were skipped by the driver in fixed-rate
+	 * mode because of overruns
+	 * 
+	 * @return Skipped tick count
+	 */
+	public long getSkippedTicks() {
+		return skippedTicks;
+	}
+
+	long getCurrentTick() {
+		synchronized (tasksLock) {
+			return currentTick;
+		}
+	}
+
+	/**
+	 * Retrieves the amount of tasks waiting to be run
+	 * 
+	 * @return Scheduled task count
+	 */
+	public int getTaskCount() {
+		synchronized (tasksLock) {
+			return tickTasks.size() + timeTasks.size();
 		}
 	}
 
@@ -96,8 +315,10 @@ public class TaskScheduler {
 	 * @param task Task to cancel
 	 */
 	public void cancel(ScheduledTask task) {
-		synchronized (tasks) {
-			tasks.remove(task);
+		synchronized (tasksLock) {
+			task.cancelled = true;
+			if (task.wheel != null)
+				task.wheel.remove(task);
 		}
 	}
 
@@ -138,10 +359,7 @@ public class TaskScheduler {
 		t.action = action;
 		t.timeStart = System.currentTimeMillis();
 		t.timeWait = time;
-		synchronized (tasks) {
-			tasks.add(t);
-		}
-		return t;
+		return add(t);
 	}
 
 	/**
@@ -158,10 +376,7 @@ public class TaskScheduler {
 		t.timeStart = System.currentTimeMillis();
 		t.timeWait = time;
 		t.async = true;
-		synchronized (tasks) {
-			tasks.add(t);
-		}
-		return t;
+		return add(t);
 	}
 
 	/**
@@ -174,10 +389,7 @@ public class TaskScheduler {
 		ScheduledTask t = new ScheduledTask();
 		t.action = action;
 		t.timeStart = System.currentTimeMillis();
-		synchronized (tasks) {
-			tasks.add(t);
-		}
-		return t;
+		return add(t);
 	}
 
 	/**
@@ -191,10 +403,7 @@ public class TaskScheduler {
 		t.action = action;
 		t.timeStart = System.currentTimeMillis();
 		t.async = true;
-		synchronized (tasks) {
-			tasks.add(t);
-		}
-		return t;
+		return add(t);
 	}
 
 	/**
@@ -210,10 +419,7 @@ public class TaskScheduler {
 		t.action = action;
 		t.interval = delay;
 		t.timeStart = System.currentTimeMillis();
-		synchronized (tasks) {
-			tasks.add(t);
-		}
-		return t;
+		return add(t);
 	}
 
 	/**
@@ -230,10 +436,7 @@ public class TaskScheduler {
 		t.interval = delay;
 		t.timeStart = System.currentTimeMillis();
 		t.async = true;
-		synchronized (tasks) {
-			tasks.add(t);
-		}
-		return t;
+		return add(t);
 	}
 
 	/**
@@ -249,10 +452,7 @@ public class TaskScheduler {
 		t.interval = interval;
 		t.limit = -1;
 		t.timeStart = System.currentTimeMillis();
-		synchronized (tasks) {
-			tasks.add(t);
-		}
-		return t;
+		return add(t);
 	}
 
 	/**
@@ -269,10 +469,7 @@ public class TaskScheduler {
 		t.limit = -1;
 		t.timeStart = System.currentTimeMillis();
 		t.async = true;
-		synchronized (tasks) {
-			tasks.add(t);
-		}
-		return t;
+		return add(t);
 	}
 
 	/**
@@ -288,10 +485,7 @@ public class TaskScheduler {
 		t.timeWait = secs * 1000;
 		t.limit = -1;
 		t.timeStart = System.currentTimeMillis();
-		synchronized (tasks) {
-			tasks.add(t);
-		}
-		return t;
+		return add(t);
 	}
 
 	/**
@@ -308,10 +502,7 @@ public class TaskScheduler {
 		t.limit = -1;
 		t.timeStart = System.currentTimeMillis();
 		t.async = true;
-		synchronized (tasks) {
-			tasks.add(t);
-		}
-		return t;
+		return add(t);
 	}
 
 	/**
@@ -327,10 +518,7 @@ public class TaskScheduler {
 		t.timeWait = millis;
 		t.limit = -1;
 		t.timeStart = System.currentTimeMillis();
-		synchronized (tasks) {
-			tasks.add(t);
-		}
-		return t;
+		return add(t);
 	}
 
 	/**
@@ -347,10 +535,46 @@ public class TaskScheduler {
 		t.limit = -1;
 		t.timeStart = System.currentTimeMillis();
 		t.async = true;
-		synchronized (tasks) {
-			tasks.add(t);
-		}
-		return t;
+		return add(t);
+	}
+
+	/**
+	 * Schedules an action that runs at a fixed millisecond-based rate, unlike
+	 * {@link #intervalMs(Runnable, long)} the time spent running the action does
+	 * not delay the next run, runs that were missed entirely are skipped
+	 * 
+	 * @param action Action to schedule
+	 * @param millis Milliseconds between each run
+	 * @return ScheduledTask instance
+	 */
+	public ScheduledTask fixedRateMs(Runnable action, long millis) {
+		ScheduledTask t = new ScheduledTask();
+		t.action = action;
+		t.timeWait = millis;
+		t.limit = -1;
+		t.fixedRate = true;
+		t.timeStart = System.currentTimeMillis();
+		return add(t);
+	}
+
+	/**
+	 * Schedules an action that runs at a fixed millisecond-based rate, unlike
+	 * {@link #intervalMsAsync(Runnable, long)} the time spent running the action
+	 * does not delay the next run, runs that were missed entirely are skipped
+	 * 
+	 * @param action Action to schedule
+	 * @param millis Milliseconds between each run
+	 * @return ScheduledTask instance
+	 */
+	public ScheduledTask fixedRateMsAsync(Runnable action, long millis) {
+		ScheduledTask t = new ScheduledTask();
+		t.action = action;
+		t.timeWait = millis;
+		t.limit = -1;
+		t.fixedRate = true;
+		t.timeStart = System.currentTimeMillis();
+		t.async = true;
+		return add(t);
 	}
 
 	/**
@@ -367,10 +591,7 @@ public class TaskScheduler {
 		t.interval = interval;
 		t.limit = limit;
 		t.timeStart = System.currentTimeMillis();
-		synchronized (tasks) {
-			tasks.add(t);
-		}
-		return t;
+		return add(t);
 	}
 
 	/**
@@ -388,10 +609,7 @@ public class TaskScheduler {
 		t.limit = limit;
 		t.timeStart = System.currentTimeMillis();
 		t.async = true;
-		synchronized (tasks) {
-			tasks.add(t);
-		}
-		return t;
+		return add(t);
 	}
 
 	/**
@@ -409,10 +627,7 @@ public class TaskScheduler {
 		t.timeWait = secs * 1000;
 		t.limit = limit;
 		t.timeStart = System.currentTimeMillis();
-		synchronized (tasks) {
-			tasks.add(t);
-		}
-		return t;
+		return add(t);
 	}
 
 	/**
@@ -431,10 +646,7 @@ public class TaskScheduler {
 		t.limit = limit;
 		t.timeStart = System.currentTimeMillis();
 		t.async = true;
-		synchronized (tasks) {
-			tasks.add(t);
-		}
-		return t;
+		return add(t);
 	}
 
 	/**
@@ -452,10 +664,7 @@ public class TaskScheduler {
 		t.timeWait = millis;
 		t.limit = limit;
 		t.timeStart = System.currentTimeMillis();
-		synchronized (tasks) {
-			tasks.add(t);
-		}
-		return t;
+		return add(t);
 	}
 
 	/**
@@ -474,10 +683,7 @@ public class TaskScheduler {
 		t.limit = limit;
 		t.timeStart = System.currentTimeMillis();
 		t.async = true;
-		synchronized (tasks) {
-			tasks.add(t);
-		}
-		return t;
+		return add(t);
 	}
 
 	/**
@@ -491,10 +697,7 @@ public class TaskScheduler {
 		t.action = action;
 		t.limit = -1;
 		t.timeStart = System.currentTimeMillis();
-		synchronized (tasks) {
-			tasks.add(t);
-		}
-		return t;
+		return add(t);
 	}
 
 	/**
@@ -509,10 +712,7 @@ public class TaskScheduler {
 		t.limit = -1;
 		t.timeStart = System.currentTimeMillis();
 		t.async = true;
-		synchronized (tasks) {
-			tasks.add(t);
-		}
-		return t;
+		return add(t);
 	}
 
 	/**
@@ -527,10 +727,7 @@ public class TaskScheduler {
 		t.action = action;
 		t.limit = limit;
 		t.timeStart = System.currentTimeMillis();
-		synchronized (tasks) {
-			tasks.add(t);
-		}
-		return t;
+		return add(t);
 	}
 
 	/**
@@ -546,10 +743,7 @@ public class TaskScheduler {
 		t.limit = limit;
 		t.timeStart = System.currentTimeMillis();
 		t.async = true;
-		synchronized (tasks) {
-			tasks.add(t);
-		}
-		return t;
+		return add(t);
 	}
 
 }
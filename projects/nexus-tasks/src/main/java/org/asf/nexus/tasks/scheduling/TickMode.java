@@ -0,0 +1,23 @@
+package org.asf.nexus.tasks.scheduling;
+
+/**
+ * 
+ * Tick timing modes for the built-in scheduler driver
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+public enum TickMode {
+
+	/**
+	 * Ticks are aligned to a fixed schedule, time spent ticking does not delay
+	 * the next tick and ticks that were missed entirely are skipped
+	 */
+	FIXED_RATE,
+
+	/**
+	 * Each tick is run a fixed amount of time after the previous tick finished
+	 */
+	FIXED_DELAY
+
+}
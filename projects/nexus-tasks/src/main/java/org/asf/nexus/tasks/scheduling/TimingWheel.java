@@ -0,0 +1,201 @@
+package org.asf.nexus.tasks.scheduling;
+
+import java.util.ArrayList;
+
+/**
+ * 
+ * Hierarchical timing wheel used to store scheduled tasks by expiry, each
+ * level holds 64 slots of 64 times the span of the level below it. A task is
+ * stored in the level of the highest 6-bit group in which its expiry differs
+ * from the current time, when time reaches that slot the task cascades down to
+ * the lower levels until it expires.
+ * 
+ * @author Sky Swimmer
+ * 
+ */
+class TimingWheel {
+
+	private static final int SLOT_BITS = 6;
+	private static final int SLOTS = 1 << SLOT_BITS;
+	private static final int LEVELS = (64 + SLOT_BITS - 1) / SLOT_BITS;
+
+	private ScheduledTask[][] slots = new ScheduledTask[LEVELS][SLOTS];
+	private long[] occupied = new long[LEVELS];
+	private ScheduledTask ready;
+	private long current;
+	private int size;
+
+	public TimingWheel(long start) {
+		current = start;
+	}
+
+	/**
+	 * Retrieves the time up to which expired tasks have been collected
+	 * 
+	 * @return Current wheel time
+	 */
+	public long getCurrent() {
+		return current;
+	}
+
+	/**
+	 * Retrieves the amount of tasks in the wheel
+	 * 
+	 * @return Task count
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Adds tasks to the wheel
+	 * 
+	 * @param task   Task to add
+	 * @param expiry Time at which the task expires
+	 */
+	public void add(ScheduledTask task, long expiry) {
+		task.expiry = expiry;
+		size++;
+		insert(task);
+	}
+
+	/**
+	 * Removes tasks from the wheel
+	 * 
+	 * @param task Task to remove
+	 * @return True if the task was present, false otherwise
+	 */
+	public boolean remove(ScheduledTask task) {
+		if (task.wheel != this)
+			return false;
+		unlink(task);
+		size--;
+		return true;
+	}
+
+	/**
+	 * Finds the earliest time at which a task may need processing
+	 * 
+	 * @return Next expiry or cascade time, or Long.MAX_VALUE if the wheel is empty
+	 */
+	public long nextEventTime() {
+		if (ready != null)
+			return current;
+		long next = Long.MAX_VALUE;
+		for (int level = 0; level < LEVELS; level++) {
+			if (occupied[level] == 0)
+				continue;
+			long t = slotTime(level, Long.numberOfTrailingZeros(occupied[level]));
+			if (t < next)
+				next = t;
+		}
+		return next;
+	}
+
+	/**
+	 * Advances the wheel, collecting all tasks that expire at or before the given
+	 * time
+	 * 
+	 * @param now     Time to advance to
+	 * @param expired List to add expired tasks to
+	 */
+	public void advance(long now, ArrayList<ScheduledTask> expired) {
+		// Tasks that were already due when added
+		while (ready != null)
+			expire(ready, expired);
+
+		// Jump between occupied slots, only due and cascading tasks are touched
+		while (size != 0) {
+			int level = -1;
+			long next = Long.MAX_VALUE;
+			for (int i = 0; i < LEVELS; i++) {
+				if (occupied[i] == 0)
+					continue;
+				long t = slotTime(i, Long.numberOfTrailingZeros(occupied[i]));
+				if (t < next) {
+					level = i;
+					next = t;
+				}
+			}
+			if (level == -1 || next > now)
+				break;
+
+			// Process slot
+			current = next;
+			int slot = (int) ((next >>> (SLOT_BITS * level)) & (SLOTS - 1));
+			ScheduledTask task = slots[level][slot];
+			slots[level][slot] = null;
+			occupied[level] &= ~(1l << slot);
+			while (task != null) {
+				ScheduledTask nextTask = task.wheelNext;
+				task.wheelPrev = null;
+				task.wheelNext = null;
+				task.wheel = null;
+				if (task.expiry <= current) {
+					size--;
+					expired.add(task);
+				} else
+					insert(task);
+				task = nextTask;
+			}
+		}
+		if (now > current)
+			current = now;
+	}
+
+	private long slotTime(int level, int slot) {
+		int shift = SLOT_BITS * (level + 1);
+		long base = shift >= 64 ? 0 : (current >>> shift) << shift;
+		return base | ((long) slot << (SLOT_BITS * level));
+	}
+
+	private void expire(ScheduledTask task, ArrayList<ScheduledTask> expired) {
+		unlink(task);
+		size--;
+		expired.add(task);
+	}
+
+	private void insert(ScheduledTask task) {
+		task.wheel = this;
+		if (task.expiry <= current) {
+			// Already due
+			task.wheelLevel = -1;
+			task.wheelPrev = null;
+			task.wheelNext = ready;
+			if (ready != null)
+				ready.wheelPrev = task;
+			ready = task;
+			return;
+		}
+
+		// Find level and slot
+		int level = (63 - Long.numberOfLeadingZeros(task.expiry ^ current)) / SLOT_BITS;
+		int slot = (int) ((task.expiry >>> (SLOT_BITS * level)) & (SLOTS - 1));
+		task.wheelLevel = level;
+		task.wheelSlot = slot;
+		task.wheelPrev = null;
+		task.wheelNext = slots[level][slot];
+		if (task.wheelNext != null)
+			task.wheelNext.wheelPrev = task;
+		slots[level][slot] = task;
+		occupied[level] |= 1l << slot;
+	}
+
+	private void unlink(ScheduledTask task) {
+		if (task.wheelPrev != null)
+			task.wheelPrev.wheelNext = task.wheelNext;
+		else if (task.wheelLevel == -1)
+			ready = task.wheelNext;
+		else {
+			slots[task.wheelLevel][task.wheelSlot] = task.wheelNext;
+			if (task.wheelNext == null)
+				occupied[task.wheelLevel] &= ~(1l << task.wheelSlot);
+		}
+		if (task.wheelNext != null)
+			task.wheelNext.wheelPrev = task.wheelPrev;
+		task.wheelPrev = null;
+		task.wheelNext = null;
+		task.wheel = null;
+	}
+
+}
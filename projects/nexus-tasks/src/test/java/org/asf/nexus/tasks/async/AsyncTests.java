@@ -1,7 +1,17 @@
 package org.asf.nexus.tasks.async;
 
 import static org.asf.nexus.tasks.async.AsyncTask.*;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
@@ -53,6 +63,224 @@ public class AsyncTests {
 		}).block();
 	}
 
+	@Test
+	public void testTimedBlock() throws TimeoutException {
+		AsyncTask<String> task = runAsync(() -> {
+			try {
+				Thread.sleep(500);
+			} catch (InterruptedException e) {
+			}
+			return "Hello world";
+		});
+		assertFalse(task.block(10, TimeUnit.MILLISECONDS));
+		assertTrue(task.getResult(10, TimeUnit.SECONDS).equals("Hello world"));
+		assertTrue(task.hasCompleted());
+	}
+
+	@Test(expected = TimeoutException.class)
+	public void testTimedResultTimeout() throws TimeoutException {
+		runAsync(() -> {
+			try {
+				Thread.sleep(500);
+			} catch (InterruptedException e) {
+			}
+		}).getResult(10, TimeUnit.MILLISECONDS);
+	}
+
+	@Test(expected = CancellationException.class)
+	public void testCancel() {
+		AsyncTask<String> task = testFetcher();
+		assertTrue(task.cancel());
+		assertTrue(task.isCancelled());
+		assertTrue(task.hasCompleted());
+		assertFalse(task.hasStarted());
+		task.getResult();
+	}
+
+	@Test
+	public void testCancelAfterCompletion() {
+		AsyncTask<String> task = testFetcher();
+		assertTrue(task.getResult().equals("Hello world"));
+		assertFalse(task.cancel());
+		assertFalse(task.isCancelled());
+	}
+
+	@Test
+	public void testNestedBlockingOnSingleWorker() throws TimeoutException {
+		AsyncTaskManager.setExecutor(new WorkStealingTaskExecutor(1, 4, 1, TimeUnit.SECONDS));
+		try {
+			// The outer task blocks the only core worker until the inner task completes
+			AsyncTask<String> task = runAsync(() -> {
+				return runAsync(() -> "Hello world").getResult();
+			});
+			assertTrue(task.getResult(10, TimeUnit.SECONDS).equals("Hello world"));
+		} finally {
+			AsyncTaskManager.setExecutor(new WorkStealingTaskExecutor());
+		}
+	}
+
+	@Test
+	public void testVirtualThreadExecutor() throws TimeoutException {
+		boolean virtual = AsyncTaskManager.useVirtualThreads();
+		assertTrue(virtual == VirtualThreadTaskExecutor.isSupported());
+		try {
+			// Nested awaits from many in-flight tasks
+			AsyncTask<?>[] tasks = new AsyncTask<?>[1000];
+			for (int i = 0; i < tasks.length; i++) {
+				tasks[i] = runAsync(() -> {
+					return await(testFetcher());
+				});
+			}
+			for (AsyncTask<?> task : tasks)
+				assertTrue(task.getResult(10, TimeUnit.SECONDS).equals("Hello world"));
+		} finally {
+			AsyncTaskManager.setExecutor(new WorkStealingTaskExecutor());
+		}
+	}
+
+	@Test
+	public void testContinuations() throws TimeoutException {
+		AsyncTask<Integer> task = runAsync(testFetcher()).thenApply(t -> t.length())
+				.thenCompose(t -> createTask(() -> t * 2));
+		assertTrue(task.getResult(10, TimeUnit.SECONDS) == 22);
+
+		// Lazy tasks run their sources when blocked on
+		assertTrue(testFetcher().thenApply(t -> t + "!").getResult().equals("Hello world!"));
+	}
+
+	@Test
+	public void testExceptionally() throws TimeoutException {
+		AsyncTask<String> task = runAsync(() -> {
+			if (true)
+				throw new IllegalStateException("Test");
+			return "Hello world";
+		});
+		AsyncTask<String> recovered = task.thenApply(t -> t + "!").exceptionally(t -> t.getMessage());
+		assertTrue(recovered.getResult(10, TimeUnit.SECONDS).equals("Test"));
+		assertTrue(task.hasFailed());
+		assertTrue(task.getFailure() instanceof IllegalStateException);
+	}
+
+	@Test
+	public void testAllOfAnyOf() throws TimeoutException {
+		AsyncTask<String> one = runAsync(testFetcher());
+		AsyncTask<String> two = createPending();
+		AsyncTask<Void> all = allOf(one, two);
+		AsyncTask<Object> any = anyOf(one, two);
+		assertTrue(any.getResult(10, TimeUnit.SECONDS).equals("Hello world"));
+		assertFalse(all.block(10, TimeUnit.MILLISECONDS));
+		two.complete("Test");
+		all.getResult(10, TimeUnit.SECONDS);
+		assertTrue(all.hasCompleted());
+	}
+
+	@Test
+	public void testCompletableFutureInterop() throws Exception {
+		CompletableFuture<String> future = new CompletableFuture<String>();
+		AsyncTask<String> task = fromFuture(future);
+		assertFalse(task.hasCompleted());
+		future.complete("Hello world");
+		assertTrue(task.getResult(10, TimeUnit.SECONDS).equals("Hello world"));
+		assertTrue(runAsync(testFetcher()).toCompletableFuture().get(10, TimeUnit.SECONDS).equals("Hello world"));
+	}
+
+	@Test
+	public void testFailureIsNotRethrown() {
+		// Failures are kept by the task, rethrowing would unwind the worker thread
+		AsyncTask<Void> failing = createTask(() -> {
+			throw new IllegalStateException("Test");
+		});
+		failing.run();
+		assertTrue(failing.hasFailed());
+		assertTrue(failing.getFailure() instanceof IllegalStateException);
+	}
+
+	@Test
+	public void testSynchronousFailure() {
+		// Tasks run by the caller rethrow their failure to the caller
+		AsyncTask<Void> failing = createTask(() -> {
+			throw new IllegalStateException("Test");
+		});
+		try {
+			failing.execute();
+			fail("Expected an IllegalStateException");
+		} catch (IllegalStateException e) {
+		}
+		assertTrue(failing.hasFailed());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAnyOfWithoutTasks() {
+		anyOf();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidIdleTimeout() {
+		new WorkStealingTaskExecutor(1, 1, 0, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testRejectedExecution() throws TimeoutException {
+		WorkStealingTaskExecutor exec = new WorkStealingTaskExecutor();
+		exec.shutdown();
+		AsyncTaskManager.setExecutor(exec);
+		try {
+			// Tasks rejected by the executor are run inline instead of never running
+			assertTrue(runAsync(testFetcher()).getResult(10, TimeUnit.SECONDS).equals("Hello world"));
+		} finally {
+			AsyncTaskManager.setExecutor(new WorkStealingTaskExecutor());
+		}
+	}
+
+	@Test
+	public void testLaneOrdering() throws TimeoutException {
+		AsyncTaskLanes<String> lanes = new AsyncTaskLanes<String>(4);
+		ArrayList<Integer> order = new ArrayList<Integer>();
+		AtomicInteger running = new AtomicInteger();
+		AtomicBoolean overlapped = new AtomicBoolean();
+		AsyncTask<Void> last = null;
+		for (int i = 0; i < 200; i++) {
+			int index = i;
+			last = lanes.runAsync("lane", () -> {
+				if (running.incrementAndGet() != 1)
+					overlapped.set(true);
+				synchronized (order) {
+					order.add(index);
+				}
+				running.decrementAndGet();
+			});
+		}
+		last.getResult(10, TimeUnit.SECONDS);
+		assertFalse(overlapped.get());
+		for (int i = 0; i < 200; i++)
+			assertTrue(order.get(i) == i);
+		assertTrue(lanes.getSubmittedCount() == 200);
+	}
+
+	@Test
+	public void testLaneIsolation() throws TimeoutException {
+		AsyncTaskLanes<String> lanes = new AsyncTaskLanes<String>();
+		AsyncTask<Void> gate = createPending();
+
+		// Block the first lane until the second lane completed
+		AsyncTask<Void> blocked = lanes.runAsync("one", () -> {
+			gate.block();
+		});
+		AsyncTask<String> queued = lanes.runAsync("one", () -> {
+			return "one";
+		});
+		AsyncTask<String> other = lanes.runAsync("two", () -> {
+			return "two";
+		});
+		assertTrue(other.getResult(10, TimeUnit.SECONDS).equals("two"));
+		assertFalse(queued.hasCompleted());
+
+		// Release the first lane
+		gate.complete(null);
+		assertTrue(queued.getResult(10, TimeUnit.SECONDS).equals("one"));
+		assertTrue(blocked.hasCompleted());
+	}
+
 	public AsyncTask<String> testFetcher() {
 		return createTask(() -> {
 			return "Hello world";
@@ -0,0 +1,140 @@
+package org.asf.nexus.tasks.scheduling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SchedulerTests {
+
+	@Test
+	public void testTickTasks() {
+		TaskScheduler scheduler = new TaskScheduler();
+		int[] counts = new int[3];
+		ScheduledTask oneshot = scheduler.oneshot(() -> counts[0]++);
+		ScheduledTask delayed = scheduler.delayed(() -> counts[1]++, 3);
+		scheduler.interval(() -> counts[2]++, 1, 2);
+		assertEquals(3, delayed.getTicksBeforeStart());
+
+		scheduler.tick();
+		assertTrue(oneshot.hasRun());
+		assertEquals(1, counts[0]);
+		assertEquals(0, counts[1]);
+		assertEquals(0, counts[2]);
+		assertEquals(2, delayed.getTicksBeforeStart());
+
+		scheduler.tick();
+		assertEquals(0, counts[1]);
+		assertEquals(1, counts[2]);
+
+		scheduler.tick();
+		scheduler.tick();
+		assertEquals(1, counts[0]);
+		assertEquals(1, counts[1]);
+		assertEquals(2, counts[2]);
+
+		for (int i = 0; i < 10; i++)
+			scheduler.tick();
+		assertEquals(1, counts[1]);
+		assertEquals(2, counts[2]);
+		assertEquals(0, scheduler.getTaskCount());
+	}
+
+	@Test
+	public void testTimeTasks() throws InterruptedException {
+		TaskScheduler scheduler = new TaskScheduler();
+		int[] counts = new int[1];
+		ScheduledTask task = scheduler.afterMs(() -> counts[0]++, 50);
+		scheduler.tick();
+		assertFalse(task.hasRun());
+		Thread.sleep(100);
+		scheduler.tick();
+		assertTrue(task.hasRun());
+		scheduler.tick();
+		assertEquals(1, counts[0]);
+	}
+
+	@Test
+	public void testCancel() {
+		TaskScheduler scheduler = new TaskScheduler();
+		int[] counts = new int[1];
+		ScheduledTask task = scheduler.repeat(() -> counts[0]++);
+		scheduler.afterSecs(() -> counts[0]++, 60);
+		scheduler.tick();
+		scheduler.cancel(task);
+		scheduler.tick();
+		assertEquals(1, counts[0]);
+		assertEquals(1, scheduler.getTaskCount());
+	}
+
+	@Test
+	public void testTimingWheelOrdering() {
+		// Compare the wheel against expected expiries with random delays and jumps
+		Random rnd = new Random(1234);
+		TimingWheel wheel = new TimingWheel(1000);
+		ArrayList<ScheduledTask> expected = new ArrayList<ScheduledTask>();
+		for (int i = 0; i < 20000; i++) {
+			ScheduledTask task = new ScheduledTask();
+			long delay = rnd.nextInt(4) == 0 ? rnd.nextInt(100) : (long) rnd.nextInt(Integer.MAX_VALUE) * 1000;
+			wheel.add(task, 1000 + delay);
+			expected.add(task);
+		}
+		long now = 1000;
+		ArrayList<ScheduledTask> expired = new ArrayList<ScheduledTask>();
+		while (wheel.size() != 0) {
+			now += rnd.nextInt(5) == 0 ? 1 : (long) rnd.nextInt(Integer.MAX_VALUE) * 50;
+			expired.clear();
+			wheel.advance(now, expired);
+			for (ScheduledTask task : expired) {
+				assertTrue(task.expiry <= now);
+				assertTrue(expected.remove(task));
+			}
+			for (ScheduledTask task : expected)
+				assertTrue(task.expiry > now);
+		}
+		assertEquals(0, expected.size());
+	}
+
+	@Test
+	public void testDriver() {
+		TaskScheduler scheduler = new TaskScheduler();
+		scheduler.startDriver(5);
+		try {
+			assertTrue(scheduler.isDriverRunning());
+
+			// Wall-clock tasks are run without manual ticking
+			long start = System.currentTimeMillis();
+			ScheduledTask timed = scheduler.afterMs(() -> {
+			}, 50);
+			timed.block();
+			assertTrue(System.currentTimeMillis() - start >= 50);
+
+			// Tick tasks are run at the tick rate
+			start = System.currentTimeMillis();
+			ScheduledTask delayed = scheduler.delayed(() -> {
+			}, 10);
+			delayed.block();
+			assertTrue(System.currentTimeMillis() - start >= 40);
+		} finally {
+			scheduler.stopDriver();
+		}
+		assertFalse(scheduler.isDriverRunning());
+	}
+
+	@Test
+	public void testFixedRate() throws InterruptedException {
+		TaskScheduler scheduler = new TaskScheduler();
+		int[] counts = new int[1];
+		ScheduledTask task = scheduler.fixedRateMs(() -> counts[0]++, 10);
+		Thread.sleep(55);
+		scheduler.tick();
+		assertEquals(1, counts[0]);
+		assertTrue(task.getSkippedRuns() >= 3);
+		assertTrue(task.getLateBy() >= 40);
+		scheduler.cancel(task);
+	}
+}